@@ -0,0 +1,47 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Entry point for benchmarks.jar. Accepts all the usual JMH command line options (for example,
+ * a regex to select which benchmarks to run, or "-p ticketCount=1000000" to override a parameter),
+ * but always writes results in json format to a file in the results directory, so that runs
+ * from different commits can be compared with each other.
+ * <p>
+ * The results directory defaults to benchmarks/results and can be changed with -DresultsDir.
+ * The result file is named after the current date and time unless a -Dlabel is given
+ * (a commit hash makes a good label).
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        File resultsDir = new File(System.getProperty("resultsDir", "benchmarks/results"));
+        if (!resultsDir.exists() && !resultsDir.mkdirs()) {
+            throw new IllegalStateException("Unable to create results dir " + resultsDir.getAbsolutePath());
+        }
+        String label = System.getProperty("label", new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()));
+        File resultFile = new File(resultsDir, label + ".json");
+
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getAbsolutePath())
+                .build();
+        new Runner(options).run();
+        System.out.println("Results written to " + resultFile.getAbsolutePath());
+    }
+}
@@ -0,0 +1,60 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how much heap a loaded Project takes up, using JOL to walk the object graph. This isn't
+ * a JMH benchmark, as JMH measures time rather than space, so it's run on its own:
+ * <pre>
+ *     java -cp benchmarks/target/benchmarks.jar ca.corbett.tasktracker.benchmarks.HeapFootprint [ticketCount]
+ * </pre>
+ * For each set of model objects, two sizes are reported: the actual footprint, in which every
+ * shared instance (interned ids and strings) is counted once, and the footprint the same objects
+ * would have if none of that were shared, which is the sum of each object's own graph measured
+ * in isolation. The difference between the two is what interning saves.
+ *
+ * @author scorbo2
+ */
+public final class HeapFootprint {
+
+    /** Full Tickets are far bigger than headers, so we only measure this many of them. **/
+    private static final int MAX_TICKETS = 10_000;
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int ticketCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Project project = Project.load(ProjectGenerator.getOrGenerate(ticketCount, 5));
+        TicketRepository repository = project.getTicketRepository();
+
+        List<TicketHeader> headers = repository.getHeaders();
+        report("TicketHeaders", headers);
+
+        List<Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < Math.min(MAX_TICKETS, headers.size()); i++) {
+            tickets.add(repository.get(headers.get(i).getInternalId()));
+        }
+        report("Tickets", tickets);
+    }
+
+    private static void report(String label, List<?> objects) {
+        long shared = GraphLayout.parseInstance(objects.toArray()).totalSize();
+        long unshared = 0;
+        for (Object object : objects) {
+            unshared += GraphLayout.parseInstance(object).totalSize();
+        }
+        System.out.printf("%,d %s: %,d bytes as loaded, %,d bytes unshared (%.1f%% saved, %.0f vs %.0f bytes each)%n",
+                          objects.size(), label, shared, unshared, (unshared - shared) * 100.0 / unshared,
+                          (double)shared / objects.size(), (double)unshared / objects.size());
+    }
+}
@@ -0,0 +1,110 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.history.HistoryLog;
+import ca.corbett.tasktracker.history.HistoryState;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks for point-in-time queries against a HistoryLog. Setup generates a Project in a scratch
+ * directory (the history is written next to it, so the shared generated Projects can't be used),
+ * records all of it, and then saves rounds of edits to random Tickets, so the log has many segments
+ * and snapshots. The state is asked for from halfway through those edits, and from the very end.
+ * At these sizes a snapshot is bigger than a segment, so not every segment gets one.
+ *
+ * @author scorbo2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HistoryBenchmark {
+
+    @Param({"100000"})
+    public int ticketCount;
+
+    @Param({"100"})
+    public int editRounds;
+
+    private static final int EDITS_PER_ROUND = 500;
+
+    private File tempDir;
+    private Project project;
+    private HistoryLog history;
+    private long midpoint;
+    private UUID versionId;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        tempDir = Files.createTempDirectory("tasktracker-bench").toFile();
+        File projectFile = ProjectGenerator.generate(tempDir, ticketCount, 2, 42L);
+        project = Project.load(projectFile);
+        history = HistoryLog.open(project);
+        versionId = project.getVersions().get(0).getInternalId();
+
+        Random random = new Random(42);
+        TicketRepository repository = project.getTicketRepository();
+        for (int round = 0; round < editRounds; round++) {
+            for (int i = 0; i < EDITS_PER_ROUND; i++) {
+                Ticket ticket = repository.getByDisplayId(1 + random.nextInt(ticketCount));
+                ticket.setHoursWorked(random.nextInt(80) / 4.0);
+            }
+            project.save(projectFile);
+            if (round == editRounds / 2) {
+                Thread.sleep(2);
+                midpoint = System.currentTimeMillis();
+                Thread.sleep(2);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        history.dispose();
+        try (Stream<Path> paths = Files.walk(tempDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public HistoryState stateAtMidpoint() throws IOException {
+        return history.getStateAt(midpoint);
+    }
+
+    @Benchmark
+    public HistoryState stateNow() throws IOException {
+        return history.getStateAt(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public List<TicketHeader> versionAtMidpoint() throws IOException {
+        return history.getStateAt(midpoint).getTicketHeaders(versionId);
+    }
+}
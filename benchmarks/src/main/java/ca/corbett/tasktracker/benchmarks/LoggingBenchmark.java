@@ -0,0 +1,96 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.logging.AsyncLogHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.stream.Stream;
+
+/**
+ * Log call throughput with the synchronous FileHandler that logging.properties used to set up, against
+ * AsyncLogHandler writing the same file. Both use the application's log format. The LogConsole and
+ * the console are left out, so that the benchmark can run headless without flooding its own output.
+ * <p>
+ * AsyncLogHandler is measured with its default BLOCK overflow policy, so once its buffer fills up
+ * callers go only as fast as the writer thread does. The numbers are sustained throughput, not just
+ * the cost of dropping a record into the buffer.
+ * </p>
+ *
+ * @author scorbo2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoggingBenchmark {
+
+    private static final String FORMAT = "%1$tF %1$tr [%4$s] %5$s%6$s%n";
+
+    @Param({"FileHandler", "AsyncLogHandler"})
+    public String handlerType;
+
+    private File tempDir;
+    private Handler handler;
+    private Logger logger;
+
+    @Setup
+    public void setup() throws IOException {
+        System.setProperty("java.util.logging.SimpleFormatter.format", FORMAT);
+        tempDir = Files.createTempDirectory("tasktracker-bench").toFile();
+        File logFile = new File(tempDir, "bench.log");
+        if ("FileHandler".equals(handlerType)) {
+            handler = new FileHandler(logFile.getAbsolutePath());
+        }
+        else {
+            handler = new AsyncLogHandler().setLogFile(logFile).setConsole(false).setLogConsole(false);
+        }
+        handler.setFormatter(new SimpleFormatter());
+        logger = Logger.getLogger(LoggingBenchmark.class.getName() + "." + handlerType);
+        logger.setUseParentHandlers(false);
+        logger.addHandler(handler);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        logger.removeHandler(handler);
+        handler.close();
+        try (Stream<Path> paths = Files.walk(tempDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void log1() {
+        logger.info("Saved ticket TT-1234 in 3 ms");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void log4() {
+        logger.info("Saved ticket TT-1234 in 3 ms");
+    }
+}
@@ -0,0 +1,82 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for opening, saving, and dirty-checking whole Projects.
+ * Larger sizes can be run with (for example) "-p ticketCount=1000000".
+ *
+ * @author scorbo2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProjectBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int ticketCount;
+
+    @Param({"5"})
+    public int commentsPerTicket;
+
+    private File projectFile;
+    private Project project;
+    private Ticket ticket;
+    private double hours;
+
+    @Setup
+    public void setup() throws IOException {
+        projectFile = ProjectGenerator.getOrGenerate(ticketCount, commentsPerTicket);
+        Project.setSnapshotsEnabled(true);
+        project = Project.load(projectFile);
+        ticket = project.getTicketRepository().getByDisplayId(ticketCount / 2);
+    }
+
+    @Benchmark
+    public Project loadWithSnapshot() throws IOException {
+        return Project.load(projectFile);
+    }
+
+    @Benchmark
+    public Project loadFromJson() throws IOException {
+        Project.setSnapshotsEnabled(false);
+        try {
+            return Project.load(projectFile);
+        }
+        finally {
+            Project.setSnapshotsEnabled(true);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void saveOneEditedTicket() throws IOException {
+        ticket.setHoursWorked(hours++);
+        project.save(projectFile);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean isDirty() throws IOException {
+        return project.isDirty();
+    }
+}
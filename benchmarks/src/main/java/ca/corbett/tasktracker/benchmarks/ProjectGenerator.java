@@ -0,0 +1,128 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.ProjectVersion;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketComment;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates synthetic Projects of any size for benchmarking. Generated Projects are cached
+ * on disk (under java.io.tmpdir by default, or wherever -DbenchDataDir points) and reused
+ * by later runs, because writing out a million Ticket files is not something you want to
+ * do before every benchmark. The same size and seed always produce the same Project content.
+ *
+ * @author scorbo2
+ */
+public final class ProjectGenerator {
+
+    private static final String[] STATES = {"Open", "In progress", "Blocked", "Closed"};
+    private static final String[] RESOLUTIONS = {"Fixed", "Won't fix", "Duplicate", "Cannot reproduce"};
+    private static final String[] WORDS = {
+            "the", "ticket", "window", "project", "crash", "save", "load", "slow", "button", "dialog",
+            "version", "release", "comment", "extension", "startup", "memory", "sort", "filter", "date", "log"
+    };
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    /** Save to disk every this many new Tickets so we don't hold them all in memory at once. **/
+    private static final int SAVE_INTERVAL = 10_000;
+
+    private ProjectGenerator() {
+    }
+
+    /**
+     * Returns the project.json file for a generated Project with the given size, generating it
+     * first if it doesn't already exist.
+     *
+     * @param ticketCount       How many Tickets the Project should have.
+     * @param commentsPerTicket How many TicketComments each Ticket should have.
+     * @return The project.json file of the generated Project.
+     * @throws IOException If the Project can't be written.
+     */
+    public static File getOrGenerate(int ticketCount, int commentsPerTicket) throws IOException {
+        File baseDir = new File(System.getProperty("benchDataDir",
+                                                   new File(System.getProperty("java.io.tmpdir"),
+                                                            "tasktracker-bench").getAbsolutePath()));
+        File projectDir = new File(baseDir, ticketCount + "-" + commentsPerTicket);
+        File projectFile = new File(projectDir, "project.json");
+        if (!projectFile.exists()) {
+            generate(projectDir, ticketCount, commentsPerTicket, 42L);
+        }
+        return projectFile;
+    }
+
+    /**
+     * Generates a new Project in the given directory.
+     *
+     * @param projectDir        The directory in which to create the Project.
+     * @param ticketCount       How many Tickets the Project should have.
+     * @param commentsPerTicket How many TicketComments each Ticket should have.
+     * @param seed              Random seed, so that runs are repeatable.
+     * @return The project.json file of the generated Project.
+     * @throws IOException If the Project can't be written.
+     */
+    public static File generate(File projectDir, int ticketCount, int commentsPerTicket, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        File projectFile = new File(projectDir, "project.json");
+        long now = System.currentTimeMillis();
+        long start = now - 5 * 365 * DAY_MS;
+
+        Project project = Project.create("BENCH", "Benchmark project with " + ticketCount + " tickets")
+                                 .setDescription(sentence(random, 30))
+                                 .setStartDate(new YMDDate(start));
+        ProjectVersion[] versions = new ProjectVersion[10];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = ProjectVersion.create("1." + i)
+                                        .setStartDate(new Date(start + i * 180 * DAY_MS))
+                                        .setReleaseDate(new Date(start + (i + 1) * 180 * DAY_MS));
+            project.addVersion(versions[i]);
+        }
+
+        for (int i = 0; i < ticketCount; i++) {
+            Ticket ticket = project.createTicket(sentence(random, 4 + random.nextInt(8)));
+            String state = STATES[random.nextInt(STATES.length)];
+            long created = start + (long)(random.nextDouble() * (now - start));
+            ticket.setState(state)
+                  .setTargetVersionId(versions[random.nextInt(versions.length)].getInternalId())
+                  .setLongDescription(sentence(random, 20 + random.nextInt(200)))
+                  .setHoursWorked(random.nextInt(5) == 0 ? null : random.nextInt(80) / 4.0);
+            if (!"Open".equals(state)) {
+                ticket.setStartDate(new Date(created + random.nextInt(30) * DAY_MS));
+            }
+            if ("Closed".equals(state)) {
+                ticket.setCloseDate(new Date(created + (30 + random.nextInt(60)) * DAY_MS))
+                      .setResolution(RESOLUTIONS[random.nextInt(RESOLUTIONS.length)]);
+            }
+            for (int c = 0; c < commentsPerTicket; c++) {
+                ticket.addComment(TicketComment.create(ticket, sentence(random, 5 + random.nextInt(60))));
+            }
+
+            if ((i + 1) % SAVE_INTERVAL == 0) {
+                project.save(projectFile);
+            }
+        }
+        project.save(projectFile);
+        return projectFile;
+    }
+
+    /**
+     * Returns a string of random words.
+     */
+    static String sentence(Random random, int wordCount) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
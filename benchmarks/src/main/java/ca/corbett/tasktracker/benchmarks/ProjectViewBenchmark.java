@@ -0,0 +1,111 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.ProjectView;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stress test for ProjectView: many threads reading headers through TicketRepository.getView()
+ * at once. Reads take no locks and share nothing that's written, so throughput should go up in
+ * line with the number of threads, up to the number of cores; compare readers1 through readersMax.
+ * readWhileWriting does the same with one thread editing Tickets and publishing a new view after
+ * each edit, the way the model thread would, to show that readers aren't held up by it.
+ *
+ * @author scorbo2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ProjectViewBenchmark {
+
+    /** How many headers each read looks up, all from the same view. **/
+    private static final int LOOKUPS_PER_READ = 64;
+
+    @Param({"10000"})
+    public int ticketCount;
+
+    private TicketRepository repository;
+
+    @Setup
+    public void setup() throws IOException {
+        Project project = Project.load(ProjectGenerator.getOrGenerate(ticketCount, 5));
+        repository = project.getTicketRepository();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public double readers1() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public double readers2() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double readers4() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public double readersMax() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public double reader() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public long writer() throws IOException {
+        Ticket ticket = repository.getByDisplayId(1 + ThreadLocalRandom.current().nextInt(ticketCount));
+        ticket.setHoursWorked(ThreadLocalRandom.current().nextInt(80) / 4.0);
+        repository.refreshHeaders();
+        return repository.getView().getVersion();
+    }
+
+    private double read() {
+        ProjectView view = repository.getView();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double hours = 0;
+        for (int i = 0; i < LOOKUPS_PER_READ; i++) {
+            TicketHeader header = view.getHeaderByDisplayId(1 + random.nextInt(ticketCount));
+            if (header != null && header.getHoursWorked() != null) {
+                hours += header.getHoursWorked();
+            }
+        }
+        return hours;
+    }
+}
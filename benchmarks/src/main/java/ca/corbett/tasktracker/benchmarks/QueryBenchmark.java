@@ -0,0 +1,117 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import ca.corbett.tasktracker.query.TicketIndex;
+import ca.corbett.tasktracker.query.TicketQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares running TicketQueries through a TicketIndex against simply scanning every
+ * TicketHeader, which is what we did before the index existed. The 1M ticket case takes
+ * a while to generate the first time; run it with "-p ticketCount=1000000".
+ *
+ * @author scorbo2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"100000"})
+    public int ticketCount;
+
+    private TicketRepository repository;
+    private TicketIndex index;
+    private UUID versionId;
+    private YMDDate recent;
+
+    private TicketQuery selectiveQuery;
+    private TicketQuery broadQuery;
+
+    @Setup
+    public void setup() throws IOException {
+        Project project = Project.load(ProjectGenerator.getOrGenerate(ticketCount, 0));
+        repository = project.getTicketRepository();
+        index = new TicketIndex(repository);
+        versionId = project.getVersions().get(3).getInternalId();
+        recent = YMDDate.ofEpochDay(new YMDDate().getEpochDay() - 365);
+
+        // Blocked tickets for one version, closed in the last year: a handful of results.
+        selectiveQuery = new TicketQuery().withState("Blocked", "Closed")
+                                          .withTargetVersion(versionId)
+                                          .closedBetween(recent, null)
+                                          .sortBy(TicketQuery.SortField.CLOSE_DATE, false);
+
+        // Everything still open, most hours first, top 50: lots of matches, few results.
+        broadQuery = new TicketQuery().withState("Open", "In progress")
+                                      .sortBy(TicketQuery.SortField.HOURS_WORKED, false)
+                                      .limit(50);
+    }
+
+    @Benchmark
+    public List<TicketHeader> selectiveIndexed() {
+        return index.execute(selectiveQuery);
+    }
+
+    @Benchmark
+    public List<TicketHeader> selectiveScan() {
+        List<TicketHeader> results = new ArrayList<>();
+        for (TicketHeader header : repository.getHeaders()) {
+            String state = header.getState();
+            if (("Blocked".equals(state) || "Closed".equals(state))
+                    && versionId.equals(header.getTargetVersionId())
+                    && header.getCloseTime() != TicketHeader.NO_DATE
+                    && new YMDDate(header.getCloseTime()).compareTo(recent) >= 0) {
+                results.add(header);
+            }
+        }
+        results.sort(Comparator.comparingLong(TicketHeader::getCloseTime).reversed());
+        return results;
+    }
+
+    @Benchmark
+    public List<TicketHeader> broadIndexed() {
+        return index.execute(broadQuery);
+    }
+
+    @Benchmark
+    public List<TicketHeader> broadScan() {
+        List<TicketHeader> results = new ArrayList<>();
+        for (TicketHeader header : repository.getHeaders()) {
+            if ("Open".equals(header.getState()) || "In progress".equals(header.getState())) {
+                results.add(header);
+            }
+        }
+        results.sort(Comparator.comparing(TicketHeader::getHoursWorked,
+                                          Comparator.nullsFirst(Comparator.<Double>naturalOrder())).reversed());
+        return new ArrayList<>(results.subList(0, Math.min(50, results.size())));
+    }
+
+    @Benchmark
+    public int countIndexed() {
+        return index.count(selectiveQuery);
+    }
+}
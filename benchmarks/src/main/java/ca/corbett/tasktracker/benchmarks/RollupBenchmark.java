@@ -0,0 +1,91 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import ca.corbett.tasktracker.stats.Rollup;
+import ca.corbett.tasktracker.stats.TicketColumns;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rolling up hours worked through TicketColumns against looping over every TicketHeader,
+ * with its boxed Double and Date fields, which is what we'd do without the columns. The 1M ticket
+ * case takes a while to generate the first time; run it with "-p ticketCount=1000000".
+ *
+ * @author scorbo2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RollupBenchmark {
+
+    @Param({"100000"})
+    public int ticketCount;
+
+    private TicketRepository repository;
+    private TicketColumns columns;
+
+    @Setup
+    public void setup() throws IOException {
+        Project project = Project.load(ProjectGenerator.getOrGenerate(ticketCount, 0));
+        repository = project.getTicketRepository();
+        columns = new TicketColumns(repository);
+    }
+
+    @Benchmark
+    public Rollup<String> byStateColumns() {
+        return columns.byState();
+    }
+
+    @Benchmark
+    public Map<String, Double> byStateScan() {
+        Map<String, Double> hours = new HashMap<>();
+        for (TicketHeader header : repository.getHeaders()) {
+            hours.merge(header.getState(), header.getHoursWorked() == null ? 0 : header.getHoursWorked(), Double::sum);
+        }
+        return hours;
+    }
+
+    @Benchmark
+    public Rollup<YMDDate> byMonthColumns() {
+        return columns.byMonth(TicketColumns.DateField.CLOSE);
+    }
+
+    @Benchmark
+    public Map<Integer, Double> byMonthScan() {
+        Map<Integer, Double> hours = new TreeMap<>();
+        for (TicketHeader header : repository.getHeaders()) {
+            if (header.getCloseTime() != TicketHeader.NO_DATE) {
+                YMDDate date = new YMDDate(header.getCloseTime());
+                hours.merge(date.getYear() * 12 + date.getMonth(),
+                            header.getHoursWorked() == null ? 0 : header.getHoursWorked(), Double::sum);
+            }
+        }
+        return hours;
+    }
+
+    @Benchmark
+    public double totalHoursColumns() {
+        return columns.getTotalHours();
+    }
+}
@@ -0,0 +1,70 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.search.SearchIndex;
+import ca.corbett.tasktracker.search.SearchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for full-text search. Note that the generated Projects draw on a very small
+ * vocabulary, so every term appears in nearly every Ticket; that makes these numbers a
+ * worst case, well above what real text would give.
+ *
+ * @author scorbo2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"10000", "100000"})
+    public int ticketCount;
+
+    @Param({"5"})
+    public int commentsPerTicket;
+
+    private SearchIndex index;
+
+    @Setup
+    public void setup() throws IOException {
+        Project project = Project.load(ProjectGenerator.getOrGenerate(ticketCount, commentsPerTicket));
+        index = SearchIndex.open(project);
+    }
+
+    @Benchmark
+    public List<SearchResult> singleTerm() {
+        return index.search("crash", 50);
+    }
+
+    @Benchmark
+    public List<SearchResult> twoTerms() {
+        return index.search("crash startup", 50);
+    }
+
+    @Benchmark
+    public List<SearchResult> phrase() {
+        return index.search("\"save crash\"", 50);
+    }
+
+    @Benchmark
+    public List<SearchResult> searchAsYouType() {
+        return index.search("memory sl*", 50);
+    }
+}
@@ -0,0 +1,114 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.Main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures cold startup, from launching a new JVM to the main window's first paint. This isn't a JMH
+ * benchmark, as each sample is a whole new process, so it's run on its own after a "mvn package":
+ * <pre>
+ *     java -cp benchmarks/target/benchmarks.jar ca.corbett.tasktracker.benchmarks.StartupTime [jar] [runs]
+ * </pre>
+ * The application is started with tasktracker.exitAfterStartup set, which makes it print the time of
+ * its first paint and exit right away. If a class data sharing archive was built alongside the jar
+ * (mvn package -Pappcds), every run is repeated with it, so the two can be compared. Needs a display.
+ *
+ * @author scorbo2
+ */
+public final class StartupTime {
+
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private static File settingsDir;
+
+    private StartupTime() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File jar = new File(args.length > 0 ? args[0] : "target/tasktracker-2.0-SNAPSHOT.jar");
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        if (!jar.exists()) {
+            System.err.println("No application jar at " + jar.getAbsolutePath() + "; run \"mvn package\" first.");
+            System.exit(1);
+        }
+        File archive = new File(jar.getParentFile(), "tasktracker.jsa");
+
+        // A scratch settings dir, so the runs don't touch the real one:
+        settingsDir = Files.createTempDirectory("tasktracker-startup").toFile();
+        try {
+            // Throwaway run, so the first real one doesn't pay for getting everything into the OS file cache:
+            launch(jar, null);
+
+            report("without CDS", jar, null, runs);
+            if (archive.exists()) {
+                report("with CDS", jar, archive, runs);
+            }
+            else {
+                System.out.println("No class data sharing archive at " + archive.getPath()
+                                       + "; build with -Pappcds to compare.");
+            }
+        }
+        finally {
+            try (Stream<Path> paths = Files.walk(settingsDir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void report(String label, File jar, File archive, int runs)
+            throws IOException, InterruptedException {
+        long[] samples = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            samples[i] = launch(jar, archive);
+        }
+        Arrays.sort(samples);
+        System.out.printf("%-12s launch to first paint: min %d ms, median %d ms, max %d ms (%d runs)%n",
+                          label, samples[0], samples[runs / 2], samples[runs - 1], runs);
+    }
+
+    /**
+     * Starts the application and returns the number of milliseconds until it reported its first paint.
+     */
+    private static long launch(File jar, File archive) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath());
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        }
+        command.add("-Dtasktracker.exitAfterStartup=true");
+        command.add("-DSETTINGS_DIR=" + settingsDir.getAbsolutePath());
+        command.add("-jar");
+        command.add(jar.getAbsolutePath());
+
+        long launchedAt = System.currentTimeMillis();
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(Main.FIRST_PAINT_MARKER)) {
+                    return Long.parseLong(line.substring(Main.FIRST_PAINT_MARKER.length()).trim()) - launchedAt;
+                }
+            }
+        }
+        finally {
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+        throw new IOException("The application exited without painting its main window");
+    }
+}
@@ -0,0 +1,111 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketComment;
+import ca.corbett.tasktracker.model.TicketHeader;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for saving and loading a single Ticket with lots of comments. Ticket.load() and
+ * save() go through the streaming codec; the mapper* benchmarks do the same work by binding the
+ * whole document with an ObjectMapper configured the way the model used to be, for comparison.
+ * Run with "-prof gc" to compare allocation rates as well as throughput.
+ *
+ * @author scorbo2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TicketSerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int commentCount;
+
+    private File tempDir;
+    private File ticketFile;
+    private Ticket ticket;
+    private byte[] content;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        tempDir = Files.createTempDirectory("tasktracker-bench").toFile();
+        ticketFile = new File(tempDir, "ticket.json");
+        ticket = Project.create("BENCH", "Benchmark").createTicket(ProjectGenerator.sentence(random, 8));
+        ticket.setLongDescription(ProjectGenerator.sentence(random, 500));
+        for (int i = 0; i < commentCount; i++) {
+            ticket.addComment(TicketComment.create(ticket, ProjectGenerator.sentence(random, 60)));
+        }
+        ticket.save(ticketFile);
+        content = Files.readAllBytes(ticketFile.toPath());
+
+        objectMapper = new ObjectMapper();
+        objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ticketFile.delete();
+        tempDir.delete();
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        ticket.save(ticketFile);
+    }
+
+    @Benchmark
+    public Ticket load() throws IOException {
+        return Ticket.load(ticketFile);
+    }
+
+    @Benchmark
+    public TicketHeader loadHeader() throws IOException {
+        return TicketHeader.load(ticketFile);
+    }
+
+    @Benchmark
+    public byte[] mapperWrite() throws IOException {
+        return objectMapper.writeValueAsBytes(ticket);
+    }
+
+    @Benchmark
+    public Ticket mapperRead() throws IOException {
+        return objectMapper.readValue(content, Ticket.class);
+    }
+
+    @Benchmark
+    public TicketHeader mapperReadHeader() throws IOException {
+        return objectMapper.readValue(content, TicketHeader.class);
+    }
+}
@@ -0,0 +1,95 @@
+package ca.corbett.tasktracker.benchmarks;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for YMDDate parsing, formatting and sorting. The "legacy" benchmarks do the same
+ * work the way YMDDate used to do it internally (SimpleDateFormat for parsing, and formatting
+ * both dates to strings for every comparison), to give a baseline for comparison.
+ *
+ * @author scorbo2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class YMDDateBenchmark {
+
+    @Param({"100000"})
+    public int dateCount;
+
+    private String[] strings;
+    private YMDDate[] dates;
+    private Date[] legacyDates;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        strings = new String[dateCount];
+        dates = new YMDDate[dateCount];
+        legacyDates = new Date[dateCount];
+        for (int i = 0; i < dateCount; i++) {
+            dates[i] = YMDDate.ofEpochDay(10_000 + random.nextInt(10_000));
+            strings[i] = dates[i].toString();
+            legacyDates[i] = new Date(dates[i].getEpochDay() * TimeUnit.DAYS.toMillis(1));
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String str : strings) {
+            blackhole.consume(new YMDDate(str));
+        }
+    }
+
+    @Benchmark
+    public void legacyParse(Blackhole blackhole) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        for (String str : strings) {
+            blackhole.consume(format.parse(str));
+        }
+    }
+
+    @Benchmark
+    public void format(Blackhole blackhole) {
+        for (YMDDate date : dates) {
+            blackhole.consume(date.toString());
+        }
+    }
+
+    @Benchmark
+    public YMDDate[] sort() {
+        YMDDate[] copy = Arrays.copyOf(dates, dates.length);
+        Arrays.sort(copy, YMDDate::compareTo);
+        return copy;
+    }
+
+    @Benchmark
+    public Date[] legacySort() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+        Date[] copy = Arrays.copyOf(legacyDates, legacyDates.length);
+        Arrays.sort(copy, (d1, d2) -> format.format(d1).compareTo(format.format(d2)));
+        return copy;
+    }
+}
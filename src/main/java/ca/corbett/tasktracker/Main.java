@@ -1,61 +1,200 @@
 package ca.corbett.tasktracker;
 
 import ca.corbett.extras.LookAndFeelManager;
+import ca.corbett.tasktracker.diagnostics.EdtMonitor;
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.extensions.TaskTrackerExtensionManager;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.StorageFormat;
+import ca.corbett.tasktracker.model.StorageMigration;
+import ca.corbett.tasktracker.model.WorkspaceLoader;
 import ca.corbett.tasktracker.ui.MainWindow;
 import com.formdev.flatlaf.intellijthemes.FlatXcodeDarkIJTheme;
 
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 import java.awt.SplashScreen;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
 public class Main {
+
+    /**
+     * Printed to stdout, followed by System.currentTimeMillis(), when the main window first paints,
+     * if tasktracker.exitAfterStartup is set. The startup benchmark looks for this.
+     */
+    public static final String FIRST_PAINT_MARKER = "tasktracker.firstPaint=";
+
+    /** Classes the EDT will need to show the main window, in roughly the order it needs them. **/
+    private static final String[] PRELOAD_UI_CLASSES = {
+        "ca.corbett.tasktracker.ui.MainWindow",
+        "ca.corbett.tasktracker.ui.TicketTable",
+        "ca.corbett.tasktracker.ui.TicketTableModel",
+        "javax.swing.JTable",
+        "javax.swing.table.JTableHeader",
+        "javax.swing.table.DefaultTableCellRenderer",
+        "javax.swing.JScrollPane",
+        "javax.swing.JViewport",
+        "javax.swing.JScrollBar",
+        "javax.swing.JTextField",
+        "javax.swing.JMenuBar",
+        "javax.swing.JMenu",
+        "javax.swing.JMenuItem"
+    };
+
+    /** Model classes that are safe to initialize off the EDT. **/
+    private static final String[] PRELOAD_MODEL_CLASSES = {
+        "ca.corbett.tasktracker.model.Project",
+        "ca.corbett.tasktracker.model.Ticket",
+        "ca.corbett.tasktracker.model.TicketHeader",
+        "ca.corbett.tasktracker.model.TicketRepository"
+    };
+
     public static void main(String[] args) {
         // Before we do anything else...
         initializeLogging();
 
-        // Set up extra look and feels:
-        LookAndFeelManager.installExtraLafs();
+        // If metrics are turned on (-Dtasktracker.metrics=true), dump them every minute for later comparison:
+        Metrics.startExport(new File(Version.SETTINGS_DIR, "metrics"), 60);
+
+        // Storage migration runs from the command line, without any UI:
+        if (args.length > 0 && "--migrate".equals(args[0])) {
+            System.exit(migrate(args));
+        }
 
         // Get the splash screen if there is one:
         final SplashScreen splashScreen = SplashScreen.getSplashScreen();
 
-        // Load saved application config:
         Logger.getLogger(Main.class.getName())
               .info(Version.APPLICATION_NAME + " " + Version.VERSION + " initializing...");
 
-        // TODO load extensions and app config:
-        //TaskTrackerExtensionManager.getInstance().loadAll();
+        // Setting up the look and feel takes a while, and nothing in the UI can be built until it's done.
+        // Anything that doesn't need it gets started in the background first, so it runs in the meantime:
+        preloadClasses();
+        CompletableFuture<Project> firstProject = preloadWorkspace();
+
+        // Extension jars are indexed in the background too; none of them are loaded until they're needed:
+        TaskTrackerExtensionManager.getInstance().loadAll();
+
+        // Set up extra look and feels:
+        LookAndFeelManager.installExtraLafs();
+
+        // TODO load app config:
         //AppConfig.getInstance().load();
         //LookAndFeelManager.switchLaf(AppConfig.getInstance().getLookAndFeelClassname());
         LookAndFeelManager.switchLaf(FlatXcodeDarkIJTheme.class.getName());
 
-        // Load and show main window:
-        MainWindow window = MainWindow.getInstance();
-        if (splashScreen != null) {
-            try {
-                // Wait a second or so, so it doesn't just flash up and disappear immediately.
-                Thread.sleep(744);
-            }
-            catch (InterruptedException ignored) {
-                // ignored
-            }
-            splashScreen.close();
-        }
+        // Keep an eye on the EDT so that anything blocking it shows up in the log:
+        EdtMonitor.getInstance().start();
 
-        // Create and display the form
+        // Create and display the form. The splash stays up until the window has actually painted,
+        // so there's never a gap with nothing on screen:
         java.awt.EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
+                MainWindow window = MainWindow.getInstance();
                 window.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                window.addPropertyChangeListener(MainWindow.FIRST_PAINT_PROPERTY,
+                                                 e -> startupComplete(splashScreen));
+                firstProject.thenAccept(window::setProject);
                 window.setVisible(true);
             }
         });
     }
 
+    /**
+     * Loads (but doesn't initialize) the classes needed to show the main window, on a background thread,
+     * so the EDT finds them ready when it gets there. The model classes are initialized too; they don't
+     * touch Swing, and setting up Jackson is one of the slower parts of opening the first Project.
+     * With a class data sharing archive (see the appcds profile in pom.xml) most of this is already done,
+     * and this finishes almost immediately.
+     */
+    private static void preloadClasses() {
+        Thread thread = new Thread(() -> {
+            ClassLoader loader = Main.class.getClassLoader();
+            for (String name : PRELOAD_UI_CLASSES) {
+                preload(name, false, loader);
+            }
+            for (String name : PRELOAD_MODEL_CLASSES) {
+                preload(name, true, loader);
+            }
+        }, "ClassPreloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void preload(String className, boolean initialize, ClassLoader loader) {
+        try {
+            Class.forName(className, initialize, loader);
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+            Logger.getLogger(Main.class.getName()).fine("Unable to preload " + className + ": " + e);
+        }
+    }
+
+    /**
+     * Starts loading the Projects in Version.WORKSPACE_DIR, if there is one. The returned future completes,
+     * on the EDT, with the first Project to finish loading; it never completes if there are no Projects.
+     */
+    private static CompletableFuture<Project> preloadWorkspace() {
+        CompletableFuture<Project> firstProject = new CompletableFuture<>();
+        if (Version.WORKSPACE_DIR.isDirectory()) {
+            new WorkspaceLoader(SwingUtilities::invokeLater).load(Version.WORKSPACE_DIR, firstProject::complete);
+        }
+        return firstProject;
+    }
+
+    /**
+     * Invoked on the EDT the first time the main window paints.
+     */
+    private static void startupComplete(SplashScreen splashScreen) {
+        if (splashScreen != null && splashScreen.isVisible()) {
+            splashScreen.close();
+        }
+
+        // Measured from JVM launch, so this includes class loading and LaF setup:
+        long now = System.currentTimeMillis();
+        long startTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+        Logger.getLogger(Main.class.getName()).info("Main window painted " + (now - startTime) + " ms after launch");
+
+        // For the startup benchmark and for recording a class data sharing archive, we're done:
+        if (Boolean.getBoolean("tasktracker.exitAfterStartup")) {
+            System.out.println(FIRST_PAINT_MARKER + now);
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Handles "--migrate projectDir format", converting the given Project directory
+     * in place to the given StorageFormat.
+     */
+    private static int migrate(String[] args) {
+        if (args.length != 3) {
+            System.err.println("Usage: --migrate <projectDir> <format>, where format is one of "
+                                   + Arrays.toString(StorageFormat.values()));
+            return 1;
+        }
+        try {
+            StorageFormat format = StorageFormat.valueOf(args[2].toUpperCase());
+            System.out.println(StorageMigration.migrate(new File(args[1]), format));
+            return 0;
+        }
+        catch (IllegalArgumentException iae) {
+            System.err.println("Unknown storage format: " + args[2]);
+            return 1;
+        }
+        catch (IOException ioe) {
+            System.err.println("Migration failed: " + ioe.getMessage());
+            return 1;
+        }
+    }
+
     private static void initializeLogging() {
         // log file can be supplied as a system property:
         if (System.getProperties().containsKey("java.util.logging.config.file")) {
@@ -65,6 +65,14 @@ public final class Version {
     /** The file containing our saved application config. **/
     public static final File APP_CONFIG_FILE;
 
+    /**
+     * The directory holding the user's Projects, one per subdirectory.
+     * If not given to us explicitly by the launcher script, we default
+     * it to a directory called "workspace" inside of SETTINGS_DIR.
+     * Unlike the other directories, this one is not created if missing.
+     */
+    public static final File WORKSPACE_DIR;
+
     /** The project Url. **/
     public static String PROJECT_URL = "https://github.com/scorbo2/tasktracker";
 
@@ -100,5 +108,9 @@ public final class Version {
         }
 
         APP_CONFIG_FILE = new File(SETTINGS_DIR, APPLICATION_NAME + ".prefs");
+
+        String workspaceDir = System.getProperty("WORKSPACE_DIR",
+                                                 new File(SETTINGS_DIR, "workspace").getAbsolutePath());
+        WORKSPACE_DIR = new File(workspaceDir);
     }
 }
\ No newline at end of file
@@ -4,44 +4,72 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonValue;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Comparator;
-import java.util.Objects;
+import java.util.TimeZone;
 
 /**
  * This is kind of dumb and feels a bit hacky, but for certain fields here (project start/end date,
  * version release date, etc), I don't care at all about time, I just want a pure date, and preferably
- * in a predictable, user-presentable format. So, here's a class that wraps a java.util.Date instance
+ * in a predictable, user-presentable format. So, here's a class that stores a pure date
  * and treats it rather strictly as a yyyy-MM-dd string value. And yeah, I have a particular affinity
  * for yyyy-MM-dd, so this class by design rejects literally all other date formats.
+ * <p>
+ * Internally, the date is just a single int: the number of days since 1970-01-01. That makes
+ * comparing and sorting dates as cheap as comparing ints, and the year/month/day accessors are
+ * simple arithmetic instead of a trip through Calendar. Parsing and formatting are done by hand.
+ * Only the years that fit in yyyy are supported, so dates run from 0001-01-01 to 9999-12-31.
+ * </p>
  *
  * @author scorbo2
  */
 public final class YMDDate implements Comparator<YMDDate> {
 
-    @JsonIgnore
-    private java.util.Date _date;
+    /** The epochDay value that means "no date". **/
+    private static final int INVALID = Integer.MIN_VALUE;
+
+    private static final long MS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    /** The epoch days of 0001-01-01 and 9999-12-31, the first and last dates we can represent. **/
+    private static final int MIN_EPOCH_DAY = epochDayOf(1, 1, 1);
+    private static final int MAX_EPOCH_DAY = epochDayOf(9999, 12, 31);
+
+    /**
+     * TimeZone.getDefault() hands back a fresh clone every time, which adds up when converting
+     * every date in a large Project, so the local zone is looked up once.
+     */
+    private static final TimeZone localZone = TimeZone.getDefault();
+
+    private static final String[] dayNames = new String[]{
+            "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday"
+    };
+
+    /**
+     * Formatting a date is the one thing here that has to allocate, so we remember recently
+     * formatted dates. This is direct-mapped on the low bits of the epoch day, so any run of
+     * about eleven years' worth of dates can all be cached at once.
+     */
+    private static final FormattedDate[] formatCache = new FormattedDate[4096];
 
     @JsonIgnore
-    private final SimpleDateFormat _format = new SimpleDateFormat("yyyy-MM-dd");
+    private int epochDay;
 
     /**
      * Creates a new YMDDate with a default value of today.
      */
     public YMDDate() {
-        _date = new java.util.Date();
+        this(System.currentTimeMillis());
     }
 
     /**
      * Creates a new YMDDate with the specified millisecond value, similar
-     * to the constructor for Date.
+     * to the constructor for Date. The date is taken in the local time zone.
+     * If it falls outside the years 0001 to 9999, the date will be unset.
      *
      * @param ms Number of milliseconds since Jan 1 1970
      */
     public YMDDate(long ms) {
-        _date = new java.util.Date(ms);
+        long day = Math.floorDiv(ms + localZone.getOffset(ms), MS_PER_DAY); // a long, as it may not fit an int
+        epochDay = day < MIN_EPOCH_DAY || day > MAX_EPOCH_DAY ? INVALID : (int)day;
     }
 
     /**
@@ -50,7 +78,12 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @param date the Date value to use.
      */
     public YMDDate(java.util.Date date) {
-        _date = date;
+        if (date == null) {
+            epochDay = INVALID;
+        }
+        else {
+            epochDay = epochDayOf(date);
+        }
     }
 
     /**
@@ -72,9 +105,45 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @param other The source date from which to copy.
      */
     public YMDDate(YMDDate other) {
-        if (other != null && other.isValid()) {
-            this._date = other._date;
+        epochDay = other == null ? INVALID : other.epochDay;
+    }
+
+    /**
+     * Creates a new YMDDate for the given number of days since 1970-01-01.
+     *
+     * @param epochDay The number of days since 1970-01-01 (may be negative).
+     * @return A new YMDDate.
+     * @throws IllegalArgumentException If the day falls outside the years 0001 to 9999.
+     */
+    public static YMDDate ofEpochDay(int epochDay) {
+        if (epochDay < MIN_EPOCH_DAY || epochDay > MAX_EPOCH_DAY) {
+            throw new IllegalArgumentException("Epoch day out of range: " + epochDay);
         }
+        YMDDate date = new YMDDate((YMDDate)null); // starts out unset
+        date.epochDay = epochDay;
+        return date;
+    }
+
+    /**
+     * Returns the number of days since 1970-01-01 of the given millisecond value, taken in the
+     * local time zone, without creating a YMDDate.
+     *
+     * @param ms Number of milliseconds since Jan 1 1970
+     * @return The epoch day of that moment.
+     */
+    public static int epochDayOf(long ms) {
+        return (int)Math.floorDiv(ms + localZone.getOffset(ms), MS_PER_DAY);
+    }
+
+    /**
+     * Returns the number of days since 1970-01-01 of the given Date, taken in the local time zone,
+     * without creating a YMDDate.
+     *
+     * @param date A Date, which must not be null.
+     * @return The epoch day of that Date.
+     */
+    public static int epochDayOf(java.util.Date date) {
+        return epochDayOf(date.getTime());
     }
 
     /**
@@ -82,7 +151,7 @@ public final class YMDDate implements Comparator<YMDDate> {
      * don't contain any particular date.
      */
     public void clear() {
-        _date = null;
+        epochDay = INVALID;
     }
 
     /**
@@ -91,27 +160,28 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @return Whether this YMDDate contains an actual date.
      */
     public boolean isValid() {
-        return _date != null;
+        return epochDay != INVALID;
+    }
+
+    /**
+     * Returns the number of days between 1970-01-01 and this date. This is handy as a compact
+     * representation for storing or bucketing large numbers of dates. If this date is not set,
+     * returns Integer.MIN_VALUE.
+     *
+     * @return The number of days since 1970-01-01, or Integer.MIN_VALUE if not set.
+     */
+    public int getEpochDay() {
+        return epochDay;
     }
 
     /**
      * Sets this date to the specified value. Format is yyyy-MM-dd always. If your format is
-     * literally anything else, the date will be unset.
+     * literally anything else (or if it's not an actual calendar date), the date will be unset.
      *
      * @param src A string in the format yyyy-MM-dd.
      */
     public void setDate(String src) {
-        if (src == null || src.trim().isEmpty() || src.length() != 10) {
-            _date = null;
-            return;
-        }
-
-        try {
-            _date = _format.parse(src);
-        }
-        catch (ParseException ex) {
-            _date = null;
-        }
+        epochDay = parse(src);
     }
 
     /**
@@ -120,12 +190,10 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @return The numerical year for this date, or 0 if not set.
      */
     public int getYear() {
-        if (_date == null) {
+        if (epochDay == INVALID) {
             return 0;
         }
-        Calendar c = Calendar.getInstance();
-        c.setTime(_date);
-        return c.get(Calendar.YEAR);
+        return yearOf(epochDay);
     }
 
     /**
@@ -148,12 +216,10 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @return The numerical month for this date (1-12), or 0 if not set.
      */
     public int getMonth() {
-        if (_date == null) {
+        if (epochDay == INVALID) {
             return 0;
         }
-        Calendar c = Calendar.getInstance();
-        c.setTime(_date);
-        return c.get(Calendar.MONTH) + 1;
+        return monthOf(epochDay);
     }
 
     /**
@@ -180,12 +246,10 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @return The numerical day for this date (1-31), or 0 if not set.
      */
     public int getDay() {
-        if (_date == null) {
+        if (epochDay == INVALID) {
             return 0;
         }
-        Calendar c = Calendar.getInstance();
-        c.setTime(_date);
-        return c.get(Calendar.DAY_OF_MONTH);
+        return dayOf(epochDay);
     }
 
     /**
@@ -213,17 +277,11 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @return An empty string if date is invalid, or the name of the day (example: "Thursday").
      */
     public String getDayName() {
-        final String[] dayNames = new String[]{"", "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday"};
-        int selectedIndex = 0;
-        if (_date != null) {
-            Calendar c = Calendar.getInstance();
-            c.setTime(_date);
-            int index = c.get(Calendar.DAY_OF_WEEK);
-            if (index >= 1 && index <= 7) {
-                selectedIndex = index;
-            }
+        if (epochDay == INVALID) {
+            return "";
         }
-        return dayNames[selectedIndex];
+        // 1970-01-01 was a Thursday:
+        return dayNames[Math.floorMod(epochDay + 4, 7)];
     }
 
     /**
@@ -235,11 +293,18 @@ public final class YMDDate implements Comparator<YMDDate> {
     @JsonValue
     @Override
     public String toString() {
-        if (_date == null) {
+        if (epochDay == INVALID) {
             return "";
         }
 
-        return _format.format(_date);
+        int slot = epochDay & (formatCache.length - 1);
+        FormattedDate cached = formatCache[slot];
+        if (cached != null && cached.epochDay == epochDay) {
+            return cached.text;
+        }
+        String text = format(epochDay);
+        formatCache[slot] = new FormattedDate(epochDay, text);
+        return text;
     }
 
     /**
@@ -249,10 +314,7 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @return -1 if this date is before other, 0 if they're equal, +1 if this date is after other.
      */
     public int compareTo(YMDDate other) {
-        if (_date == null || other._date == null) {
-            return 0;
-        }
-        return toString().compareTo(other.toString());
+        return compare(this, other);
     }
 
     /**
@@ -262,7 +324,11 @@ public final class YMDDate implements Comparator<YMDDate> {
      * @return -1 if this date is before the other, 0 if they're equals, +1 if this date is after.
      */
     public int compareTo(String str) {
-        return compareTo(new YMDDate(str));
+        int otherDay = parse(str);
+        if (epochDay == INVALID || otherDay == INVALID) {
+            return 0;
+        }
+        return Integer.compare(epochDay, otherDay);
     }
 
     /**
@@ -274,11 +340,11 @@ public final class YMDDate implements Comparator<YMDDate> {
      */
     @Override
     public int compare(YMDDate o1, YMDDate o2) {
-        if (o1._date == null || o2._date == null) {
+        if (o1.epochDay == INVALID || o2.epochDay == INVALID) {
             return 0;
         }
 
-        return o1.toString().compareTo(o2.toString());
+        return Integer.compare(o1.epochDay, o2.epochDay);
     }
 
     /**
@@ -293,7 +359,7 @@ public final class YMDDate implements Comparator<YMDDate> {
             return false;
         }
 
-        return toString().equals(((YMDDate)other).toString());
+        return epochDay == ((YMDDate)other).epochDay;
     }
 
     /**
@@ -303,9 +369,137 @@ public final class YMDDate implements Comparator<YMDDate> {
      */
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 59 * hash + Objects.hashCode(this._date);
-        return hash;
+        return Integer.hashCode(epochDay);
+    }
+
+    /**
+     * Parses the given yyyy-MM-dd string into an epoch day, or returns INVALID if the string is
+     * not in exactly that format or does not name a real calendar date.
+     */
+    private static int parse(String src) {
+        if (src == null || src.length() != 10 || src.charAt(4) != '-' || src.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = parseDigits(src, 0, 4);
+        int month = parseDigits(src, 5, 7);
+        int day = parseDigits(src, 8, 10);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        return epochDayOf(year, month, day);
+    }
+
+    /**
+     * Returns the decimal value of the given range of characters, or -1 if any of them aren't digits.
+     */
+    private static int parseDigits(String src, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = src.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static String format(int epochDay) {
+        int year = yearOf(epochDay);
+        int month = monthOf(epochDay);
+        int day = dayOf(epochDay);
+        char[] chars = new char[10];
+        chars[0] = (char)('0' + (year / 1000) % 10);
+        chars[1] = (char)('0' + (year / 100) % 10);
+        chars[2] = (char)('0' + (year / 10) % 10);
+        chars[3] = (char)('0' + year % 10);
+        chars[4] = '-';
+        chars[5] = (char)('0' + month / 10);
+        chars[6] = (char)('0' + month % 10);
+        chars[7] = '-';
+        chars[8] = (char)('0' + day / 10);
+        chars[9] = (char)('0' + day % 10);
+        return new String(chars);
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // The conversions below treat the year as starting on March 1, which puts the leap day
+    // at the very end of the year and makes the month lengths follow a simple pattern.
+    // Each 400-year "era" is exactly 146097 days, and 1970-01-01 is day 719468 counting from 0000-03-01.
+
+    private static int epochDayOf(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int dayOfEra(int epochDay) {
+        int z = epochDay + 719468;
+        return z - Math.floorDiv(z, 146097) * 146097;
+    }
+
+    private static int yearOfEra(int dayOfEra) {
+        return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    }
+
+    private static int marchBasedMonth(int epochDay) {
+        int dayOfEra = dayOfEra(epochDay);
+        int yearOfEra = yearOfEra(dayOfEra);
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        return (5 * dayOfYear + 2) / 153;
+    }
+
+    private static int yearOf(int epochDay) {
+        int z = epochDay + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int year = yearOfEra(z - era * 146097) + era * 400;
+        return marchBasedMonth(epochDay) >= 10 ? year + 1 : year;
+    }
+
+    private static int monthOf(int epochDay) {
+        int mp = marchBasedMonth(epochDay);
+        return mp < 10 ? mp + 3 : mp - 9;
+    }
+
+    private static int dayOf(int epochDay) {
+        int dayOfEra = dayOfEra(epochDay);
+        int yearOfEra = yearOfEra(dayOfEra);
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        return dayOfYear - (153 * marchBasedMonth(epochDay) + 2) / 5 + 1;
+    }
+
+    /**
+     * An entry in the format cache. Both fields are final, so a cache slot can be safely
+     * read and replaced from any thread without locking.
+     */
+    private static final class FormattedDate {
+        final int epochDay;
+        final String text;
+
+        FormattedDate(int epochDay, String text) {
+            this.epochDay = epochDay;
+            this.text = text;
+        }
     }
 
 }
@@ -0,0 +1,47 @@
+package ca.corbett.tasktracker.diagnostics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often something happens (a cache miss, a file read that we hoped to avoid).
+ * Get one from Metrics.counter() and hold on to it in a static field. Counting does nothing
+ * while metrics are disabled.
+ *
+ * @author scorbo2
+ */
+public final class Counter implements CounterMXBean {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        if (Metrics.enabled) {
+            count.increment();
+        }
+    }
+
+    public void add(long amount) {
+        if (Metrics.enabled) {
+            count.add(amount);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public void reset() {
+        count.reset();
+    }
+}
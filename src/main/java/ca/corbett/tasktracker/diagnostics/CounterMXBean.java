@@ -0,0 +1,15 @@
+package ca.corbett.tasktracker.diagnostics;
+
+/**
+ * The JMX view of a Counter.
+ *
+ * @author scorbo2
+ */
+public interface CounterMXBean {
+
+    String getName();
+
+    long getCount();
+
+    void reset();
+}
@@ -0,0 +1,158 @@
+package ca.corbett.tasktracker.diagnostics;
+
+import java.awt.EventQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Watches how long it takes the Swing event dispatch thread to get around to things.
+ * <p>
+ * A background thread posts a small heartbeat task to the EDT every so often, and the heartbeat
+ * records how long it sat in the queue before it ran. That's the delay a user's click or keypress
+ * would see at that moment, and it goes into a LatencyHistogram that the diagnostics panel shows.
+ * </p>
+ * <p>
+ * If a heartbeat hasn't run within the stall threshold, something is blocking the EDT (file I/O,
+ * a big sort, a Project.save). The monitor then grabs the EDT's stack trace and logs it as a
+ * warning, so the log shows exactly what was holding things up. Each stall is reported once,
+ * and a follow-up message says how long it lasted.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class EdtMonitor {
+
+    private static final Logger logger = Logger.getLogger(EdtMonitor.class.getName());
+
+    private static EdtMonitor instance;
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private ScheduledExecutorService scheduler;
+    private volatile long heartbeatIntervalMs = 100;
+    private volatile long stallThresholdMs = 500;
+    private volatile long heartbeatPostedAt; // System.nanoTime() of the pending heartbeat, or 0 if none
+    private volatile Thread edt;
+    private volatile boolean stallReported;
+    private volatile long stallCount;
+
+    private EdtMonitor() {
+    }
+
+    public static synchronized EdtMonitor getInstance() {
+        if (instance == null) {
+            instance = new EdtMonitor();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts watching the EDT. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "EdtMonitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::check, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        logger.fine(() -> "EDT monitor started; stall threshold " + stallThresholdMs + " ms");
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Sets how often a heartbeat is posted. Takes effect the next time the monitor is started.
+     */
+    public EdtMonitor setHeartbeatIntervalMs(long intervalMs) {
+        heartbeatIntervalMs = Math.max(10, intervalMs);
+        return this;
+    }
+
+    public long getHeartbeatIntervalMs() {
+        return heartbeatIntervalMs;
+    }
+
+    /**
+     * Sets how long the EDT can go without running a heartbeat before we log it as a stall.
+     */
+    public EdtMonitor setStallThresholdMs(long thresholdMs) {
+        stallThresholdMs = Math.max(heartbeatIntervalMs, thresholdMs);
+        return this;
+    }
+
+    public long getStallThresholdMs() {
+        return stallThresholdMs;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Returns how many stalls have been reported since the monitor was created.
+     */
+    public long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * Runs on the monitor thread: posts a new heartbeat if the last one has run,
+     * or reports a stall if it's been waiting too long.
+     */
+    private void check() {
+        long posted = heartbeatPostedAt;
+        long now = System.nanoTime();
+        if (posted == 0) {
+            heartbeatPostedAt = now;
+            EventQueue.invokeLater(this::heartbeat);
+        }
+        else if (!stallReported && now - posted > stallThresholdMs * 1_000_000) {
+            stallReported = true;
+            stallCount++;
+            reportStall((now - posted) / 1_000_000);
+        }
+    }
+
+    /**
+     * Runs on the EDT.
+     */
+    private void heartbeat() {
+        edt = Thread.currentThread();
+        long latency = System.nanoTime() - heartbeatPostedAt;
+        histogram.record(latency);
+        if (stallReported) {
+            logger.info("EDT responsive again after " + latency / 1_000_000 + " ms");
+            stallReported = false;
+        }
+        heartbeatPostedAt = 0;
+    }
+
+    private void reportStall(long blockedMs) {
+        Thread thread = edt;
+        StringBuilder sb = new StringBuilder("EDT has been blocked for ").append(blockedMs).append(" ms");
+        if (thread == null) {
+            sb.append(" (no heartbeat has run yet, so the EDT's stack is unknown)");
+        }
+        else {
+            sb.append("; it is currently in:");
+            for (StackTraceElement element : thread.getStackTrace()) {
+                sb.append(System.lineSeparator()).append("\tat ").append(element);
+            }
+        }
+        logger.warning(sb.toString());
+    }
+}
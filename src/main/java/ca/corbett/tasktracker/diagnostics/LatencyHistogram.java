@@ -0,0 +1,105 @@
+package ca.corbett.tasktracker.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies into buckets that double in size: under 1ms, 1-2ms, 2-4ms, and so on up to
+ * 16 seconds or more. That's coarse, but it's the shape of the distribution we care about
+ * (is it mostly under a frame, or are there long tails?) and recording costs one array increment.
+ * Safe to record into and read from different threads.
+ *
+ * @author scorbo2
+ */
+public final class LatencyHistogram {
+
+    /** Bucket 0 is under 1ms; bucket i (for i &gt; 0) is 2^(i-1) ms up to 2^i ms; the last is open-ended. **/
+    public static final int BUCKET_COUNT = 16;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one latency, given in nanoseconds.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucketOf(nanos));
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        maxNanos.set(0);
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the longest latency recorded since the last reset, in milliseconds.
+     */
+    public long getMaxMillis() {
+        return maxNanos.get() / 1_000_000;
+    }
+
+    /**
+     * Returns the upper bound of the bucket that the given percentile (0-100) falls in, in milliseconds.
+     * For the open-ended last bucket, this returns the max instead. Returns 0 if nothing has been recorded.
+     */
+    public long getPercentileMillis(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long)Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return getUpperBoundMillis(i);
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Returns a short label for the given bucket, like "4-8 ms".
+     */
+    public static String getLabel(int bucket) {
+        if (bucket == 0) {
+            return "< 1 ms";
+        }
+        if (bucket == BUCKET_COUNT - 1) {
+            return ">= " + getLowerBoundMillis(bucket) + " ms";
+        }
+        return getLowerBoundMillis(bucket) + "-" + getUpperBoundMillis(bucket) + " ms";
+    }
+
+    private static long getLowerBoundMillis(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    private static long getUpperBoundMillis(int bucket) {
+        return 1L << bucket;
+    }
+
+    private static int bucketOf(long nanos) {
+        long millis = nanos / 1_000_000;
+        if (millis <= 0) {
+            return 0;
+        }
+        // 1ms -> 1, 2-3ms -> 2, 4-7ms -> 3, and so on:
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(millis));
+    }
+}
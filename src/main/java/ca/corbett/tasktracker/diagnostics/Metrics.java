@@ -0,0 +1,262 @@
+package ca.corbett.tasktracker.diagnostics;
+
+import ca.corbett.tasktracker.model.ModelFiles;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The registry for all OperationTimers and Counters in the application. Classes grab the ones
+ * they need once, into static fields:
+ * <pre>
+ *     private static final OperationTimer loadTimer = Metrics.timer("project.load");
+ * </pre>
+ * and the same name always returns the same instance.
+ * <p>
+ * Metrics are off by default, and cost next to nothing while they're off (see OperationTimer).
+ * Start the application with -Dtasktracker.metrics=true to turn them on, or call setEnabled().
+ * While they're on, every timer and counter is visible over JMX under "ca.corbett.tasktracker"
+ * (in jconsole or VisualVM, for example), along with a control bean that can turn them off again.
+ * JMX registration only happens once metrics are enabled, so it's not part of a normal startup.
+ * </p>
+ * <p>
+ * startExport() additionally writes everything to a JSON file every so often, and once more at
+ * shutdown. Each run of the application gets its own file, so runs can be compared afterwards
+ * to spot regressions.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class Metrics {
+
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    public static final String JMX_DOMAIN = "ca.corbett.tasktracker";
+
+    /** Read directly by OperationTimer and Counter on every call, so this is a plain static field. **/
+    static volatile boolean enabled = Boolean.getBoolean("tasktracker.metrics");
+
+    private static final Map<String, OperationTimer> timers = new TreeMap<>();
+    private static final Map<String, Counter> counters = new TreeMap<>();
+    private static boolean jmxRegistered;
+    private static ScheduledExecutorService exporter;
+    private static File exportFile;
+
+    static {
+        if (enabled) {
+            registerAll();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the OperationTimer with the given name, creating it if needed. Names are dotted,
+     * starting with the area they belong to, like "project.load" or "search.query".
+     */
+    public static synchronized OperationTimer timer(String name) {
+        OperationTimer timer = timers.get(name);
+        if (timer == null) {
+            timer = new OperationTimer(name);
+            timers.put(name, timer);
+            if (jmxRegistered) {
+                register("Timer", name, timer);
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Returns the Counter with the given name, creating it if needed.
+     */
+    public static synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+            if (jmxRegistered) {
+                register("Counter", name, counter);
+            }
+        }
+        return counter;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns metric collection on or off. Turning it on also makes everything visible over JMX.
+     * Numbers collected so far are kept either way.
+     */
+    public static synchronized void setEnabled(boolean enable) {
+        enabled = enable;
+        if (enable && !jmxRegistered) {
+            registerAll();
+        }
+    }
+
+    public static synchronized List<OperationTimer> getTimers() {
+        return new ArrayList<>(timers.values());
+    }
+
+    public static synchronized List<Counter> getCounters() {
+        return new ArrayList<>(counters.values());
+    }
+
+    public static synchronized void resetAll() {
+        timers.values().forEach(OperationTimer::reset);
+        counters.values().forEach(Counter::reset);
+    }
+
+    /**
+     * Starts writing all metrics to a JSON file in the given directory at the given interval,
+     * and once more when the application exits. Does nothing if metrics are disabled, or if
+     * already exporting.
+     *
+     * @param dir             The directory to write to. It's created if need be.
+     * @param intervalSeconds How often to rewrite the file.
+     */
+    public static synchronized void startExport(File dir, long intervalSeconds) {
+        if (!enabled || exporter != null) {
+            return;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            logger.warning("Unable to create metrics directory " + dir.getAbsolutePath());
+            return;
+        }
+        exportFile = new File(dir, "metrics-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MetricsExporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleWithFixedDelay(Metrics::dumpQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(Metrics::dumpQuietly, "MetricsExporter-shutdown"));
+        logger.info("Writing metrics to " + exportFile.getAbsolutePath());
+    }
+
+    /**
+     * Writes all metrics to the given file, replacing it. This is safe to call from more than one
+     * thread at once (the periodic export and the shutdown hook can overlap): whichever finishes
+     * last wins, and the file is never left partly written.
+     */
+    public static void dump(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        writeJson(out);
+        ModelFiles.writeAtomically(file, out.toByteArray());
+    }
+
+    /**
+     * Writes all metrics as a JSON object to the given stream, which is left open.
+     */
+    public static void writeJson(OutputStream out) throws IOException {
+        try (JsonGenerator gen = new JsonFactory().createGenerator(out)) {
+            gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            gen.useDefaultPrettyPrinter();
+            gen.writeStartObject();
+            gen.writeNumberField("timestamp", System.currentTimeMillis());
+            gen.writeBooleanField("enabled", enabled);
+
+            gen.writeObjectFieldStart("timers");
+            for (OperationTimer timer : getTimers()) {
+                gen.writeObjectFieldStart(timer.getName());
+                gen.writeNumberField("count", timer.getCount());
+                gen.writeNumberField("totalMillis", timer.getTotalMillis());
+                gen.writeNumberField("meanMicros", timer.getMeanMicros());
+                gen.writeNumberField("p50Micros", timer.getP50Micros());
+                gen.writeNumberField("p90Micros", timer.getP90Micros());
+                gen.writeNumberField("p99Micros", timer.getP99Micros());
+                gen.writeNumberField("maxMicros", timer.getMaxMicros());
+                gen.writeEndObject();
+            }
+            gen.writeEndObject();
+
+            gen.writeObjectFieldStart("counters");
+            for (Counter counter : getCounters()) {
+                gen.writeNumberField(counter.getName(), counter.getCount());
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+    }
+
+    private static void dumpQuietly() {
+        File file;
+        synchronized (Metrics.class) {
+            file = exportFile;
+        }
+        if (file == null) {
+            return;
+        }
+        try {
+            dump(file);
+        }
+        catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to write metrics to " + file.getAbsolutePath(), e);
+        }
+    }
+
+    private static void registerAll() {
+        register("Metrics", null, new Control());
+        timers.forEach((name, timer) -> register("Timer", name, timer));
+        counters.forEach((name, counter) -> register("Counter", name, counter));
+        jmxRegistered = true;
+    }
+
+    private static void register(String type, String name, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String objectName = JMX_DOMAIN + ":type=" + type + (name == null ? "" : ",name=" + ObjectName.quote(name));
+            server.registerMBean(bean, new ObjectName(objectName));
+        }
+        catch (JMException | RuntimeException e) {
+            logger.log(Level.WARNING, "Unable to register " + type + " " + name + " with JMX", e);
+        }
+    }
+
+    /**
+     * The JMX control bean.
+     */
+    private static final class Control implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public void dumpNow() {
+            dumpQuietly();
+        }
+
+        @Override
+        public void resetAll() {
+            Metrics.resetAll();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ca.corbett.tasktracker.diagnostics;
+
+/**
+ * JMX controls for Metrics as a whole.
+ *
+ * @author scorbo2
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Writes the current numbers out to the JSON dump file right away, if exporting is on.
+     */
+    void dumpNow();
+
+    /**
+     * Resets every timer and counter.
+     */
+    void resetAll();
+}
@@ -0,0 +1,169 @@
+package ca.corbett.tasktracker.diagnostics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times one kind of operation (loading a Project, running a query) and keeps a histogram of how
+ * long it takes. Get one from Metrics.timer(), hold on to it in a static field, and wrap the
+ * operation like this:
+ * <pre>
+ *     long start = loadTimer.start();
+ *     try {
+ *         ...
+ *     }
+ *     finally {
+ *         loadTimer.stop(start);
+ *     }
+ * </pre>
+ * When metrics are disabled, start() returns 0 without reading the clock and stop(0) does nothing,
+ * so leaving this in hot paths costs a volatile read and a branch.
+ * <p>
+ * The histogram works the way HdrHistogram does, in miniature: values are bucketed by their
+ * highest set bit, and each of those ranges is split into 8 linear sub-buckets. That gives
+ * about 12% precision at every scale from nanoseconds to hours, in a fixed 488 slots.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class OperationTimer implements OperationTimerMXBean {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    OperationTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Marks the start of an operation. Pass the result to stop() when it's done.
+     *
+     * @return The current System.nanoTime(), or 0 if metrics are disabled.
+     */
+    public long start() {
+        return Metrics.enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an operation that began with the given start() value. Does nothing if that was 0.
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records one operation that took the given number of nanoseconds.
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1_000_000.0;
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1_000.0 / n;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return getPercentileNanos(50) / 1_000.0;
+    }
+
+    @Override
+    public double getP90Micros() {
+        return getPercentileNanos(90) / 1_000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return getPercentileNanos(99) / 1_000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1_000.0;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    /**
+     * Returns the upper end of the bucket that the given percentile (0-100) falls in, capped at
+     * the largest value actually recorded. Returns 0 if nothing has been recorded.
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long)Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(upperBoundOf(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
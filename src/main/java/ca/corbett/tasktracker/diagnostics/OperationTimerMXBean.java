@@ -0,0 +1,28 @@
+package ca.corbett.tasktracker.diagnostics;
+
+/**
+ * The JMX view of an OperationTimer. Latencies are in microseconds, and percentiles are
+ * accurate to within about 12%.
+ *
+ * @author scorbo2
+ */
+public interface OperationTimerMXBean {
+
+    String getName();
+
+    long getCount();
+
+    double getTotalMillis();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    double getMaxMicros();
+
+    void reset();
+}
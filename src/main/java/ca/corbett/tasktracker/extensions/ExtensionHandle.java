@@ -0,0 +1,178 @@
+package ca.corbett.tasktracker.extensions;
+
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.diagnostics.OperationTimer;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One indexed extension, and its instance once it has one. The extension's jar isn't opened for
+ * classes until getExtension() is first called. TaskTrackerExtensionManager does that on a background
+ * thread as soon as a Project is opened, for every extension that lists any Project hook
+ * (projectOpened, ticketsSaved or projectSaved), so that the hooks themselves don't have to wait
+ * for it on the model thread. An extension with none of those is only loaded if one of its other
+ * hooks is called, and shutdown() never loads anything. Until then, all that exists is the
+ * ExtensionInfo from the index. Loading is synchronized, so it happens once no matter which thread
+ * asks first.
+ * <p>
+ * Calls into the extension are timed here, into an OperationTimer per hook named
+ * "extension.&lt;name&gt;.&lt;hook&gt;", which show up with the rest of the Metrics when those are on.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class ExtensionHandle {
+
+    private static final Logger logger = Logger.getLogger(ExtensionHandle.class.getName());
+
+    private static final OperationTimer loadTimer = Metrics.timer("extension.load");
+
+    /**
+     * Where an extension is in its life. It starts out INDEXED and becomes LOADED the first time it's
+     * needed. FAILED means it couldn't be created, and DISABLED means it was taken out of service
+     * for going over its time budget too often, or by request; either way, it won't be called again.
+     */
+    public enum State {
+        INDEXED, LOADED, FAILED, DISABLED
+    }
+
+    private final ExtensionInfo info;
+    private final Map<ExtensionHook, OperationTimer> timers = new EnumMap<>(ExtensionHook.class);
+    private volatile State state = State.INDEXED;
+    private TaskTrackerExtension extension;
+    private URLClassLoader classLoader;
+    private volatile long loadTimeMs;
+    private volatile int strikes;
+
+    ExtensionHandle(ExtensionInfo info) {
+        this.info = info;
+        String slug = info.getName().toLowerCase().replaceAll("[^a-z0-9]+", "-");
+        for (ExtensionHook hook : info.getHooks()) {
+            timers.put(hook, Metrics.timer("extension." + slug + "." + hook.getMethodName()));
+        }
+    }
+
+    public ExtensionInfo getInfo() {
+        return info;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Reports whether this extension can still be called, whether or not it has been loaded yet.
+     */
+    public boolean isActive() {
+        State current = state;
+        return current == State.INDEXED || current == State.LOADED;
+    }
+
+    /**
+     * Returns how long it took to load the extension's class and create it, or 0 if that hasn't happened.
+     */
+    public long getLoadTimeMs() {
+        return loadTimeMs;
+    }
+
+    /**
+     * Returns how many times this extension has gone over its time budget, or thrown from a hook.
+     */
+    public int getStrikes() {
+        return strikes;
+    }
+
+    /**
+     * Takes this extension out of service for the rest of the session. It stays loaded, so that
+     * anything it has already handed out keeps working, but none of its hooks will be called again.
+     */
+    public void disable() {
+        state = State.DISABLED;
+    }
+
+    /**
+     * Returns the extension, loading its class and creating it first if this is the first time.
+     *
+     * @return The extension, or null if it's no longer active or couldn't be created.
+     */
+    synchronized TaskTrackerExtension getExtension() {
+        if (state == State.INDEXED) {
+            load();
+        }
+        return state == State.LOADED ? extension : null;
+    }
+
+    /**
+     * Returns the extension only if it has already been created (and is still active).
+     */
+    synchronized TaskTrackerExtension getLoadedExtension() {
+        return state == State.LOADED ? extension : null;
+    }
+
+    /**
+     * Records one call to the given hook, which took the given time.
+     */
+    void recordCall(ExtensionHook hook, long nanos) {
+        OperationTimer timer = timers.get(hook);
+        if (timer != null && Metrics.isEnabled()) {
+            timer.record(nanos);
+        }
+    }
+
+    /**
+     * Adds a strike against this extension and returns the new total.
+     */
+    synchronized int addStrike() {
+        return ++strikes;
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try {
+            classLoader = new URLClassLoader(new URL[]{info.getJarFile().toURI().toURL()},
+                                             TaskTrackerExtension.class.getClassLoader());
+            Class<?> extensionClass = Class.forName(info.getClassName(), true, classLoader);
+            if (!TaskTrackerExtension.class.isAssignableFrom(extensionClass)) {
+                throw new ClassCastException(info.getClassName() + " does not implement TaskTrackerExtension");
+            }
+            extension = extensionClass.asSubclass(TaskTrackerExtension.class).getDeclaredConstructor().newInstance();
+            state = State.LOADED;
+            long nanos = System.nanoTime() - start;
+            if (Metrics.isEnabled()) {
+                loadTimer.record(nanos);
+            }
+            loadTimeMs = nanos / 1_000_000;
+            logger.info("Loaded extension " + info + " from " + info.getJarFile().getName()
+                            + " in " + loadTimeMs + " ms");
+        }
+        catch (ReflectiveOperationException | IOException | RuntimeException | LinkageError e) {
+            state = State.FAILED;
+            logger.log(Level.WARNING, "Unable to load extension " + info + " from "
+                           + info.getJarFile().getAbsolutePath(), e);
+            closeClassLoader();
+        }
+    }
+
+    private void closeClassLoader() {
+        if (classLoader != null) {
+            try {
+                classLoader.close();
+            }
+            catch (IOException ioe) {
+                logger.fine("Unable to close class loader for " + info + ": " + ioe);
+            }
+            classLoader = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return info.toString();
+    }
+}
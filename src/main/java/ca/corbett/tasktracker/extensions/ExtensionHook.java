@@ -0,0 +1,70 @@
+package ca.corbett.tasktracker.extensions;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The hooks in TaskTrackerExtension. An extension's manifest lists the ones it implements, by method
+ * name, so that we know which extensions a hook needs without loading any of their classes.
+ *
+ * @author scorbo2
+ */
+public enum ExtensionHook {
+    PROJECT_OPENED("projectOpened"),
+    TICKETS_SAVED("ticketsSaved"),
+    PROJECT_SAVED("projectSaved"),
+    SHUTDOWN("shutdown");
+
+    private final String methodName;
+
+    ExtensionHook(String methodName) {
+        this.methodName = methodName;
+    }
+
+    /**
+     * Returns the name of the TaskTrackerExtension method for this hook, as used in manifests.
+     */
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Parses a comma or space separated list of hook method names, as found in a manifest.
+     * A null or blank list means every hook.
+     *
+     * @throws IllegalArgumentException If a name doesn't match any hook.
+     */
+    public static Set<ExtensionHook> parse(String list) {
+        if (list == null || list.isBlank()) {
+            return EnumSet.allOf(ExtensionHook.class);
+        }
+        Set<ExtensionHook> hooks = EnumSet.noneOf(ExtensionHook.class);
+        for (String name : list.trim().split("[,\\s]+")) {
+            hooks.add(fromMethodName(name));
+        }
+        return hooks;
+    }
+
+    /**
+     * Returns the given hooks as a list in the form parse() reads.
+     */
+    public static String format(Set<ExtensionHook> hooks) {
+        StringBuilder list = new StringBuilder();
+        for (ExtensionHook hook : hooks) {
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(hook.methodName);
+        }
+        return list.toString();
+    }
+
+    private static ExtensionHook fromMethodName(String name) {
+        for (ExtensionHook hook : values()) {
+            if (hook.methodName.equals(name)) {
+                return hook;
+            }
+        }
+        throw new IllegalArgumentException("Unknown extension hook: " + name);
+    }
+}
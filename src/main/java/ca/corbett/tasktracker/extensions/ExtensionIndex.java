@@ -0,0 +1,186 @@
+package ca.corbett.tasktracker.extensions;
+
+import ca.corbett.tasktracker.model.ModelFiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the extensions in a directory of jars. Reading a manifest means opening the jar and finding
+ * its central directory, which adds up with a lot of jars, so what was found is cached in an index
+ * file and reused on the next launch for every jar whose modification time and length haven't
+ * changed. Only new or changed jars are opened, and those are read in parallel. Jars that aren't
+ * extensions (libraries that an extension needs, say) are remembered too, so they aren't reopened
+ * every time either.
+ * <p>
+ * The index is only a cache: if it's missing, unreadable or from some other version, every jar is
+ * read again and a new one is written.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class ExtensionIndex {
+
+    private static final Logger logger = Logger.getLogger(ExtensionIndex.class.getName());
+
+    /** The name of the index file that TaskTrackerExtensionManager keeps in Version.SETTINGS_DIR. **/
+    public static final String INDEX_FILE = "extensions.index";
+
+    private static final String FORMAT_KEY = "format";
+    private static final String FORMAT = "1";
+
+    private ExtensionIndex() {
+    }
+
+    /**
+     * Returns every extension in the given directory, in jar name order.
+     *
+     * @param extensionsDir The directory to scan for jars. Subdirectories are not scanned.
+     * @param indexFile     The index to read and, if anything has changed, rewrite. May be null for no index.
+     * @param threadCount   The most jars to read at once.
+     */
+    public static List<ExtensionInfo> scan(File extensionsDir, File indexFile, int threadCount) {
+        long start = System.nanoTime();
+        File[] jars = extensionsDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".jar"));
+        if (jars == null) {
+            jars = new File[0];
+        }
+        Arrays.sort(jars);
+
+        Properties cached = indexFile == null ? new Properties() : readIndex(indexFile);
+        Properties index = new Properties();
+        index.setProperty(FORMAT_KEY, FORMAT);
+        ExtensionInfo[] found = new ExtensionInfo[jars.length];
+        List<Integer> stale = new ArrayList<>();
+        for (int i = 0; i < jars.length; i++) {
+            String prefix = prefix(jars[i]);
+            long lastModified = jars[i].lastModified();
+            long length = jars[i].length();
+            if (!Long.toString(lastModified).equals(cached.getProperty(prefix + "modified"))
+                    || !Long.toString(length).equals(cached.getProperty(prefix + "length"))) {
+                stale.add(i);
+                continue;
+            }
+            found[i] = ExtensionInfo.restore(cached, prefix, jars[i], lastModified, length);
+            if (found[i] == null && !"false".equals(cached.getProperty(prefix + "extension"))) {
+                stale.add(i);
+                continue;
+            }
+            addEntry(index, jars[i], lastModified, length, found[i]);
+        }
+
+        readAll(jars, stale, found, index, threadCount);
+
+        List<ExtensionInfo> extensions = new ArrayList<>();
+        for (ExtensionInfo info : found) {
+            if (info != null) {
+                extensions.add(info);
+            }
+        }
+        if (indexFile != null && !index.equals(cached)) {
+            writeIndex(indexFile, index);
+        }
+        logger.info(String.format("Found %d extensions in %d jars (%d read, %d from the index) in %d ms",
+                                  extensions.size(), jars.length, stale.size(), jars.length - stale.size(),
+                                  (System.nanoTime() - start) / 1_000_000));
+        return extensions;
+    }
+
+    /**
+     * Reads the manifests of the given jars in parallel, filling in found and index for each.
+     * A jar that can't be read is logged and left out of both, so it's tried again next time.
+     */
+    private static void readAll(File[] jars, List<Integer> stale, ExtensionInfo[] found, Properties index,
+                                int threadCount) {
+        if (stale.isEmpty()) {
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threadCount, stale.size())), r -> {
+            Thread thread = new Thread(r, "ExtensionIndex-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<ExtensionInfo>> futures = new ArrayList<>(stale.size());
+            for (int i : stale) {
+                File jar = jars[i];
+                futures.add(pool.submit(() -> ExtensionInfo.read(jar)));
+            }
+            for (int s = 0; s < stale.size(); s++) {
+                File jar = jars[stale.get(s)];
+                try {
+                    ExtensionInfo info = futures.get(s).get();
+                    found[stale.get(s)] = info;
+                    addEntry(index, jar, info == null ? jar.lastModified() : info.getLastModified(),
+                             info == null ? jar.length() : info.getLength(), info);
+                }
+                catch (ExecutionException ee) {
+                    logger.log(Level.WARNING, "Unable to read extension jar " + jar.getAbsolutePath(), ee.getCause());
+                }
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void addEntry(Properties index, File jar, long lastModified, long length, ExtensionInfo info) {
+        String prefix = prefix(jar);
+        index.setProperty(prefix + "modified", Long.toString(lastModified));
+        index.setProperty(prefix + "length", Long.toString(length));
+        if (info == null) {
+            index.setProperty(prefix + "extension", "false");
+        }
+        else {
+            info.store(index, prefix);
+        }
+    }
+
+    private static String prefix(File jar) {
+        return "jar." + jar.getName() + ".";
+    }
+
+    private static Properties readIndex(File indexFile) {
+        Properties index = new Properties();
+        if (!indexFile.isFile()) {
+            return index;
+        }
+        try (InputStream in = new FileInputStream(indexFile)) {
+            index.load(in);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            logger.fine("Ignoring unreadable extension index " + indexFile.getAbsolutePath() + ": " + e);
+            return new Properties();
+        }
+        return FORMAT.equals(index.getProperty(FORMAT_KEY)) ? index : new Properties();
+    }
+
+    private static void writeIndex(File indexFile, Properties index) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            index.store(out, "Extension index; safe to delete");
+            ModelFiles.writeAtomically(indexFile, out.toByteArray());
+        }
+        catch (IOException ioe) {
+            logger.log(Level.WARNING, "Unable to write extension index " + indexFile.getAbsolutePath(), ioe);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ca.corbett.tasktracker.extensions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Describes one extension jar, as read from its manifest. This is everything we need to know about
+ * an extension until one of its hooks is actually called, and it's cheap to get: only the manifest
+ * is read, and none of the jar's classes are loaded. An extension jar's manifest looks like this:
+ * <pre>
+ *     TaskTracker-Extension-Class: com.example.MyExtension
+ *     TaskTracker-Extension-Name: My extension
+ *     TaskTracker-Extension-Version: 1.2
+ *     TaskTracker-Extension-Description: Does something useful.
+ *     TaskTracker-Extension-Hooks: projectOpened, ticketsSaved
+ * </pre>
+ * Only the class is required. The name defaults to the jar's file name, and leaving out the hooks
+ * means the extension is created for whichever hook comes first, so it's worth listing them.
+ *
+ * @author scorbo2
+ */
+public final class ExtensionInfo {
+
+    public static final String CLASS_ATTRIBUTE = "TaskTracker-Extension-Class";
+    public static final String NAME_ATTRIBUTE = "TaskTracker-Extension-Name";
+    public static final String VERSION_ATTRIBUTE = "TaskTracker-Extension-Version";
+    public static final String DESCRIPTION_ATTRIBUTE = "TaskTracker-Extension-Description";
+    public static final String HOOKS_ATTRIBUTE = "TaskTracker-Extension-Hooks";
+
+    private final File jarFile;
+    private final long lastModified;
+    private final long length;
+    private final String className;
+    private final String name;
+    private final String version;
+    private final String description;
+    private final Set<ExtensionHook> hooks;
+
+    private ExtensionInfo(File jarFile, long lastModified, long length, String className, String name,
+                          String version, String description, Set<ExtensionHook> hooks) {
+        this.jarFile = jarFile;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.className = className;
+        this.name = name == null || name.isBlank() ? jarFile.getName() : name;
+        this.version = version == null ? "" : version;
+        this.description = description == null ? "" : description;
+        this.hooks = Collections.unmodifiableSet(EnumSet.copyOf(hooks));
+    }
+
+    /**
+     * Reads the manifest of the given jar.
+     *
+     * @return The extension's info, or null if the jar isn't an extension (it has no extension class).
+     * @throws IOException If the jar can't be read, or its manifest is invalid.
+     */
+    public static ExtensionInfo read(File jarFile) throws IOException {
+        long lastModified = jarFile.lastModified();
+        long length = jarFile.length();
+        Manifest manifest;
+        try (JarFile jar = new JarFile(jarFile, false)) {
+            manifest = jar.getManifest();
+        }
+        Attributes attributes = manifest == null ? null : manifest.getMainAttributes();
+        String className = attributes == null ? null : attributes.getValue(CLASS_ATTRIBUTE);
+        if (className == null || className.isBlank()) {
+            return null;
+        }
+        try {
+            return new ExtensionInfo(jarFile, lastModified, length, className.trim(),
+                                     attributes.getValue(NAME_ATTRIBUTE),
+                                     attributes.getValue(VERSION_ATTRIBUTE),
+                                     attributes.getValue(DESCRIPTION_ATTRIBUTE),
+                                     ExtensionHook.parse(attributes.getValue(HOOKS_ATTRIBUTE)));
+        }
+        catch (IllegalArgumentException iae) {
+            throw new IOException("Invalid manifest in " + jarFile.getName() + ": " + iae.getMessage(), iae);
+        }
+    }
+
+    public File getJarFile() {
+        return jarFile;
+    }
+
+    /**
+     * Returns the jar's modification time when this was read. ExtensionIndex uses this, along with
+     * the length, to tell whether a cached entry is still good.
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the hooks this extension implements.
+     */
+    public Set<ExtensionHook> getHooks() {
+        return hooks;
+    }
+
+    public boolean hasHook(ExtensionHook hook) {
+        return hooks.contains(hook);
+    }
+
+    /**
+     * Stores this into the given Properties, with every key starting with the given prefix.
+     */
+    void store(Properties properties, String prefix) {
+        properties.setProperty(prefix + "class", className);
+        properties.setProperty(prefix + "name", name);
+        properties.setProperty(prefix + "version", version);
+        properties.setProperty(prefix + "description", description);
+        properties.setProperty(prefix + "hooks", ExtensionHook.format(hooks));
+    }
+
+    /**
+     * Reads back what store() wrote, for the given jar.
+     *
+     * @return The info, or null if the given Properties don't have a complete entry under that prefix.
+     */
+    static ExtensionInfo restore(Properties properties, String prefix, File jarFile, long lastModified, long length) {
+        String className = properties.getProperty(prefix + "class");
+        if (className == null) {
+            return null;
+        }
+        try {
+            return new ExtensionInfo(jarFile, lastModified, length, className,
+                                     properties.getProperty(prefix + "name"),
+                                     properties.getProperty(prefix + "version"),
+                                     properties.getProperty(prefix + "description"),
+                                     ExtensionHook.parse(properties.getProperty(prefix + "hooks")));
+        }
+        catch (IllegalArgumentException iae) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return version.isEmpty() ? name : name + " " + version;
+    }
+}
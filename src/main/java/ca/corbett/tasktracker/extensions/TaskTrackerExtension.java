@@ -0,0 +1,46 @@
+package ca.corbett.tasktracker.extensions;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+
+import java.util.List;
+
+/**
+ * Implemented by the main class of an extension jar. Every hook has an empty default, so an extension
+ * only overrides the ones it cares about, and lists those same ones in its manifest (see ExtensionInfo).
+ * The class needs a public no-argument constructor; it's created on a background thread when the
+ * first Project is opened, if it has any Project hooks, and not before.
+ * <p>
+ * Hooks are called on the model thread (the EDT), except for shutdown(), so they should be quick. Anything slow belongs on a thread of the
+ * extension's own. Each call is timed against a budget, and an extension that keeps going over it
+ * is disabled for the rest of the session; see TaskTrackerExtensionManager.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public interface TaskTrackerExtension {
+
+    /**
+     * Invoked when a Project is shown in the main window.
+     */
+    default void projectOpened(Project project) {
+    }
+
+    /**
+     * Invoked after Tickets in an opened Project have been written, by our own save or someone else's.
+     */
+    default void ticketsSaved(Project project, List<Ticket> tickets) {
+    }
+
+    /**
+     * Invoked after an opened Project's own file has been written, by our own save or someone else's.
+     */
+    default void projectSaved(Project project) {
+    }
+
+    /**
+     * Invoked once as the application exits, and only if the extension was ever created.
+     */
+    default void shutdown() {
+    }
+}
@@ -0,0 +1,317 @@
+package ca.corbett.tasktracker.extensions;
+
+import ca.corbett.tasktracker.Version;
+import ca.corbett.tasktracker.model.Project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the extensions in Version.EXTENSIONS_DIR and calls their hooks.
+ * <p>
+ * Nothing here is allowed to slow down startup, or hold up the EDT. loadAll() only starts indexing
+ * the extension jars in the background (see ExtensionIndex, which caches what it finds across
+ * launches), and no extension class is loaded until a Project is opened. Even then, projectOpened()
+ * returns right away: the extensions with Project hooks are loaded on a background thread, and only
+ * the hook calls themselves are handed to the model thread. An extension whose manifest doesn't list
+ * any Project hooks is never loaded for one.
+ * </p>
+ * <p>
+ * Every hook call is timed. A call that takes longer than the extension's budget, or that throws,
+ * is logged as a warning and counts as a strike, and once an extension has used up its strikes it
+ * is disabled for the rest of the session. The default budget and the number of strikes can be
+ * given with -Dtasktracker.extensions.budgetMs and -Dtasktracker.extensions.maxStrikes; a max of
+ * zero means offenders are only ever logged. Loading an extension is timed and logged separately,
+ * and doesn't count against its budget.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class TaskTrackerExtensionManager {
+
+    private static final Logger logger = Logger.getLogger(TaskTrackerExtensionManager.class.getName());
+
+    /** The default time budget for a single hook call. **/
+    public static final long DEFAULT_BUDGET_MS = Long.getLong("tasktracker.extensions.budgetMs", 50);
+
+    /** The default number of strikes before an extension is disabled. **/
+    public static final int DEFAULT_MAX_STRIKES = Integer.getInteger("tasktracker.extensions.maxStrikes", 3);
+
+    /** The default number of extension jars to read at once, when they aren't in the index. **/
+    public static final int DEFAULT_INDEX_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static TaskTrackerExtensionManager instance;
+
+    private final Map<String, Long> budgets = new ConcurrentHashMap<>();
+    private final Set<Project> openedProjects = Collections.newSetFromMap(new WeakHashMap<>());
+    private volatile CompletableFuture<List<ExtensionHandle>> extensions =
+        CompletableFuture.completedFuture(Collections.emptyList());
+    private volatile long defaultBudgetMs = DEFAULT_BUDGET_MS;
+    private volatile int maxStrikes = DEFAULT_MAX_STRIKES;
+    private int indexThreads = DEFAULT_INDEX_THREADS;
+    private boolean started;
+
+    private TaskTrackerExtensionManager() {
+    }
+
+    public static synchronized TaskTrackerExtensionManager getInstance() {
+        if (instance == null) {
+            instance = new TaskTrackerExtensionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Starts indexing the extension jars in Version.EXTENSIONS_DIR, and returns right away.
+     */
+    public void loadAll() {
+        loadAll(Version.EXTENSIONS_DIR, new File(Version.SETTINGS_DIR, ExtensionIndex.INDEX_FILE));
+    }
+
+    /**
+     * Starts indexing the extension jars in the given directory, and returns right away. Hooks
+     * invoked before indexing has finished wait for it. Only the first call does anything; the
+     * set of extensions is fixed for the session after that.
+     *
+     * @param extensionsDir The directory holding the extension jars.
+     * @param indexFile     Where to cache what was found between launches. May be null for no cache.
+     */
+    public synchronized void loadAll(File extensionsDir, File indexFile) {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        CompletableFuture<List<ExtensionHandle>> indexed = new CompletableFuture<>();
+        int threads = indexThreads;
+        Thread thread = new Thread(() -> {
+            List<ExtensionHandle> handles = new ArrayList<>();
+            try {
+                for (ExtensionInfo info : ExtensionIndex.scan(extensionsDir, indexFile, threads)) {
+                    handles.add(new ExtensionHandle(info));
+                }
+            }
+            catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Unable to index extensions in " + extensionsDir.getAbsolutePath(), e);
+            }
+            indexed.complete(Collections.unmodifiableList(handles));
+        }, "ExtensionIndexer");
+        thread.setDaemon(true);
+        extensions = indexed;
+        thread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "ExtensionShutdown"));
+    }
+
+    /**
+     * Returns every extension that was found, waiting for indexing to finish if it hasn't yet.
+     */
+    public List<ExtensionHandle> getExtensions() {
+        return extensions.join();
+    }
+
+    /**
+     * Sets the maximum number of extension jars to read at once, for jars that aren't in the index.
+     * Only affects a loadAll() that hasn't happened yet.
+     */
+    public synchronized TaskTrackerExtensionManager setIndexThreads(int indexThreads) {
+        this.indexThreads = Math.max(1, indexThreads);
+        return this;
+    }
+
+    public synchronized int getIndexThreads() {
+        return indexThreads;
+    }
+
+    /**
+     * Sets the time budget for a single hook call, for extensions that don't have one of their own.
+     */
+    public TaskTrackerExtensionManager setDefaultBudgetMs(long budgetMs) {
+        this.defaultBudgetMs = Math.max(1, budgetMs);
+        return this;
+    }
+
+    public long getDefaultBudgetMs() {
+        return defaultBudgetMs;
+    }
+
+    /**
+     * Gives the named extension its own time budget per hook call, in place of the default.
+     * A budget of zero or less puts it back on the default.
+     */
+    public TaskTrackerExtensionManager setBudgetMs(String extensionName, long budgetMs) {
+        if (budgetMs <= 0) {
+            budgets.remove(extensionName);
+        }
+        else {
+            budgets.put(extensionName, budgetMs);
+        }
+        return this;
+    }
+
+    /**
+     * Returns the time budget per hook call for the named extension.
+     */
+    public long getBudgetMs(String extensionName) {
+        return budgets.getOrDefault(extensionName, defaultBudgetMs);
+    }
+
+    /**
+     * Sets how many strikes (calls over budget, or calls that threw) an extension gets before it's
+     * disabled. Zero means extensions are never disabled, and offenders are only logged.
+     */
+    public TaskTrackerExtensionManager setMaxStrikes(int maxStrikes) {
+        this.maxStrikes = Math.max(0, maxStrikes);
+        return this;
+    }
+
+    public int getMaxStrikes() {
+        return maxStrikes;
+    }
+
+    /**
+     * Tells extensions that the given Project has been opened, and returns right away. Once indexing
+     * has finished, the extensions that have any Project hooks are loaded on a background thread, and
+     * then their projectOpened hooks are called on the model thread. The first time a Project comes
+     * through here, it's also hooked up so that extensions hear about its saves from then on, if any
+     * of them want to.
+     *
+     * @param project       The Project that was opened.
+     * @param modelExecutor Where hooks are called, typically SwingUtilities::invokeLater.
+     * @return A future that completes once the hooks have been called.
+     */
+    public CompletableFuture<Void> projectOpened(Project project, Executor modelExecutor) {
+        Executor loader = runnable -> {
+            Thread thread = new Thread(runnable, "ExtensionLoader");
+            thread.setDaemon(true);
+            thread.start();
+        };
+        return extensions
+                .thenApplyAsync(handles -> {
+                    load(handles, ExtensionHook.PROJECT_OPENED, ExtensionHook.TICKETS_SAVED,
+                         ExtensionHook.PROJECT_SAVED);
+                    return handles;
+                }, loader)
+                .thenAcceptAsync(handles -> projectOpened(project, handles), modelExecutor)
+                .exceptionally(e -> {
+                    logger.log(Level.WARNING, "Unable to tell extensions about project " + project.getName(), e);
+                    return null;
+                });
+    }
+
+    private void projectOpened(Project project, List<ExtensionHandle> handles) {
+        if (handles.isEmpty()) {
+            return;
+        }
+        boolean firstTime;
+        synchronized (openedProjects) {
+            firstTime = openedProjects.add(project);
+        }
+        if (firstTime) {
+            if (anyHas(handles, ExtensionHook.TICKETS_SAVED)) {
+                project.getTicketRepository().addTicketSaveListener(
+                    tickets -> invoke(ExtensionHook.TICKETS_SAVED, false, e -> e.ticketsSaved(project, tickets)));
+            }
+            if (anyHas(handles, ExtensionHook.PROJECT_SAVED)) {
+                project.addProjectSaveListener(
+                    saved -> invoke(ExtensionHook.PROJECT_SAVED, false, e -> e.projectSaved(saved)));
+            }
+        }
+        invoke(ExtensionHook.PROJECT_OPENED, false, e -> e.projectOpened(project));
+    }
+
+    /**
+     * Tells every extension that has been loaded that the application is exiting. Extensions that
+     * were never needed aren't loaded just for this. This is invoked by a shutdown hook, so there's
+     * normally no need to call it.
+     */
+    public void shutdown() {
+        if (extensions.isDone()) {
+            invoke(ExtensionHook.SHUTDOWN, true, TaskTrackerExtension::shutdown);
+        }
+    }
+
+    /**
+     * Loads every active extension that has any of the given hooks, if it isn't already.
+     */
+    private static void load(List<ExtensionHandle> handles, ExtensionHook... hooks) {
+        for (ExtensionHandle handle : handles) {
+            for (ExtensionHook hook : hooks) {
+                if (handle.getInfo().hasHook(hook) && handle.isActive()) {
+                    handle.getExtension();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static boolean anyHas(List<ExtensionHandle> handles, ExtensionHook hook) {
+        for (ExtensionHandle handle : handles) {
+            if (handle.getInfo().hasHook(hook)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Invokes the given hook on every active extension that implements it, timing each call
+     * against that extension's budget.
+     *
+     * @param loadedOnly If true, extensions that haven't been loaded yet are skipped instead of loaded.
+     */
+    private void invoke(ExtensionHook hook, boolean loadedOnly, Consumer<TaskTrackerExtension> call) {
+        for (ExtensionHandle handle : getExtensions()) {
+            if (!handle.getInfo().hasHook(hook) || !handle.isActive()) {
+                continue;
+            }
+            TaskTrackerExtension extension = loadedOnly ? handle.getLoadedExtension() : handle.getExtension();
+            if (extension == null) {
+                continue;
+            }
+
+            long start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                call.accept(extension);
+            }
+            catch (RuntimeException | LinkageError e) {
+                failure = e;
+            }
+            long nanos = System.nanoTime() - start;
+            handle.recordCall(hook, nanos);
+
+            long budgetMs = getBudgetMs(handle.getInfo().getName());
+            if (failure != null) {
+                logger.log(Level.WARNING, "Extension " + handle + " failed in " + hook.getMethodName(), failure);
+                strike(handle);
+            }
+            else if (nanos > budgetMs * 1_000_000) {
+                logger.warning(String.format("Extension %s took %d ms in %s, over its budget of %d ms",
+                                             handle, nanos / 1_000_000, hook.getMethodName(), budgetMs));
+                strike(handle);
+            }
+        }
+    }
+
+    private void strike(ExtensionHandle handle) {
+        int strikes = handle.addStrike();
+        int max = maxStrikes;
+        if (max > 0 && strikes >= max && handle.isActive()) {
+            handle.disable();
+            logger.warning("Disabling extension " + handle + " for the rest of this session after "
+                               + strikes + " strikes");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ca.corbett.tasktracker.history;
+
+import java.util.UUID;
+
+/**
+ * One record in the EventStore: the full state of a Project or Ticket as of one save, or
+ * the fact that a Ticket was deleted. Mutable, as the store fills these in field by field.
+ *
+ * @author scorbo2
+ */
+final class EventRecord {
+
+    static final byte KIND_PROJECT = 0;
+    static final byte KIND_TICKET = 1;
+
+    long location = EventStore.NO_LOCATION;
+    long timestamp;
+    byte kind;
+    boolean deleted;
+    UUID id;
+
+    /** Where the previous record for the same entity is, or NO_LOCATION if this is the first. **/
+    long prevLocation = EventStore.NO_LOCATION;
+
+    /** The last modified time of the file this state was read from or written to. **/
+    long fileTime;
+
+    /** A hash of the content, so that most saves that changed something can be told apart cheaply. **/
+    int contentHash;
+
+    /** Compact json, or null if not read (or if this is a delete). **/
+    byte[] content;
+}
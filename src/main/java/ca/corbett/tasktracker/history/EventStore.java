@@ -0,0 +1,440 @@
+package ca.corbett.tasktracker.history;
+
+import ca.corbett.tasktracker.model.ModelFiles;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * The files behind a HistoryLog: an append-only log of EventRecords split into numbered segments,
+ * plus snapshots of the log's index, each taken as a new segment is started.
+ * <p>
+ * Segment N is "events-N.log". Each record is its length, a CRC32 of everything after that,
+ * a fixed-size header and the content. Records are only ever appended, so the only damage
+ * a crash can do is a partly written record at the very end, which open() finds by its CRC
+ * and cuts off.
+ * </p>
+ * <p>
+ * Snapshot N is "snapshot-N.snap": for every entity, where its latest record is, as of the
+ * moment segment N was started. To find out what things looked like at some time T, take
+ * the last snapshot from before T and read forward from the start of its segment.
+ * </p>
+ * <p>
+ * A snapshot holds every entity, so with a lot of Tickets it can be much bigger than a segment.
+ * Rather than one per segment, a snapshot is only taken once the log written since the last one
+ * is SNAPSHOT_RATIO times the size the new snapshot would be. That keeps snapshots to a fixed
+ * fraction of the log however big the Project is, and reading forward from a snapshot never
+ * covers more than a few times the size of the snapshot itself, which has to be read anyway.
+ * </p>
+ * <p>
+ * Locations are packed into a long, as the segment number in the top bits and the offset within
+ * the segment in the bottom 40. Not thread safe.
+ * </p>
+ *
+ * @author scorbo2
+ */
+final class EventStore implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(EventStore.class.getName());
+
+    static final long NO_LOCATION = -1;
+
+    private static final int SEGMENT_MAGIC = 0x5454484C; // "TTHL"
+    private static final int SNAPSHOT_MAGIC = 0x54544853; // "TTHS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int OFFSET_BITS = 40;
+
+    /** timestamp, kind, deleted, id, prevLocation, fileTime, contentHash **/
+    private static final int RECORD_HEADER_SIZE = 8 + 1 + 1 + 16 + 8 + 8 + 4;
+
+    /** How many times the size of the next snapshot must be written to the log before it's taken. **/
+    static final int SNAPSHOT_RATIO = 4;
+
+    /** The size of each entity in a snapshot: its id, then its IndexEntry. **/
+    private static final int SNAPSHOT_ENTRY_SIZE = 16 + IndexEntry.SIZE;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("events-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.snap");
+
+    private final File dir;
+    private final long segmentSize;
+    private final Map<Integer, FileChannel> readers = new HashMap<>();
+    private final NavigableMap<Integer, Long> snapshots = new TreeMap<>(); // segment -> last timestamp before it
+    private int currentSegment;
+    private FileChannel writer;
+    private long bytesSinceSnapshot; // in the finished segments since the latest snapshot
+
+    private EventStore(File dir, long segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if need be, and repairs the end of
+     * the last segment if the last write didn't finish.
+     */
+    static EventStore open(File dir, long segmentSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create history directory " + dir.getAbsolutePath());
+        }
+        EventStore store = new EventStore(dir, segmentSize);
+        int lastSegment = 0;
+        File[] files = dir.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            Matcher segment = SEGMENT_NAME.matcher(file.getName());
+            if (segment.matches()) {
+                lastSegment = Math.max(lastSegment, Integer.parseInt(segment.group(1)));
+            }
+            Matcher snapshot = SNAPSHOT_NAME.matcher(file.getName());
+            if (snapshot.matches()) {
+                store.readSnapshotTimestamp(Integer.parseInt(snapshot.group(1)), file);
+            }
+        }
+        store.currentSegment = lastSegment;
+        store.openWriter();
+        for (int segment = Math.max(store.getLatestSnapshot(), 0); segment < lastSegment; segment++) {
+            store.bytesSinceSnapshot += store.getSegmentFile(segment).length();
+        }
+        return store;
+    }
+
+    static long location(int segment, long offset) {
+        return ((long)segment << OFFSET_BITS) | offset;
+    }
+
+    static int segmentOf(long location) {
+        return (int)(location >>> OFFSET_BITS);
+    }
+
+    static long offsetOf(long location) {
+        return location & ((1L << OFFSET_BITS) - 1);
+    }
+
+    /**
+     * Returns the location of the first record in the given segment.
+     */
+    static long startOf(int segment) {
+        return location(segment, SEGMENT_HEADER_SIZE);
+    }
+
+    int getCurrentSegment() {
+        return currentSegment;
+    }
+
+    /**
+     * Reports whether the current segment is full, and it's time for a new one.
+     */
+    boolean isSegmentFull() throws IOException {
+        return writer.size() >= segmentSize;
+    }
+
+    /**
+     * Starts a new segment, and writes a snapshot of the given index for it if enough has been written
+     * since the last one (see SNAPSHOT_RATIO). The index must be up to date with everything written so far.
+     *
+     * @param index         Where the latest record for each entity is.
+     * @param lastTimestamp The timestamp of the last record written.
+     */
+    void startSegment(Map<UUID, IndexEntry> index, long lastTimestamp) throws IOException {
+        bytesSinceSnapshot += writer.size();
+        writer.close();
+        currentSegment++;
+        openWriter();
+        if (bytesSinceSnapshot >= SNAPSHOT_RATIO * (long)index.size() * SNAPSHOT_ENTRY_SIZE) {
+            writeSnapshot(currentSegment, index, lastTimestamp);
+            bytesSinceSnapshot = 0;
+        }
+    }
+
+    /**
+     * Appends the given record to the current segment.
+     *
+     * @return The record's location.
+     */
+    long append(EventRecord record) throws IOException {
+        byte[] content = record.content == null ? new byte[0] : record.content;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + RECORD_HEADER_SIZE + content.length);
+        buffer.putInt(4 + RECORD_HEADER_SIZE + content.length);
+        buffer.putInt(0); // the CRC goes here once everything else is in
+        buffer.putLong(record.timestamp);
+        buffer.put(record.kind);
+        buffer.put((byte)(record.deleted ? 1 : 0));
+        buffer.putLong(record.id.getMostSignificantBits());
+        buffer.putLong(record.id.getLeastSignificantBits());
+        buffer.putLong(record.prevLocation);
+        buffer.putLong(record.fileTime);
+        buffer.putInt(record.contentHash);
+        buffer.put(content);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, buffer.capacity() - 8);
+        buffer.putInt(4, (int)crc.getValue());
+        buffer.flip();
+
+        long offset = writer.size();
+        while (buffer.hasRemaining()) {
+            writer.write(buffer);
+        }
+        return location(currentSegment, offset);
+    }
+
+    /**
+     * Reads the record at the given location, with or without its content.
+     */
+    EventRecord read(long location, boolean withContent) throws IOException {
+        FileChannel channel = getReader(segmentOf(location));
+        long offset = offsetOf(location);
+        ByteBuffer header = ByteBuffer.allocate(8 + RECORD_HEADER_SIZE);
+        readFully(channel, header, offset);
+        header.flip();
+        int length = header.getInt();
+        header.getInt(); // crc, only checked when repairing
+        EventRecord record = readHeader(header, location);
+        if (withContent && !record.deleted) {
+            ByteBuffer content = ByteBuffer.allocate(length - 4 - RECORD_HEADER_SIZE);
+            readFully(channel, content, offset + 8 + RECORD_HEADER_SIZE);
+            record.content = content.array();
+        }
+        return record;
+    }
+
+    /**
+     * Reads records (without their content) in order, starting at the given location and carrying on
+     * through all later segments, until the visitor returns false or there are no more.
+     */
+    void scan(long from, Predicate<EventRecord> visitor) throws IOException {
+        long offset = offsetOf(from);
+        for (int segment = segmentOf(from); segment <= currentSegment; segment++) {
+            File file = getSegmentFile(segment);
+            if (!file.exists()) {
+                offset = SEGMENT_HEADER_SIZE;
+                continue;
+            }
+            try (InputStream stream = Files.newInputStream(file.toPath());
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024))) {
+                in.skipNBytes(offset);
+                long end = file.length();
+                byte[] header = new byte[RECORD_HEADER_SIZE];
+                while (offset < end) {
+                    int length = in.readInt();
+                    in.readInt(); // crc
+                    in.readFully(header);
+                    EventRecord record = readHeader(ByteBuffer.wrap(header), location(segment, offset));
+                    if (!visitor.test(record)) {
+                        return;
+                    }
+                    in.skipNBytes(length - 4 - RECORD_HEADER_SIZE);
+                    offset += 4 + length;
+                }
+            }
+            offset = SEGMENT_HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Returns the segment number of the latest snapshot taken at or before the given time,
+     * or -1 if there is none.
+     */
+    int findSnapshot(long timestamp) {
+        for (Map.Entry<Integer, Long> entry : snapshots.descendingMap().entrySet()) {
+            if (entry.getValue() <= timestamp) {
+                return entry.getKey();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the segment number of the latest snapshot, or -1 if there is none.
+     */
+    int getLatestSnapshot() {
+        return snapshots.isEmpty() ? -1 : snapshots.lastKey();
+    }
+
+    /**
+     * Reads the index stored in the given snapshot.
+     *
+     * @return The index, or null if the snapshot can't be read, in which case it is forgotten.
+     */
+    Map<UUID, IndexEntry> readSnapshot(int segment) {
+        File file = getSnapshotFile(segment);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a history snapshot");
+            }
+            in.readLong(); // last timestamp, which we already have
+            int count = in.readInt();
+            Map<UUID, IndexEntry> index = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                UUID id = new UUID(in.readLong(), in.readLong());
+                index.put(id, IndexEntry.read(in));
+            }
+            return index;
+        }
+        catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Ignoring unreadable history snapshot " + file.getAbsolutePath(), e);
+            snapshots.remove(segment);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (FileChannel reader : readers.values()) {
+            reader.close();
+        }
+        readers.clear();
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void writeSnapshot(int segment, Map<UUID, IndexEntry> index, long lastTimestamp) throws IOException {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(64 + index.size() * SNAPSHOT_ENTRY_SIZE);
+        DataOutputStream out = new DataOutputStream(byteStream);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(lastTimestamp);
+        out.writeInt(index.size());
+        for (Map.Entry<UUID, IndexEntry> entry : index.entrySet()) {
+            out.writeLong(entry.getKey().getMostSignificantBits());
+            out.writeLong(entry.getKey().getLeastSignificantBits());
+            entry.getValue().write(out);
+        }
+        out.flush();
+        ModelFiles.writeAtomically(getSnapshotFile(segment), byteStream.toByteArray());
+        snapshots.put(segment, lastTimestamp);
+    }
+
+    private void readSnapshotTimestamp(int segment, File file) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            if (in.readInt() == SNAPSHOT_MAGIC && in.readInt() == FORMAT_VERSION) {
+                snapshots.put(segment, in.readLong());
+            }
+        }
+        catch (IOException ioe) {
+            logger.log(Level.WARNING, "Ignoring unreadable history snapshot " + file.getAbsolutePath(), ioe);
+        }
+    }
+
+    /**
+     * Opens the current segment for appending, creating it if it doesn't exist yet, and cuts off
+     * anything after its last complete record.
+     */
+    private void openWriter() throws IOException {
+        File file = getSegmentFile(currentSegment);
+        writer = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE);
+        if (writer.size() < SEGMENT_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+            header.putInt(SEGMENT_MAGIC).putInt(FORMAT_VERSION).flip();
+            writer.truncate(0);
+            writer.write(header, 0);
+        }
+        long validEnd = findValidEnd(writer);
+        if (validEnd < writer.size()) {
+            logger.warning("Discarding " + (writer.size() - validEnd) + " bytes of incomplete history at the end of "
+                                   + file.getAbsolutePath());
+            writer.truncate(validEnd);
+        }
+        writer.position(writer.size());
+    }
+
+    /**
+     * Returns the offset just past the last intact record in the given segment.
+     */
+    private static long findValidEnd(FileChannel channel) throws IOException {
+        ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        readFully(channel, segmentHeader, 0);
+        segmentHeader.flip();
+        if (segmentHeader.getInt() != SEGMENT_MAGIC || segmentHeader.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a history segment, or an unsupported version of one");
+        }
+
+        long size = channel.size();
+        long offset = SEGMENT_HEADER_SIZE;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        while (offset + 4 <= size) {
+            lengthBuffer.clear();
+            readFully(channel, lengthBuffer, offset);
+            int length = lengthBuffer.flip().getInt();
+            if (length < 4 + RECORD_HEADER_SIZE || offset + 4 + length > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(channel, record, offset + 4);
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 4, length - 4);
+            if (record.getInt(0) != (int)crc.getValue()) {
+                break;
+            }
+            offset += 4 + length;
+        }
+        return offset;
+    }
+
+    private static EventRecord readHeader(ByteBuffer buffer, long location) {
+        EventRecord record = new EventRecord();
+        record.location = location;
+        record.timestamp = buffer.getLong();
+        record.kind = buffer.get();
+        record.deleted = buffer.get() != 0;
+        record.id = new UUID(buffer.getLong(), buffer.getLong());
+        record.prevLocation = buffer.getLong();
+        record.fileTime = buffer.getLong();
+        record.contentHash = buffer.getInt();
+        return record;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of history segment");
+            }
+        }
+    }
+
+    private FileChannel getReader(int segment) throws IOException {
+        if (segment == currentSegment) {
+            return writer;
+        }
+        FileChannel reader = readers.get(segment);
+        if (reader == null) {
+            reader = FileChannel.open(getSegmentFile(segment).toPath(), StandardOpenOption.READ);
+            readers.put(segment, reader);
+        }
+        return reader;
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(dir, String.format("events-%06d.log", segment));
+    }
+
+    private File getSnapshotFile(int segment) {
+        return new File(dir, String.format("snapshot-%06d.snap", segment));
+    }
+}
@@ -0,0 +1,67 @@
+package ca.corbett.tasktracker.history;
+
+import java.util.Objects;
+
+/**
+ * One field that differs between two versions of a Project or Ticket, as found by HistoryEntry.
+ * Fields of comments and versions are identified by their internalId, like
+ * "comments[&lt;id&gt;].commentText", so that a change to one comment doesn't look like
+ * a change to every comment after it.
+ *
+ * @author scorbo2
+ */
+public final class FieldChange {
+
+    private final String path;
+    private final String before;
+    private final String after;
+
+    FieldChange(String path, String before, String after) {
+        this.path = path;
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Returns the field's name, or its path for a field of a comment or version.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the field's old value as text, or null if it didn't have one.
+     */
+    public String getBefore() {
+        return before;
+    }
+
+    /**
+     * Returns the field's new value as text, or null if it no longer has one.
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FieldChange)) {
+            return false;
+        }
+        FieldChange other = (FieldChange)o;
+        return path.equals(other.path) && Objects.equals(before, other.before) && Objects.equals(after, other.after);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, before, after);
+    }
+
+    @Override
+    public String toString() {
+        return path + ": " + before + " -> " + after;
+    }
+}
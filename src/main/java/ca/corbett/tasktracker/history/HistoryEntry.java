@@ -0,0 +1,154 @@
+package ca.corbett.tasktracker.history;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * One step in the history of a Project or Ticket: what it looked like after one save, or the fact
+ * that it was deleted. Entries are returned oldest first by HistoryLog.getTicketHistory() and
+ * getProjectHistory(), and each one knows what came before it, so getChanges() can say exactly
+ * which fields that save changed, including those of individual comments and versions.
+ *
+ * @author scorbo2
+ */
+public final class HistoryEntry {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final long timestamp;
+    private final UUID entityId;
+    private final boolean isProject;
+    private final boolean deleted;
+    private final byte[] content;
+    private final byte[] previousContent;
+
+    HistoryEntry(EventRecord record, byte[] previousContent) {
+        this.timestamp = record.timestamp;
+        this.entityId = record.id;
+        this.isProject = record.kind == EventRecord.KIND_PROJECT;
+        this.deleted = record.deleted;
+        this.content = record.content;
+        this.previousContent = previousContent;
+    }
+
+    /**
+     * Returns when this was recorded, in millis.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Date getDate() {
+        return new Date(timestamp);
+    }
+
+    /**
+     * Returns the internalId of the Project or Ticket this entry is about.
+     */
+    public UUID getEntityId() {
+        return entityId;
+    }
+
+    public boolean isProject() {
+        return isProject;
+    }
+
+    /**
+     * Reports whether this entry records the Ticket being deleted, in which case there's no content.
+     */
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Returns the Ticket as it was at this point, or null if this entry is about the Project,
+     * or is a delete. The Ticket is detached, and changing it changes nothing.
+     */
+    public Ticket getTicket() throws IOException {
+        return isProject || content == null ? null : Ticket.fromJson(content);
+    }
+
+    /**
+     * Returns the Project, with its versions, as it was at this point, or null if this entry
+     * is about a Ticket. The Project is detached, and has no Tickets.
+     */
+    public Project getProject() throws IOException {
+        return !isProject || content == null ? null : Project.fromJson(content);
+    }
+
+    /**
+     * Returns every field that differs from the previous entry. For the first entry, that's every field
+     * it has, with a null before value; for a delete, every field the Ticket had, with a null after value.
+     */
+    public List<FieldChange> getChanges() throws IOException {
+        Map<String, String> before = flatten(previousContent);
+        Map<String, String> after = flatten(content);
+        List<FieldChange> changes = new ArrayList<>();
+        for (Map.Entry<String, String> field : before.entrySet()) {
+            String newValue = after.get(field.getKey());
+            if (!Objects.equals(field.getValue(), newValue)) {
+                changes.add(new FieldChange(field.getKey(), field.getValue(), newValue));
+            }
+        }
+        for (Map.Entry<String, String> field : after.entrySet()) {
+            if (!before.containsKey(field.getKey()) && field.getValue() != null) {
+                changes.add(new FieldChange(field.getKey(), null, field.getValue()));
+            }
+        }
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return (isProject ? "Project " : "Ticket ") + entityId + (deleted ? " deleted at " : " saved at ")
+                + getDate();
+    }
+
+    /**
+     * Turns json content into a map of field path to value. Arrays of objects with an internalId
+     * (comments and versions) are keyed by that id, so that entries are matched up by identity
+     * rather than position.
+     */
+    private static Map<String, String> flatten(byte[] content) throws IOException {
+        Map<String, String> fields = new LinkedHashMap<>();
+        if (content != null) {
+            flatten("", mapper.readTree(content), fields);
+        }
+        return fields;
+    }
+
+    private static void flatten(String path, JsonNode node, Map<String, String> fields) {
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> iterator = node.fields();
+            while (iterator.hasNext()) {
+                Map.Entry<String, JsonNode> field = iterator.next();
+                // The id of an array entry is already in its path:
+                if (!path.endsWith("]") || !field.getKey().equals("internalId")) {
+                    flatten(path.isEmpty() ? field.getKey() : path + "." + field.getKey(), field.getValue(), fields);
+                }
+            }
+        }
+        else if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                JsonNode element = node.get(i);
+                JsonNode id = element.get("internalId");
+                flatten(path + "[" + (id == null ? String.valueOf(i) : id.asText()) + "]", element, fields);
+            }
+        }
+        else {
+            fields.put(path, node.isNull() ? null : node.asText());
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package ca.corbett.tasktracker.history;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.diagnostics.OperationTimer;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.ProjectSaveListener;
+import ca.corbett.tasktracker.model.StorageFormat;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketChangeListener;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import ca.corbett.tasktracker.model.TicketSaveListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The full history of a Project and its Tickets, kept as an append-only log in a "history"
+ * directory next to project.json. Every time the Project or a Ticket is saved, its complete new
+ * state is appended to the log (a save that changed nothing is skipped), and a deleted Ticket is
+ * recorded as such. Comments and versions are part of their Ticket and Project, so they come along.
+ * Nothing is ever overwritten, so the log can answer two kinds of question:
+ * <ul>
+ *     <li>What did the Project look like at some point in the past? getStateAt() returns every
+ *     Ticket as it was then, which is what's needed for "what was in version X on date D".</li>
+ *     <li>What happened to this Ticket? getTicketHistory() returns every saved version of it,
+ *     and each one can say exactly which fields changed, down to individual comments.</li>
+ * </ul>
+ * <p>
+ * <b>Snapshots</b> - The log is split into segments of a few megabytes. Every so often, as a new
+ * segment is started, a snapshot of where every entity's latest record is gets written next to it.
+ * Working out the state at some time T means taking the last snapshot from before T and reading
+ * forward, which is never more than a few times the size of the snapshot, however many years of
+ * history there are. Snapshots are spaced out in proportion to their size, so they stay a small
+ * fraction of the log, even for a Project with a million Tickets.
+ * </p>
+ * <p>
+ * <b>Catching up</b> - Edits made while the application wasn't running (or before there was a
+ * history at all) are picked up on open, by comparing each Ticket file's modification time with
+ * the one we last recorded for it. Those changes are recorded as of their file's modification time,
+ * as that's the best we can do. The log is best effort in that sense; edits made and then reverted
+ * in between two opens are never seen.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public class HistoryLog implements TicketSaveListener, TicketChangeListener, ProjectSaveListener {
+
+    private static final Logger logger = Logger.getLogger(HistoryLog.class.getName());
+    private static final OperationTimer openTimer = Metrics.timer("history.open");
+    private static final OperationTimer stateAtTimer = Metrics.timer("history.stateAt");
+
+    /** The name of the history directory inside a Project directory. **/
+    public static final String HISTORY_DIR = "history";
+
+    /** A new segment, and possibly a new snapshot, is started once the current one reaches this size. **/
+    public static final long DEFAULT_SEGMENT_SIZE = 4L * 1024 * 1024;
+
+    private final Project project;
+    private final long segmentSize;
+    private final Map<UUID, IndexEntry> head = new HashMap<>();
+    private EventStore store;
+    private long lastTimestamp;
+
+    private HistoryLog(Project project, long segmentSize) {
+        this.project = project;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Opens the history for the given Project, recording anything that changed since it was last
+     * open, and starts recording every save from here on. If the Project has never been saved,
+     * recording starts with its first save.
+     *
+     * @param project The Project to keep history for.
+     * @return The HistoryLog for that Project.
+     * @throws IOException If the history can't be opened, or a changed Ticket can't be read.
+     */
+    public static HistoryLog open(Project project) throws IOException {
+        return open(project, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the history for the given Project with the given segment size. Smaller segments mean more
+     * snapshots, and quicker point-in-time queries, at the cost of more disk space.
+     */
+    public static HistoryLog open(Project project, long segmentSize) throws IOException {
+        long start = openTimer.start();
+        try {
+            HistoryLog log = new HistoryLog(project, segmentSize);
+            if (log.getStore() != null) {
+                log.catchUp();
+            }
+            project.getTicketRepository().addTicketSaveListener(log);
+            project.getTicketRepository().addTicketChangeListener(log);
+            project.addProjectSaveListener(log);
+            return log;
+        }
+        finally {
+            openTimer.stop(start);
+        }
+    }
+
+    /**
+     * Stops recording and closes the log files. Nothing from this log, including any HistoryState
+     * it has returned, should be used after this.
+     */
+    public void dispose() {
+        project.getTicketRepository().removeTicketSaveListener(this);
+        project.getTicketRepository().removeTicketChangeListener(this);
+        project.removeProjectSaveListener(this);
+        if (store != null) {
+            try {
+                store.close();
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to close project history", ioe);
+            }
+            store = null;
+        }
+    }
+
+    /**
+     * Returns the Project and its Tickets as they were at the given time.
+     *
+     * @param timestamp The point in time, in millis.
+     * @return The state at that time. Empty if that's before anything was recorded.
+     * @throws IOException If the log can't be read.
+     */
+    public HistoryState getStateAt(long timestamp) throws IOException {
+        long start = stateAtTimer.start();
+        try {
+            EventStore store = getStore();
+            if (store == null) {
+                return new HistoryState(null, timestamp, null, Collections.emptyMap());
+            }
+
+            Map<UUID, IndexEntry> index = null;
+            int segment = 0;
+            while (index == null) {
+                segment = store.findSnapshot(timestamp);
+                if (segment < 0) {
+                    index = new HashMap<>();
+                    segment = 0;
+                }
+                else {
+                    index = store.readSnapshot(segment); // null if unreadable, in which case we try an older one
+                }
+            }
+            Map<UUID, IndexEntry> replayed = index;
+            store.scan(EventStore.startOf(segment), record -> {
+                if (record.timestamp > timestamp) {
+                    return false; // timestamps only ever go up, so we're done
+                }
+                replayed.put(record.id, IndexEntry.of(record));
+                return true;
+            });
+
+            IndexEntry projectEntry = null;
+            Map<UUID, IndexEntry> tickets = new HashMap<>();
+            for (Map.Entry<UUID, IndexEntry> entry : replayed.entrySet()) {
+                if (entry.getValue().deleted) {
+                    continue;
+                }
+                if (entry.getValue().kind == EventRecord.KIND_PROJECT) {
+                    projectEntry = entry.getValue();
+                }
+                else {
+                    tickets.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return new HistoryState(store, timestamp, projectEntry, tickets);
+        }
+        finally {
+            stateAtTimer.stop(start);
+        }
+    }
+
+    /**
+     * Returns the Project and its Tickets as they were at the end of the given day, in the local time zone.
+     */
+    public HistoryState getStateAt(YMDDate date) throws IOException {
+        long endOfDay = LocalDate.ofEpochDay(date.getEpochDay() + 1L)
+                                 .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+        return getStateAt(endOfDay);
+    }
+
+    /**
+     * Returns every recorded version of the given Ticket, oldest first. If it was deleted, the last
+     * entry says so.
+     *
+     * @param ticketId The Ticket's internalId.
+     * @return Its history, which is empty if nothing was ever recorded for it.
+     * @throws IOException If the log can't be read.
+     */
+    public List<HistoryEntry> getTicketHistory(UUID ticketId) throws IOException {
+        return getHistory(ticketId);
+    }
+
+    /**
+     * Returns every recorded version of the Project itself (its own fields and its versions), oldest first.
+     */
+    public List<HistoryEntry> getProjectHistory() throws IOException {
+        return getHistory(project.getInternalId());
+    }
+
+    /**
+     * Returns the number of Projects and Tickets, deleted or not, that have any history.
+     */
+    public int getEntityCount() {
+        return head.size();
+    }
+
+    /**
+     * Records each Ticket as it was just written.
+     */
+    @Override
+    public void ticketsSaved(List<Ticket> tickets) {
+        long now = System.currentTimeMillis();
+        for (Ticket ticket : tickets) {
+            try {
+                File sourceFile = ticket.getSourceFile();
+                if (sourceFile != null) {
+                    recordTicket(ticket, sourceFile.lastModified(), now);
+                }
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to record history for ticket " + ticket.getDisplayId(), ioe);
+            }
+        }
+    }
+
+    /**
+     * Records Tickets being removed. Everything else comes through ticketsSaved().
+     */
+    @Override
+    public void ticketChanged(TicketHeader before, TicketHeader after) {
+        if (after == null) {
+            try {
+                record(EventRecord.KIND_TICKET, before.getInternalId(), null, 0, System.currentTimeMillis());
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to record removal of ticket " + before.getDisplayId(), ioe);
+            }
+        }
+    }
+
+    /**
+     * Records the Project as it was just written.
+     */
+    @Override
+    public void projectSaved(Project project) {
+        try {
+            recordProject(System.currentTimeMillis());
+        }
+        catch (IOException ioe) {
+            logger.log(Level.WARNING, "Unable to record project history", ioe);
+        }
+    }
+
+    /**
+     * Opens the store, if it isn't open yet and the Project has been saved, and works out where
+     * the latest record for everything is: from the latest snapshot, plus whatever came after it.
+     *
+     * @return The store, or null if the Project has never been saved.
+     */
+    private EventStore getStore() throws IOException {
+        if (store == null && project.getSourceFile() != null) {
+            File projectDir = project.getSourceFile().getAbsoluteFile().getParentFile();
+            EventStore opened = EventStore.open(new File(projectDir, HISTORY_DIR), segmentSize);
+            try {
+                head.clear();
+                lastTimestamp = 0;
+                Map<UUID, IndexEntry> index = null;
+                int segment = 0;
+                while (index == null) {
+                    segment = opened.getLatestSnapshot();
+                    index = segment < 0 ? new HashMap<>() : opened.readSnapshot(segment);
+                }
+                head.putAll(index);
+                for (IndexEntry entry : index.values()) {
+                    lastTimestamp = Math.max(lastTimestamp, entry.timestamp);
+                }
+                opened.scan(EventStore.startOf(Math.max(segment, 0)), record -> {
+                    head.put(record.id, IndexEntry.of(record));
+                    lastTimestamp = Math.max(lastTimestamp, record.timestamp);
+                    return true;
+                });
+            }
+            catch (IOException | RuntimeException e) {
+                opened.close();
+                throw e;
+            }
+            store = opened;
+        }
+        return store;
+    }
+
+    /**
+     * Records whatever changed on disk since the history was last open. Changes are recorded in
+     * the order their files were written, as of when they were written.
+     */
+    private void catchUp() throws IOException {
+        if (project.getSourceFile().exists()) {
+            long fileTime = project.getSourceFile().lastModified();
+            IndexEntry entry = head.get(project.getInternalId());
+            if (entry == null || entry.fileTime != fileTime) {
+                recordProject(fileTime);
+            }
+        }
+
+        TicketRepository repository = project.getTicketRepository();
+        Map<Integer, Long> currentFileTimes = repository.getTicketFileTimes();
+        Set<UUID> onDisk = new HashSet<>();
+        List<TicketHeader> changed = new ArrayList<>();
+        for (TicketHeader header : repository.getHeaders()) {
+            Long fileTime = currentFileTimes.get(header.getDisplayId());
+            if (fileTime == null) {
+                continue; // Never been saved; it will be recorded when it is
+            }
+            onDisk.add(header.getInternalId());
+            IndexEntry entry = head.get(header.getInternalId());
+            if (entry == null || entry.deleted || entry.fileTime != fileTime) {
+                changed.add(header);
+            }
+        }
+        changed.sort(Comparator.comparingLong(header -> currentFileTimes.get(header.getDisplayId())));
+        for (TicketHeader header : changed) {
+            long fileTime = currentFileTimes.get(header.getDisplayId());
+            recordTicket(repository.get(header.getInternalId()), fileTime, fileTime);
+        }
+
+        long now = System.currentTimeMillis();
+        for (Map.Entry<UUID, IndexEntry> entry : new ArrayList<>(head.entrySet())) {
+            IndexEntry value = entry.getValue();
+            if (value.kind == EventRecord.KIND_TICKET && !value.deleted && !onDisk.contains(entry.getKey())) {
+                record(EventRecord.KIND_TICKET, entry.getKey(), null, 0, now);
+            }
+        }
+    }
+
+    private void recordProject(long timestamp) throws IOException {
+        File sourceFile = project.getSourceFile();
+        if (sourceFile != null) {
+            record(EventRecord.KIND_PROJECT, project.getInternalId(), project.toJson(StorageFormat.COMPACT),
+                   sourceFile.lastModified(), timestamp);
+        }
+    }
+
+    private void recordTicket(Ticket ticket, long fileTime, long timestamp) throws IOException {
+        // If it's been edited again since it was written, what's on disk is what we want:
+        Ticket saved = ticket.isDirty() ? Ticket.load(ticket.getSourceFile()) : ticket;
+        record(EventRecord.KIND_TICKET, saved.getInternalId(), saved.toJson(StorageFormat.COMPACT), fileTime,
+               timestamp);
+    }
+
+    /**
+     * Appends a record, unless it would say nothing new, and starts a new segment if the current one is full.
+     *
+     * @param content The new state, or null for a delete.
+     */
+    private void record(byte kind, UUID id, byte[] content, long fileTime, long timestamp) throws IOException {
+        EventStore store = getStore();
+        if (store == null) {
+            return;
+        }
+        boolean deleted = content == null;
+        int contentHash = deleted ? 0 : Arrays.hashCode(content);
+        IndexEntry previous = head.get(id);
+        if (previous == null ? deleted : previous.deleted == deleted
+                && (deleted || isSameContent(store, previous, contentHash, content))) {
+            return;
+        }
+
+        EventRecord record = new EventRecord();
+        record.timestamp = Math.max(timestamp, lastTimestamp); // the log must stay in time order
+        record.kind = kind;
+        record.deleted = deleted;
+        record.id = id;
+        record.prevLocation = previous == null ? EventStore.NO_LOCATION : previous.location;
+        record.fileTime = fileTime;
+        record.contentHash = contentHash;
+        record.content = content;
+        record.location = store.append(record);
+        head.put(id, IndexEntry.of(record));
+        lastTimestamp = record.timestamp;
+
+        if (store.isSegmentFull()) {
+            store.startSegment(head, lastTimestamp);
+        }
+    }
+
+    /**
+     * Checks whether the given content is the same as that of the given record. The hash rules out
+     * almost every change without reading anything, but two different contents can share a hash,
+     * so a match is only taken as such once the record's content has been compared too.
+     */
+    private static boolean isSameContent(EventStore store, IndexEntry entry, int contentHash, byte[] content)
+            throws IOException {
+        return entry.contentHash == contentHash
+                && Arrays.equals(content, store.read(entry.location, true).content);
+    }
+
+    private List<HistoryEntry> getHistory(UUID id) throws IOException {
+        EventStore store = getStore();
+        IndexEntry latest = head.get(id);
+        if (store == null || latest == null) {
+            return new ArrayList<>();
+        }
+        List<EventRecord> records = new ArrayList<>();
+        for (long location = latest.location; location != EventStore.NO_LOCATION; ) {
+            EventRecord record = store.read(location, true);
+            records.add(record);
+            location = record.prevLocation;
+        }
+        Collections.reverse(records);
+
+        List<HistoryEntry> entries = new ArrayList<>(records.size());
+        byte[] previousContent = null;
+        for (EventRecord record : records) {
+            entries.add(new HistoryEntry(record, previousContent));
+            previousContent = record.deleted ? null : record.content;
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,110 @@
+package ca.corbett.tasktracker.history;
+
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketHeader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A Project and its Tickets as they were at some point in the past, from HistoryLog.getStateAt().
+ * Building one only works out where each Ticket's record is; the Tickets themselves are read from
+ * the log when asked for, so this must not be used after its HistoryLog has been disposed.
+ * Everything returned is detached from the live Project, and changing it changes nothing.
+ *
+ * @author scorbo2
+ */
+public final class HistoryState {
+
+    private final EventStore store;
+    private final long timestamp;
+    private final IndexEntry project;
+    private final Map<UUID, IndexEntry> tickets;
+    private List<TicketHeader> headers;
+
+    HistoryState(EventStore store, long timestamp, IndexEntry project, Map<UUID, IndexEntry> tickets) {
+        this.store = store;
+        this.timestamp = timestamp;
+        this.project = project;
+        this.tickets = tickets;
+    }
+
+    /**
+     * Returns the point in time, in millis, that this state is for.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Date getDate() {
+        return new Date(timestamp);
+    }
+
+    /**
+     * Returns the Project, with its versions, as it was then, or null if it hadn't been recorded yet.
+     */
+    public Project getProject() throws IOException {
+        return project == null ? null : Project.fromJson(store.read(project.location, true).content);
+    }
+
+    /**
+     * Returns the internalIds of all Tickets that existed then.
+     */
+    public Set<UUID> getTicketIds() {
+        return Collections.unmodifiableSet(tickets.keySet());
+    }
+
+    public int getTicketCount() {
+        return tickets.size();
+    }
+
+    /**
+     * Returns the given Ticket as it was then, or null if it didn't exist then.
+     */
+    public Ticket getTicket(UUID internalId) throws IOException {
+        IndexEntry entry = tickets.get(internalId);
+        return entry == null ? null : Ticket.fromJson(store.read(entry.location, true).content);
+    }
+
+    /**
+     * Returns headers for all Tickets as they were then, sorted by displayId.
+     * This reads every Ticket's record, so it's read once and kept.
+     */
+    public List<TicketHeader> getTicketHeaders() throws IOException {
+        if (headers == null) {
+            // In log order, which is as close to sequential reads as we can get:
+            List<IndexEntry> entries = new ArrayList<>(tickets.values());
+            entries.sort(Comparator.comparingLong(entry -> entry.location));
+            List<TicketHeader> list = new ArrayList<>(entries.size());
+            for (IndexEntry entry : entries) {
+                list.add(TicketHeader.fromJson(store.read(entry.location, true).content));
+            }
+            list.sort(Comparator.comparingInt(TicketHeader::getDisplayId));
+            headers = Collections.unmodifiableList(list);
+        }
+        return headers;
+    }
+
+    /**
+     * Returns headers for the Tickets that were targeted at the given ProjectVersion then, sorted
+     * by displayId. Pass null for the Tickets that weren't targeted at any version.
+     */
+    public List<TicketHeader> getTicketHeaders(UUID targetVersionId) throws IOException {
+        List<TicketHeader> list = new ArrayList<>();
+        for (TicketHeader header : getTicketHeaders()) {
+            if (Objects.equals(header.getTargetVersionId(), targetVersionId)) {
+                list.add(header);
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,52 @@
+package ca.corbett.tasktracker.history;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Where the latest record for one entity is, with enough about it to decide whether a new
+ * record is needed without reading the old one back. This is what snapshots are made of.
+ *
+ * @author scorbo2
+ */
+final class IndexEntry {
+
+    /** The number of bytes write() writes. **/
+    static final int SIZE = 1 + 1 + 8 + 8 + 8 + 4;
+
+    final byte kind;
+    final boolean deleted;
+    final long location;
+    final long fileTime;
+    final long timestamp;
+    final int contentHash;
+
+    IndexEntry(byte kind, boolean deleted, long location, long fileTime, long timestamp, int contentHash) {
+        this.kind = kind;
+        this.deleted = deleted;
+        this.location = location;
+        this.fileTime = fileTime;
+        this.timestamp = timestamp;
+        this.contentHash = contentHash;
+    }
+
+    static IndexEntry of(EventRecord record) {
+        return new IndexEntry(record.kind, record.deleted, record.location, record.fileTime, record.timestamp,
+                              record.contentHash);
+    }
+
+    static IndexEntry read(DataInput in) throws IOException {
+        return new IndexEntry(in.readByte(), in.readBoolean(), in.readLong(), in.readLong(), in.readLong(),
+                              in.readInt());
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeByte(kind);
+        out.writeBoolean(deleted);
+        out.writeLong(location);
+        out.writeLong(fileTime);
+        out.writeLong(timestamp);
+        out.writeInt(contentHash);
+    }
+}
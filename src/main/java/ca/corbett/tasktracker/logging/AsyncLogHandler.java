@@ -0,0 +1,560 @@
+package ca.corbett.tasktracker.logging;
+
+import ca.corbett.extras.logging.LogConsoleHandler;
+
+import javax.swing.SwingUtilities;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+/**
+ * A log handler that never makes the logging thread wait for I/O. It takes the place of the usual
+ * ConsoleHandler, FileHandler and LogConsoleHandler: publish() just drops the record into a bounded,
+ * lock-free ring buffer, and a single background thread takes records out in batches and writes them.
+ * <p>
+ * Each batch is formatted once and written to the log file (and to stderr, if enabled) with a single
+ * write and flush, instead of one flush per record the way FileHandler does it. Records for the
+ * LogConsole are held back and handed to a LogConsoleHandler on the EDT at most every
+ * logConsoleIntervalMs, in one event, so a burst of logging costs the EDT one update instead of
+ * hundreds.
+ * </p>
+ * <p>
+ * If the buffer fills up (something is logging far faster than the disk can keep up), the overflow
+ * policy decides what happens; see OverflowPolicy. Dropped records are counted, and the count is
+ * written to the log as soon as there's room again. close() writes out everything that's left before
+ * returning; LogManager closes the root handlers as the JVM shuts down, so nothing logged before that
+ * is lost.
+ * </p>
+ * <p>
+ * Everything can be set from logging.properties, prefixed with this class name:
+ * </p>
+ * <ul>
+ *     <li>file - the log file. %h is the user's home directory, %t the temp directory. Default none.</li>
+ *     <li>append - whether to add to an existing log file, rather than start over. Default false.</li>
+ *     <li>console - whether to also write to stderr. Default true.</li>
+ *     <li>logConsole - whether to also feed the LogConsole. Default true, unless headless.</li>
+ *     <li>logConsoleIntervalMs - how often the LogConsole is updated. Default 100.</li>
+ *     <li>capacity - the size of the ring buffer, in records. Default 8192.</li>
+ *     <li>batchSize - the most records written at once. Default 512.</li>
+ *     <li>overflow - BLOCK, DROP_NEWEST or DROP_OLDEST. Default BLOCK.</li>
+ *     <li>inferCaller - whether to find the logging class and method before queuing the record,
+ *     which is only needed if the format uses them (%2$s). Default false.</li>
+ *     <li>level, formatter, encoding - as for any Handler.</li>
+ * </ul>
+ *
+ * @author scorbo2
+ */
+public final class AsyncLogHandler extends Handler {
+
+    /**
+     * What publish() does when the ring buffer is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for room. Nothing is lost, but the logging thread is held up until the writer catches up. **/
+        BLOCK,
+
+        /** Throw away the record being logged. **/
+        DROP_NEWEST,
+
+        /** Throw away the oldest record in the buffer to make room. **/
+        DROP_OLDEST
+    }
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CLOSE_TIMEOUT_MS = 5_000;
+
+    private File logFile;
+    private boolean append;
+    private boolean console = true;
+    private boolean logConsole = !GraphicsEnvironment.isHeadless();
+    private long logConsoleIntervalMs = 100;
+    private int capacity = 8192;
+    private int batchSize = 512;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private boolean inferCaller;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong unreportedDrops = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private volatile LogRingBuffer<LogRecord> buffer;
+    private volatile Thread writerThread;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+    private LogConsoleHandler logConsoleHandler; // only touched on the EDT
+
+    /**
+     * Creates a handler configured from the LogManager properties described above.
+     * The writer thread isn't started until the first record is published.
+     */
+    public AsyncLogHandler() {
+        LogManager manager = LogManager.getLogManager();
+        String prefix = AsyncLogHandler.class.getName() + ".";
+
+        setLevel(parseLevel(manager.getProperty(prefix + "level"), Level.ALL));
+        setFormatter(newFormatter(manager.getProperty(prefix + "formatter")));
+        String encoding = manager.getProperty(prefix + "encoding");
+        if (encoding != null) {
+            try {
+                setEncoding(encoding);
+            }
+            catch (UnsupportedEncodingException uee) {
+                reportError("Unsupported encoding " + encoding, uee, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+
+        String file = manager.getProperty(prefix + "file");
+        logFile = file == null || file.isBlank() ? null : resolve(file.trim());
+        append = parseBoolean(manager.getProperty(prefix + "append"), append);
+        console = parseBoolean(manager.getProperty(prefix + "console"), console);
+        logConsole = logConsole && parseBoolean(manager.getProperty(prefix + "logConsole"), logConsole);
+        // Through the setters, so that out of range values are clamped the same way:
+        setLogConsoleIntervalMs(parseLong(manager.getProperty(prefix + "logConsoleIntervalMs"), logConsoleIntervalMs));
+        setCapacity(parseInt(manager.getProperty(prefix + "capacity"), capacity));
+        setBatchSize(parseInt(manager.getProperty(prefix + "batchSize"), batchSize));
+        inferCaller = parseBoolean(manager.getProperty(prefix + "inferCaller"), inferCaller);
+        String overflow = manager.getProperty(prefix + "overflow");
+        if (overflow != null) {
+            try {
+                overflowPolicy = OverflowPolicy.valueOf(overflow.trim().toUpperCase());
+            }
+            catch (IllegalArgumentException iae) {
+                reportError("Unknown overflow policy " + overflow, iae, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * Sets the file to write to, or null for none.
+     */
+    public AsyncLogHandler setLogFile(File logFile) {
+        checkNotStarted();
+        this.logFile = logFile;
+        return this;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    public AsyncLogHandler setAppend(boolean append) {
+        checkNotStarted();
+        this.append = append;
+        return this;
+    }
+
+    /**
+     * Sets whether records are also written to stderr.
+     */
+    public AsyncLogHandler setConsole(boolean console) {
+        checkNotStarted();
+        this.console = console;
+        return this;
+    }
+
+    /**
+     * Sets whether records are also shown in the LogConsole.
+     */
+    public AsyncLogHandler setLogConsole(boolean logConsole) {
+        checkNotStarted();
+        this.logConsole = logConsole;
+        return this;
+    }
+
+    public AsyncLogHandler setLogConsoleIntervalMs(long intervalMs) {
+        checkNotStarted();
+        this.logConsoleIntervalMs = Math.max(0, intervalMs);
+        return this;
+    }
+
+    /**
+     * Sets how many records can be waiting to be written. Rounded up to a power of two, at most 2^30.
+     */
+    public AsyncLogHandler setCapacity(int capacity) {
+        checkNotStarted();
+        this.capacity = Math.min(1 << 30, Math.max(2, capacity));
+        return this;
+    }
+
+    public AsyncLogHandler setBatchSize(int batchSize) {
+        checkNotStarted();
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    public AsyncLogHandler setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        checkNotStarted();
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets whether the logging class and method are looked up before a record is queued. They're
+     * otherwise looked up when first asked for, which on the writer thread gives the wrong answer.
+     * Finding them means walking the stack, so leave this off unless the format needs them.
+     */
+    public AsyncLogHandler setInferCaller(boolean inferCaller) {
+        checkNotStarted();
+        this.inferCaller = inferCaller;
+        return this;
+    }
+
+    /**
+     * Returns how many records have been thrown away because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || record == null || !isLoggable(record)) {
+            return;
+        }
+        if (inferCaller) {
+            record.getSourceClassName();
+        }
+        LogRingBuffer<LogRecord> ring = buffer;
+        if (ring == null) {
+            ring = start();
+        }
+        if (ring.offer(record)) {
+            accepted.incrementAndGet();
+        }
+        else {
+            overflow(ring, record);
+        }
+        if (sleeping) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Waits (for a few seconds at most) until everything published so far has been written.
+     */
+    @Override
+    public void flush() {
+        Thread writer = writerThread;
+        if (writer == null || Thread.currentThread() == writer) {
+            return;
+        }
+        long target = accepted.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MS);
+        while (completed.get() < target && writer.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Stops accepting records, and waits (for a few seconds at most) while the writer thread writes
+     * out whatever is left and closes the log file.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread writer = writerThread;
+        if (writer == null || Thread.currentThread() == writer) {
+            return;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized LogRingBuffer<LogRecord> start() {
+        if (buffer == null) {
+            LogRingBuffer<LogRecord> ring = new LogRingBuffer<>(capacity);
+            Thread thread = new Thread(new BatchWriter(ring), "AsyncLogWriter");
+            thread.setDaemon(true);
+            writerThread = thread;
+            thread.start();
+            buffer = ring; // only once the writer is alive, or a blocked publish() would think it had died
+        }
+        return buffer;
+    }
+
+    private synchronized void checkNotStarted() {
+        if (buffer != null) {
+            throw new IllegalStateException("AsyncLogHandler is already running");
+        }
+    }
+
+    private void overflow(LogRingBuffer<LogRecord> ring, LogRecord record) {
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+                drop();
+                break;
+
+            case DROP_OLDEST:
+                while (!ring.offer(record)) {
+                    if (ring.poll() != null) {
+                        completed.incrementAndGet();
+                        drop();
+                    }
+                }
+                accepted.incrementAndGet();
+                break;
+
+            default:
+                // The writer can't wait on itself, so anything it logs while full is dropped instead:
+                if (Thread.currentThread() == writerThread) {
+                    drop();
+                    return;
+                }
+                while (!ring.offer(record)) {
+                    if (closed || !writerThread.isAlive()) {
+                        drop();
+                        return;
+                    }
+                    LockSupport.unpark(writerThread);
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+                accepted.incrementAndGet();
+                break;
+        }
+    }
+
+    private void drop() {
+        dropped.increment();
+        unreportedDrops.incrementAndGet();
+    }
+
+    /**
+     * Hands the given records to the LogConsole, all in one EDT event.
+     */
+    private void showInLogConsole(List<LogRecord> records) {
+        SwingUtilities.invokeLater(() -> {
+            if (logConsoleHandler == null) {
+                logConsoleHandler = new LogConsoleHandler();
+            }
+            for (LogRecord record : records) {
+                logConsoleHandler.publish(record);
+            }
+        });
+    }
+
+    /**
+     * The writer thread: takes batches of records out of the ring buffer and writes them, until closed.
+     */
+    private final class BatchWriter implements Runnable {
+        private final LogRingBuffer<LogRecord> ring;
+        private final List<LogRecord> batch;
+        private List<LogRecord> logConsolePending = new ArrayList<>();
+        private long nextLogConsoleUpdate;
+        private Writer fileWriter;
+
+        BatchWriter(LogRingBuffer<LogRecord> ring) {
+            this.ring = ring;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void run() {
+            openLogFile();
+            while (true) {
+                batch.clear();
+                ring.drainTo(batch, batchSize);
+                reportDrops();
+                if (!batch.isEmpty()) {
+                    write(batch);
+                    completed.addAndGet(batch.size());
+                    if (logConsole) {
+                        logConsolePending.addAll(batch);
+                    }
+                }
+                updateLogConsole(false);
+
+                if (batch.isEmpty()) {
+                    if (closed && ring.size() == 0) {
+                        break;
+                    }
+                    sleeping = true;
+                    if (ring.size() == 0 && !closed) {
+                        LockSupport.parkNanos(logConsolePending.isEmpty()
+                                                  ? IDLE_PARK_NANOS
+                                                  : TimeUnit.MILLISECONDS.toNanos(logConsoleIntervalMs));
+                    }
+                    sleeping = false;
+                }
+            }
+            updateLogConsole(true);
+            closeLogFile();
+        }
+
+        private void write(List<LogRecord> records) {
+            Formatter formatter = getFormatter();
+            StringBuilder text = new StringBuilder(records.size() * 128);
+            for (LogRecord record : records) {
+                try {
+                    text.append(formatter.format(record));
+                }
+                catch (RuntimeException e) {
+                    reportError(null, e, ErrorManager.FORMAT_FAILURE);
+                }
+            }
+            if (fileWriter != null) {
+                try {
+                    fileWriter.write(text.toString());
+                    fileWriter.flush();
+                }
+                catch (IOException ioe) {
+                    reportError(null, ioe, ErrorManager.WRITE_FAILURE);
+                }
+            }
+            if (console) {
+                System.err.print(text);
+                System.err.flush();
+            }
+        }
+
+        private void reportDrops() {
+            long drops = unreportedDrops.getAndSet(0);
+            if (drops > 0) {
+                LogRecord record = new LogRecord(Level.WARNING, drops + " log records were dropped"
+                                                                    + " (overflow policy " + overflowPolicy + ")");
+                record.setLoggerName(AsyncLogHandler.class.getName());
+                write(List.of(record));
+                if (logConsole) {
+                    logConsolePending.add(record);
+                }
+            }
+        }
+
+        private void updateLogConsole(boolean force) {
+            if (logConsolePending.isEmpty()) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (force || now - nextLogConsoleUpdate >= 0) {
+                showInLogConsole(logConsolePending);
+                logConsolePending = new ArrayList<>();
+                nextLogConsoleUpdate = now + TimeUnit.MILLISECONDS.toNanos(logConsoleIntervalMs);
+            }
+        }
+
+        private void openLogFile() {
+            if (logFile == null) {
+                return;
+            }
+            File dir = logFile.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+                reportError("Unable to create log directory " + dir, null, ErrorManager.OPEN_FAILURE);
+                return;
+            }
+            try {
+                Charset charset = getEncoding() == null ? Charset.defaultCharset() : Charset.forName(getEncoding());
+                fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, append), charset),
+                                                64 * 1024);
+            }
+            catch (IOException ioe) {
+                reportError("Unable to open log file " + logFile, ioe, ErrorManager.OPEN_FAILURE);
+            }
+        }
+
+        private void closeLogFile() {
+            if (fileWriter != null) {
+                try {
+                    fileWriter.close();
+                }
+                catch (IOException ioe) {
+                    reportError(null, ioe, ErrorManager.CLOSE_FAILURE);
+                }
+                fileWriter = null;
+            }
+        }
+    }
+
+    /**
+     * Expands %h (user home), %t (temp dir) and %% in a file name, the way FileHandler patterns do.
+     */
+    static File resolve(String pattern) {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '%' && i + 1 < pattern.length()) {
+                char next = pattern.charAt(i + 1);
+                if (next == 'h' || next == 't' || next == '%') {
+                    path.append(next == 'h' ? System.getProperty("user.home")
+                                    : next == 't' ? System.getProperty("java.io.tmpdir") : "%");
+                    i++;
+                    continue;
+                }
+            }
+            path.append(c);
+        }
+        return new File(path.toString());
+    }
+
+    private Formatter newFormatter(String className) {
+        if (className != null) {
+            try {
+                return (Formatter)ClassLoader.getSystemClassLoader().loadClass(className.trim())
+                                             .getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException | ClassCastException e) {
+                reportError("Unable to create formatter " + className, e, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+        return new SimpleFormatter();
+    }
+
+    private static Level parseLevel(String value, Level defaultLevel) {
+        try {
+            return value == null ? defaultLevel : Level.parse(value.trim());
+        }
+        catch (IllegalArgumentException iae) {
+            return defaultLevel;
+        }
+    }
+
+    private static boolean parseBoolean(String value, boolean defaultValue) {
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+}
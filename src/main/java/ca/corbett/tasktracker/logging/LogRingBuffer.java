@@ -0,0 +1,120 @@
+package ca.corbett.tasktracker.logging;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free queue of fixed capacity, for handing log records from the threads that log them
+ * to AsyncLogHandler's writer thread. Any thread can offer and poll; nobody ever waits on a lock.
+ * <p>
+ * This is Dmitry Vyukov's bounded MPMC queue. Every slot has a sequence number that says whose turn
+ * it is: a producer may fill slot (n % capacity) once its sequence is n, and a consumer may empty it
+ * once its sequence is n + 1. Claiming a turn is one compare-and-set on the tail (or head) counter,
+ * and a full or empty queue is spotted from the slot's sequence without touching the other counter,
+ * so producers and the consumer don't fight over the same cache line in the normal case.
+ * </p>
+ *
+ * @author scorbo2
+ */
+final class LogRingBuffer<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a buffer holding at least the given number of elements, rounded up to a power of two.
+     */
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        slots = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns roughly how many elements are waiting. Only exact when nothing else is happening.
+     */
+    int size() {
+        return (int)Math.max(0, Math.min(capacity(), tail.get() - head.get()));
+    }
+
+    /**
+     * Adds the given element if there's room.
+     *
+     * @return false if the buffer is full.
+     */
+    boolean offer(T element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0) {
+                return false;
+            }
+            else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the oldest element, or null if there isn't one.
+     */
+    T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int)position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T element = slots.get(index);
+                    slots.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            }
+            else if (difference < 0) {
+                return null;
+            }
+            else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to max elements into the given list, oldest first.
+     *
+     * @return How many were moved.
+     */
+    int drainTo(List<T> into, int max) {
+        int count = 0;
+        T element;
+        while (count < max && (element = poll()) != null) {
+            into.add(element);
+            count++;
+        }
+        return count;
+    }
+}
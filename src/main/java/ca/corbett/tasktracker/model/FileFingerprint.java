@@ -0,0 +1,85 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.File;
+import java.util.zip.CRC32C;
+
+/**
+ * Remembers what a model file looked like the last time we read or wrote it: its timestamp,
+ * its size, and a checksum of its content. If the timestamp and size still match, we can
+ * assume the file hasn't been touched without having to read it. If they don't match,
+ * the checksum lets us tell whether the content actually changed or whether the file
+ * was merely touched or rewritten with the same bytes.
+ *
+ * @author scorbo2
+ */
+final class FileFingerprint {
+
+    private final long lastModified;
+    private final long size;
+    private final long checksum;
+
+    FileFingerprint(long lastModified, long size, long checksum) {
+        this.lastModified = lastModified;
+        this.size = size;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Creates a fingerprint of the given file, which is assumed to have the given content.
+     *
+     * @param file    The file in question.
+     * @param content The bytes we just read from or wrote to that file.
+     * @return A FileFingerprint.
+     */
+    static FileFingerprint of(File file, byte[] content) {
+        return new FileFingerprint(file.lastModified(), file.length(), checksum(content));
+    }
+
+    /**
+     * Reports whether the given file still has the same timestamp and size as when this
+     * fingerprint was taken. This only stats the file; it doesn't read it.
+     */
+    boolean matchesFile(File file) {
+        return matches(file.lastModified(), file.length());
+    }
+
+    /**
+     * Reports whether the given timestamp and size are the same as when this fingerprint was taken.
+     */
+    boolean matches(long lastModified, long size) {
+        return this.lastModified == lastModified && this.size == size;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Reports whether the given content is the same as the content this fingerprint was taken from.
+     */
+    boolean matchesContent(byte[] content) {
+        return content.length == size && checksum(content) == checksum;
+    }
+
+    /**
+     * Reports whether the given fingerprint was taken from the same content as this one,
+     * regardless of file timestamps.
+     */
+    boolean matchesContent(FileFingerprint other) {
+        return other != null && size == other.size && checksum == other.checksum;
+    }
+
+    private static long checksum(byte[] content) {
+        CRC32C crc = new CRC32C();
+        crc.update(content);
+        return crc.getValue();
+    }
+}
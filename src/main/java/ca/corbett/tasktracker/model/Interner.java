@@ -0,0 +1,52 @@
+package ca.corbett.tasktracker.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+/**
+ * Hands out one shared instance for each distinct value it's given, so that values repeated across
+ * thousands of model objects (the owning projectId, the handful of targetVersionIds, state and
+ * resolution strings, and so on) are held in memory once rather than once per Ticket. Values are
+ * only weakly held here: once no model object refers to a value any more, it can be collected.
+ * <p>
+ * This is only worth doing for low-cardinality values. Interning something unique to each
+ * object, such as a Ticket's own internalId, would just add a table entry on top of it.
+ * </p>
+ *
+ * @author scorbo2
+ */
+final class Interner<T> {
+
+    /** Shared by everything that reads model objects in from disk. **/
+    static final Interner<UUID> UUIDS = new Interner<>();
+    static final Interner<String> STRINGS = new Interner<>();
+
+    private final Map<T, WeakReference<T>> table = new WeakHashMap<>();
+
+    /**
+     * Returns the shared instance equal to the given value, which becomes the shared instance
+     * if there isn't one yet. Null is returned as is.
+     */
+    synchronized T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+        WeakReference<T> ref = table.get(value);
+        T shared = ref == null ? null : ref.get();
+        if (shared == null) {
+            table.put(value, new WeakReference<>(value));
+            shared = value;
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the number of distinct values currently held. Entries for values that have been
+     * collected are cleared out lazily, so this may include a few of those.
+     */
+    synchronized int size() {
+        return table.size();
+    }
+}
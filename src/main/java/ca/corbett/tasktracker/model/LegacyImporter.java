@@ -0,0 +1,659 @@
+package ca.corbett.tasktracker.model;
+
+import ca.corbett.tasktracker.date.YMDDate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Imports everything from a TaskTracker 1.x database into a 2.0 workspace: one Project directory
+ * per 1.x project, named for its prefix, with its versions, tickets and comments. The 1.x driver
+ * (sqlite-jdbc, for a standard 1.x install) just needs to be on the classpath. From the command line:
+ * <pre>
+ *     java -cp tasktracker.jar:sqlite-jdbc.jar ca.corbett.tasktracker.model.LegacyImporter \
+ *         jdbc:sqlite:/path/to/tasktracker.db /path/to/workspace
+ * </pre>
+ * <p>
+ * Projects and versions are few, so they're read up front. Tickets and comments are streamed,
+ * both in ticket id order, and matched up as they go, so only the ticket being put together
+ * and a short queue of finished ones waiting to be written are ever in memory, however many
+ * millions of comments there are. Ticket files are written by a pool of threads, in parallel
+ * with the reading.
+ * </p>
+ * <p>
+ * <b>Resuming</b> - Every second (by default), the id of the last ticket before which everything has
+ * been written is recorded in a checkpoint file in the workspace, along with how many tickets and
+ * comments that covers. Progress and throughput are also logged and passed to the progress listener,
+ * if there is one. If the import is interrupted, running it again carries on from the checkpoint.
+ * Every imported object gets an internalId derived from its 1.x id, so a ticket that gets written
+ * twice is simply overwritten with the same thing.
+ * Once an import has finished, the checkpoint says so, and running it again does nothing; delete
+ * the checkpoint file to import from scratch.
+ * </p>
+ * <p>
+ * <b>Display ids</b> - The 1.x database never made display ids required, or unique within a project.
+ * Before any tickets are read, every ticket's display id is scanned (just the ids, so this is quick).
+ * A ticket with no display id, or with one that an earlier ticket in its project already has, is
+ * given the next one after the highest in its project, in ticket id order. The same tickets get the
+ * same display ids on every run, so a resumed import carries on numbering where it left off.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class LegacyImporter {
+
+    private static final Logger logger = Logger.getLogger(LegacyImporter.class.getName());
+
+    /** The name of the checkpoint file in the workspace directory. **/
+    public static final String CHECKPOINT_FILE = "legacy-import.checkpoint";
+
+    private static final long DEFAULT_PROGRESS_INTERVAL_MS = 1000;
+    private static final long NOTHING_WRITTEN = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd[[' ']['T']HH:mm[:ss][.SSS]]");
+
+    private final Connection connection;
+    private final File workspaceDir;
+    private LegacySchema schema = new LegacySchema();
+    private int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private int fetchSize = 1000;
+    private long progressIntervalMs = DEFAULT_PROGRESS_INTERVAL_MS;
+    private Consumer<Report> progressListener;
+
+    // Only for the duration of run():
+    private final Map<Long, Project> projects = new HashMap<>();
+    private final Map<Long, UUID> versionIds = new HashMap<>();
+    private final Map<Long, DisplayIds> displayIds = new HashMap<>();
+    private final Set<Long> duplicateDisplayIds = new HashSet<>();
+    private final ConcurrentSkipListMap<Long, Position> inFlight = new ConcurrentSkipListMap<>();
+    private final AtomicLong ticketCount = new AtomicLong();
+    private final AtomicLong commentCount = new AtomicLong();
+    private final AtomicReference<Exception> writeFailure = new AtomicReference<>();
+    private long lastSubmitted;
+    private long submittedTicketCount;
+    private long submittedCommentCount;
+    private int versionCount;
+    private long skippedCount;
+    private long renumberedCount;
+    private long startNanos;
+
+    private LegacyImporter(Connection connection, File workspaceDir) {
+        this.connection = connection;
+        this.workspaceDir = workspaceDir;
+    }
+
+    /**
+     * Creates an importer reading from the given connection, which is left open afterwards, and
+     * writing to the given workspace directory.
+     */
+    public static LegacyImporter create(Connection connection, File workspaceDir) {
+        return new LegacyImporter(connection, workspaceDir);
+    }
+
+    /**
+     * Sets the queries used to read the 1.x database, if the defaults don't fit it.
+     */
+    public LegacyImporter setSchema(LegacySchema schema) {
+        this.schema = schema;
+        return this;
+    }
+
+    /**
+     * Sets how many threads write ticket files. The default is one per core.
+     */
+    public LegacyImporter setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+        return this;
+    }
+
+    /**
+     * Sets how many rows the driver fetches from the database at a time, where the driver honours it.
+     */
+    public LegacyImporter setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+        return this;
+    }
+
+    /**
+     * Sets how often progress is checkpointed, logged and reported. The default is once a second.
+     */
+    public LegacyImporter setProgressIntervalMs(long intervalMs) {
+        this.progressIntervalMs = Math.max(0, intervalMs);
+        return this;
+    }
+
+    /**
+     * Sets a listener for progress reports, made about once a second (see setProgressIntervalMs)
+     * on the thread running the import.
+     */
+    public LegacyImporter setProgressListener(Consumer<Report> listener) {
+        this.progressListener = listener;
+        return this;
+    }
+
+    /**
+     * Runs the import, or the rest of it if an earlier run was interrupted.
+     *
+     * @return A Report of what was imported, including by any earlier runs of the same import.
+     * @throws IOException  If anything can't be written.
+     * @throws SQLException If anything can't be read.
+     */
+    public Report run() throws IOException, SQLException {
+        startNanos = System.nanoTime();
+        File checkpointFile = new File(workspaceDir, CHECKPOINT_FILE);
+        Properties checkpoint = readCheckpoint(checkpointFile);
+        if (Boolean.parseBoolean(checkpoint.getProperty("complete"))) {
+            logger.info("Legacy import into " + workspaceDir.getAbsolutePath() + " is already complete.");
+            return new Report(checkpoint);
+        }
+        long resumeAfter = Long.parseLong(checkpoint.getProperty("lastTicketId", String.valueOf(NOTHING_WRITTEN)));
+        submittedTicketCount = Long.parseLong(checkpoint.getProperty("tickets", "0"));
+        submittedCommentCount = Long.parseLong(checkpoint.getProperty("comments", "0"));
+        if (resumeAfter != NOTHING_WRITTEN) {
+            logger.info("Resuming legacy import after ticket " + resumeAfter);
+        }
+
+        // Projects and versions are rewritten every time; they're few, and it's harmless:
+        importProjects();
+        importVersions();
+        scanDisplayIds(resumeAfter);
+
+        lastSubmitted = resumeAfter;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(
+                threadCount, threadCount, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threadCount * 4),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "LegacyImporter-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // Once the queue is full, the reading thread writes one itself, which also keeps memory bounded:
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            importTickets(resumeAfter, writers, checkpointFile);
+        }
+        finally {
+            writers.shutdown();
+            try {
+                if (!writers.awaitTermination(1, TimeUnit.HOURS)) {
+                    throw new IOException("Timed out waiting for ticket files to be written");
+                }
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted waiting for ticket files to be written", ie);
+            }
+        }
+        checkFailure();
+
+        Report report = createReport(true);
+        writeCheckpoint(checkpointFile, report);
+        if (skippedCount > 0) {
+            logger.warning("Skipped " + skippedCount + " legacy tickets that don't belong to any project.");
+        }
+        if (renumberedCount > 0) {
+            logger.warning("Gave " + renumberedCount + " legacy tickets new display ids, as theirs were"
+                                   + " missing or already taken.");
+        }
+        logger.info("Legacy import complete: " + report);
+        return report;
+    }
+
+    private void importProjects() throws SQLException, IOException {
+        Set<String> dirNames = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement(schema.getProjectQuery());
+             ResultSet rows = statement.executeQuery()) {
+            while (rows.next()) {
+                long legacyId = rows.getLong("id");
+                Project project = new Project();
+                project.internalId = legacyUuid("project", legacyId);
+                project.prefix = rows.getString("prefix");
+                project.name = rows.getString("name");
+                project.description = rows.getString("description");
+                Date startDate = readDate(rows, "start_date");
+                project.startDate = startDate == null ? null : new YMDDate(startDate);
+
+                // Prefixes should be unique, but the 1.x database never enforced it:
+                String dirName = safeFileName(project.prefix == null ? "project" : project.prefix);
+                if (!dirNames.add(dirName)) {
+                    dirName = dirName + "-" + legacyId;
+                    dirNames.add(dirName);
+                }
+                project.sourceFile = new File(new File(workspaceDir, dirName), WorkspaceLoader.PROJECT_FILE);
+                projects.put(legacyId, project);
+            }
+        }
+    }
+
+    private void importVersions() throws SQLException, IOException {
+        try (PreparedStatement statement = connection.prepareStatement(schema.getVersionQuery());
+             ResultSet rows = statement.executeQuery()) {
+            while (rows.next()) {
+                long legacyId = rows.getLong("id");
+                Project project = projects.get(rows.getLong("project_id"));
+                if (project == null) {
+                    logger.warning("Skipping legacy version " + legacyId + ", which doesn't belong to any project.");
+                    continue;
+                }
+                ProjectVersion version = new ProjectVersion();
+                version.internalId = legacyUuid("version", legacyId);
+                version.label = rows.getString("label");
+                version.description = rows.getString("description");
+                version.startDate = readDate(rows, "start_date");
+                version.releaseDate = readDate(rows, "release_date");
+                project.addVersion(version);
+                versionIds.put(legacyId, version.internalId);
+                versionCount++;
+            }
+        }
+        for (Project project : projects.values()) {
+            project.save(project.getSourceFile());
+        }
+    }
+
+    /**
+     * Finds which display ids are taken in each project, and which tickets will need new ones.
+     * Tickets up to resumeAfter were imported by an earlier run, so any new display ids they
+     * were given are skipped over.
+     */
+    private void scanDisplayIds(long resumeAfter) throws SQLException {
+        Map<Long, Integer> renumberedBefore = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(schema.getDisplayIdQuery(),
+                                                                       ResultSet.TYPE_FORWARD_ONLY,
+                                                                       ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(fetchSize);
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    long legacyId = rows.getLong("id");
+                    long projectId = rows.getLong("project_id");
+                    if (!projects.containsKey(projectId)) {
+                        continue;
+                    }
+                    BitSet taken = displayIds.computeIfAbsent(projectId, id -> new DisplayIds()).taken;
+                    int displayId = rows.getInt("display_id");
+                    boolean renumber = rows.wasNull() || displayId <= 0;
+                    if (!renumber && taken.get(displayId)) {
+                        duplicateDisplayIds.add(legacyId);
+                        renumber = true;
+                    }
+                    if (!renumber) {
+                        taken.set(displayId);
+                    }
+                    else if (legacyId <= resumeAfter) {
+                        renumberedBefore.merge(projectId, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Long, DisplayIds> entry : displayIds.entrySet()) {
+            DisplayIds ids = entry.getValue();
+            ids.next = Math.max(1, ids.taken.length()) + renumberedBefore.getOrDefault(entry.getKey(), 0);
+        }
+    }
+
+    private void importTickets(long resumeAfter, ThreadPoolExecutor writers, File checkpointFile)
+            throws SQLException, IOException {
+        long nextProgress = System.currentTimeMillis() + progressIntervalMs;
+        try (PreparedStatement ticketStatement = prepareStreaming(schema.getTicketQuery(), resumeAfter);
+             PreparedStatement commentStatement = prepareStreaming(schema.getCommentQuery(), resumeAfter);
+             ResultSet tickets = ticketStatement.executeQuery();
+             ResultSet comments = commentStatement.executeQuery()) {
+            boolean hasComment = comments.next();
+            while (tickets.next()) {
+                checkFailure();
+                long legacyId = tickets.getLong("id");
+                long projectId = tickets.getLong("project_id");
+                Project project = projects.get(projectId);
+                Ticket ticket = project == null ? null : readTicket(tickets, legacyId, projectId, project);
+
+                // Both are in ticket id order, so this ticket's comments are next, after any orphans:
+                while (hasComment && comments.getLong("ticket_id") <= legacyId) {
+                    if (ticket != null && comments.getLong("ticket_id") == legacyId) {
+                        ticket.addComment(readComment(comments, ticket));
+                    }
+                    hasComment = comments.next();
+                }
+
+                if (ticket == null) {
+                    skippedCount++;
+                }
+                else {
+                    submit(writers, legacyId, ticket, project);
+                }
+                lastSubmitted = legacyId;
+
+                if (System.currentTimeMillis() >= nextProgress) {
+                    Report report = createReport(false);
+                    writeCheckpoint(checkpointFile, report);
+                    logger.info("Legacy import: " + report);
+                    if (progressListener != null) {
+                        progressListener.accept(report);
+                    }
+                    nextProgress = System.currentTimeMillis() + progressIntervalMs;
+                }
+            }
+        }
+    }
+
+    private void submit(ThreadPoolExecutor writers, long legacyId, Ticket ticket, Project project) {
+        inFlight.put(legacyId, new Position(lastSubmitted, submittedTicketCount, submittedCommentCount));
+        submittedTicketCount++;
+        submittedCommentCount += ticket.comments.size();
+        File projectDir = project.getSourceFile().getParentFile();
+        writers.execute(() -> {
+            // A ticket that isn't written stays in flight, so the checkpoint never moves past it:
+            try {
+                if (writeFailure.get() == null) {
+                    ModelFiles.writeAtomically(ModelFiles.getTicketFile(projectDir, ticket.displayId), ticket.toJson());
+                    ticketCount.incrementAndGet();
+                    commentCount.addAndGet(ticket.comments.size());
+                    inFlight.remove(legacyId);
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                writeFailure.compareAndSet(null, e);
+            }
+        });
+    }
+
+    private Ticket readTicket(ResultSet row, long legacyId, long projectId, Project project) throws SQLException {
+        Ticket ticket = new Ticket();
+        ticket.internalId = legacyUuid("ticket", legacyId);
+        ticket.projectId = project.getInternalId();
+        int displayId = row.getInt("display_id");
+        if (row.wasNull() || displayId <= 0 || duplicateDisplayIds.contains(legacyId)) {
+            ticket.displayId = displayIds.computeIfAbsent(projectId, id -> new DisplayIds()).next++;
+            renumberedCount++;
+        }
+        else {
+            ticket.displayId = displayId;
+        }
+        long versionId = row.getLong("version_id");
+        ticket.targetVersionId = row.wasNull() ? null : versionIds.get(versionId);
+        ticket.createDate = readDate(row, "create_date");
+        ticket.startDate = readDate(row, "start_date");
+        ticket.closeDate = readDate(row, "close_date");
+        ticket.shortDescription = row.getString("short_description");
+        ticket.longDescription = row.getString("long_description");
+        double hoursWorked = row.getDouble("hours_worked");
+        ticket.hoursWorked = row.wasNull() ? null : hoursWorked;
+        ticket.state = row.getString("state");
+        ticket.resolution = row.getString("resolution");
+        return ticket;
+    }
+
+    private TicketComment readComment(ResultSet row, Ticket ticket) throws SQLException {
+        TicketComment comment = new TicketComment();
+        comment.internalId = legacyUuid("comment", row.getLong("id"));
+        comment.ticketId = ticket.internalId;
+        comment.createDate = readDate(row, "create_date");
+        Date lastEditDate = readDate(row, "last_edit_date");
+        comment.lastEditDate = lastEditDate == null ? comment.createDate : lastEditDate;
+        comment.commentText = row.getString("comment_text");
+        return comment;
+    }
+
+    private PreparedStatement prepareStreaming(String query, long resumeAfter) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                                                                  ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        statement.setLong(1, resumeAfter);
+        return statement;
+    }
+
+    private void checkFailure() throws IOException {
+        Exception failure = writeFailure.get();
+        if (failure != null) {
+            throw failure instanceof IOException ? (IOException)failure
+                    : new IOException("Unable to write imported ticket", failure);
+        }
+    }
+
+    /**
+     * Returns the last ticket such that it, and every ticket before it, has been written, and how
+     * many tickets and comments that makes. Tickets written out of order past that point aren't
+     * counted yet, as a resumed import would write them again.
+     */
+    private Position getCheckpoint() {
+        Map.Entry<Long, Position> oldest = inFlight.firstEntry();
+        return oldest == null ? new Position(lastSubmitted, submittedTicketCount, submittedCommentCount)
+                : oldest.getValue();
+    }
+
+    private Report createReport(boolean complete) {
+        long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+        Position checkpoint = getCheckpoint();
+        return new Report(projects.size(), versionCount, checkpoint.ticketCount, checkpoint.commentCount,
+                          ticketCount.get(), commentCount.get(), elapsedMs, checkpoint.ticketId, complete);
+    }
+
+    private static Properties readCheckpoint(File file) throws IOException {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+
+    private static void writeCheckpoint(File file, Report report) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("lastTicketId", String.valueOf(report.getLastTicketId()));
+        properties.setProperty("tickets", String.valueOf(report.getTicketCount()));
+        properties.setProperty("comments", String.valueOf(report.getCommentCount()));
+        properties.setProperty("complete", String.valueOf(report.isComplete()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        properties.store(out, "TaskTracker 1.x import progress; delete this file to import again from scratch");
+        ModelFiles.writeAtomically(file, out.toByteArray());
+    }
+
+    /**
+     * Returns the internalId for a 1.x object. It's derived from the 1.x id, so that importing
+     * the same thing twice gives the same result.
+     */
+    private static UUID legacyUuid(String type, long legacyId) {
+        return UUID.nameUUIDFromBytes(("tasktracker-1.x:" + type + ":" + legacyId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a date however the 1.x database happened to store it.
+     */
+    private static Date readDate(ResultSet row, String column) throws SQLException {
+        Object value = row.getObject(column);
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Date) {
+            return new Date(((Date)value).getTime()); // java.sql dates and timestamps are subclasses
+        }
+        if (value instanceof Number) {
+            return new Date(((Number)value).longValue());
+        }
+        String text = value.toString().trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        try {
+            TemporalAccessor parsed = DATE_FORMAT.parseBest(text, LocalDateTime::from, LocalDate::from);
+            LocalDateTime dateTime = parsed instanceof LocalDateTime ? (LocalDateTime)parsed
+                    : ((LocalDate)parsed).atStartOfDay();
+            return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+        }
+        catch (DateTimeParseException e) {
+            throw new SQLException("Unrecognized date \"" + text + "\" in column " + column, e);
+        }
+    }
+
+    private static String safeFileName(String name) {
+        String safe = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        return safe.isEmpty() || safe.startsWith(".") ? "project" + safe : safe;
+    }
+
+    /**
+     * Imports from the command line: LegacyImporter jdbcUrl workspaceDir [user password]
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length != 2 && args.length != 4) {
+            System.err.println("Usage: LegacyImporter <jdbc url> <workspace dir> [user password]");
+            System.exit(1);
+        }
+        try (Connection connection = args.length == 4
+                ? DriverManager.getConnection(args[0], args[2], args[3])
+                : DriverManager.getConnection(args[0])) {
+            Report report = create(connection, new File(args[1]))
+                    .setProgressListener(progress -> System.out.println(progress))
+                    .run();
+            System.out.println(report);
+        }
+    }
+
+    /**
+     * The display ids taken in one project, and the next one to give a ticket that needs a new one.
+     */
+    private static final class DisplayIds {
+        private final BitSet taken = new BitSet();
+        private int next = 1;
+    }
+
+    /**
+     * A point in the stream of tickets: a ticket id, and how many tickets and comments come before it.
+     */
+    private static final class Position {
+        private final long ticketId;
+        private final long ticketCount;
+        private final long commentCount;
+
+        private Position(long ticketId, long ticketCount, long commentCount) {
+            this.ticketId = ticketId;
+            this.ticketCount = ticketCount;
+            this.commentCount = commentCount;
+        }
+    }
+
+    /**
+     * Where an import has got to: how much has been imported so far, and how quickly.
+     */
+    public static final class Report {
+        private final int projectCount;
+        private final int versionCount;
+        private final long ticketCount;
+        private final long commentCount;
+        private final long writtenTicketCount;
+        private final long writtenCommentCount;
+        private final long elapsedMs;
+        private final long lastTicketId;
+        private final boolean complete;
+
+        private Report(int projectCount, int versionCount, long ticketCount, long commentCount,
+                       long writtenTicketCount, long writtenCommentCount, long elapsedMs, long lastTicketId,
+                       boolean complete) {
+            this.projectCount = projectCount;
+            this.versionCount = versionCount;
+            this.ticketCount = ticketCount;
+            this.commentCount = commentCount;
+            this.writtenTicketCount = writtenTicketCount;
+            this.writtenCommentCount = writtenCommentCount;
+            this.elapsedMs = elapsedMs;
+            this.lastTicketId = lastTicketId;
+            this.complete = complete;
+        }
+
+        private Report(Properties checkpoint) {
+            this(0, 0, Long.parseLong(checkpoint.getProperty("tickets", "0")),
+                 Long.parseLong(checkpoint.getProperty("comments", "0")), 0, 0, 0,
+                 Long.parseLong(checkpoint.getProperty("lastTicketId", String.valueOf(NOTHING_WRITTEN))), true);
+        }
+
+        public int getProjectCount() {
+            return projectCount;
+        }
+
+        public int getVersionCount() {
+            return versionCount;
+        }
+
+        /**
+         * Returns how many tickets have been imported up to getLastTicketId(), by this run and any
+         * earlier ones of the same import.
+         */
+        public long getTicketCount() {
+            return ticketCount;
+        }
+
+        public long getCommentCount() {
+            return commentCount;
+        }
+
+        /**
+         * Returns how long this run has taken so far.
+         */
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        /**
+         * Returns the 1.x id of the last ticket before which everything has been written. An
+         * interrupted import resumes from here.
+         */
+        public long getLastTicketId() {
+            return lastTicketId;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * Returns tickets written per second by this run.
+         */
+        public double getTicketsPerSecond() {
+            return elapsedMs == 0 ? 0 : writtenTicketCount * 1000.0 / elapsedMs;
+        }
+
+        public double getCommentsPerSecond() {
+            return elapsedMs == 0 ? 0 : writtenCommentCount * 1000.0 / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d projects, %d versions, %d tickets, %d comments in %.1fs"
+                                         + " (%.0f tickets/s, %.0f comments/s)%s",
+                                 projectCount, versionCount, getTicketCount(), getCommentCount(), elapsedMs / 1000.0,
+                                 getTicketsPerSecond(), getCommentsPerSecond(), complete ? "" : ", in progress");
+        }
+    }
+}
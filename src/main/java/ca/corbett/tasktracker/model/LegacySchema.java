@@ -0,0 +1,102 @@
+package ca.corbett.tasktracker.model;
+
+/**
+ * The queries LegacyImporter uses to read a TaskTracker 1.x database. The defaults match the
+ * tables of the 1.x sqlite DAOs; a database that differs (an older build, or a hand-made export)
+ * can be imported by replacing whichever queries don't fit. A replacement only has to return the
+ * same column labels, so aliasing is usually all that's needed, for example
+ * "SELECT ticket_key AS display_id, ...".
+ * <p>
+ * Dates may be stored as SQL dates or timestamps, as epoch millis, or as text in yyyy-MM-dd form,
+ * optionally followed by a time. Every column listed for a query must be present, but any of them
+ * other than the ids may be null.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class LegacySchema {
+
+    private String projectQuery = "SELECT id, prefix, name, description, start_date FROM project";
+
+    private String versionQuery = "SELECT id, project_id, label, description, start_date, release_date"
+            + " FROM project_version";
+
+    private String ticketQuery = "SELECT id, project_id, version_id, display_id, create_date, start_date,"
+            + " close_date, short_description, long_description, hours_worked, state, resolution"
+            + " FROM ticket WHERE id > ? ORDER BY id";
+
+    private String displayIdQuery = "SELECT id, project_id, display_id FROM ticket ORDER BY id";
+
+    private String commentQuery = "SELECT id, ticket_id, create_date, last_edit_date, comment_text"
+            + " FROM ticket_comment WHERE ticket_id > ? ORDER BY ticket_id, id";
+
+    public String getProjectQuery() {
+        return projectQuery;
+    }
+
+    /**
+     * Sets the query for all projects. Columns: id, prefix, name, description, start_date.
+     */
+    public LegacySchema setProjectQuery(String query) {
+        projectQuery = query;
+        return this;
+    }
+
+    public String getVersionQuery() {
+        return versionQuery;
+    }
+
+    /**
+     * Sets the query for all project versions. Columns: id, project_id, label, description,
+     * start_date, release_date.
+     */
+    public LegacySchema setVersionQuery(String query) {
+        versionQuery = query;
+        return this;
+    }
+
+    public String getTicketQuery() {
+        return ticketQuery;
+    }
+
+    /**
+     * Sets the query for tickets. Columns: id, project_id, version_id, display_id, create_date,
+     * start_date, close_date, short_description, long_description, hours_worked, state, resolution.
+     * It must take one parameter, and return only tickets with an id greater than it, in id order;
+     * that's what lets an interrupted import pick up where it left off.
+     */
+    public LegacySchema setTicketQuery(String query) {
+        ticketQuery = query;
+        return this;
+    }
+
+    public String getDisplayIdQuery() {
+        return displayIdQuery;
+    }
+
+    /**
+     * Sets the query for every ticket's display id. Columns: id, project_id, display_id. It takes no
+     * parameters, and must return every ticket, in id order. It's read once, before the tickets
+     * themselves, so that tickets with no display id, or one that another ticket already has, can be
+     * given new ones that come out the same however many times the import is interrupted.
+     */
+    public LegacySchema setDisplayIdQuery(String query) {
+        displayIdQuery = query;
+        return this;
+    }
+
+    public String getCommentQuery() {
+        return commentQuery;
+    }
+
+    /**
+     * Sets the query for ticket comments. Columns: id, ticket_id, create_date, last_edit_date,
+     * comment_text. Like the ticket query, it must take one parameter, and return only comments
+     * for tickets with an id greater than it, ordered by ticket_id. Comments are matched up with
+     * their tickets as both are read, so neither ever has to be held in memory all at once.
+     */
+    public LegacySchema setCommentQuery(String query) {
+        commentQuery = query;
+        return this;
+    }
+}
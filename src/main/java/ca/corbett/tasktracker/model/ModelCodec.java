@@ -0,0 +1,454 @@
+package ca.corbett.tasktracker.model;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes the model json files with Jackson's streaming parser and generator, rather than
+ * by binding whole documents with the ObjectMapper. This lets us fill in model objects one field
+ * at a time as they're parsed, and, when we only want a TicketHeader, skip straight past the long
+ * description and the comments without ever decoding them into Strings.
+ * <p>
+ * In the PRETTY StorageFormat, the output is exactly what the ObjectMapper in Project would write
+ * (same field order, same pretty printing), so files written either way are interchangeable and
+ * fingerprints still match. Unknown fields are skipped, as they are by the ObjectMapper. Parser and
+ * generator buffers are recycled per thread by the shared JsonFactory, so they're reused from one
+ * file to the next.
+ * </p>
+ * <p>
+ * Values that repeat across many Tickets (project and version ids, states, resolutions, the project
+ * prefix) are shared through the Interner as they're read, so that a large Project doesn't hold
+ * thousands of identical copies of each.
+ * </p>
+ * <p>
+ * Content is written in the current StorageFormat unless told otherwise, and is read in whatever
+ * format it turns out to be in: gzip content is recognized by its header, and json is json
+ * whether or not it's indented.
+ * </p>
+ *
+ * @author scorbo2
+ */
+final class ModelCodec {
+
+    private static final JsonFactory jsonFactory = Project.objectMapper.getFactory();
+
+    /** Roughly what a typical Ticket file weighs, so most writes never have to grow the buffer. **/
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /** The first two bytes of any gzip stream. **/
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+
+    private static volatile StorageFormat storageFormat = StorageFormat.PRETTY;
+
+    private ModelCodec() {
+    }
+
+    /**
+     * Sets the format in which model files are written from now on. Existing files are left
+     * as they are until they're next saved.
+     */
+    static void setStorageFormat(StorageFormat format) {
+        storageFormat = format;
+    }
+
+    static StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    /**
+     * Reports which format the given file content is in. Indentation is all that tells PRETTY from
+     * COMPACT, so this only looks as far as the first line break.
+     */
+    static StorageFormat detectFormat(byte[] content) {
+        if (isGzip(content)) {
+            return StorageFormat.GZIP;
+        }
+        for (byte b : content) {
+            if (b == '\n') {
+                return StorageFormat.PRETTY;
+            }
+        }
+        return StorageFormat.COMPACT;
+    }
+
+    /**
+     * Parses a complete Ticket, including its comments. Comments are owned by the returned Ticket.
+     */
+    static Ticket readTicket(byte[] content) throws IOException {
+        Ticket ticket = new Ticket();
+        try (JsonParser parser = createParser(content)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "internalId": ticket.internalId = readUuid(parser); break;
+                    case "projectId": ticket.projectId = readSharedUuid(parser); break;
+                    case "targetVersionId": ticket.targetVersionId = readSharedUuid(parser); break;
+                    case "displayId": ticket.displayId = readInt(parser); break;
+                    case "createDate": ticket.createDate = readDate(parser); break;
+                    case "startDate": ticket.startDate = readDate(parser); break;
+                    case "closeDate": ticket.closeDate = readDate(parser); break;
+                    case "shortDescription": ticket.shortDescription = readString(parser); break;
+                    case "longDescription": ticket.longDescription = readString(parser); break;
+                    case "hoursWorked": ticket.hoursWorked = readDouble(parser); break;
+                    case "state": ticket.state = readSharedString(parser); break;
+                    case "resolution": ticket.resolution = readSharedString(parser); break;
+                    case "comments": readComments(parser, ticket); break;
+                    default: parser.skipChildren();
+                }
+            }
+        }
+
+        // Every comment refers back to its Ticket, so they may as well all share one UUID:
+        for (TicketComment comment : ticket.comments) {
+            if (ticket.internalId != null && ticket.internalId.equals(comment.ticketId)) {
+                comment.ticketId = ticket.internalId;
+            }
+        }
+        return ticket;
+    }
+
+    /**
+     * Parses just the TicketHeader fields out of a Ticket file. The long description and the
+     * comments are skipped over by the parser without being decoded.
+     */
+    static TicketHeader readTicketHeader(byte[] content) throws IOException {
+        UUID internalId = null;
+        UUID projectId = null;
+        UUID targetVersionId = null;
+        int displayId = 0;
+        Date createDate = null;
+        Date startDate = null;
+        Date closeDate = null;
+        String shortDescription = null;
+        Double hoursWorked = null;
+        String state = null;
+        String resolution = null;
+        try (JsonParser parser = createParser(content)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "internalId": internalId = readUuid(parser); break;
+                    case "projectId": projectId = readSharedUuid(parser); break;
+                    case "targetVersionId": targetVersionId = readSharedUuid(parser); break;
+                    case "displayId": displayId = readInt(parser); break;
+                    case "createDate": createDate = readDate(parser); break;
+                    case "startDate": startDate = readDate(parser); break;
+                    case "closeDate": closeDate = readDate(parser); break;
+                    case "shortDescription": shortDescription = readString(parser); break;
+                    case "hoursWorked": hoursWorked = readDouble(parser); break;
+                    case "state": state = readSharedString(parser); break;
+                    case "resolution": resolution = readSharedString(parser); break;
+                    default: parser.skipChildren(); // longDescription, comments, and anything we don't know
+                }
+            }
+        }
+        return TicketHeader.of(internalId, projectId, targetVersionId, displayId, createDate, startDate,
+                               closeDate, shortDescription, hoursWorked, state, resolution);
+    }
+
+    /**
+     * Writes the given Ticket, with its comments, in the current StorageFormat.
+     */
+    static byte[] writeTicket(Ticket ticket) throws IOException {
+        return writeTicket(ticket, storageFormat);
+    }
+
+    /**
+     * Writes the given Ticket, with its comments, in the given format.
+     */
+    static byte[] writeTicket(Ticket ticket, StorageFormat format) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder(INITIAL_BUFFER_SIZE);
+        try (JsonGenerator generator = createGenerator(out, format)) {
+            generator.writeStartObject();
+            writeUuid(generator, "internalId", ticket.internalId);
+            writeUuid(generator, "projectId", ticket.projectId);
+            writeUuid(generator, "targetVersionId", ticket.targetVersionId);
+            generator.writeNumberField("displayId", ticket.displayId);
+            writeDate(generator, "createDate", ticket.createDate);
+            writeDate(generator, "startDate", ticket.startDate);
+            writeDate(generator, "closeDate", ticket.closeDate);
+            generator.writeStringField("shortDescription", ticket.shortDescription);
+            generator.writeStringField("longDescription", ticket.longDescription);
+            writeDouble(generator, "hoursWorked", ticket.hoursWorked);
+            generator.writeStringField("state", ticket.state);
+            generator.writeStringField("resolution", ticket.resolution);
+            generator.writeArrayFieldStart("comments");
+            for (TicketComment comment : ticket.comments) {
+                generator.writeStartObject();
+                writeUuid(generator, "internalId", comment.internalId);
+                writeUuid(generator, "ticketId", comment.ticketId);
+                writeDate(generator, "createDate", comment.createDate);
+                writeDate(generator, "lastEditDate", comment.lastEditDate);
+                generator.writeStringField("commentText", comment.commentText);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Parses a Project, including its versions, which are owned by the returned Project.
+     * Tickets are not part of the Project file, and are not loaded here.
+     */
+    static Project readProject(byte[] content) throws IOException {
+        Project project = new Project();
+        try (JsonParser parser = createParser(content)) {
+            expectObject(parser);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "internalId": project.internalId = readSharedUuid(parser); break;
+                    case "prefix": project.prefix = readSharedString(parser); break;
+                    case "name": project.name = readString(parser); break;
+                    case "description": project.description = readString(parser); break;
+                    case "startDate": project.startDate = readYmdDate(parser); break;
+                    case "bgColor": project.bgColor = readInteger(parser); break;
+                    case "fgColor": project.fgColor = readInteger(parser); break;
+                    case "versions": readVersions(parser, project.versions); break;
+                    default: parser.skipChildren();
+                }
+            }
+        }
+        for (ProjectVersion version : project.versions) {
+            version.setOwner(project);
+        }
+        return project;
+    }
+
+    /**
+     * Writes the given Project, with its versions, in the current StorageFormat.
+     */
+    static byte[] writeProject(Project project) throws IOException {
+        return writeProject(project, storageFormat);
+    }
+
+    /**
+     * Writes the given Project, with its versions, in the given format.
+     */
+    static byte[] writeProject(Project project, StorageFormat format) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder(INITIAL_BUFFER_SIZE);
+        try (JsonGenerator generator = createGenerator(out, format)) {
+            generator.writeStartObject();
+            writeUuid(generator, "internalId", project.internalId);
+            generator.writeStringField("prefix", project.prefix);
+            generator.writeStringField("name", project.name);
+            generator.writeStringField("description", project.description);
+            generator.writeStringField("startDate", project.startDate == null ? null : project.startDate.toString());
+            writeInteger(generator, "bgColor", project.bgColor);
+            writeInteger(generator, "fgColor", project.fgColor);
+            generator.writeArrayFieldStart("versions");
+            for (ProjectVersion version : project.versions) {
+                generator.writeStartObject();
+                writeUuid(generator, "internalId", version.internalId);
+                writeDate(generator, "startDate", version.startDate);
+                writeDate(generator, "releaseDate", version.releaseDate);
+                generator.writeStringField("label", version.label);
+                generator.writeStringField("description", version.description);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private static void readComments(JsonParser parser, Ticket ticket) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            TicketComment comment = new TicketComment();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "internalId": comment.internalId = readUuid(parser); break;
+                    case "ticketId": comment.ticketId = readUuid(parser); break;
+                    case "createDate": comment.createDate = readDate(parser); break;
+                    case "lastEditDate": comment.lastEditDate = readDate(parser); break;
+                    case "commentText": comment.commentText = readString(parser); break;
+                    default: parser.skipChildren();
+                }
+            }
+            comment.setOwner(ticket);
+            ticket.comments.add(comment);
+        }
+    }
+
+    private static void readVersions(JsonParser parser, List<ProjectVersion> versions) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            ProjectVersion version = new ProjectVersion();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "internalId": version.internalId = readSharedUuid(parser); break;
+                    case "startDate": version.startDate = readDate(parser); break;
+                    case "releaseDate": version.releaseDate = readDate(parser); break;
+                    case "label": version.label = readString(parser); break;
+                    case "description": version.description = readString(parser); break;
+                    default: parser.skipChildren();
+                }
+            }
+            versions.add(version);
+        }
+    }
+
+    private static JsonParser createParser(byte[] content) throws IOException {
+        if (isGzip(content)) {
+            return jsonFactory.createParser(new GZIPInputStream(new ByteArrayInputStream(content)));
+        }
+        return jsonFactory.createParser(content);
+    }
+
+    /**
+     * Creates a generator that writes to the given buffer in the given format. Closing the
+     * generator also closes out the gzip stream, if there is one.
+     */
+    private static JsonGenerator createGenerator(ByteArrayBuilder out, StorageFormat format) throws IOException {
+        if (format == StorageFormat.GZIP) {
+            return jsonFactory.createGenerator(new GZIPOutputStream(out));
+        }
+        JsonGenerator generator = jsonFactory.createGenerator(out);
+        if (format == StorageFormat.PRETTY) {
+            generator.useDefaultPrettyPrinter();
+        }
+        return generator;
+    }
+
+    private static boolean isGzip(byte[] content) {
+        return content.length >= 2 && (content[0] & 0xff) == GZIP_MAGIC_0 && (content[1] & 0xff) == GZIP_MAGIC_1;
+    }
+
+    private static void expectObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a json object");
+        }
+    }
+
+    private static String readString(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    private static UUID readUuid(JsonParser parser) throws IOException {
+        String value = readString(parser);
+        try {
+            return value == null || value.isEmpty() ? null : UUID.fromString(value);
+        }
+        catch (IllegalArgumentException e) {
+            throw new JsonParseException(parser, "Invalid UUID: " + value, e);
+        }
+    }
+
+    /**
+     * Reads a UUID that is likely to be repeated across many model objects, and returns the shared instance.
+     */
+    private static UUID readSharedUuid(JsonParser parser) throws IOException {
+        return Interner.UUIDS.intern(readUuid(parser));
+    }
+
+    /**
+     * Reads a String that is likely to be repeated across many model objects, and returns the shared instance.
+     */
+    private static String readSharedString(JsonParser parser) throws IOException {
+        return Interner.STRINGS.intern(readString(parser));
+    }
+
+    private static int readInt(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? 0 : parser.getValueAsInt();
+    }
+
+    private static Integer readInteger(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsInt();
+    }
+
+    private static Double readDouble(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsDouble();
+    }
+
+    /**
+     * Dates are written as epoch millis, but the ObjectMapper also accepts ISO-8601 strings,
+     * so we do too, in case a file has been edited by hand.
+     */
+    private static Date readDate(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_NUMBER_INT:
+                return new Date(parser.getLongValue());
+            case VALUE_STRING:
+                try {
+                    return new StdDateFormat().parse(parser.getText());
+                }
+                catch (ParseException e) {
+                    throw new JsonParseException(parser, "Invalid date: " + parser.getText(), e);
+                }
+            default:
+                throw new JsonParseException(parser, "Expected a date, not " + parser.currentToken());
+        }
+    }
+
+    private static YMDDate readYmdDate(JsonParser parser) throws IOException {
+        String value = readString(parser);
+        return value == null ? null : new YMDDate(value);
+    }
+
+    private static void writeUuid(JsonGenerator generator, String field, UUID value) throws IOException {
+        generator.writeStringField(field, value == null ? null : value.toString());
+    }
+
+    private static void writeDate(JsonGenerator generator, String field, Date value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(field);
+        }
+        else {
+            generator.writeNumberField(field, value.getTime());
+        }
+    }
+
+    private static void writeDouble(JsonGenerator generator, String field, Double value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(field);
+        }
+        else {
+            generator.writeNumberField(field, value);
+        }
+    }
+
+    private static void writeInteger(JsonGenerator generator, String field, Integer value) throws IOException {
+        if (value == null) {
+            generator.writeNullField(field);
+        }
+        else {
+            generator.writeNumberField(field, value);
+        }
+    }
+}
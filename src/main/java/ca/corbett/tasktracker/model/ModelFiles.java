@@ -0,0 +1,173 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility methods for laying out and writing model files on disk. A Project lives in its own
+ * directory, with a project.json file at the top and its Tickets stored one per file underneath
+ * a "tickets" subdirectory. To keep any one directory from growing to an unmanageable size,
+ * Tickets are bucketed into subdirectories by displayId range, so ticket 12345 ends up
+ * in tickets/0012/12345.json.
+ *
+ * @author scorbo2
+ */
+public final class ModelFiles {
+
+    /** The name of the subdirectory inside a Project directory where Tickets are stored. **/
+    static final String TICKETS_DIR = "tickets";
+
+    /** How many Tickets go into each bucket directory. **/
+    static final int BUCKET_SIZE = 1000;
+
+    private static final Set<PosixFilePermission> TEMP_FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+    private ModelFiles() {
+    }
+
+    /**
+     * Returns the tickets directory for the given Project directory.
+     */
+    static File getTicketsDir(File projectDir) {
+        return new File(projectDir, TICKETS_DIR);
+    }
+
+    /**
+     * Returns the file where the Ticket with the given displayId should be stored.
+     */
+    static File getTicketFile(File projectDir, int displayId) {
+        File bucketDir = new File(getTicketsDir(projectDir), String.format("%04d", displayId / BUCKET_SIZE));
+        return new File(bucketDir, displayId + ".json");
+    }
+
+    /**
+     * Finds all Ticket files under the given Project directory, keyed by their path relative
+     * to the tickets directory. The file attributes come along for free with the directory
+     * listing, so callers can check timestamps and sizes without any further file system calls.
+     *
+     * @param projectDir The directory containing the project.json file.
+     * @return A map of relative path to file attributes, empty if there are no Tickets.
+     * @throws IOException If the tickets directory can't be listed.
+     */
+    static Map<String, BasicFileAttributes> listTicketFiles(File projectDir) throws IOException {
+        Map<String, BasicFileAttributes> files = new HashMap<>();
+        Path ticketsDir = getTicketsDir(projectDir).toPath();
+        if (!Files.isDirectory(ticketsDir)) {
+            return files;
+        }
+        Files.walkFileTree(ticketsDir, EnumSet.noneOf(FileVisitOption.class), 2, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".json")) {
+                    files.put(ticketsDir.relativize(file).toString(), attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    /**
+     * Writes to the given target file in a crash-safe way: the content is written to a temp file
+     * in the same directory and then renamed over top of the target. If we die partway through,
+     * the target file is either the complete old version or the complete new version,
+     * never a half-written mess.
+     *
+     * @param target  The file to write.
+     * @param content The file content.
+     * @throws IOException If the write or the rename fails.
+     */
+    public static void writeAtomically(File target, byte[] content) throws IOException {
+        writeAtomically(target, content, false);
+    }
+
+    /**
+     * Writes to the given target file in a crash-safe way, as above, optionally forcing the content
+     * to the storage device before the rename. Without that, a power failure (as opposed to a crash)
+     * shortly after the write could still leave an empty or partial file, as the OS may not have
+     * written the data out yet. Forcing is much slower, so it's left to the caller to decide.
+     * Note that this doesn't force the directory entry; see syncDirectory() for that.
+     *
+     * @param target  The file to write.
+     * @param content The file content.
+     * @param fsync   Whether to force the content to the storage device before the rename.
+     * @throws IOException If the write or the rename fails.
+     */
+    static void writeAtomically(File target, byte[] content, boolean fsync) throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        // Checked again after mkdirs(), as another thread may have created it in the meantime:
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Unable to create directory " + dir.getAbsolutePath());
+        }
+
+        // A uniquely named temp file, so that two writers to the same target can't write into each
+        // other's temp file; whichever moves its complete file into place last wins. The leading dot
+        // keeps ProjectWatcher from paying attention to it.
+        Path tempFile = createTempFile(dir.toPath(), "." + target.getName() + ".");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            try {
+                Files.move(tempFile, target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                           StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException ignored) {
+                // Some file systems can't do it, so settle for a regular replace:
+                Files.move(tempFile, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Creates an empty temp file in the given directory. Files.createTempFile() on its own gives
+     * owner-only permissions, so where the file system supports it we ask for the usual rw-r--r--
+     * (still subject to the umask), which is what a model file written any other way would get.
+     */
+    private static Path createTempFile(Path dir, String prefix) throws IOException {
+        if (dir.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            return Files.createTempFile(dir, prefix, ".tmp",
+                                        PosixFilePermissions.asFileAttribute(TEMP_FILE_PERMISSIONS));
+        }
+        return Files.createTempFile(dir, prefix, ".tmp");
+    }
+
+    /**
+     * Forces the given directory's entries (such as a file that was just renamed into it) to the
+     * storage device. Not every platform supports this; where it isn't, this does nothing.
+     */
+    static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+        catch (IOException ignored) {
+            // Windows, for one, won't open a directory this way. Nothing more we can do there.
+        }
+    }
+}
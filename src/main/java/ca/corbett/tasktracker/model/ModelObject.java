@@ -0,0 +1,94 @@
+package ca.corbett.tasktracker.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for all model objects, providing cheap change tracking. Every mutation bumps
+ * a modification counter, and every load or save records the counter value at that moment,
+ * so asking whether an object has changed in memory is just a comparison of two longs.
+ * <p>
+ * Objects that don't get their own file on disk (TicketComment, ProjectVersion) have an owner,
+ * which is the object that does get saved with them. Modifying one of those objects also
+ * counts as a modification of its owner.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public abstract class ModelObject {
+
+    private static final AtomicLong editCount = new AtomicLong();
+
+    @JsonIgnore
+    private long modCount;
+
+    @JsonIgnore
+    private long savedModCount = -1;
+
+    @JsonIgnore
+    private ModelObject owner;
+
+    /**
+     * Returns the number of modifications that have been made to this object (or to any object
+     * that it owns) since it was created or loaded. Callers can stash this value and compare
+     * it later to see if anything has changed in the meantime.
+     *
+     * @return A counter that increases with every modification.
+     */
+    public long getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Returns a counter that goes up with every modification to any model object at all. If it
+     * hasn't changed, nothing has been modified anywhere, so there's nothing to look for.
+     */
+    static long getEditCount() {
+        return editCount.get();
+    }
+
+    /**
+     * Reports whether this object has been modified in memory since it was last loaded or saved.
+     * An object that has never been loaded or saved always has unsaved changes.
+     *
+     * @return true if there are changes here that have not yet been written to disk.
+     */
+    public boolean hasUnsavedChanges() {
+        return modCount != savedModCount;
+    }
+
+    /**
+     * Should be invoked by subclasses whenever any persistent field is changed.
+     */
+    protected void markModified() {
+        modCount++;
+        editCount.incrementAndGet();
+        if (owner != null) {
+            owner.markModified();
+        }
+    }
+
+    /**
+     * Should be invoked by subclasses after a successful load or save.
+     */
+    protected void markSaved() {
+        savedModCount = modCount;
+    }
+
+    /**
+     * Records that this object was saved as it was when its modification count was the given value.
+     * This is for saves that happen in the background: if the object has been modified again since
+     * it was written out, it correctly still has unsaved changes.
+     */
+    protected void markSaved(long atModCount) {
+        savedModCount = atModCount;
+    }
+
+    /**
+     * Sets the object that gets saved along with this one.
+     */
+    void setOwner(ModelObject owner) {
+        this.owner = owner;
+    }
+}
@@ -1,9 +1,13 @@
 package ca.corbett.tasktracker.model;
 
 import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.diagnostics.Counter;
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.diagnostics.OperationTimer;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
@@ -11,14 +15,27 @@ import java.awt.Color;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
 
 /**
  * Represents a Project, which has zero or more ProjectVersions that link to it, as well
  * as zero or more Tickets that link to it. Internally, we use the internalId field to
  * reference other model objects. The internalId field is never surfaced in the UI.
  */
-public class Project {
+public class Project extends ModelObject {
+
+    private static final Logger logger = Logger.getLogger(Project.class.getName());
+    private static final OperationTimer loadTimer = Metrics.timer("project.load");
+    private static final OperationTimer saveTimer = Metrics.timer("project.save");
+    private static final OperationTimer dirtyCheckTimer = Metrics.timer("project.isDirty");
+    private static final Counter dirtyCheckReads = Metrics.counter("project.isDirty.fileReads");
+
     protected UUID internalId;
     protected String prefix;
     protected String name;
@@ -26,31 +43,112 @@ public class Project {
     protected YMDDate startDate;
     protected Integer bgColor;
     protected Integer fgColor;
+    protected final List<ProjectVersion> versions = new ArrayList<>();
 
     @JsonIgnore
     protected File sourceFile;
 
+    @JsonIgnore
+    protected FileFingerprint fingerprint;
+
+    @JsonIgnore
+    protected final TicketRepository tickets = new TicketRepository(this);
+
+    @JsonIgnore
+    private final List<ProjectSaveListener> saveListeners = new CopyOnWriteArrayList<>();
+
+    // Built on first use, as the colors are asked for on every paint of every ticket cell:
+    @JsonIgnore
+    private Color bgColorCache;
+
+    @JsonIgnore
+    private Color fgColorCache;
+
     @JsonIgnore
     protected final static ObjectMapper objectMapper;
 
+    @JsonIgnore
+    private static volatile boolean snapshotsEnabled = true;
+
     protected Project() { }
 
     static {
         objectMapper = new ObjectMapper();
         objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        // Model objects are persisted by field, so that setters are free to have side effects
+        // (change tracking, edit timestamps, etc) without those kicking in during a load:
+        objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE);
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
     }
 
     /**
-     * Instantiates a Project from a json file containing all metadata.
+     * Instantiates a Project from a json file containing all metadata. The headers for all Tickets
+     * stored in the tickets directory alongside the given file will also be loaded, by way of the
+     * binary ticket snapshot if it's enabled and up to date (see setSnapshotsEnabled). Full Tickets
+     * are loaded on demand through getTicketRepository().
      *
      * @param srcFile A Project file in json format.
      * @return A populated Project instance.
      * @throws IOException If the file cannot be loaded.
      */
     public static Project load(File srcFile) throws IOException {
-        Project project = objectMapper.readValue(srcFile, Project.class);
-        project.sourceFile = srcFile;
+        long start = loadTimer.start();
+        try {
+            byte[] content = Files.readAllBytes(srcFile.toPath());
+            Project project = ModelCodec.readProject(content);
+            project.sourceFile = srcFile;
+            project.fingerprint = FileFingerprint.of(srcFile, content);
+            project.markSaved();
+
+            project.tickets.load(srcFile.getAbsoluteFile().getParentFile(), snapshotsEnabled);
+            return project;
+        }
+        finally {
+            loadTimer.stop(start);
+        }
+    }
+
+    /**
+     * By default, load() keeps a compact binary snapshot of all TicketHeaders next to the Project file,
+     * so that opening a large Project doesn't require parsing every Ticket file. The json files
+     * are always the real data; the snapshot is just a cache that is rebuilt whenever it's out of date.
+     * This can be disabled if the extra file is unwanted.
+     *
+     * @param enabled Whether load() should use (and maintain) ticket snapshots.
+     */
+    public static void setSnapshotsEnabled(boolean enabled) {
+        snapshotsEnabled = enabled;
+    }
+
+    /**
+     * Sets the format in which Project and Ticket files are written from now on. The default is
+     * PRETTY. Files are read in whatever format they were written in, so changing this never makes
+     * existing Projects unreadable; each file simply changes format the next time it's saved.
+     * To convert a whole Project at once, see StorageMigration.
+     *
+     * @param format The StorageFormat for all subsequent saves.
+     */
+    public static void setStorageFormat(StorageFormat format) {
+        ModelCodec.setStorageFormat(format);
+    }
+
+    public static StorageFormat getStorageFormat() {
+        return ModelCodec.getStorageFormat();
+    }
+
+    /**
+     * Parses a Project, with its versions, from json content that didn't come from its own file
+     * (a history record, for example). The result is detached: it has no source file, and no Tickets.
+     *
+     * @param content Project json, in any StorageFormat.
+     * @return A populated Project instance.
+     * @throws IOException If the content can't be parsed.
+     */
+    public static Project fromJson(byte[] content) throws IOException {
+        Project project = ModelCodec.readProject(content);
+        project.markSaved();
         return project;
     }
 
@@ -73,17 +171,29 @@ public class Project {
 
     public Project setDescription(String desc) {
         description = desc;
+        markModified();
         return this;
     }
 
     public Project setStartDate(YMDDate date) {
         startDate = date;
+        markModified();
         return this;
     }
 
     public Project setColors(Color bg, Color fg) {
         bgColor = bg.getRGB();
         fgColor = fg.getRGB();
+        bgColorCache = null;
+        fgColorCache = null;
+        markModified();
+        return this;
+    }
+
+    public Project addVersion(ProjectVersion version) {
+        versions.add(version);
+        version.setOwner(this);
+        markModified();
         return this;
     }
 
@@ -108,17 +218,55 @@ public class Project {
     }
 
     public Color getBgColor() {
-        return new Color(bgColor);
+        if (bgColorCache == null && bgColor != null) {
+            bgColorCache = new Color(bgColor);
+        }
+        return bgColorCache;
     }
 
     public Color getFgColor() {
-        return new Color(fgColor);
+        if (fgColorCache == null && fgColor != null) {
+            fgColorCache = new Color(fgColor);
+        }
+        return fgColorCache;
+    }
+
+    public List<ProjectVersion> getVersions() {
+        return Collections.unmodifiableList(versions);
     }
 
     public File getSourceFile() {
         return sourceFile;
     }
 
+    /**
+     * Creates a new Ticket in this Project with the next available displayId.
+     * The Ticket will not exist on disk until this Project is saved.
+     *
+     * @param shortDescription A brief description of the new Ticket.
+     * @return The new Ticket.
+     */
+    public Ticket createTicket(String shortDescription) {
+        return tickets.create(shortDescription);
+    }
+
+    public void addProjectSaveListener(ProjectSaveListener listener) {
+        saveListeners.add(listener);
+    }
+
+    public void removeProjectSaveListener(ProjectSaveListener listener) {
+        saveListeners.remove(listener);
+    }
+
+    /**
+     * Returns the TicketRepository through which all Tickets in this Project can be accessed.
+     *
+     * @return The TicketRepository for this Project.
+     */
+    public TicketRepository getTicketRepository() {
+        return tickets;
+    }
+
     /**
      * Checks the original file on disk (if one has been created for this Project)
      * and reports whether any differences exist between this instance in memory
@@ -129,59 +277,178 @@ public class Project {
      * </ol>
      * If any differences exist, we return true. If this Project has not yet been saved to disk,
      * we also return true.
+     * <p>
+     * This is cheap in the common case: in-memory changes are tracked as they happen, and the
+     * file on disk is only read if its timestamp or size has changed since we last read or wrote it.
+     * </p>
      *
      * @return true if any differences exist between this instance and the disk version.
      * @throws IOException If the source file can no longer be loaded.
      */
     public boolean isDirty() throws IOException {
-        // If we have not yet been saved to disk, then we're dirty:
-        if (sourceFile == null) {
-            return true;
-        }
+        long start = dirtyCheckTimer.start();
+        try {
+            // If we have not yet been saved to disk, then we're dirty:
+            if (sourceFile == null) {
+                return true;
+            }
+
+            // If the source file has since been deleted, we are dirty:
+            if (!sourceFile.exists()) {
+                return true;
+            }
+
+            // If we've been changed in memory, we're dirty. This is the common case, and it's cheap:
+            if (hasUnsavedChanges()) {
+                return true;
+            }
+
+            // If the file has the same timestamp and size as when we last read or wrote it,
+            // we can assume nobody has touched it, and there's no need to read it:
+            if (fingerprint != null && fingerprint.matchesFile(sourceFile)) {
+                return false;
+            }
+
+            // Otherwise, someone has at least touched the file. If the content is byte-for-byte
+            // what we last read or wrote, then nothing has really changed:
+            dirtyCheckReads.increment();
+            byte[] currentFileContent = Files.readAllBytes(sourceFile.toPath());
+            if (fingerprint != null && fingerprint.matchesContent(currentFileContent)) {
+                fingerprint = FileFingerprint.of(sourceFile, currentFileContent);
+                return false;
+            }
 
-        // If the source file has since been deleted, we are dirty:
-        if (sourceFile.exists()) {
-            return true;
+            // Parsing the file and writing it back out the way we would ignores any formatting
+            // differences (properties in the wrong order, whitespace in the json, etc).
+            try {
+                byte[] normalized = ModelCodec.writeProject(ModelCodec.readProject(currentFileContent),
+                                                            StorageFormat.COMPACT);
+                if (Arrays.equals(normalized, ModelCodec.writeProject(this, StorageFormat.COMPACT))) {
+                    fingerprint = FileFingerprint.of(sourceFile, currentFileContent);
+                    return false;
+                }
+                return true;
+            }
+            catch (Exception e) {
+                return true; // If we can't parse, assume dirty
+            }
         }
+        finally {
+            dirtyCheckTimer.stop(start);
+        }
+    }
 
-        String currentFileContent = Files.readString(sourceFile.toPath());
-        String currentObjectJson = objectMapper.writeValueAsString(this);
+    /**
+     * Returns this Project as it would be written to disk.
+     */
+    byte[] toJson() throws IOException {
+        return ModelCodec.writeProject(this);
+    }
 
-        // Using readTree should ignore any formatting differences (properties in the
-        // wrong order, whitespace in the json, etc).
-        try {
-            JsonNode fileNode = objectMapper.readTree(currentFileContent);
-            JsonNode objectNode = objectMapper.readTree(currentObjectJson);
-            return !fileNode.equals(objectNode);
+    /**
+     * Returns this Project, with its versions, as json in the given format, whatever format
+     * is used for saving.
+     */
+    public byte[] toJson(StorageFormat format) throws IOException {
+        return ModelCodec.writeProject(this, format);
+    }
+
+    /**
+     * Records that this Project, as it was at the given modification count, has been written to disk.
+     */
+    void written(FileFingerprint fingerprint, long atModCount) {
+        this.fingerprint = fingerprint;
+        markSaved(atModCount);
+        notifySaved();
+    }
+
+    private void notifySaved() {
+        for (ProjectSaveListener listener : saveListeners) {
+            listener.projectSaved(this);
+        }
+    }
+
+    /**
+     * Updates this Project from the given content, which has just been read from our source file
+     * after someone else changed it. Nothing happens if the content is what we last loaded or saved
+     * (our own writes come back to us this way), or if we have unsaved changes of our own, which
+     * we won't throw away. Tickets are not affected; they are reloaded individually.
+     *
+     * @param content The current content of our source file.
+     * @return true if this Project was actually updated.
+     * @throws IOException If the content can't be parsed.
+     */
+    boolean reload(byte[] content) throws IOException {
+        if (sourceFile == null || (fingerprint != null && fingerprint.matchesContent(content))) {
+            return false;
+        }
+        if (hasUnsavedChanges()) {
+            logger.warning("Project file " + sourceFile.getAbsolutePath()
+                                   + " was changed on disk, but there are unsaved changes here; keeping ours.");
+            return false;
         }
-        catch (Exception e) {
-            return true; // If we can't parse, assume dirty
+
+        Project loaded = ModelCodec.readProject(content);
+        prefix = loaded.prefix;
+        name = loaded.name;
+        description = loaded.description;
+        startDate = loaded.startDate;
+        bgColor = loaded.bgColor;
+        fgColor = loaded.fgColor;
+        bgColorCache = null;
+        fgColorCache = null;
+        versions.clear();
+        for (ProjectVersion version : loaded.versions) {
+            version.setOwner(this);
+            versions.add(version);
         }
+        fingerprint = FileFingerprint.of(sourceFile, content);
+        markSaved();
+        notifySaved();
+        return true;
     }
 
     /**
      * Saves this Project instance to disk. For first-time saves, this will create a new Project file
      * on disk. For subsequent saves, the Project file is overwritten with the new values.
+     * Tickets are stored in a tickets directory next to the Project file, one file per Ticket,
+     * and only those Tickets that have actually changed since the last save are written out.
+     * All writes are atomic, so a crash partway through a save will never leave a
+     * half-written file behind.
+     * <p>
+     * The first save of a new Project decides where it lives from then on. A Project that has
+     * already been saved or loaded can only be saved back to its own file; its Tickets are only
+     * in memory as far as they've been loaded, so it can't simply be written somewhere else.
+     * </p>
      *
-     * @throws IOException If something goes wrong.
+     * @param f The Project file. For a Project that already has one, this must be the same file.
+     * @throws IOException If something goes wrong, or if f isn't this Project's file.
      */
     public void save(File f) throws IOException {
-//        if (sourceFile == null) {
-//            // TODO first-time save... generate new file... we need a "project dir"
-//            throw new IOException("Cannot save: no source path set");
-//        }
-        this.sourceFile = f; // TEMP TEMP TODO REMOVE ME
-
-        // Save project.json
-        objectMapper.writeValue(sourceFile, this);
-
-        // TODO also save all tickets
-        //File ticketsDir = new File(sourceFile.getParent(), "tickets");
-        //ticketsDir.mkdirs();
-        //for (Ticket ticket : tickets) {
-        //    if (ticket.isDirty()) {
-        //        ticket.save();
-        //    }
-        //}
+        long start = saveTimer.start();
+        try {
+            if (sourceFile == null) {
+                sourceFile = f;
+            }
+            else if (!sourceFile.toPath().toAbsolutePath().normalize()
+                                .equals(f.toPath().toAbsolutePath().normalize())) {
+                throw new IOException("Cannot save project " + prefix + " to " + f.getAbsolutePath()
+                                              + ": it belongs to " + sourceFile.getAbsolutePath());
+            }
+
+            // Save project.json, but only if something has actually changed:
+            if (isDirty()) {
+                long modCount = getModCount();
+                byte[] content = toJson();
+                ModelFiles.writeAtomically(sourceFile, content);
+                written(FileFingerprint.of(sourceFile, content), modCount);
+            }
+
+            // Save any tickets that have changed:
+            tickets.save();
+        }
+        finally {
+            saveTimer.stop(start);
+        }
     }
 }
@@ -0,0 +1,19 @@
+package ca.corbett.tasktracker.model;
+
+/**
+ * Can be registered with a Project to be notified after the Project file has been written,
+ * either by our own save or by someone else (as picked up by ProjectWatcher). This covers the
+ * Project's own fields and its versions; Tickets have their own TicketSaveListener.
+ *
+ * @author scorbo2
+ */
+@FunctionalInterface
+public interface ProjectSaveListener {
+
+    /**
+     * Invoked after the Project file has been written, or reloaded after an external change.
+     *
+     * @param project The Project, as it now is on disk.
+     */
+    void projectSaved(Project project);
+}
@@ -0,0 +1,445 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves a Project in the background, so that the UI never has to wait on the disk. This is
+ * the asynchronous alternative to Project.save(): calling save() here only serializes whatever
+ * has changed (which is quick, as it's only the changed objects) and queues the result. The
+ * actual file writes happen on a dedicated I/O thread.
+ * <p>
+ * Writes are held for a short flush interval before being written out in one batch. If the
+ * same object is saved again while its previous write is still waiting, the new content simply
+ * replaces the old (the last write wins), so a burst of edits to one Ticket costs one file write,
+ * not one per edit. If the queue gets too large, save() blocks until the I/O thread catches up,
+ * rather than letting memory grow without bound.
+ * </p>
+ * <p>
+ * The model is not thread safe, so save() must be called on the model thread, and the
+ * bookkeeping after a write (marking objects as saved, updating headers, notifying listeners)
+ * is handed back to the given model executor, typically SwingUtilities::invokeLater. An object
+ * that was modified again while its write was in flight correctly remains unsaved. The futures
+ * returned by save() are completed on the model thread, once that bookkeeping is done.
+ * </p>
+ * <p>
+ * Anything still queued is written when the saver is closed, and a shutdown hook makes sure
+ * that also happens if the JVM exits without closing it.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class ProjectSaver implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ProjectSaver.class.getName());
+
+    /** How long writes are held, waiting for more changes to batch up with, by default. **/
+    public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+
+    /** How many bytes of queued writes save() will allow before it blocks, by default. **/
+    public static final long DEFAULT_MAX_PENDING_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * How hard we try to make sure that written data survives a power failure, as opposed to
+     * just a crash of this application. Each step is safer and slower than the last.
+     */
+    public enum FsyncPolicy {
+        /** Leave it to the operating system to write data out when it sees fit. **/
+        NONE,
+
+        /** Force each file's content to the device before renaming it into place. **/
+        FILES,
+
+        /** As above, and also force each affected directory once per batch. **/
+        FILES_AND_DIRECTORIES
+    }
+
+    private final Project project;
+    private final Executor modelExecutor;
+    private final Object lock = new Object();
+    private final Map<File, PendingWrite> pending = new LinkedHashMap<>();
+    private final Thread ioThread;
+    private final Thread shutdownHook;
+
+    // These are guarded by lock:
+    private long pendingBytes;
+    private boolean isFlushRequested;
+    private boolean isClosed;
+
+    private volatile long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+    private volatile long maxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+    private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.FILES;
+    private volatile boolean isShuttingDown;
+
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong failedWriteCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+    private volatile long lastFlushNanos;
+
+    private ProjectSaver(Project project, Executor modelExecutor) {
+        this.project = project;
+        this.modelExecutor = modelExecutor;
+        this.ioThread = new Thread(this::run, "ProjectSaver");
+        this.shutdownHook = new Thread(() -> {
+            isShuttingDown = true;
+            closeQuietly();
+        }, "ProjectSaver-shutdown");
+    }
+
+    /**
+     * Starts a background saver for the given Project, which must have been loaded or saved
+     * already, so that it has a place on disk.
+     *
+     * @param project       The Project to save.
+     * @param modelExecutor Where post-write bookkeeping is done, typically SwingUtilities::invokeLater.
+     * @return A running ProjectSaver. Close it when the Project is closed.
+     * @throws IOException If the Project has never been saved.
+     */
+    public static ProjectSaver start(Project project, Executor modelExecutor) throws IOException {
+        if (project.getSourceFile() == null) {
+            throw new IOException("Cannot save a project in the background before it has been saved once.");
+        }
+        ProjectSaver saver = new ProjectSaver(project, modelExecutor);
+        saver.ioThread.start();
+        Runtime.getRuntime().addShutdownHook(saver.shutdownHook);
+        return saver;
+    }
+
+    /**
+     * Queues everything in the Project that has changed since it was last saved. This must be
+     * called on the model thread. It will only block if the queue is over its size limit.
+     *
+     * @return A future that completes (on the model thread) once everything queued by this
+     *         call has been written, or completes exceptionally if any of it couldn't be.
+     */
+    public CompletableFuture<Void> save() {
+        List<PendingWrite> writes = new ArrayList<>();
+        try {
+            if (project.hasUnsavedChanges()) {
+                long modCount = project.getModCount();
+                writes.add(new PendingWrite(project.getSourceFile(), project.toJson(),
+                                            fingerprint -> project.written(fingerprint, modCount), null));
+            }
+            TicketRepository repository = project.getTicketRepository();
+            for (Ticket ticket : repository.getUnsavedTickets()) {
+                File file = repository.getTicketFile(ticket.getDisplayId());
+                long modCount = ticket.getModCount();
+                writes.add(new PendingWrite(file, ticket.toJson(),
+                                            fingerprint -> repository.ticketWritten(ticket, file, fingerprint,
+                                                                                    modCount), ticket));
+            }
+        }
+        catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+        return enqueue(writes);
+    }
+
+    /**
+     * Queues everything that has changed, as save() does, and then writes it all out right away
+     * instead of waiting for the flush interval. Must be called on the model thread.
+     */
+    public CompletableFuture<Void> flush() {
+        CompletableFuture<Void> future = save();
+        synchronized (lock) {
+            isFlushRequested = true;
+            lock.notifyAll();
+        }
+        return future;
+    }
+
+    /**
+     * Writes out anything still queued, and stops the I/O thread. This blocks until those
+     * writes are done, but doesn't wait for the model-thread bookkeeping, so it's safe to call
+     * from the model thread. Call save() first to queue any last changes.
+     */
+    @Override
+    public void close() {
+        closeQuietly();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        }
+        catch (IllegalStateException ignored) {
+            // Already shutting down; that's why we're here.
+        }
+    }
+
+    /**
+     * Sets how long writes are held, waiting for more changes to batch up with.
+     */
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    /**
+     * Sets how many bytes of queued writes save() will allow before it blocks.
+     */
+    public void setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    /**
+     * Returns the number of files waiting to be written.
+     */
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Returns the total size of the files waiting to be written.
+     */
+    public long getPendingBytes() {
+        synchronized (lock) {
+            return pendingBytes;
+        }
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getFailedWriteCount() {
+        return failedWriteCount.get();
+    }
+
+    /**
+     * Returns how many writes were skipped because a newer version of the same file replaced them in the queue.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Returns how long the most recent batch took to write, in milliseconds.
+     */
+    public double getLastFlushLatencyMs() {
+        return lastFlushNanos / 1_000_000.0;
+    }
+
+    public double getMaxFlushLatencyMs() {
+        return maxFlushNanos.get() / 1_000_000.0;
+    }
+
+    public double getAverageFlushLatencyMs() {
+        long flushes = flushCount.get();
+        return flushes == 0 ? 0 : totalFlushNanos.get() / 1_000_000.0 / flushes;
+    }
+
+    private CompletableFuture<Void> enqueue(List<PendingWrite> writes) {
+        if (writes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (lock) {
+            if (isClosed) {
+                return CompletableFuture.failedFuture(new IOException("ProjectSaver has been closed."));
+            }
+
+            // Back-pressure: if the I/O thread has fallen too far behind, wait for it.
+            while (pendingBytes > maxPendingBytes && !isClosed) {
+                isFlushRequested = true;
+                lock.notifyAll();
+                try {
+                    lock.wait();
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            for (PendingWrite write : writes) {
+                PendingWrite replaced = pending.remove(write.file);
+                if (replaced != null) {
+                    // The last write wins, but whoever was waiting on the old one now waits on this one:
+                    pendingBytes -= replaced.content.length;
+                    write.futures.addAll(replaced.futures);
+                    coalescedCount.incrementAndGet();
+                }
+                pending.put(write.file, write);
+                pendingBytes += write.content.length;
+            }
+            lock.notifyAll();
+        }
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[writes.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = writes.get(i).future;
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * The body of the I/O thread: waits for writes, holds them for the flush interval, and writes them out.
+     */
+    private void run() {
+        while (true) {
+            List<PendingWrite> batch;
+            synchronized (lock) {
+                try {
+                    while (pending.isEmpty() && !isClosed) {
+                        lock.wait();
+                    }
+                    if (pending.isEmpty()) {
+                        return; // Closed, and nothing left to write
+                    }
+
+                    // Give more changes a chance to join this batch, unless we've been asked to hurry:
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                    long remaining;
+                    while (!isFlushRequested && !isClosed && pendingBytes <= maxPendingBytes
+                            && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                }
+                catch (InterruptedException ie) {
+                    // Nobody should be interrupting us, but if they do, just write what we have.
+                }
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                pendingBytes = 0;
+                isFlushRequested = false;
+                lock.notifyAll(); // Let anyone blocked on back-pressure proceed
+            }
+            writeBatch(batch);
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        long start = System.nanoTime();
+        FsyncPolicy policy = fsyncPolicy;
+        Set<File> dirs = new HashSet<>();
+        for (PendingWrite write : batch) {
+            try {
+                ModelFiles.writeAtomically(write.file, write.content, policy != FsyncPolicy.NONE);
+                write.fingerprint = FileFingerprint.of(write.file, write.content);
+                dirs.add(write.file.getAbsoluteFile().getParentFile());
+                writeCount.incrementAndGet();
+            }
+            catch (IOException ioe) {
+                logger.log(Level.SEVERE, "Unable to save " + write.file.getAbsolutePath(), ioe);
+                write.failure = ioe;
+                failedWriteCount.incrementAndGet();
+            }
+        }
+        if (policy == FsyncPolicy.FILES_AND_DIRECTORIES) {
+            for (File dir : dirs) {
+                ModelFiles.syncDirectory(dir);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        lastFlushNanos = elapsed;
+        totalFlushNanos.addAndGet(elapsed);
+        maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+        flushCount.incrementAndGet();
+
+        if (isShuttingDown) {
+            return; // The model thread may already be gone, and nobody's waiting anyway.
+        }
+        modelExecutor.execute(() -> complete(batch));
+    }
+
+    /**
+     * Does the bookkeeping for a written batch, and completes its futures. This runs on the model thread.
+     */
+    private void complete(List<PendingWrite> batch) {
+        List<Ticket> saved = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            if (write.failure == null) {
+                write.onWritten.accept(write.fingerprint);
+                if (write.ticket != null) {
+                    saved.add(write.ticket);
+                }
+            }
+        }
+        project.getTicketRepository().notifySaved(saved);
+
+        for (PendingWrite write : batch) {
+            for (CompletableFuture<Void> future : write.futures) {
+                if (write.failure == null) {
+                    future.complete(null);
+                }
+                else {
+                    future.completeExceptionally(write.failure);
+                }
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        synchronized (lock) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            lock.notifyAll();
+        }
+        try {
+            ioThread.join();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One file waiting to be written, with what to do once it has been.
+     */
+    private static final class PendingWrite {
+        final File file;
+        final byte[] content;
+        final Consumer<FileFingerprint> onWritten;
+        final Ticket ticket;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        FileFingerprint fingerprint;
+        IOException failure;
+
+        PendingWrite(File file, byte[] content, Consumer<FileFingerprint> onWritten, Ticket ticket) {
+            this.file = file;
+            this.content = content;
+            this.onWritten = onWritten;
+            this.ticket = ticket;
+            futures.add(future);
+        }
+    }
+}
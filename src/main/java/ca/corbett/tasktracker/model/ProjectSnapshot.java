@@ -0,0 +1,307 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A compact binary copy of the TicketHeaders for all Tickets in a Project, stored next to the
+ * project.json file so that opening a large Project doesn't mean parsing tens of thousands of json
+ * files. The json files remain the real data; the snapshot is purely a cache that can be deleted at
+ * any time. Each record in the snapshot remembers the timestamp, size and checksum of the json file
+ * it came from, so any Ticket file that has been changed since the snapshot was written is simply
+ * read from json instead, and the snapshot is rewritten at the end of the load.
+ * <p>
+ * Timestamps only have so much resolution, so a file written again within the same tick as the
+ * snapshot can keep its timestamp (and, for a small edit, its size). Any file whose timestamp is
+ * that close to the snapshot's own is therefore read anyway, and checked against the checksum.
+ * </p>
+ * <p>
+ * The file layout is a fixed header, followed by one record per Ticket, followed by a string pool.
+ * UUIDs are stored as two longs, dates as epoch millis (our Ticket dates carry a time component),
+ * and all strings are stored once in the pool and referenced by index. The file is read through
+ * a memory mapping, and each pooled string is decoded at most once, no matter how many Tickets
+ * refer to it.
+ * </p>
+ *
+ * @author scorbo2
+ */
+final class ProjectSnapshot {
+
+    private static final Logger logger = Logger.getLogger(ProjectSnapshot.class.getName());
+
+    /** The name of the snapshot file inside a Project directory. **/
+    static final String SNAPSHOT_FILE = "project.snapshot";
+
+    private static final int MAGIC = 0x54545350; // "TTSP"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int NULL_STRING = -1;
+
+    /**
+     * The coarsest file timestamp resolution we expect to meet (FAT has two seconds; most others
+     * are far finer). Ticket files modified within this long of the snapshot are checked by content.
+     */
+    private static final long TIMESTAMP_RESOLUTION_MS = 2000;
+
+    private ProjectSnapshot() {
+    }
+
+    /**
+     * Loads the TicketHeaders for all Tickets in the given Project directory, using the snapshot
+     * wherever it is still current and falling back to the json files wherever it isn't. If the
+     * snapshot was missing, unreadable, or out of date, a fresh one is written before returning.
+     *
+     * @param projectDir The directory containing the project.json file.
+     * @return A list of all TicketHeaders found, in no particular order.
+     * @throws IOException If a Ticket json file cannot be loaded.
+     */
+    static List<TicketHeader> loadHeaders(File projectDir) throws IOException {
+        Map<String, BasicFileAttributes> ticketFiles = ModelFiles.listTicketFiles(projectDir);
+        File snapshotFile = new File(projectDir, SNAPSHOT_FILE);
+        long snapshotTime = snapshotFile.lastModified(); // read first, as read() may take a while
+        Map<String, Entry> cached = read(snapshotFile);
+
+        boolean isStale = cached.size() != ticketFiles.size();
+        List<Entry> entries = new ArrayList<>(ticketFiles.size());
+        for (Map.Entry<String, BasicFileAttributes> ticketFile : ticketFiles.entrySet()) {
+            BasicFileAttributes attrs = ticketFile.getValue();
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            Entry entry = cached.get(ticketFile.getKey());
+            File file = new File(ModelFiles.getTicketsDir(projectDir), ticketFile.getKey());
+            byte[] content = null;
+            if (entry != null && !entry.fingerprint.matches(lastModified, attrs.size())) {
+                entry = null;
+            }
+            else if (entry != null && lastModified + TIMESTAMP_RESOLUTION_MS >= snapshotTime) {
+                // Too close to the snapshot for the timestamp to prove anything:
+                content = Files.readAllBytes(file.toPath());
+                if (!entry.fingerprint.matchesContent(content)) {
+                    entry = null;
+                }
+            }
+            if (entry == null) {
+                if (content == null) {
+                    content = Files.readAllBytes(file.toPath());
+                }
+                entry = new Entry(ticketFile.getKey(),
+                                  ModelCodec.readTicketHeader(content),
+                                  FileFingerprint.of(file, content));
+                isStale = true;
+            }
+            entries.add(entry);
+        }
+
+        if (isStale) {
+            try {
+                write(snapshotFile, entries);
+            }
+            catch (IOException ioe) {
+                // Not fatal; we'll just be slower to open next time:
+                logger.log(Level.WARNING, "Unable to write project snapshot " + snapshotFile.getAbsolutePath(), ioe);
+            }
+        }
+
+        List<TicketHeader> headers = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            headers.add(entry.header);
+        }
+        return headers;
+    }
+
+    /**
+     * Reads the given snapshot file, returning its entries keyed by their path relative to the
+     * tickets directory. If the snapshot doesn't exist or can't be read, an empty map is returned.
+     */
+    private static Map<String, Entry> read(File snapshotFile) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!snapshotFile.exists()) {
+            return entries;
+        }
+
+        try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                logger.info("Ignoring project snapshot with unknown format: " + snapshotFile.getAbsolutePath());
+                return entries;
+            }
+            int ticketCount = buffer.getInt();
+            int stringCount = buffer.getInt();
+            int stringPoolOffset = (int)buffer.getLong();
+            StringPool strings = new StringPool(buffer, stringPoolOffset, stringCount);
+
+            for (int i = 0; i < ticketCount; i++) {
+                String path = strings.get(buffer.getInt());
+                FileFingerprint fingerprint = new FileFingerprint(buffer.getLong(), buffer.getLong(), buffer.getLong());
+                TicketHeader header = TicketHeader.of(readUuid(buffer),
+                                                      Interner.UUIDS.intern(readUuid(buffer)),
+                                                      Interner.UUIDS.intern(readUuid(buffer)),
+                                                      buffer.getInt(),
+                                                      buffer.getLong(),
+                                                      buffer.getLong(),
+                                                      buffer.getLong(),
+                                                      strings.get(buffer.getInt()),
+                                                      readDouble(buffer),
+                                                      Interner.STRINGS.intern(strings.get(buffer.getInt())),
+                                                      Interner.STRINGS.intern(strings.get(buffer.getInt())));
+                entries.put(path, new Entry(path, header, fingerprint));
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            // A damaged snapshot is no big deal, we'll just load from json and write a new one:
+            logger.log(Level.WARNING, "Ignoring unreadable project snapshot " + snapshotFile.getAbsolutePath(), e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Writes a snapshot containing the given entries.
+     */
+    private static void write(File snapshotFile, List<Entry> entries) throws IOException {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> stringList = new ArrayList<>();
+
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(entries.size() * 128 + HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(byteStream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(entries.size());
+        out.writeInt(0); // string count, patched in below
+        out.writeLong(0); // string pool offset, patched in below
+
+        for (Entry entry : entries) {
+            TicketHeader header = entry.header;
+            out.writeInt(pool(entry.path, stringIndex, stringList));
+            out.writeLong(entry.fingerprint.getLastModified());
+            out.writeLong(entry.fingerprint.getSize());
+            out.writeLong(entry.fingerprint.getChecksum());
+            writeUuid(out, header.getInternalId());
+            writeUuid(out, header.getProjectId());
+            writeUuid(out, header.getTargetVersionId());
+            out.writeInt(header.getDisplayId());
+            out.writeLong(header.getCreateTime()); // TicketHeader.NO_DATE if not set
+            out.writeLong(header.getStartTime());
+            out.writeLong(header.getCloseTime());
+            out.writeInt(pool(header.getShortDescription(), stringIndex, stringList));
+            out.writeDouble(header.getHoursWorked() == null ? Double.NaN : header.getHoursWorked());
+            out.writeInt(pool(header.getState(), stringIndex, stringList));
+            out.writeInt(pool(header.getResolution(), stringIndex, stringList));
+        }
+
+        // The string pool is an offset table (one extra entry to mark the end of the last string)
+        // followed by all the string data:
+        int stringPoolOffset = out.size();
+        List<byte[]> encoded = new ArrayList<>(stringList.size());
+        int offset = stringPoolOffset + (stringList.size() + 1) * Integer.BYTES;
+        for (String str : stringList) {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            out.writeInt(offset);
+            offset += bytes.length;
+        }
+        out.writeInt(offset);
+        for (byte[] bytes : encoded) {
+            out.write(bytes);
+        }
+        out.flush();
+
+        ByteBuffer content = ByteBuffer.wrap(byteStream.toByteArray());
+        content.putInt(12, stringList.size());
+        content.putLong(16, stringPoolOffset);
+        ModelFiles.writeAtomically(snapshotFile, content.array());
+    }
+
+    private static int pool(String str, Map<String, Integer> stringIndex, List<String> stringList) {
+        if (str == null) {
+            return NULL_STRING;
+        }
+        return stringIndex.computeIfAbsent(str, s -> {
+            stringList.add(s);
+            return stringList.size() - 1;
+        });
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeBoolean(uuid != null);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static Double readDouble(ByteBuffer buffer) {
+        double value = buffer.getDouble();
+        return Double.isNaN(value) ? null : value;
+    }
+
+    /**
+     * One Ticket's worth of snapshot: the header itself, where it came from, and what that
+     * file looked like at the time.
+     */
+    private static final class Entry {
+        final String path;
+        final TicketHeader header;
+        final FileFingerprint fingerprint;
+
+        Entry(String path, TicketHeader header, FileFingerprint fingerprint) {
+            this.path = path;
+            this.header = header;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * Gives access to the string pool at the end of a mapped snapshot file. Strings are
+     * decoded from the mapping the first time they are asked for, and shared after that.
+     */
+    private static final class StringPool {
+        private final ByteBuffer buffer;
+        private final int offsetTable;
+        private final String[] decoded;
+
+        StringPool(ByteBuffer buffer, int offsetTable, int count) {
+            this.buffer = buffer;
+            this.offsetTable = offsetTable;
+            this.decoded = new String[count];
+        }
+
+        String get(int index) {
+            if (index == NULL_STRING) {
+                return null;
+            }
+            String str = decoded[index];
+            if (str == null) {
+                int start = buffer.getInt(offsetTable + index * Integer.BYTES);
+                int end = buffer.getInt(offsetTable + (index + 1) * Integer.BYTES);
+                byte[] bytes = new byte[end - start];
+                buffer.get(start, bytes);
+                str = new String(bytes, StandardCharsets.UTF_8);
+                decoded[index] = str;
+            }
+            return str;
+        }
+    }
+}
@@ -3,10 +3,74 @@ package ca.corbett.tasktracker.model;
 import java.util.Date;
 import java.util.UUID;
 
-public class ProjectVersion {
+/**
+ * Represents a version (release) of a Project, to which Tickets can be targeted.
+ * ProjectVersions are stored in the Project file along with the Project that owns them.
+ */
+public class ProjectVersion extends ModelObject {
     protected UUID internalId;
     protected Date startDate;
     protected Date releaseDate;
     protected String label;
     protected String description;
+
+    protected ProjectVersion() { }
+
+    /**
+     * Creates a new ProjectVersion with the given label. Note that the version is not
+     * actually added to any Project here - use Project.addVersion() for that.
+     *
+     * @param label The non-empty version label (example: "1.0").
+     * @return A ProjectVersion instance with an auto-assigned internalId.
+     */
+    public static ProjectVersion create(String label) {
+        ProjectVersion version = new ProjectVersion();
+        version.internalId = UUID.randomUUID();
+        version.label = label;
+        return version;
+    }
+
+    public ProjectVersion setStartDate(Date date) {
+        startDate = date;
+        markModified();
+        return this;
+    }
+
+    public ProjectVersion setReleaseDate(Date date) {
+        releaseDate = date;
+        markModified();
+        return this;
+    }
+
+    public ProjectVersion setLabel(String label) {
+        this.label = label;
+        markModified();
+        return this;
+    }
+
+    public ProjectVersion setDescription(String desc) {
+        description = desc;
+        markModified();
+        return this;
+    }
+
+    public UUID getInternalId() {
+        return internalId;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getReleaseDate() {
+        return releaseDate;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public String getDescription() {
+        return description;
+    }
 }
@@ -0,0 +1,283 @@
+package ca.corbett.tasktracker.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * An immutable, consistent view of every TicketHeader in a Project at one moment, for code that runs
+ * off the model thread (indexers, background savers, reports). TicketRepository.getView() hands out
+ * the latest one without any locking, and a reader can hold on to it for as long as it likes; it will
+ * never change underneath it, however many changes are made in the meantime. Nothing here touches
+ * the disk.
+ * <p>
+ * The model thread builds the next view as Tickets change, and publishes it in one step whenever
+ * it reaches a consistent point (the end of a load, a save, a refreshHeaders(), a batch of external
+ * changes). Headers are kept in fixed-size chunks by displayId, and the map from internalId to
+ * displayId is split into shards by internalId, so a new view shares every chunk and shard that
+ * didn't change with the one before it; editing or creating one Ticket copies one chunk and at most
+ * one shard, not the Project.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class ProjectView {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int SHARD_BITS = 8;
+    private static final int SHARD_COUNT = 1 << SHARD_BITS;
+    private static final int SHARD_MASK = SHARD_COUNT - 1;
+
+    static final ProjectView EMPTY = new ProjectView(0, new TicketHeader[0][], emptyShards(), 0);
+
+    private final long version;
+    private final TicketHeader[][] chunks;
+    private final Map<UUID, Integer>[] displayIds;
+    private final int size;
+
+    private ProjectView(long version, TicketHeader[][] chunks, Map<UUID, Integer>[] displayIds, int size) {
+        this.version = version;
+        this.chunks = chunks;
+        this.displayIds = displayIds;
+        this.size = size;
+    }
+
+    /**
+     * Returns the version of this view. Every view published by a TicketRepository has a higher
+     * version than the one before it, so this is a cheap way to tell whether anything has changed.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of Tickets in this view.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the header for the Ticket with the given internalId, or null if there is no such Ticket.
+     */
+    public TicketHeader getHeader(UUID internalId) {
+        Integer displayId = displayIds[shard(internalId)].get(internalId);
+        return displayId == null ? null : getHeader(chunks, displayId);
+    }
+
+    /**
+     * Returns the header for the Ticket with the given displayId, or null if there is no such Ticket.
+     */
+    public TicketHeader getHeaderByDisplayId(int displayId) {
+        return getHeader(chunks, displayId);
+    }
+
+    /**
+     * Returns every header in this view, in displayId order.
+     */
+    public List<TicketHeader> getHeaders() {
+        List<TicketHeader> headers = new ArrayList<>(size);
+        forEach(headers::add);
+        return headers;
+    }
+
+    /**
+     * Passes every header in this view to the given action, in displayId order, without building a list.
+     */
+    public void forEach(Consumer<TicketHeader> action) {
+        forEach(chunks, action);
+    }
+
+    private static int shard(UUID internalId) {
+        int hash = internalId.hashCode();
+        return (hash ^ (hash >>> 16)) & SHARD_MASK;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<UUID, Integer>[] emptyShards() {
+        Map<UUID, Integer>[] shards = new Map[SHARD_COUNT];
+        Arrays.fill(shards, Collections.emptyMap());
+        return shards;
+    }
+
+    private static TicketHeader getHeader(TicketHeader[][] chunks, int displayId) {
+        int chunk = displayId >>> CHUNK_BITS;
+        if (displayId < 0 || chunk >= chunks.length || chunks[chunk] == null) {
+            return null;
+        }
+        return chunks[chunk][displayId & CHUNK_MASK];
+    }
+
+    private static void forEach(TicketHeader[][] chunks, Consumer<TicketHeader> action) {
+        for (TicketHeader[] chunk : chunks) {
+            if (chunk != null) {
+                for (TicketHeader header : chunk) {
+                    if (header != null) {
+                        action.accept(header);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The model thread's working copy of the headers, from which views are built. A chunk (or a shard
+     * of the displayId map) that is shared with a published view is copied before it's first changed,
+     * and after each build() everything is shared again. Not thread safe.
+     */
+    static final class Builder {
+        private long version;
+        private TicketHeader[][] chunks;
+        private boolean[] owned;
+        private Map<UUID, Integer>[] displayIds;
+        private boolean[] displayIdsOwned;
+        private int size;
+        private boolean changed;
+
+        Builder() {
+            this.version = EMPTY.version;
+            clear();
+            this.changed = false;
+        }
+
+        /**
+         * Removes everything. Versions carry on from where they were.
+         */
+        void clear() {
+            chunks = EMPTY.chunks;
+            owned = new boolean[0];
+            displayIds = EMPTY.displayIds.clone();
+            displayIdsOwned = new boolean[SHARD_COUNT];
+            size = 0;
+            changed = true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        TicketHeader get(UUID internalId) {
+            Integer displayId = displayIds[shard(internalId)].get(internalId);
+            return displayId == null ? null : getHeader(chunks, displayId);
+        }
+
+        TicketHeader getByDisplayId(int displayId) {
+            return getHeader(chunks, displayId);
+        }
+
+        List<TicketHeader> getHeaders() {
+            List<TicketHeader> headers = new ArrayList<>(size);
+            forEach(chunks, headers::add);
+            return headers;
+        }
+
+        /**
+         * Returns the highest displayId in use, or 0 if there are no Tickets.
+         */
+        int getMaxDisplayId() {
+            for (int c = chunks.length - 1; c >= 0; c--) {
+                if (chunks[c] != null) {
+                    for (int i = CHUNK_MASK; i >= 0; i--) {
+                        if (chunks[c][i] != null) {
+                            return (c << CHUNK_BITS) | i;
+                        }
+                    }
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Adds or replaces the header for a Ticket. A different Ticket that was in the same displayId
+         * slot is dropped, as is this Ticket's old slot if its displayId changed.
+         *
+         * @return The header this replaced for the same Ticket, or null if it's new.
+         */
+        TicketHeader put(TicketHeader header) {
+            if (header.getDisplayId() < 0) {
+                throw new IllegalArgumentException("Invalid displayId " + header.getDisplayId());
+            }
+            TicketHeader before = get(header.getInternalId());
+            if (before != null && before.getDisplayId() != header.getDisplayId()) {
+                remove(before);
+            }
+            TicketHeader occupant = getByDisplayId(header.getDisplayId());
+            if (occupant != null && !occupant.getInternalId().equals(header.getInternalId())) {
+                remove(occupant);
+            }
+
+            TicketHeader[] chunk = writableChunk(header.getDisplayId() >>> CHUNK_BITS);
+            if (chunk[header.getDisplayId() & CHUNK_MASK] == null) {
+                size++;
+            }
+            chunk[header.getDisplayId() & CHUNK_MASK] = header;
+            if (before == null || before.getDisplayId() != header.getDisplayId()) {
+                writableDisplayIds(header.getInternalId()).put(header.getInternalId(), header.getDisplayId());
+            }
+            changed = true;
+            return before;
+        }
+
+        /**
+         * Removes the given Ticket's header, if it's here.
+         */
+        void remove(TicketHeader header) {
+            Integer displayId = displayIds[shard(header.getInternalId())].get(header.getInternalId());
+            if (displayId == null) {
+                return;
+            }
+            writableDisplayIds(header.getInternalId()).remove(header.getInternalId());
+            writableChunk(displayId >>> CHUNK_BITS)[displayId & CHUNK_MASK] = null;
+            size--;
+            changed = true;
+        }
+
+        /**
+         * Reports whether anything has changed since the last build().
+         */
+        boolean isChanged() {
+            return changed;
+        }
+
+        /**
+         * Returns a new view of everything as it is now. From here on, everything is shared with that view.
+         */
+        ProjectView build() {
+            ProjectView view = new ProjectView(++version, chunks.clone(), displayIds.clone(), size);
+            Arrays.fill(owned, false);
+            Arrays.fill(displayIdsOwned, false);
+            changed = false;
+            return view;
+        }
+
+        private TicketHeader[] writableChunk(int chunk) {
+            if (chunk >= chunks.length) {
+                int length = Math.max(chunk + 1, chunks.length * 2);
+                chunks = Arrays.copyOf(chunks, length);
+                owned = Arrays.copyOf(owned, length);
+            }
+            if (!owned[chunk]) {
+                chunks[chunk] = chunks[chunk] == null ? new TicketHeader[CHUNK_SIZE] : chunks[chunk].clone();
+                owned[chunk] = true;
+            }
+            return chunks[chunk];
+        }
+
+        private Map<UUID, Integer> writableDisplayIds(UUID internalId) {
+            int shard = shard(internalId);
+            if (!displayIdsOwned[shard]) {
+                displayIds[shard] = new HashMap<>(displayIds[shard]);
+                displayIdsOwned[shard] = true;
+            }
+            return displayIds[shard];
+        }
+    }
+}
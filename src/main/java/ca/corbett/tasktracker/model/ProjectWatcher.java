@@ -0,0 +1,372 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a Project directory for changes made by anyone other than us (scripts, other tools,
+ * a sync client, a text editor) and brings the in-memory Project up to date, one file at a time,
+ * without a full reload.
+ * <p>
+ * Changes tend to come in bursts (a script rewriting a few hundred Tickets, or an editor
+ * that writes a file three times to save it once), so events are collected until things have
+ * been quiet for a short while, and each changed file is then handled once. Changed files are
+ * read and parsed on a background thread. The results are then handed to the given model
+ * executor to be applied, because the model itself is not thread safe: in the UI, this should
+ * be SwingUtilities::invokeLater.
+ * </p>
+ * <p>
+ * Applying a change goes through the TicketRepository, so the usual TicketChangeListener
+ * events are fired for each Ticket added, changed or removed, and TicketSaveListeners see the
+ * new content. Our own saves come back to us as file events too, but these are recognized by
+ * their content and ignored. Local unsaved changes always win over changes on disk; they will
+ * overwrite the file on the next save.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class ProjectWatcher implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ProjectWatcher.class.getName());
+
+    /** How long things have to be quiet before we act on the changes seen so far. **/
+    public static final long DEFAULT_DEBOUNCE_MS = 250;
+
+    /** Even if the changes never stop coming, we act on them at least this often. **/
+    private static final long MAX_DELAY_MS = 2000;
+
+    /** Allowance for coarse file timestamps when deciding what changed during a rescan. **/
+    private static final long RESCAN_SLACK_MS = 2000;
+
+    /**
+     * Can be registered to hear about changes to the project.json file itself.
+     * Ticket changes are reported through the TicketRepository's listeners.
+     */
+    @FunctionalInterface
+    public interface ProjectChangeListener {
+        void projectChanged(Project project);
+    }
+
+    private final Project project;
+    private final Path projectFile;
+    private final Path ticketsDir;
+    private final Executor modelExecutor;
+    private final WatchService watchService;
+    private final ExecutorService parseExecutor;
+    private final Thread watchThread;
+    private final List<ProjectChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile long debounceMs = DEFAULT_DEBOUNCE_MS;
+    private volatile boolean isClosed;
+    private long lastBatchTime = System.currentTimeMillis(); // Only touched by the parse thread
+
+    private ProjectWatcher(Project project, Executor modelExecutor) throws IOException {
+        this.project = project;
+        this.projectFile = project.getSourceFile().getAbsoluteFile().toPath();
+        this.ticketsDir = ModelFiles.getTicketsDir(projectFile.getParent().toFile()).toPath();
+        this.modelExecutor = modelExecutor;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.parseExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ProjectWatcher-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchThread = new Thread(this::watch, "ProjectWatcher");
+        this.watchThread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the directory of the given Project, which must have been loaded or saved.
+     *
+     * @param project       The Project to watch.
+     * @param modelExecutor Where changes are applied to the model, typically SwingUtilities::invokeLater.
+     * @return A running ProjectWatcher. Close it when the Project is closed.
+     * @throws IOException If the directory can't be watched.
+     */
+    public static ProjectWatcher start(Project project, Executor modelExecutor) throws IOException {
+        if (project.getSourceFile() == null) {
+            throw new IOException("Cannot watch a project that has never been saved.");
+        }
+        ProjectWatcher watcher = new ProjectWatcher(project, modelExecutor);
+        watcher.register(watcher.projectFile.getParent());
+        if (Files.isDirectory(watcher.ticketsDir)) {
+            watcher.registerTicketsDir();
+        }
+        watcher.watchThread.start();
+        return watcher;
+    }
+
+    public void addProjectChangeListener(ProjectChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeProjectChangeListener(ProjectChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets how long things have to be quiet before we act on the changes seen so far.
+     */
+    public void setDebounceMs(long debounceMs) {
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * Stops watching. Any changes already being processed may still be applied.
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        watchService.close();
+        parseExecutor.shutdown();
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                     StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /**
+     * Watches the tickets directory and every bucket directory under it. WatchService isn't
+     * recursive, so each bucket has to be registered on its own.
+     */
+    private void registerTicketsDir() throws IOException {
+        register(ticketsDir);
+        try (DirectoryStream<Path> buckets = Files.newDirectoryStream(ticketsDir, Files::isDirectory)) {
+            for (Path bucket : buckets) {
+                register(bucket);
+            }
+        }
+    }
+
+    /**
+     * The body of the watch thread: collects events until things go quiet, then hands off
+     * the set of changed files for processing.
+     */
+    private void watch() {
+        Set<Path> pending = new LinkedHashSet<>();
+        boolean needsRescan = false;
+        long firstEventTime = 0;
+        try {
+            while (!isClosed) {
+                WatchKey key;
+                if (pending.isEmpty() && !needsRescan) {
+                    key = watchService.take();
+                    firstEventTime = System.currentTimeMillis();
+                }
+                else {
+                    key = watchService.poll(debounceMs, TimeUnit.MILLISECONDS);
+                }
+
+                if (key != null) {
+                    needsRescan |= collect(key, pending);
+                    if (System.currentTimeMillis() - firstEventTime < MAX_DELAY_MS) {
+                        continue;
+                    }
+                }
+
+                if (!pending.isEmpty() || needsRescan) {
+                    List<Path> changed = new ArrayList<>(pending);
+                    boolean rescan = needsRescan;
+                    pending.clear();
+                    needsRescan = false;
+                    parseExecutor.execute(() -> process(changed, rescan));
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            // We've been closed, so we're done.
+        }
+    }
+
+    /**
+     * Adds the files affected by the events on the given key to the pending set.
+     * Returns true if events were lost, meaning we need to rescan everything.
+     */
+    private boolean collect(WatchKey key, Set<Path> pending) {
+        Path dir = (Path)key.watchable();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path path = dir.resolve((Path)event.context());
+            String name = path.getFileName().toString();
+            if (name.startsWith(".")) {
+                continue; // Temp files from atomic writes, among other things
+            }
+
+            if (path.equals(projectFile)) {
+                pending.add(path);
+            }
+            else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)
+                    && (path.equals(ticketsDir) || dir.equals(ticketsDir))) {
+                // A new directory may already have files in it by the time we get to register it,
+                // so anything already in there counts as changed:
+                try {
+                    if (path.equals(ticketsDir)) {
+                        registerTicketsDir();
+                    }
+                    else {
+                        register(path);
+                    }
+                    try (var files = Files.walk(path, 2)) {
+                        files.filter(this::isTicketFile).forEach(pending::add);
+                    }
+                }
+                catch (IOException ioe) {
+                    logger.log(Level.WARNING, "Unable to watch directory " + path, ioe);
+                    overflow = true;
+                }
+            }
+            else if (isTicketFile(path)) {
+                pending.add(path);
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    /**
+     * Reads and parses the given changed files (on the parse thread), then hands them to the
+     * model executor to be applied. If a rescan is needed because events were lost, every Ticket
+     * file modified since the previous batch is treated as changed, and any Ticket whose file
+     * is gone is removed.
+     */
+    private void process(List<Path> changed, boolean rescan) {
+        byte[] projectContent = null;
+        List<Integer> displayIds = new ArrayList<>();
+        List<Ticket> tickets = new ArrayList<>();
+        Set<Integer> onDisk = null;
+        long changedSince = lastBatchTime - RESCAN_SLACK_MS;
+        lastBatchTime = System.currentTimeMillis();
+
+        try {
+            if (rescan) {
+                logger.info("Lost track of changes in " + projectFile.getParent() + "; rescanning.");
+                onDisk = new HashSet<>();
+                Set<Path> alreadyChanged = new HashSet<>(changed);
+                File projectDir = projectFile.getParent().toFile();
+                for (Map.Entry<String, BasicFileAttributes> entry : ModelFiles.listTicketFiles(projectDir).entrySet()) {
+                    Path file = ticketsDir.resolve(entry.getKey());
+                    Integer displayId = parseDisplayId(file);
+                    if (displayId != null) {
+                        onDisk.add(displayId);
+                    }
+                    if (entry.getValue().lastModifiedTime().toMillis() >= changedSince && alreadyChanged.add(file)) {
+                        changed.add(file);
+                    }
+                }
+            }
+            for (Path path : changed) {
+                if (path.equals(projectFile)) {
+                    if (Files.exists(path)) {
+                        projectContent = Files.readAllBytes(path);
+                    }
+                    continue;
+                }
+                Integer displayId = parseDisplayId(path);
+                if (displayId == null) {
+                    continue;
+                }
+                Ticket ticket = null;
+                if (Files.exists(path)) {
+                    try {
+                        ticket = Ticket.load(path.toFile(), Files.readAllBytes(path));
+                    }
+                    catch (IOException ioe) {
+                        // Probably caught it halfway through being written; we'll get another event:
+                        logger.log(Level.FINE, "Skipping unreadable ticket file " + path, ioe);
+                        continue;
+                    }
+                }
+                displayIds.add(displayId);
+                tickets.add(ticket);
+            }
+        }
+        catch (IOException ioe) {
+            logger.log(Level.WARNING, "Unable to read changes in " + projectFile.getParent(), ioe);
+            return;
+        }
+
+        byte[] finalProjectContent = projectContent;
+        Set<Integer> finalOnDisk = onDisk;
+        modelExecutor.execute(() -> apply(finalProjectContent, displayIds, tickets, finalOnDisk));
+    }
+
+    /**
+     * Applies parsed changes to the model. This runs on the model executor.
+     */
+    private void apply(byte[] projectContent, List<Integer> displayIds, List<Ticket> tickets, Set<Integer> onDisk) {
+        if (isClosed) {
+            return;
+        }
+        if (projectContent != null) {
+            try {
+                if (project.reload(projectContent)) {
+                    for (ProjectChangeListener listener : listeners) {
+                        listener.projectChanged(project);
+                    }
+                }
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to reload changed project file " + projectFile, ioe);
+            }
+        }
+
+        TicketRepository repository = project.getTicketRepository();
+        List<Ticket> changedTickets = new ArrayList<>();
+        for (int i = 0; i < displayIds.size(); i++) {
+            Ticket ticket = tickets.get(i);
+            if (repository.applyExternalChange(displayIds.get(i), ticket) && ticket != null) {
+                changedTickets.add(ticket);
+            }
+        }
+        if (onDisk != null) {
+            repository.removeMissing(onDisk);
+        }
+        repository.notifySaved(changedTickets);
+    }
+
+    private boolean isTicketFile(Path path) {
+        String name = path.getFileName().toString();
+        Path bucket = path.getParent();
+        return name.endsWith(".json") && !name.startsWith(".")
+                && bucket != null && ticketsDir.equals(bucket.getParent());
+    }
+
+    private static Integer parseDisplayId(Path ticketFile) {
+        String name = ticketFile.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - ".json".length()));
+        }
+        catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+}
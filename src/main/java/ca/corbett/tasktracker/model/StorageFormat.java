@@ -0,0 +1,19 @@
+package ca.corbett.tasktracker.model;
+
+/**
+ * How Project and Ticket files are written to disk. Files keep their .json names whatever the
+ * format, and loading detects the format of each file on its own, so a Project can be switched
+ * from one format to another (see StorageMigration) or even hold a mix of them.
+ *
+ * @author scorbo2
+ */
+public enum StorageFormat {
+    /** Indented json, which is easy to read and to edit by hand. This is the default. **/
+    PRETTY,
+
+    /** json with no whitespace at all. Smaller and quicker to read, but hard on human eyes. **/
+    COMPACT,
+
+    /** Compact json, gzip compressed. The smallest by far, but no longer editable as text. **/
+    GZIP
+}
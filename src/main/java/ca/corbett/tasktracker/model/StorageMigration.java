@@ -0,0 +1,172 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Converts all the files of an existing Project, in place, to a given StorageFormat. Loading
+ * works with any mix of formats, so this is never required; it just saves waiting for every
+ * Ticket to be edited and saved before a Project is fully in its new format.
+ * <p>
+ * This works directly on the files, not through a loaded Project, so it should not be run on
+ * a Project that is currently open. Each file is rewritten atomically, so an interrupted
+ * migration leaves a Project with a mix of formats, which loads just fine. Fields that the
+ * model doesn't know about are dropped, exactly as they would be on a regular save.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class StorageMigration {
+
+    private static final Logger logger = Logger.getLogger(StorageMigration.class.getName());
+
+    private StorageMigration() {
+    }
+
+    /**
+     * The outcome of a migration: how many files were converted, and what that did to the
+     * size of the Project on disk and the time it takes to read and parse all of it.
+     */
+    public static final class Report {
+        private final StorageFormat format;
+        private final int fileCount;
+        private final int convertedCount;
+        private final long bytesBefore;
+        private final long bytesAfter;
+        private final long loadMsBefore;
+        private final long loadMsAfter;
+
+        private Report(StorageFormat format, int fileCount, int convertedCount, long bytesBefore, long bytesAfter,
+                       long loadMsBefore, long loadMsAfter) {
+            this.format = format;
+            this.fileCount = fileCount;
+            this.convertedCount = convertedCount;
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+            this.loadMsBefore = loadMsBefore;
+            this.loadMsAfter = loadMsAfter;
+        }
+
+        public StorageFormat getFormat() {
+            return format;
+        }
+
+        public int getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * Returns the number of files that were actually rewritten; the rest were already in the target format.
+         */
+        public int getConvertedCount() {
+            return convertedCount;
+        }
+
+        public long getBytesBefore() {
+            return bytesBefore;
+        }
+
+        public long getBytesAfter() {
+            return bytesAfter;
+        }
+
+        /**
+         * Returns how long it took to read and fully parse every file before the migration.
+         */
+        public long getLoadMsBefore() {
+            return loadMsBefore;
+        }
+
+        /**
+         * Returns how long it took to read and fully parse every file after the migration.
+         */
+        public long getLoadMsAfter() {
+            return loadMsAfter;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Converted %d of %d files to %s. Size: %,d -> %,d bytes (%+.1f%%). "
+                                         + "Load time: %d -> %d ms (%+.1f%%).",
+                                 convertedCount, fileCount, format, bytesBefore, bytesAfter,
+                                 percentChange(bytesBefore, bytesAfter), loadMsBefore, loadMsAfter,
+                                 percentChange(loadMsBefore, loadMsAfter));
+        }
+
+        private static double percentChange(long before, long after) {
+            return before == 0 ? 0 : (after - before) * 100.0 / before;
+        }
+    }
+
+    /**
+     * Rewrites the Project file and all Ticket files in the given Project directory in the given
+     * format. Files that are already in that format are left alone.
+     *
+     * @param projectDir The directory containing the project.json file.
+     * @param format     The StorageFormat to convert to.
+     * @return A Report of what was done.
+     * @throws IOException If a file can't be read, parsed or written. Files converted up to that point stay converted.
+     */
+    public static Report migrate(File projectDir, StorageFormat format) throws IOException {
+        File projectFile = new File(projectDir, WorkspaceLoader.PROJECT_FILE);
+        if (!projectFile.isFile()) {
+            throw new IOException("No project file found in " + projectDir.getAbsolutePath());
+        }
+        List<File> ticketFiles = new ArrayList<>();
+        for (String path : ModelFiles.listTicketFiles(projectDir).keySet()) {
+            ticketFiles.add(new File(ModelFiles.getTicketsDir(projectDir), path));
+        }
+
+        long bytesBefore = totalSize(projectFile, ticketFiles);
+        long loadMsBefore = timeLoad(projectFile, ticketFiles);
+
+        int convertedCount = 0;
+        byte[] content = Files.readAllBytes(projectFile.toPath());
+        if (ModelCodec.detectFormat(content) != format) {
+            ModelFiles.writeAtomically(projectFile, ModelCodec.writeProject(ModelCodec.readProject(content), format));
+            convertedCount++;
+        }
+        for (File ticketFile : ticketFiles) {
+            content = Files.readAllBytes(ticketFile.toPath());
+            if (ModelCodec.detectFormat(content) != format) {
+                ModelFiles.writeAtomically(ticketFile, ModelCodec.writeTicket(ModelCodec.readTicket(content), format));
+                convertedCount++;
+            }
+        }
+
+        Report report = new Report(format, ticketFiles.size() + 1, convertedCount,
+                                   bytesBefore, totalSize(projectFile, ticketFiles),
+                                   loadMsBefore, timeLoad(projectFile, ticketFiles));
+        logger.info("Migrated " + projectDir.getAbsolutePath() + ": " + report);
+        return report;
+    }
+
+    private static long totalSize(File projectFile, List<File> ticketFiles) {
+        long size = projectFile.length();
+        for (File ticketFile : ticketFiles) {
+            size += ticketFile.length();
+        }
+        return size;
+    }
+
+    /**
+     * Reads and parses every file, twice, and returns the faster time. The first pass mostly
+     * gets everything into the OS file cache, so that before and after are compared fairly.
+     */
+    private static long timeLoad(File projectFile, List<File> ticketFiles) throws IOException {
+        long fastest = Long.MAX_VALUE;
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            ModelCodec.readProject(Files.readAllBytes(projectFile.toPath()));
+            for (File ticketFile : ticketFiles) {
+                ModelCodec.readTicket(Files.readAllBytes(ticketFile.toPath()));
+            }
+            fastest = Math.min(fastest, (System.nanoTime() - start) / 1_000_000);
+        }
+        return fastest;
+    }
+}
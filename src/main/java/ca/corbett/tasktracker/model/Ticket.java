@@ -1,11 +1,23 @@
 package ca.corbett.tasktracker.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
-public class Ticket {
+/**
+ * Represents a single Ticket within a Project. Each Ticket is stored in its own json file
+ * underneath the Project directory, along with all of its TicketComments. This means that
+ * saving an edited Ticket only costs us the one file write, regardless of how many other
+ * Tickets exist in the Project.
+ */
+public class Ticket extends ModelObject {
     protected UUID internalId;
     protected UUID projectId;
     protected UUID targetVersionId;
@@ -19,4 +31,253 @@ public class Ticket {
     protected String state;
     protected String resolution;
     protected final List<TicketComment> comments = new ArrayList<>();
+
+    @JsonIgnore
+    protected File sourceFile;
+
+    @JsonIgnore
+    protected FileFingerprint fingerprint;
+
+    protected Ticket() { }
+
+    /**
+     * Instantiates a Ticket from a json file.
+     *
+     * @param srcFile A Ticket file in json format.
+     * @return A populated Ticket instance.
+     * @throws IOException If the file cannot be loaded.
+     */
+    public static Ticket load(File srcFile) throws IOException {
+        return load(srcFile, Files.readAllBytes(srcFile.toPath()));
+    }
+
+    /**
+     * Parses a Ticket, with its comments, from json content that didn't come from its own file
+     * (a history record, for example). The result is detached: it has no source file.
+     *
+     * @param content Ticket json, in any StorageFormat.
+     * @return A populated Ticket instance.
+     * @throws IOException If the content can't be parsed.
+     */
+    public static Ticket fromJson(byte[] content) throws IOException {
+        Ticket ticket = ModelCodec.readTicket(content);
+        ticket.markSaved();
+        return ticket;
+    }
+
+    /**
+     * Instantiates a Ticket from content that has already been read from the given file.
+     */
+    static Ticket load(File srcFile, byte[] content) throws IOException {
+        Ticket ticket = ModelCodec.readTicket(content);
+        ticket.sourceFile = srcFile;
+        ticket.fingerprint = FileFingerprint.of(srcFile, content);
+        ticket.markSaved();
+        return ticket;
+    }
+
+    /**
+     * Creates a new Ticket in the given Project. Generally you want Project.createTicket() instead,
+     * which will take care of assigning the next available displayId.
+     *
+     * @param project   The owning Project.
+     * @param displayId The user-visible id of this Ticket within its Project.
+     * @param shortDescription A brief description of the Ticket.
+     * @return A Ticket instance with an auto-assigned internalId.
+     */
+    static Ticket create(Project project, int displayId, String shortDescription) {
+        Ticket ticket = new Ticket();
+        ticket.internalId = UUID.randomUUID();
+        ticket.projectId = project.getInternalId();
+        ticket.displayId = displayId;
+        ticket.createDate = new Date();
+        ticket.shortDescription = shortDescription;
+        return ticket;
+    }
+
+    public Ticket setTargetVersionId(UUID versionId) {
+        targetVersionId = versionId;
+        markModified();
+        return this;
+    }
+
+    public Ticket setStartDate(Date date) {
+        startDate = date;
+        markModified();
+        return this;
+    }
+
+    public Ticket setCloseDate(Date date) {
+        closeDate = date;
+        markModified();
+        return this;
+    }
+
+    public Ticket setShortDescription(String desc) {
+        shortDescription = desc;
+        markModified();
+        return this;
+    }
+
+    public Ticket setLongDescription(String desc) {
+        longDescription = desc;
+        markModified();
+        return this;
+    }
+
+    public Ticket setHoursWorked(Double hours) {
+        hoursWorked = hours;
+        markModified();
+        return this;
+    }
+
+    public Ticket setState(String state) {
+        this.state = state;
+        markModified();
+        return this;
+    }
+
+    public Ticket setResolution(String resolution) {
+        this.resolution = resolution;
+        markModified();
+        return this;
+    }
+
+    public Ticket addComment(TicketComment comment) {
+        comments.add(comment);
+        comment.setOwner(this);
+        markModified();
+        return this;
+    }
+
+    public UUID getInternalId() {
+        return internalId;
+    }
+
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public UUID getTargetVersionId() {
+        return targetVersionId;
+    }
+
+    public int getDisplayId() {
+        return displayId;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getCloseDate() {
+        return closeDate;
+    }
+
+    public String getShortDescription() {
+        return shortDescription;
+    }
+
+    public String getLongDescription() {
+        return longDescription;
+    }
+
+    public Double getHoursWorked() {
+        return hoursWorked;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public List<TicketComment> getComments() {
+        return Collections.unmodifiableList(comments);
+    }
+
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Reports whether this Ticket (or any of its comments) has been modified in memory since it
+     * was last loaded or saved. A Ticket that has never been saved is always dirty. This is a cheap
+     * check that never touches the disk.
+     *
+     * @return true if this Ticket needs to be saved.
+     */
+    public boolean isDirty() {
+        return sourceFile == null || hasUnsavedChanges();
+    }
+
+    /**
+     * Reports whether the source file for this Ticket has been changed on disk by someone
+     * other than us since we last loaded or saved it. The file is only actually read if its
+     * timestamp or size has changed.
+     *
+     * @return true if the source file content differs from what we last loaded or saved.
+     * @throws IOException If the source file can no longer be read.
+     */
+    public boolean isChangedOnDisk() throws IOException {
+        if (sourceFile == null || fingerprint == null) {
+            return false;
+        }
+        if (!sourceFile.exists()) {
+            return true;
+        }
+        if (fingerprint.matchesFile(sourceFile)) {
+            return false;
+        }
+        byte[] content = Files.readAllBytes(sourceFile.toPath());
+        if (fingerprint.matchesContent(content)) {
+            fingerprint = FileFingerprint.of(sourceFile, content); // touched, but not changed
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Saves this Ticket to the given file. The write is atomic: the file on disk is either
+     * the complete old version or the complete new version, even if we die partway through.
+     *
+     * @param f The file to write.
+     * @throws IOException If something goes wrong.
+     */
+    public void save(File f) throws IOException {
+        long modCount = getModCount();
+        byte[] content = toJson();
+        ModelFiles.writeAtomically(f, content);
+        written(f, FileFingerprint.of(f, content), modCount);
+    }
+
+    /**
+     * Returns this Ticket as it would be written to disk.
+     */
+    byte[] toJson() throws IOException {
+        return ModelCodec.writeTicket(this);
+    }
+
+    /**
+     * Returns this Ticket, with its comments, as json in the given format, whatever format
+     * is used for saving.
+     */
+    public byte[] toJson(StorageFormat format) throws IOException {
+        return ModelCodec.writeTicket(this, format);
+    }
+
+    /**
+     * Records that this Ticket, as it was at the given modification count, has been written to the given file.
+     */
+    void written(File f, FileFingerprint fingerprint, long atModCount) {
+        sourceFile = f;
+        this.fingerprint = fingerprint;
+        markSaved(atModCount);
+    }
 }
@@ -0,0 +1,20 @@
+package ca.corbett.tasktracker.model;
+
+/**
+ * Can be registered with a TicketRepository to be notified whenever a TicketHeader is added,
+ * changed, or removed. This allows things like indexes and statistics to be kept up to date
+ * incrementally, without having to rescan every Ticket in the Project.
+ *
+ * @author scorbo2
+ */
+@FunctionalInterface
+public interface TicketChangeListener {
+
+    /**
+     * Invoked when a Ticket is added, changed, or removed.
+     *
+     * @param before The header as it was before the change, or null if the Ticket was just added.
+     * @param after  The header as it is now, or null if the Ticket was just removed.
+     */
+    void ticketChanged(TicketHeader before, TicketHeader after);
+}
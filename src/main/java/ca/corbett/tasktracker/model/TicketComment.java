@@ -3,10 +3,67 @@ package ca.corbett.tasktracker.model;
 import java.util.Date;
 import java.util.UUID;
 
-public class TicketComment {
+/**
+ * Represents a single comment on a Ticket. TicketComments are not stored in their own
+ * files, but rather are saved along with the Ticket that owns them.
+ */
+public class TicketComment extends ModelObject {
     protected UUID internalId;
     protected UUID ticketId;
     protected Date createDate;
     protected Date lastEditDate;
     protected String commentText;
+
+    protected TicketComment() { }
+
+    /**
+     * Creates a new TicketComment for the given Ticket. Note that the comment is not
+     * actually added to the Ticket here - use Ticket.addComment() for that.
+     *
+     * @param ticket      The Ticket to which this comment belongs.
+     * @param commentText The text of the comment.
+     * @return A TicketComment instance with an auto-assigned internalId.
+     */
+    public static TicketComment create(Ticket ticket, String commentText) {
+        TicketComment comment = new TicketComment();
+        comment.internalId = UUID.randomUUID();
+        comment.ticketId = ticket.getInternalId();
+        comment.createDate = new Date();
+        comment.lastEditDate = comment.createDate;
+        comment.commentText = commentText;
+        return comment;
+    }
+
+    /**
+     * Replaces the text of this comment, and updates the lastEditDate accordingly.
+     *
+     * @param text The new comment text.
+     * @return This TicketComment.
+     */
+    public TicketComment setCommentText(String text) {
+        commentText = text;
+        lastEditDate = new Date();
+        markModified();
+        return this;
+    }
+
+    public UUID getInternalId() {
+        return internalId;
+    }
+
+    public UUID getTicketId() {
+        return ticketId;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public Date getLastEditDate() {
+        return lastEditDate;
+    }
+
+    public String getCommentText() {
+        return commentText;
+    }
 }
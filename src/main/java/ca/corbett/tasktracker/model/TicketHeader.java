@@ -0,0 +1,214 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A lightweight, read-only summary of a Ticket. This contains everything needed to list, sort
+ * and filter Tickets, but leaves out the long description and the comments, which are by far
+ * the heaviest parts of a Ticket. A Project keeps a TicketHeader in memory for every one of its
+ * Tickets, but only loads full Ticket instances on demand (see TicketRepository).
+ * <p>
+ * TicketHeaders are immutable, so they can be handed to other threads (see ProjectView). The
+ * dates are kept as epoch millis, and each getXxxDate() call returns a new Date. Anything that
+ * looks at a lot of dates, like sorting, should use the getXxxTime() methods instead.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class TicketHeader {
+
+    /** Returned by the getXxxTime() methods for a date that isn't set. **/
+    public static final long NO_DATE = Long.MIN_VALUE;
+
+    private final UUID internalId;
+    private final UUID projectId;
+    private final UUID targetVersionId;
+    private final int displayId;
+    private final long createTime;
+    private final long startTime;
+    private final long closeTime;
+    private final String shortDescription;
+    private final Double hoursWorked;
+    private final String state;
+    private final String resolution;
+
+    private TicketHeader(UUID internalId, UUID projectId, UUID targetVersionId, int displayId,
+                         long createTime, long startTime, long closeTime, String shortDescription,
+                         Double hoursWorked, String state, String resolution) {
+        this.internalId = internalId;
+        this.projectId = projectId;
+        this.targetVersionId = targetVersionId;
+        this.displayId = displayId;
+        this.createTime = createTime;
+        this.startTime = startTime;
+        this.closeTime = closeTime;
+        this.shortDescription = shortDescription;
+        this.hoursWorked = hoursWorked;
+        this.state = state;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Creates a TicketHeader reflecting the current values of the given Ticket.
+     *
+     * @param ticket The Ticket to summarize.
+     * @return A TicketHeader for that Ticket.
+     */
+    public static TicketHeader of(Ticket ticket) {
+        return new TicketHeader(ticket.internalId, ticket.projectId, ticket.targetVersionId, ticket.displayId,
+                                toTime(ticket.createDate), toTime(ticket.startDate), toTime(ticket.closeDate),
+                                ticket.shortDescription, ticket.hoursWorked, ticket.state, ticket.resolution);
+    }
+
+    /**
+     * Reads just the header fields from a Ticket json file. This is quite a bit cheaper than
+     * loading the whole Ticket, as the long description and the comments are skipped over
+     * without being parsed into objects.
+     *
+     * @param srcFile A Ticket file in json format.
+     * @return A TicketHeader for the Ticket in that file.
+     * @throws IOException If the file cannot be loaded.
+     */
+    public static TicketHeader load(File srcFile) throws IOException {
+        return ModelCodec.readTicketHeader(Files.readAllBytes(srcFile.toPath()));
+    }
+
+    /**
+     * Reads just the header fields from Ticket json content that didn't come from its own file
+     * (a history record, for example).
+     *
+     * @param content Ticket json, in any StorageFormat.
+     * @return A TicketHeader for that Ticket.
+     * @throws IOException If the content can't be parsed.
+     */
+    public static TicketHeader fromJson(byte[] content) throws IOException {
+        return ModelCodec.readTicketHeader(content);
+    }
+
+    /**
+     * Used by ModelCodec to build a TicketHeader from parsed json.
+     */
+    static TicketHeader of(UUID internalId, UUID projectId, UUID targetVersionId, int displayId,
+                           Date createDate, Date startDate, Date closeDate, String shortDescription,
+                           Double hoursWorked, String state, String resolution) {
+        return new TicketHeader(internalId, projectId, targetVersionId, displayId, toTime(createDate),
+                                toTime(startDate), toTime(closeDate), shortDescription, hoursWorked, state,
+                                resolution);
+    }
+
+    /**
+     * Used by ProjectSnapshot to rebuild a TicketHeader from its binary form. Dates are epoch millis,
+     * or NO_DATE.
+     */
+    static TicketHeader of(UUID internalId, UUID projectId, UUID targetVersionId, int displayId,
+                           long createTime, long startTime, long closeTime, String shortDescription,
+                           Double hoursWorked, String state, String resolution) {
+        return new TicketHeader(internalId, projectId, targetVersionId, displayId, createTime, startTime,
+                                closeTime, shortDescription, hoursWorked, state, resolution);
+    }
+
+    public UUID getInternalId() {
+        return internalId;
+    }
+
+    public UUID getProjectId() {
+        return projectId;
+    }
+
+    public UUID getTargetVersionId() {
+        return targetVersionId;
+    }
+
+    public int getDisplayId() {
+        return displayId;
+    }
+
+    public Date getCreateDate() {
+        return toDate(createTime);
+    }
+
+    public Date getStartDate() {
+        return toDate(startTime);
+    }
+
+    public Date getCloseDate() {
+        return toDate(closeTime);
+    }
+
+    /**
+     * Returns the create date in epoch millis, or NO_DATE if there isn't one.
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * Returns the start date in epoch millis, or NO_DATE if there isn't one.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Returns the close date in epoch millis, or NO_DATE if there isn't one.
+     */
+    public long getCloseTime() {
+        return closeTime;
+    }
+
+    public String getShortDescription() {
+        return shortDescription;
+    }
+
+    public Double getHoursWorked() {
+        return hoursWorked;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    private static long toTime(Date date) {
+        return date == null ? NO_DATE : date.getTime();
+    }
+
+    private static Date toDate(long time) {
+        return time == NO_DATE ? null : new Date(time);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TicketHeader)) {
+            return false;
+        }
+        TicketHeader other = (TicketHeader)o;
+        return displayId == other.displayId
+                && Objects.equals(internalId, other.internalId)
+                && Objects.equals(projectId, other.projectId)
+                && Objects.equals(targetVersionId, other.targetVersionId)
+                && createTime == other.createTime
+                && startTime == other.startTime
+                && closeTime == other.closeTime
+                && Objects.equals(shortDescription, other.shortDescription)
+                && Objects.equals(hoursWorked, other.hoursWorked)
+                && Objects.equals(state, other.state)
+                && Objects.equals(resolution, other.resolution);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(internalId, displayId, state, resolution);
+    }
+}
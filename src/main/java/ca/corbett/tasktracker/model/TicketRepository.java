@@ -0,0 +1,563 @@
+package ca.corbett.tasktracker.model;
+
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.diagnostics.OperationTimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Provides access to all the Tickets in a Project. A lightweight TicketHeader is kept in memory
+ * for every Ticket, which is enough to list, sort and filter them. Full Ticket instances, with
+ * their long descriptions and comments, are only loaded when actually asked for, and are kept
+ * in a least-recently-used cache that is bounded by an estimate of how much heap the cached
+ * Tickets are using. This lets us open Projects with hundreds of thousands of Tickets without
+ * needing hundreds of thousands of Tickets' worth of memory.
+ * <p>
+ * Tickets that have been created or modified but not yet saved are never evicted from the cache;
+ * they are held until the next save, so unsaved edits can never be lost to eviction.
+ * </p>
+ * <p>
+ * Like the rest of the model, this class is meant to be used from one thread. The one exception
+ * is getView(), which any thread can call at any time to get an immutable ProjectView of the
+ * headers as of the last load, save, refresh or external change.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public class TicketRepository {
+
+    private static final Logger logger = Logger.getLogger(TicketRepository.class.getName());
+    private static final OperationTimer loadHeadersTimer = Metrics.timer("tickets.loadHeaders");
+    private static final OperationTimer loadTicketTimer = Metrics.timer("tickets.loadTicket");
+    private static final OperationTimer saveTimer = Metrics.timer("tickets.save");
+
+    /** The default limit on the estimated heap usage of cached Tickets. **/
+    public static final long DEFAULT_MAX_CACHE_WEIGHT = 64L * 1024 * 1024;
+
+    private final Project project;
+    private final ProjectView.Builder headers = new ProjectView.Builder();
+    private final AtomicReference<ProjectView> view = new AtomicReference<>(ProjectView.EMPTY);
+    private final LinkedHashMap<UUID, CacheEntry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<UUID, CacheEntry> pinned = new HashMap<>();
+    private final Map<Integer, FileFingerprint> fingerprints = new HashMap<>(); // last content seen, by displayId
+    private final List<TicketChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<TicketSaveListener> saveListeners = new CopyOnWriteArrayList<>();
+
+    private long maxCacheWeight = DEFAULT_MAX_CACHE_WEIGHT;
+    private long refreshedAtEdit = -1;
+    private long cacheWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    TicketRepository(Project project) {
+        this.project = project;
+    }
+
+    public void addTicketChangeListener(TicketChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeTicketChangeListener(TicketChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void addTicketSaveListener(TicketSaveListener listener) {
+        saveListeners.add(listener);
+    }
+
+    public void removeTicketSaveListener(TicketSaveListener listener) {
+        saveListeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of Tickets in this Project.
+     */
+    public int size() {
+        return headers.size();
+    }
+
+    /**
+     * Returns the latest published view of the headers. Unlike everything else here, this can
+     * be called from any thread, and never blocks. Unsaved changes to loaded Tickets are only
+     * included once refreshHeaders() has been called on the model thread (the header accessors
+     * here do that automatically).
+     *
+     * @return An immutable ProjectView.
+     */
+    public ProjectView getView() {
+        return view.get();
+    }
+
+    /**
+     * Returns the header for every Ticket in this Project, in displayId order. Unsaved
+     * changes to any loaded Tickets are reflected here.
+     *
+     * @return A list of TicketHeaders.
+     */
+    public List<TicketHeader> getHeaders() {
+        refreshHeaders();
+        return headers.getHeaders();
+    }
+
+    /**
+     * Returns the header for the Ticket with the given internalId, or null if there is no such Ticket.
+     */
+    public TicketHeader getHeader(UUID internalId) {
+        refreshHeaders();
+        return headers.get(internalId);
+    }
+
+    /**
+     * Returns the header for the Ticket with the given displayId, or null if there is no such Ticket.
+     */
+    public TicketHeader getHeaderByDisplayId(int displayId) {
+        refreshHeaders();
+        return headers.getByDisplayId(displayId);
+    }
+
+    /**
+     * Returns the full Ticket with the given internalId, loading it from disk if it
+     * isn't already in memory.
+     *
+     * @param internalId The internalId of the Ticket in question.
+     * @return The Ticket, or null if there is no such Ticket.
+     * @throws IOException If the Ticket needed to be loaded and couldn't be.
+     */
+    public Ticket get(UUID internalId) throws IOException {
+        CacheEntry entry = pinned.get(internalId);
+        if (entry == null) {
+            entry = cache.get(internalId);
+        }
+        if (entry != null) {
+            hitCount++;
+            return entry.ticket;
+        }
+
+        TicketHeader header = headers.get(internalId);
+        if (header == null) {
+            return null;
+        }
+        missCount++;
+        long start = loadTicketTimer.start();
+        Ticket ticket;
+        try {
+            ticket = Ticket.load(getTicketFile(header.getDisplayId()));
+        }
+        finally {
+            loadTicketTimer.stop(start);
+        }
+        fingerprints.put(ticket.getDisplayId(), ticket.fingerprint);
+        addToCache(ticket);
+        return ticket;
+    }
+
+    /**
+     * Returns the full Ticket with the given displayId, loading it from disk if it
+     * isn't already in memory.
+     *
+     * @param displayId The displayId of the Ticket in question.
+     * @return The Ticket, or null if there is no such Ticket.
+     * @throws IOException If the Ticket needed to be loaded and couldn't be.
+     */
+    public Ticket getByDisplayId(int displayId) throws IOException {
+        TicketHeader header = headers.getByDisplayId(displayId);
+        return header == null ? null : get(header.getInternalId());
+    }
+
+    /**
+     * Sets the limit on the estimated heap usage of cached Tickets. Setting a lower limit
+     * than the current one will evict Tickets right away as needed.
+     *
+     * @param maxWeight The new limit, in (estimated) bytes.
+     */
+    public void setMaxCacheWeight(long maxWeight) {
+        maxCacheWeight = maxWeight;
+        evictAsNeeded();
+    }
+
+    public long getMaxCacheWeight() {
+        return maxCacheWeight;
+    }
+
+    /**
+     * Returns the estimated heap usage of all cached Tickets, in bytes.
+     */
+    public long getCacheWeight() {
+        return cacheWeight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Lists the Ticket files currently on disk for this Project, returning the last modified
+     * time of each, keyed by displayId. Tickets that have never been saved won't be included.
+     * This is one directory walk, so it's far cheaper than checking each Ticket's file separately.
+     *
+     * @return A map of displayId to last modified time in millis.
+     * @throws IOException If the tickets directory can't be listed.
+     */
+    public Map<Integer, Long> getTicketFileTimes() throws IOException {
+        Map<Integer, Long> times = new HashMap<>();
+        if (project.getSourceFile() == null) {
+            return times;
+        }
+        File projectDir = project.getSourceFile().getAbsoluteFile().getParentFile();
+        for (Map.Entry<String, BasicFileAttributes> entry : ModelFiles.listTicketFiles(projectDir).entrySet()) {
+            String name = new File(entry.getKey()).getName();
+            try {
+                int displayId = Integer.parseInt(name.substring(0, name.length() - ".json".length()));
+                times.put(displayId, entry.getValue().lastModifiedTime().toMillis());
+            }
+            catch (NumberFormatException ignored) {
+                // Not one of ours
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Creates a new Ticket with the next available displayId. It shows up in getView() at the
+     * next save or refreshHeaders(), not right away, so that creating Tickets in bulk doesn't
+     * publish a view per Ticket.
+     */
+    Ticket create(String shortDescription) {
+        int displayId = headers.getMaxDisplayId() + 1;
+        Ticket ticket = Ticket.create(project, displayId, shortDescription);
+        putHeader(TicketHeader.of(ticket));
+        CacheEntry entry = new CacheEntry(ticket);
+        pinned.put(ticket.getInternalId(), entry);
+        return ticket;
+    }
+
+    /**
+     * Discards everything and loads the headers for all Tickets in the given Project directory.
+     */
+    void load(File projectDir, boolean useSnapshot) throws IOException {
+        long start = loadHeadersTimer.start();
+        try {
+            headers.clear();
+            cache.clear();
+            pinned.clear();
+            fingerprints.clear();
+            cacheWeight = 0;
+
+            if (useSnapshot) {
+                for (TicketHeader header : ProjectSnapshot.loadHeaders(projectDir)) {
+                    putHeader(header);
+                }
+            }
+            else {
+                for (String path : ModelFiles.listTicketFiles(projectDir).keySet()) {
+                    File file = new File(ModelFiles.getTicketsDir(projectDir), path);
+                    putHeader(TicketHeader.load(file));
+                }
+            }
+            publish();
+        }
+        finally {
+            loadHeadersTimer.stop(start);
+        }
+    }
+
+    /**
+     * Saves any Tickets that are new or have been modified since they were loaded.
+     */
+    void save() throws IOException {
+        long start = saveTimer.start();
+        try {
+            List<Ticket> saved = getUnsavedTickets();
+            for (Ticket ticket : saved) {
+                File file = getTicketFile(ticket.getDisplayId());
+                long modCount = ticket.getModCount();
+                byte[] content = ticket.toJson();
+                ModelFiles.writeAtomically(file, content);
+                ticketWritten(ticket, file, FileFingerprint.of(file, content), modCount);
+            }
+            notifySaved(saved);
+        }
+        finally {
+            saveTimer.stop(start);
+        }
+    }
+
+    /**
+     * Returns every Ticket that is new or has been modified since it was loaded or saved.
+     */
+    List<Ticket> getUnsavedTickets() {
+        // Anything unsaved is either pinned, or is in the cache and has been modified since it was loaded:
+        List<Ticket> unsaved = new ArrayList<>();
+        for (CacheEntry entry : pinned.values()) {
+            unsaved.add(entry.ticket);
+        }
+        for (CacheEntry entry : cache.values()) {
+            if (entry.ticket.isDirty()) {
+                unsaved.add(entry.ticket);
+            }
+        }
+        return unsaved;
+    }
+
+    /**
+     * Records that the given Ticket, as it was at the given modification count, has been written
+     * to the given file. If it hasn't been modified again since, it's no longer pinned.
+     */
+    void ticketWritten(Ticket ticket, File file, FileFingerprint fingerprint, long atModCount) {
+        ticket.written(file, fingerprint, atModCount);
+        fingerprints.put(ticket.getDisplayId(), fingerprint);
+        putHeader(TicketHeader.of(ticket));
+        UUID id = ticket.getInternalId();
+        CacheEntry entry = pinned.containsKey(id) ? pinned.get(id) : cache.get(id);
+        if (entry == null) {
+            return;
+        }
+        entry.syncedModCount = ticket.getModCount();
+
+        // Now that it's safely on disk, it can be evicted like any other:
+        if (!ticket.isDirty() && pinned.remove(id) != null) {
+            addToCache(entry);
+        }
+        else if (cache.containsKey(id)) {
+            // It may have grown or shrunk since it was cached:
+            cacheWeight -= entry.weight;
+            entry.weight = estimateWeight(ticket);
+            cacheWeight += entry.weight;
+            evictAsNeeded();
+        }
+    }
+
+    /**
+     * Applies a change made to a Ticket file by someone other than us (see ProjectWatcher).
+     * Headers are updated and listeners notified as usual. A loaded copy of the Ticket is
+     * replaced with the new version, unless it has unsaved changes of its own, in which case
+     * we keep ours; it will overwrite the file on the next save.
+     *
+     * @param displayId The displayId of the Ticket whose file changed.
+     * @param ticket    The Ticket as it now is on disk, or null if its file was deleted.
+     * @return true if the Ticket content is different from what we had, as far as we know.
+     */
+    boolean applyExternalChange(int displayId, Ticket ticket) {
+        TicketHeader before = headers.getByDisplayId(displayId);
+        if (ticket == null) {
+            return before != null && removeExternally(before);
+        }
+        if (ticket.fingerprint != null && ticket.fingerprint.matchesContent(fingerprints.get(displayId))) {
+            // Most likely our own save coming back to us, whether or not the Ticket is still in memory:
+            return false;
+        }
+        if (before != null && !before.getInternalId().equals(ticket.getInternalId())) {
+            // Someone else put an entirely different Ticket in this slot:
+            removeExternally(before);
+            before = null;
+        }
+
+        UUID id = ticket.getInternalId();
+        CacheEntry entry = pinned.containsKey(id) ? pinned.get(id) : cache.get(id);
+        if (entry != null) {
+            if (entry.ticket.fingerprint != null && entry.ticket.fingerprint.matchesContent(ticket.fingerprint)) {
+                return false;
+            }
+            if (entry.ticket.isDirty()) {
+                logger.warning("Ticket " + displayId + " was changed on disk, but there are unsaved changes here;"
+                                       + " keeping ours.");
+                return false;
+            }
+            discard(id);
+            addToCache(ticket);
+        }
+        fingerprints.put(displayId, ticket.fingerprint);
+
+        TicketHeader after = TicketHeader.of(ticket);
+        if (!after.equals(before)) {
+            putHeader(after);
+            publish();
+        }
+        return true;
+    }
+
+    /**
+     * Drops any Ticket whose displayId isn't in the given set, which is everything currently
+     * on disk. Used by ProjectWatcher after it has lost track of individual changes.
+     */
+    void removeMissing(Set<Integer> displayIdsOnDisk) {
+        for (TicketHeader header : headers.getHeaders()) {
+            if (!displayIdsOnDisk.contains(header.getDisplayId())) {
+                removeExternally(header);
+            }
+        }
+    }
+
+    /**
+     * Tells save listeners that the given Tickets are now on disk, whether we wrote them or someone else did.
+     */
+    void notifySaved(List<Ticket> tickets) {
+        publish(); // so that listeners handing work off to other threads can pass the new view along
+        if (!tickets.isEmpty()) {
+            for (TicketSaveListener listener : saveListeners) {
+                listener.ticketsSaved(tickets);
+            }
+        }
+    }
+
+    private boolean removeExternally(TicketHeader header) {
+        UUID id = header.getInternalId();
+        CacheEntry entry = pinned.containsKey(id) ? pinned.get(id) : cache.get(id);
+        if (entry != null && entry.ticket.isDirty()) {
+            // Never saved, or has unsaved changes: either way it will be (re)written on the next save.
+            return false;
+        }
+        discard(id);
+        headers.remove(header);
+        fingerprints.remove(header.getDisplayId());
+        publish();
+        for (TicketChangeListener listener : listeners) {
+            listener.ticketChanged(header, null);
+        }
+        return true;
+    }
+
+    File getTicketFile(int displayId) {
+        return ModelFiles.getTicketFile(project.getSourceFile().getAbsoluteFile().getParentFile(), displayId);
+    }
+
+    private void putHeader(TicketHeader header) {
+        TicketHeader before = headers.put(header);
+        for (TicketChangeListener listener : listeners) {
+            listener.ticketChanged(before, header);
+        }
+    }
+
+    /**
+     * Brings the headers up to date with any unsaved changes that have been made to loaded Tickets,
+     * notifying listeners of any that changed. Headers are always updated on save, and the
+     * header accessors here call this automatically, but anything that keeps its own copy
+     * of the headers (an index, for example) should call this before relying on that copy.
+     * Only Tickets that are currently loaded can have out of date headers, and they're only
+     * looked at if something has been modified since last time, so this is cheap.
+     */
+    public void refreshHeaders() {
+        long edits = ModelObject.getEditCount();
+        if (edits != refreshedAtEdit) {
+            refreshHeaders(pinned.values());
+            refreshHeaders(cache.values());
+            refreshedAtEdit = edits;
+        }
+        publish();
+    }
+
+    /**
+     * Makes everything done to the headers so far visible to getView(), in one step.
+     */
+    private void publish() {
+        if (headers.isChanged()) {
+            view.set(headers.build());
+        }
+    }
+
+    private void refreshHeaders(Iterable<CacheEntry> entries) {
+        for (CacheEntry entry : entries) {
+            if (entry.ticket.getModCount() != entry.syncedModCount) {
+                putHeader(TicketHeader.of(entry.ticket));
+                entry.syncedModCount = entry.ticket.getModCount();
+            }
+        }
+    }
+
+    /**
+     * Forgets the loaded copy of the given Ticket, wherever it is. Only the cache counts towards
+     * cacheWeight; pinned entries were taken out of it when they were pinned, or never in it.
+     */
+    private void discard(UUID id) {
+        CacheEntry entry = cache.remove(id);
+        if (entry != null) {
+            cacheWeight -= entry.weight;
+        }
+        else {
+            pinned.remove(id);
+        }
+    }
+
+    private void addToCache(Ticket ticket) {
+        addToCache(new CacheEntry(ticket));
+    }
+
+    private void addToCache(CacheEntry entry) {
+        entry.weight = estimateWeight(entry.ticket);
+        cache.put(entry.ticket.getInternalId(), entry);
+        cacheWeight += entry.weight;
+        evictAsNeeded();
+    }
+
+    /**
+     * Evicts least-recently-used Tickets until we're back under our weight limit. Modified
+     * Tickets are moved aside to the pinned list instead of being evicted.
+     */
+    private void evictAsNeeded() {
+        Iterator<CacheEntry> iterator = cache.values().iterator();
+        while (cacheWeight > maxCacheWeight && iterator.hasNext()) {
+            CacheEntry entry = iterator.next();
+            iterator.remove();
+            cacheWeight -= entry.weight;
+            if (entry.ticket.isDirty()) {
+                pinned.put(entry.ticket.getInternalId(), entry);
+            }
+            else {
+                evictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Makes a rough guess as to how many bytes of heap the given Ticket is using. This doesn't
+     * need to be exact; it just needs to be proportional, so that one Ticket with a giant
+     * description and hundreds of comments counts for more than one with a single line of text.
+     */
+    static long estimateWeight(Ticket ticket) {
+        long weight = 256 + stringWeight(ticket.shortDescription) + stringWeight(ticket.longDescription);
+        for (TicketComment comment : ticket.comments) {
+            weight += 128 + stringWeight(comment.commentText);
+        }
+        return weight;
+    }
+
+    private static long stringWeight(String str) {
+        return str == null ? 0 : 48 + str.length() * 2L;
+    }
+
+    /**
+     * A loaded Ticket along with some bookkeeping about it.
+     */
+    private static final class CacheEntry {
+        final Ticket ticket;
+        long weight;
+        long syncedModCount;
+
+        CacheEntry(Ticket ticket) {
+            this.ticket = ticket;
+            this.syncedModCount = ticket.getModCount();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ca.corbett.tasktracker.model;
+
+import java.util.List;
+
+/**
+ * Can be registered with a TicketRepository to be notified after Tickets have been written
+ * to disk, either by our own save or by someone else (as picked up by ProjectWatcher).
+ * Unlike TicketChangeListener, which only ever sees TicketHeaders, this gets the full Tickets,
+ * so it's the place to hook in anything that needs descriptions or comments.
+ *
+ * @author scorbo2
+ */
+@FunctionalInterface
+public interface TicketSaveListener {
+
+    /**
+     * Invoked once at the end of each save, with every Ticket that was written by that save,
+     * and once for each batch of external changes. Never invoked with an empty list.
+     *
+     * @param tickets The Tickets whose files were just written.
+     */
+    void ticketsSaved(List<Ticket> tickets);
+}
@@ -0,0 +1,50 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A directory full of Projects, each in its own subdirectory. See WorkspaceLoader for loading one.
+ *
+ * @author scorbo2
+ */
+public final class Workspace {
+
+    private final File dir;
+    private final List<Project> projects = new ArrayList<>();
+    private final Map<File, Throwable> failures = new LinkedHashMap<>();
+
+    Workspace(File dir) {
+        this.dir = dir;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * Returns the Projects in this Workspace, in the order in which they finished loading.
+     */
+    public List<Project> getProjects() {
+        return Collections.unmodifiableList(projects);
+    }
+
+    /**
+     * Returns the project files that could not be loaded, along with what went wrong.
+     */
+    public Map<File, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    void addProject(Project project) {
+        projects.add(project);
+    }
+
+    void addFailure(File projectFile, Throwable failure) {
+        failures.put(projectFile, failure);
+    }
+}
@@ -0,0 +1,181 @@
+package ca.corbett.tasktracker.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads all the Projects in a Workspace in parallel. Each Project is loaded on a background
+ * thread and then handed to the model executor as soon as it's ready, so the UI can show the
+ * first Project while the rest are still loading, instead of waiting on hundreds of them
+ * one after another.
+ * <p>
+ * Loading a Project is almost entirely file reads, so the number of loader threads is what
+ * bounds how much I/O we have in flight at once. Too few and we leave the disk idle while
+ * parsing; too many and the reads just queue up in the OS, so this is configurable.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public final class WorkspaceLoader {
+
+    private static final Logger logger = Logger.getLogger(WorkspaceLoader.class.getName());
+
+    /** The project file we look for in each subdirectory of a Workspace. **/
+    public static final String PROJECT_FILE = "project.json";
+
+    /** The default number of Projects to load at once. **/
+    public static final int DEFAULT_IO_CONCURRENCY = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    private final Executor modelExecutor;
+    private int ioConcurrency = DEFAULT_IO_CONCURRENCY;
+
+    /**
+     * Creates a WorkspaceLoader.
+     *
+     * @param modelExecutor Where loaded Projects are handed over, typically SwingUtilities::invokeLater.
+     */
+    public WorkspaceLoader(Executor modelExecutor) {
+        this.modelExecutor = modelExecutor;
+    }
+
+    /**
+     * Sets the maximum number of Projects that will be read from disk at once.
+     */
+    public WorkspaceLoader setIoConcurrency(int ioConcurrency) {
+        this.ioConcurrency = Math.max(1, ioConcurrency);
+        return this;
+    }
+
+    public int getIoConcurrency() {
+        return ioConcurrency;
+    }
+
+    /**
+     * Starts loading every Project in the given Workspace directory. Each Project is passed to
+     * the given callback (on the model executor) as soon as it has loaded. A Project that fails
+     * to load is logged and recorded in the Workspace, and doesn't stop the others.
+     *
+     * @param workspaceDir    A directory whose subdirectories each contain a project.json file.
+     * @param onProjectLoaded Invoked on the model executor for each Project as it loads. May be null.
+     * @return A future that completes (on the model executor) with the Workspace, once every Project is done.
+     */
+    public CompletableFuture<Workspace> load(File workspaceDir, Consumer<Project> onProjectLoaded) {
+        long start = System.nanoTime();
+        Workspace workspace = new Workspace(workspaceDir);
+        List<File> projectFiles = findProjectFiles(workspaceDir);
+        if (projectFiles.isEmpty()) {
+            logger.info("No projects found in workspace " + workspaceDir.getAbsolutePath());
+            return CompletableFuture.supplyAsync(() -> workspace, modelExecutor);
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(ioConcurrency, projectFiles.size()), r -> {
+            Thread thread = new Thread(r, "WorkspaceLoader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Progress progress = new Progress(workspace, start, onProjectLoaded);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(projectFiles.size());
+        for (File projectFile : projectFiles) {
+            futures.add(CompletableFuture.supplyAsync(() -> loadProject(projectFile), pool)
+                                         .handleAsync((project, failure) -> {
+                                             progress.loaded(projectFile, project, failure);
+                                             return null;
+                                         }, modelExecutor));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                                .thenApplyAsync(ignored -> {
+                                    pool.shutdown();
+                                    progress.finished();
+                                    return workspace;
+                                }, modelExecutor);
+    }
+
+    /**
+     * Finds the project file in each immediate subdirectory of the given Workspace directory,
+     * in name order.
+     */
+    static List<File> findProjectFiles(File workspaceDir) {
+        List<File> projectFiles = new ArrayList<>();
+        File[] dirs = workspaceDir.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return projectFiles;
+        }
+        Arrays.sort(dirs);
+        for (File dir : dirs) {
+            File projectFile = new File(dir, PROJECT_FILE);
+            if (projectFile.isFile()) {
+                projectFiles.add(projectFile);
+            }
+        }
+        return projectFiles;
+    }
+
+    private static Project loadProject(File projectFile) {
+        try {
+            return Project.load(projectFile);
+        }
+        catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Collects loaded Projects into the Workspace as they arrive. Only used on the model executor.
+     */
+    private final class Progress {
+        private final Workspace workspace;
+        private final long start;
+        private final Consumer<Project> onProjectLoaded;
+
+        Progress(Workspace workspace, long start, Consumer<Project> onProjectLoaded) {
+            this.workspace = workspace;
+            this.start = start;
+            this.onProjectLoaded = onProjectLoaded;
+        }
+
+        void loaded(File projectFile, Project project, Throwable failure) {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                logger.log(Level.WARNING, "Unable to load project " + projectFile.getAbsolutePath(), cause);
+                workspace.addFailure(projectFile, cause);
+                return;
+            }
+            workspace.addProject(project);
+            if (workspace.getProjects().size() == 1) {
+                logger.info("First project ready after " + elapsedMs(start) + " ms");
+            }
+            if (onProjectLoaded != null) {
+                onProjectLoaded.accept(project);
+            }
+        }
+
+        void finished() {
+            int ticketCount = 0;
+            for (Project project : workspace.getProjects()) {
+                ticketCount += project.getTicketRepository().size();
+            }
+            logger.info(String.format("Loaded %d projects (%d tickets) from %s in %d ms with %d threads; %d failed",
+                                      workspace.getProjects().size(), ticketCount,
+                                      workspace.getDir().getAbsolutePath(), elapsedMs(start), ioConcurrency,
+                                      workspace.getFailures().size()));
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package ca.corbett.tasktracker.query;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.diagnostics.OperationTimer;
+import ca.corbett.tasktracker.model.TicketChangeListener;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Maintains secondary indexes over the TicketHeaders in a TicketRepository, so that TicketQueries
+ * can be answered without scanning every Ticket. Each Ticket is assigned a small integer ordinal,
+ * and the indexes map field values to sets of ordinals:
+ * <ul>
+ *     <li>state, resolution, projectId and targetVersionId are hash indexes, mapping each
+ *         distinct value to a bit set of ordinals.
+ *     <li>the three dates (by day), hoursWorked and displayId are sorted indexes, so that ranges
+ *         of values can be found directly.
+ * </ul>
+ * To run a query, we estimate how many Tickets each of its criteria would match, start with the
+ * most selective one, and intersect with the others in order. Once the candidate set is small,
+ * the remaining criteria are just checked directly against each candidate instead.
+ * <p>
+ * The indexes are kept up to date as Tickets change by listening to the repository, so they
+ * only need to be built once.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public class TicketIndex implements TicketChangeListener {
+
+    private static final OperationTimer executeTimer = Metrics.timer("query.execute");
+    private static final OperationTimer countTimer = Metrics.timer("query.count");
+
+    /** Once we're down to this many candidates, it's cheaper to check them one by one than to intersect. **/
+    private static final int VERIFY_THRESHOLD = 256;
+
+    /**
+     * A limited query sorted by displayId walks the displayId index in order if at least one Ticket in
+     * this many matches, as it will find enough of them quickly. Otherwise it picks the best from the matches.
+     */
+    private static final int WALK_RATIO = 8;
+
+    private final TicketRepository repository;
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final BitSet liveOrdinals = new BitSet();
+    private TicketHeader[] headers = new TicketHeader[1024];
+    private int nextOrdinal;
+    private final IntList freeOrdinals = new IntList();
+
+    private final HashIndex<String> stateIndex = new HashIndex<>(TicketHeader::getState);
+    private final HashIndex<String> resolutionIndex = new HashIndex<>(TicketHeader::getResolution);
+    private final HashIndex<UUID> projectIndex = new HashIndex<>(TicketHeader::getProjectId);
+    private final HashIndex<UUID> versionIndex = new HashIndex<>(TicketHeader::getTargetVersionId);
+    private final SortedIndex<Integer> createDateIndex = new SortedIndex<>(h -> epochDay(h.getCreateTime()));
+    private final SortedIndex<Integer> startDateIndex = new SortedIndex<>(h -> epochDay(h.getStartTime()));
+    private final SortedIndex<Integer> closeDateIndex = new SortedIndex<>(h -> epochDay(h.getCloseTime()));
+    private final SortedIndex<Double> hoursIndex = new SortedIndex<>(TicketHeader::getHoursWorked);
+    private final SortedIndex<Integer> displayIdIndex = new SortedIndex<>(TicketHeader::getDisplayId);
+
+    /**
+     * Builds indexes for all Tickets currently in the given repository, and starts listening
+     * to it for changes.
+     *
+     * @param repository The TicketRepository to index.
+     */
+    public TicketIndex(TicketRepository repository) {
+        this.repository = repository;
+        for (TicketHeader header : repository.getHeaders()) {
+            add(header);
+        }
+        repository.addTicketChangeListener(this);
+    }
+
+    /**
+     * Stops listening to the repository. The index should not be used after this.
+     */
+    public void dispose() {
+        repository.removeTicketChangeListener(this);
+    }
+
+    /**
+     * Returns the number of Tickets in this index.
+     */
+    public int size() {
+        return ordinals.size();
+    }
+
+    /**
+     * Runs the given query, returning matching TicketHeaders in the order requested by the query.
+     * When the query has a limit, only that many matches are ever sorted, however many there are.
+     *
+     * @param query The query to run.
+     * @return A list of matching TicketHeaders, possibly empty.
+     */
+    public List<TicketHeader> execute(TicketQuery query) {
+        long start = executeTimer.start();
+        try {
+            BitSet matches = findMatches(query);
+            int count = matches.cardinality();
+            if (count <= query.limit) {
+                List<TicketHeader> results = new ArrayList<>(count);
+                for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                    results.add(headers[i]);
+                }
+                results.sort(query.getComparator());
+                return results;
+            }
+            if (query.sortField == TicketQuery.SortField.DISPLAY_ID && (long)count * WALK_RATIO >= size()) {
+                return displayIdIndex.first(matches, query.limit, query.ascending, headers);
+            }
+            return best(matches, query.limit, query.getComparator());
+        }
+        finally {
+            executeTimer.stop(start);
+        }
+    }
+
+    /**
+     * Returns the number of Tickets that match the given query, ignoring any limit on the query.
+     * This is cheaper than execute() as nothing needs to be collected or sorted.
+     */
+    public int count(TicketQuery query) {
+        long start = countTimer.start();
+        try {
+            return findMatches(query).cardinality();
+        }
+        finally {
+            countTimer.stop(start);
+        }
+    }
+
+    @Override
+    public void ticketChanged(TicketHeader before, TicketHeader after) {
+        if (before != null) {
+            remove(before);
+        }
+        if (after != null) {
+            add(after);
+        }
+    }
+
+    private BitSet findMatches(TicketQuery query) {
+        // Make sure we've heard about any unsaved edits before we answer:
+        repository.refreshHeaders();
+
+        List<Condition> conditions = buildConditions(query);
+        if (conditions.isEmpty()) {
+            return (BitSet)liveOrdinals.clone();
+        }
+
+        for (Condition condition : conditions) {
+            condition.estimate = condition.estimate();
+        }
+        conditions.sort(Comparator.comparingInt(c -> c.estimate));
+
+        BitSet result = conditions.get(0).matches();
+        for (int c = 1; c < conditions.size(); c++) {
+            if (result.cardinality() <= VERIFY_THRESHOLD) {
+                List<Condition> remaining = conditions.subList(c, conditions.size());
+                for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+                    for (Condition condition : remaining) {
+                        if (!condition.test(headers[i])) {
+                            result.clear(i);
+                            break;
+                        }
+                    }
+                }
+                break;
+            }
+            result.and(conditions.get(c).matches());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first few of the given matches in the given order, without sorting all of them.
+     */
+    private List<TicketHeader> best(BitSet matches, int limit, Comparator<TicketHeader> order) {
+        List<TicketHeader> results = new ArrayList<>(limit);
+        if (limit == 0) {
+            return results;
+        }
+        // Keep a heap of the best seen so far, with the worst of them on top:
+        PriorityQueue<TicketHeader> best = new PriorityQueue<>(limit, order.reversed());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            if (best.size() < limit) {
+                best.add(headers[i]);
+            }
+            else if (order.compare(headers[i], best.peek()) < 0) {
+                best.poll();
+                best.add(headers[i]);
+            }
+        }
+        results.addAll(best);
+        results.sort(order);
+        return results;
+    }
+
+    private List<Condition> buildConditions(TicketQuery query) {
+        List<Condition> conditions = new ArrayList<>();
+        if (query.states != null) {
+            conditions.add(stateIndex.condition(query.states));
+        }
+        if (query.resolutions != null) {
+            conditions.add(resolutionIndex.condition(query.resolutions));
+        }
+        if (query.projectIds != null) {
+            conditions.add(projectIndex.condition(query.projectIds));
+        }
+        if (query.targetVersionIds != null) {
+            conditions.add(versionIndex.condition(query.targetVersionIds));
+        }
+        if (query.createDate != null) {
+            conditions.add(createDateIndex.condition(query.createDate.fromDay, query.createDate.toDay));
+        }
+        if (query.startDate != null) {
+            conditions.add(startDateIndex.condition(query.startDate.fromDay, query.startDate.toDay));
+        }
+        if (query.closeDate != null) {
+            conditions.add(closeDateIndex.condition(query.closeDate.fromDay, query.closeDate.toDay));
+        }
+        if (query.minHours != null || query.maxHours != null) {
+            conditions.add(hoursIndex.condition(query.minHours == null ? -Double.MAX_VALUE : query.minHours,
+                                                query.maxHours == null ? Double.MAX_VALUE : query.maxHours));
+        }
+        if (query.minDisplayId != null || query.maxDisplayId != null) {
+            conditions.add(displayIdIndex.condition(query.minDisplayId == null ? Integer.MIN_VALUE : query.minDisplayId,
+                                                    query.maxDisplayId == null ? Integer.MAX_VALUE : query.maxDisplayId));
+        }
+        return conditions;
+    }
+
+    private void add(TicketHeader header) {
+        int ordinal = freeOrdinals.isEmpty() ? nextOrdinal++ : freeOrdinals.removeLast();
+        if (ordinal >= headers.length) {
+            headers = Arrays.copyOf(headers, headers.length * 2);
+        }
+        headers[ordinal] = header;
+        ordinals.put(header.getInternalId(), ordinal);
+        liveOrdinals.set(ordinal);
+
+        stateIndex.add(header, ordinal);
+        resolutionIndex.add(header, ordinal);
+        projectIndex.add(header, ordinal);
+        versionIndex.add(header, ordinal);
+        createDateIndex.add(header, ordinal);
+        startDateIndex.add(header, ordinal);
+        closeDateIndex.add(header, ordinal);
+        hoursIndex.add(header, ordinal);
+        displayIdIndex.add(header, ordinal);
+    }
+
+    private void remove(TicketHeader header) {
+        Integer ordinal = ordinals.remove(header.getInternalId());
+        if (ordinal == null) {
+            return;
+        }
+        // Remove using the header we actually indexed, which may not be exactly the one we were given:
+        TicketHeader indexed = headers[ordinal];
+        stateIndex.remove(indexed, ordinal);
+        resolutionIndex.remove(indexed, ordinal);
+        projectIndex.remove(indexed, ordinal);
+        versionIndex.remove(indexed, ordinal);
+        createDateIndex.remove(indexed, ordinal);
+        startDateIndex.remove(indexed, ordinal);
+        closeDateIndex.remove(indexed, ordinal);
+        hoursIndex.remove(indexed, ordinal);
+        displayIdIndex.remove(indexed, ordinal);
+
+        headers[ordinal] = null;
+        liveOrdinals.clear(ordinal);
+        freeOrdinals.add(ordinal);
+    }
+
+    private static Integer epochDay(long time) {
+        return time == TicketHeader.NO_DATE ? null : YMDDate.epochDayOf(time);
+    }
+
+    /**
+     * One criterion of a query, as applied to one of our indexes.
+     */
+    private abstract static class Condition {
+        int estimate;
+
+        /** Returns (cheaply) roughly how many Tickets this condition will match. **/
+        abstract int estimate();
+
+        /** Returns the set of ordinals that match this condition. The caller may modify it. **/
+        abstract BitSet matches();
+
+        /** Reports whether the given header matches this condition. **/
+        abstract boolean test(TicketHeader header);
+    }
+
+    /**
+     * Maps each distinct value of some field to the set of ordinals having that value.
+     */
+    private static final class HashIndex<K> {
+        private final Function<TicketHeader, K> field;
+        private final Map<K, BitSet> index = new HashMap<>();
+
+        HashIndex(Function<TicketHeader, K> field) {
+            this.field = field;
+        }
+
+        void add(TicketHeader header, int ordinal) {
+            index.computeIfAbsent(field.apply(header), k -> new BitSet()).set(ordinal);
+        }
+
+        void remove(TicketHeader header, int ordinal) {
+            K key = field.apply(header);
+            BitSet bits = index.get(key);
+            if (bits != null) {
+                bits.clear(ordinal);
+                if (bits.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+
+        Condition condition(Set<K> values) {
+            return new Condition() {
+                @Override
+                int estimate() {
+                    int count = 0;
+                    for (K value : values) {
+                        BitSet bits = index.get(value);
+                        count += bits == null ? 0 : bits.cardinality();
+                    }
+                    return count;
+                }
+
+                @Override
+                BitSet matches() {
+                    BitSet result = new BitSet();
+                    for (K value : values) {
+                        BitSet bits = index.get(value);
+                        if (bits != null) {
+                            result.or(bits);
+                        }
+                    }
+                    return result;
+                }
+
+                @Override
+                boolean test(TicketHeader header) {
+                    return values.contains(field.apply(header));
+                }
+            };
+        }
+    }
+
+    /**
+     * Keeps the ordinals in order of the value of some field, so that ranges of values can be
+     * found without a scan. Tickets with no value for the field are simply not indexed here,
+     * as they can never match a range. Each ordinal's position in its list is remembered, so
+     * that removing it doesn't mean searching a list that many Tickets share.
+     */
+    private static final class SortedIndex<K extends Comparable<K>> {
+        private final Function<TicketHeader, K> field;
+        private final TreeMap<K, IntList> index = new TreeMap<>();
+        private int[] positions = new int[1024];
+
+        SortedIndex(Function<TicketHeader, K> field) {
+            this.field = field;
+        }
+
+        void add(TicketHeader header, int ordinal) {
+            K key = field.apply(header);
+            if (key != null) {
+                IntList list = index.computeIfAbsent(key, k -> new IntList());
+                if (ordinal >= positions.length) {
+                    positions = Arrays.copyOf(positions, Math.max(ordinal + 1, positions.length * 2));
+                }
+                positions[ordinal] = list.size();
+                list.add(ordinal);
+            }
+        }
+
+        void remove(TicketHeader header, int ordinal) {
+            K key = field.apply(header);
+            if (key == null) {
+                return;
+            }
+            IntList list = index.get(key);
+            if (list != null) {
+                // Move the last one into this one's place:
+                int last = list.removeLast();
+                if (last != ordinal) {
+                    list.set(positions[ordinal], last);
+                    positions[last] = positions[ordinal];
+                }
+                if (list.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+
+        /**
+         * Returns the headers for the first few of the given matches, in order of this index's field.
+         * Tickets with the same value come out in no particular order, so this is only for unique fields.
+         */
+        List<TicketHeader> first(BitSet matches, int limit, boolean ascending, TicketHeader[] headers) {
+            List<TicketHeader> results = new ArrayList<>(limit);
+            for (IntList list : ascending ? index.values() : index.descendingMap().values()) {
+                for (int i = 0; i < list.size() && results.size() < limit; i++) {
+                    if (matches.get(list.get(i))) {
+                        results.add(headers[list.get(i)]);
+                    }
+                }
+                if (results.size() >= limit) {
+                    break;
+                }
+            }
+            return results;
+        }
+
+        Condition condition(K from, K to) {
+            NavigableMap<K, IntList> range = from.compareTo(to) > 0
+                    ? new TreeMap<>()
+                    : index.subMap(from, true, to, true);
+            return new Condition() {
+                @Override
+                int estimate() {
+                    int count = 0;
+                    for (IntList list : range.values()) {
+                        count += list.size();
+                    }
+                    return count;
+                }
+
+                @Override
+                BitSet matches() {
+                    BitSet result = new BitSet();
+                    for (IntList list : range.values()) {
+                        for (int i = 0; i < list.size(); i++) {
+                            result.set(list.get(i));
+                        }
+                    }
+                    return result;
+                }
+
+                @Override
+                boolean test(TicketHeader header) {
+                    K key = field.apply(header);
+                    return key != null && key.compareTo(from) >= 0 && key.compareTo(to) <= 0;
+                }
+            };
+        }
+    }
+
+    /**
+     * A minimal growable list of primitive ints, so we're not boxing every ordinal.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int removeLast() {
+            return values[--size];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
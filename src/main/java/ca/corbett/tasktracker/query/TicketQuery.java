@@ -0,0 +1,175 @@
+package ca.corbett.tasktracker.query;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.model.TicketHeader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Describes a set of Tickets to find, and how to order them. All the criteria given here
+ * must match for a Ticket to be included (they are ANDed together), but where a criterion
+ * accepts multiple values, a Ticket only has to match one of them (they are ORed together).
+ * Date ranges are inclusive on both ends, and either end can be null to leave it open.
+ * <p>
+ * A TicketQuery doesn't do anything on its own; hand it to TicketIndex.execute() to run it.
+ * </p>
+ * <pre>
+ *   TicketQuery query = new TicketQuery()
+ *           .withState("Open", "In progress")
+ *           .withTargetVersion(version.getInternalId())
+ *           .createdBetween(new YMDDate("2024-01-01"), null)
+ *           .sortBy(TicketQuery.SortField.CREATE_DATE, false)
+ *           .limit(50);
+ * </pre>
+ *
+ * @author scorbo2
+ */
+public final class TicketQuery {
+
+    /**
+     * The fields by which query results can be sorted.
+     */
+    public enum SortField {
+        DISPLAY_ID(Comparator.comparingInt(TicketHeader::getDisplayId)),
+        // TicketHeader.NO_DATE is Long.MIN_VALUE, so Tickets without the date come first:
+        CREATE_DATE(Comparator.comparingLong(TicketHeader::getCreateTime)),
+        START_DATE(Comparator.comparingLong(TicketHeader::getStartTime)),
+        CLOSE_DATE(Comparator.comparingLong(TicketHeader::getCloseTime)),
+        HOURS_WORKED(Comparator.comparing(TicketHeader::getHoursWorked,
+                                          Comparator.nullsFirst(Comparator.naturalOrder()))),
+        STATE(Comparator.comparing(TicketHeader::getState, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        final Comparator<TicketHeader> comparator;
+
+        SortField(Comparator<TicketHeader> comparator) {
+            this.comparator = comparator;
+        }
+    }
+
+    Set<String> states;
+    Set<String> resolutions;
+    Set<UUID> projectIds;
+    Set<UUID> targetVersionIds;
+    DateRange createDate;
+    DateRange startDate;
+    DateRange closeDate;
+    Double minHours;
+    Double maxHours;
+    Integer minDisplayId;
+    Integer maxDisplayId;
+    SortField sortField = SortField.DISPLAY_ID;
+    boolean ascending = true;
+    int limit = Integer.MAX_VALUE;
+
+    public TicketQuery withState(String... states) {
+        this.states = toSet(states);
+        return this;
+    }
+
+    public TicketQuery withResolution(String... resolutions) {
+        this.resolutions = toSet(resolutions);
+        return this;
+    }
+
+    public TicketQuery withProject(UUID... projectIds) {
+        this.projectIds = toSet(projectIds);
+        return this;
+    }
+
+    public TicketQuery withTargetVersion(UUID... versionIds) {
+        this.targetVersionIds = toSet(versionIds);
+        return this;
+    }
+
+    public TicketQuery createdBetween(YMDDate from, YMDDate to) {
+        createDate = new DateRange(from, to);
+        return this;
+    }
+
+    public TicketQuery startedBetween(YMDDate from, YMDDate to) {
+        startDate = new DateRange(from, to);
+        return this;
+    }
+
+    public TicketQuery closedBetween(YMDDate from, YMDDate to) {
+        closeDate = new DateRange(from, to);
+        return this;
+    }
+
+    /**
+     * Limits results to Tickets whose hoursWorked falls in the given range (inclusive).
+     * Either end may be null to leave it open. Tickets with no hoursWorked never match.
+     */
+    public TicketQuery hoursWorkedBetween(Double min, Double max) {
+        minHours = min;
+        maxHours = max;
+        return this;
+    }
+
+    /**
+     * Limits results to Tickets whose displayId falls in the given range (inclusive).
+     * Either end may be null to leave it open.
+     */
+    public TicketQuery displayIdBetween(Integer min, Integer max) {
+        minDisplayId = min;
+        maxDisplayId = max;
+        return this;
+    }
+
+    /**
+     * Sets the result order. By default, results are sorted by ascending displayId.
+     */
+    public TicketQuery sortBy(SortField field, boolean ascending) {
+        this.sortField = field;
+        this.ascending = ascending;
+        return this;
+    }
+
+    /**
+     * Limits the number of results returned (after sorting).
+     *
+     * @throws IllegalArgumentException If maxResults is negative.
+     */
+    public TicketQuery limit(int maxResults) {
+        if (maxResults < 0) {
+            throw new IllegalArgumentException("Invalid limit " + maxResults);
+        }
+        this.limit = maxResults;
+        return this;
+    }
+
+    /**
+     * Returns the result order. Ties are broken by displayId, so the order is always the same.
+     */
+    Comparator<TicketHeader> getComparator() {
+        Comparator<TicketHeader> comparator = ascending ? sortField.comparator : sortField.comparator.reversed();
+        return sortField == SortField.DISPLAY_ID ? comparator
+                : comparator.thenComparingInt(TicketHeader::getDisplayId);
+    }
+
+    private static <T> Set<T> toSet(T[] values) {
+        if (values == null || values.length == 0) {
+            return null;
+        }
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(values)));
+    }
+
+    /**
+     * An inclusive range of dates, stored as epoch days. Open ends are stored as
+     * Integer.MIN_VALUE or Integer.MAX_VALUE.
+     */
+    static final class DateRange {
+        final int fromDay;
+        final int toDay;
+
+        DateRange(YMDDate from, YMDDate to) {
+            fromDay = from == null || !from.isValid() ? Integer.MIN_VALUE : from.getEpochDay();
+            toDay = to == null || !to.isValid() ? Integer.MAX_VALUE : to.getEpochDay();
+        }
+    }
+}
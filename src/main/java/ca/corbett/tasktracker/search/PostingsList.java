@@ -0,0 +1,160 @@
+package ca.corbett.tasktracker.search;
+
+import java.util.Arrays;
+
+/**
+ * The list of documents containing one term, along with where in each document it occurs.
+ * Documents are identified by ordinal, and must be appended in increasing ordinal order,
+ * which lets us store each ordinal as the (usually tiny) gap from the previous one. Positions
+ * within a document are stored the same way. Every number is then written as a variable-length
+ * int, so a small gap takes a single byte. For typical text this is several times smaller
+ * than a plain int[] would be.
+ * <p>
+ * The encoding for each document is: ordinal gap, occurrence count, then that many position gaps.
+ * </p>
+ *
+ * @author scorbo2
+ */
+final class PostingsList {
+
+    private byte[] data;
+    private int length;
+    private int docCount;
+    private int lastOrdinal = -1;
+
+    PostingsList() {
+        data = new byte[8];
+    }
+
+    PostingsList(byte[] data, int docCount, int lastOrdinal) {
+        this.data = data;
+        this.length = data.length;
+        this.docCount = docCount;
+        this.lastOrdinal = lastOrdinal;
+    }
+
+    /**
+     * Adds a document to this list.
+     *
+     * @param ordinal   The document ordinal. Must be higher than any ordinal already in the list.
+     * @param positions The positions at which the term occurs in the document, in increasing order.
+     * @param count     How many entries of positions to use.
+     */
+    void add(int ordinal, int[] positions, int count) {
+        if (ordinal <= lastOrdinal) {
+            throw new IllegalArgumentException("Ordinals must be added in increasing order");
+        }
+        writeVarInt(ordinal - lastOrdinal);
+        writeVarInt(count);
+        int lastPosition = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarInt(positions[i] - lastPosition);
+            lastPosition = positions[i];
+        }
+        lastOrdinal = ordinal;
+        docCount++;
+    }
+
+    /**
+     * Returns the number of documents in this list, including any that have since been deleted
+     * from the index but not yet merged away.
+     */
+    int getDocCount() {
+        return docCount;
+    }
+
+    int getLastOrdinal() {
+        return lastOrdinal;
+    }
+
+    int getByteLength() {
+        return length;
+    }
+
+    /**
+     * Returns the encoded data, trimmed to size.
+     */
+    byte[] toByteArray() {
+        return length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    Reader reader() {
+        return new Reader();
+    }
+
+    private void writeVarInt(int value) {
+        if (length + 5 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte)value;
+    }
+
+    /**
+     * Steps through the documents in a PostingsList in ordinal order. Call next() to move to
+     * each document in turn; the ordinal, count and positions fields then describe that document.
+     * The positions array is reused from one document to the next.
+     */
+    final class Reader {
+        private int offset;
+        int ordinal = -1;
+        int count;
+        int[] positions = new int[8];
+
+        /**
+         * Moves to the next document, returning false if there are no more.
+         */
+        boolean next() {
+            if (offset >= length) {
+                ordinal = Integer.MAX_VALUE;
+                return false;
+            }
+            ordinal += readVarInt();
+            count = readVarInt();
+            if (count > positions.length) {
+                positions = new int[Math.max(count, positions.length * 2)];
+            }
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                position += readVarInt();
+                positions[i] = position;
+            }
+            return true;
+        }
+
+        /**
+         * Moves forward to the first document whose ordinal is at least the given target,
+         * returning false if there is no such document. Does nothing if we're already there.
+         */
+        boolean advance(int target) {
+            while (ordinal < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return ordinal != Integer.MAX_VALUE;
+        }
+
+        /**
+         * Reports whether the current document has the term at the given position.
+         */
+        boolean hasPosition(int position) {
+            return Arrays.binarySearch(positions, 0, count, position) >= 0;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,769 @@
+package ca.corbett.tasktracker.search;
+
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.diagnostics.OperationTimer;
+import ca.corbett.tasktracker.model.ModelFiles;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketChangeListener;
+import ca.corbett.tasktracker.model.TicketComment;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import ca.corbett.tasktracker.model.TicketSaveListener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A full-text index over the short description, long description and comments of every Ticket
+ * in a Project. This is a classic inverted index: for every term, we keep the list of Tickets
+ * containing it (see PostingsList), along with the positions where it occurs, so that we can
+ * answer phrase queries as well as plain term queries. Terms are kept in sorted order,
+ * so prefix queries are a simple range lookup.
+ * <p>
+ * <b>Queries</b> - a query is a list of clauses, all of which must match:
+ * </p>
+ * <ul>
+ *     <li><b>save crash</b> - Tickets containing both "save" and "crash", anywhere.
+ *     <li><b>"null pointer"</b> - Tickets containing that exact phrase.
+ *     <li><b>seri*</b> - Tickets containing any term starting with "seri". Search-as-you-type
+ *         UIs can simply append a * to whatever the user has typed so far.
+ * </ul>
+ * Results are ranked with the standard BM25 formula, with matches in the short description
+ * counting for more than matches in the body or comments.
+ * <p>
+ * <b>Updates</b> - The index listens to the TicketRepository and re-indexes each Ticket as it is
+ * saved. Rather than rewrite every posting list containing the old version, the old version is
+ * just marked deleted and the new version is appended under a fresh ordinal. Once enough deleted
+ * entries pile up, the whole index is compacted in one pass.
+ * </p>
+ * <p>
+ * <b>Persistence</b> - The index is stored in a project.search file next to project.json.
+ * Like the project snapshot, it is purely a cache: each entry remembers the timestamp of the
+ * Ticket file it was built from, so anything that changed while the index wasn't looking is
+ * simply re-indexed on open, and the file can be deleted at any time. Writing out a large
+ * index isn't free, so it is only written after a good number of changes have accumulated,
+ * or when save() is called explicitly (which should be done when the Project is closed).
+ * </p>
+ *
+ * @author scorbo2
+ */
+public class SearchIndex implements TicketSaveListener, TicketChangeListener {
+
+    private static final Logger logger = Logger.getLogger(SearchIndex.class.getName());
+    private static final OperationTimer openTimer = Metrics.timer("search.open");
+    private static final OperationTimer searchTimer = Metrics.timer("search.query");
+    private static final OperationTimer saveTimer = Metrics.timer("search.save");
+
+    /** The name of the index file inside a Project directory. **/
+    public static final String INDEX_FILE = "project.search";
+
+    private static final int MAGIC = 0x54545349; // "TTSI"
+    private static final int FORMAT_VERSION = 2; // 2: over-long terms take up a position
+
+    /** Positions skipped between fields, so that a phrase can never match across two comments. **/
+    private static final int FIELD_GAP = 10;
+
+    /** How many times more a term in the short description counts than one elsewhere. **/
+    private static final float TITLE_BOOST = 3f;
+
+    private static final float BM25_K1 = 1.2f;
+    private static final float BM25_B = 0.75f;
+
+    /** A prefix matching more terms than this is limited to the most common ones. **/
+    private static final int MAX_PREFIX_TERMS = 256;
+
+    /** The index is written out on its own once this many Tickets have been re-indexed. **/
+    private static final int AUTO_SAVE_THRESHOLD = 1000;
+
+    private final Project project;
+    private final TreeMap<String, PostingsList> terms = new TreeMap<>();
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private UUID[] ticketIds = new UUID[1024];
+    private int[] displayIds = new int[1024];
+    private int[] docLengths = new int[1024];
+    private int[] titleLengths = new int[1024];
+    private long[] fileTimes = new long[1024];
+    private int nextOrdinal;
+    private long totalLength;
+    private int unsavedChanges;
+
+    private SearchIndex(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Opens the search index for the given Project, loading it from disk if it exists and
+     * bringing it up to date with any Tickets that have changed since it was written.
+     * The first open of a Project with no index has to read every Ticket, which can be slow
+     * for large Projects; after that, only changed Tickets are read.
+     *
+     * @param project The Project to index.
+     * @return The SearchIndex for that Project.
+     * @throws IOException If a Ticket that needs indexing can't be loaded.
+     */
+    public static SearchIndex open(Project project) throws IOException {
+        long start = openTimer.start();
+        try {
+            SearchIndex index = new SearchIndex(project);
+            File indexFile = index.getIndexFile();
+            if (indexFile != null && indexFile.exists()) {
+                try {
+                    index.read(indexFile);
+                }
+                catch (IOException | RuntimeException e) {
+                    // A damaged index is no big deal, we'll just rebuild it:
+                    logger.log(Level.WARNING, "Ignoring unreadable search index " + indexFile.getAbsolutePath(), e);
+                    index = new SearchIndex(project);
+                }
+            }
+            index.catchUp();
+            project.getTicketRepository().addTicketSaveListener(index);
+            project.getTicketRepository().addTicketChangeListener(index);
+            return index;
+        }
+        finally {
+            openTimer.stop(start);
+        }
+    }
+
+    /**
+     * Stops listening to the Project for changes. The index should not be used after this.
+     */
+    public void dispose() {
+        project.getTicketRepository().removeTicketSaveListener(this);
+        project.getTicketRepository().removeTicketChangeListener(this);
+    }
+
+    /**
+     * Returns the number of Tickets in the index.
+     */
+    public int size() {
+        return ordinals.size();
+    }
+
+    /**
+     * Returns the number of distinct terms in the index.
+     */
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * Searches the index, returning the best matches first. See the class documentation
+     * for the query syntax.
+     *
+     * @param queryText  The query.
+     * @param maxResults The maximum number of results to return.
+     * @return A list of matching Tickets, best first. Empty if nothing matches or the query is blank.
+     */
+    public List<SearchResult> search(String queryText, int maxResults) {
+        long start = searchTimer.start();
+        try {
+            List<Clause> clauses = parse(queryText);
+            if (clauses.isEmpty() || maxResults <= 0) {
+                return new ArrayList<>();
+            }
+
+            // Start with the rarest clause, so every clause after it only has to score its survivors:
+            clauses.sort(Comparator.comparingInt(c -> c.estimate));
+            float[] scores = new float[nextOrdinal];
+            float avgLength = ordinals.isEmpty() ? 1f : Math.max(1f, (float)totalLength / ordinals.size());
+            BitSet matches = null;
+            for (Clause clause : clauses) {
+                matches = clause.evaluate(matches, scores, avgLength);
+                if (matches.isEmpty()) {
+                    return new ArrayList<>();
+                }
+            }
+            matches.andNot(deleted);
+
+            // We only want the top few, so keep a min-heap of the best seen so far:
+            PriorityQueue<Integer> best = new PriorityQueue<>(Comparator.comparingDouble(o -> scores[o]));
+            for (int o = matches.nextSetBit(0); o >= 0; o = matches.nextSetBit(o + 1)) {
+                if (best.size() < maxResults) {
+                    best.add(o);
+                }
+                else if (scores[o] > scores[best.peek()]) {
+                    best.poll();
+                    best.add(o);
+                }
+            }
+            SearchResult[] results = new SearchResult[best.size()];
+            for (int i = results.length - 1; i >= 0; i--) {
+                int o = best.poll();
+                results[i] = new SearchResult(ticketIds[o], displayIds[o], scores[o]);
+            }
+            return new ArrayList<>(Arrays.asList(results));
+        }
+        finally {
+            searchTimer.stop(start);
+        }
+    }
+
+    /**
+     * Re-indexes Tickets as they are saved. A Ticket whose file hasn't changed since we
+     * indexed it is skipped.
+     */
+    @Override
+    public void ticketsSaved(List<Ticket> tickets) {
+        for (Ticket ticket : tickets) {
+            if (ticket.getSourceFile() != null) {
+                long fileTime = ticket.getSourceFile().lastModified();
+                Integer ordinal = ordinals.get(ticket.getInternalId());
+                if (ordinal == null || fileTimes[ordinal] != fileTime) {
+                    add(ticket, fileTime);
+                }
+            }
+        }
+        mergeIfNeeded();
+        if (unsavedChanges >= AUTO_SAVE_THRESHOLD) {
+            try {
+                save();
+            }
+            catch (IOException ioe) {
+                // Not fatal; anything we failed to write will be re-indexed next time the Project is opened:
+                logger.log(Level.WARNING, "Unable to write search index", ioe);
+            }
+        }
+    }
+
+    /**
+     * Drops Tickets from the index when they are removed. Everything else comes through ticketsSaved().
+     */
+    @Override
+    public void ticketChanged(TicketHeader before, TicketHeader after) {
+        if (after == null) {
+            Integer ordinal = ordinals.remove(before.getInternalId());
+            if (ordinal != null) {
+                delete(ordinal);
+                unsavedChanges++;
+            }
+        }
+    }
+
+    /**
+     * Writes the index to disk, if anything has changed since it was last written. Does nothing
+     * if the Project itself has never been saved, as there's nowhere to put it.
+     *
+     * @throws IOException If the index file can't be written.
+     */
+    public void save() throws IOException {
+        long start = saveTimer.start();
+        try {
+            File indexFile = getIndexFile();
+            if (indexFile == null || (unsavedChanges == 0 && indexFile.exists())) {
+                return;
+            }
+            if (!deleted.isEmpty()) {
+                merge();
+            }
+
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(64 * 1024);
+            DataOutputStream out = new DataOutputStream(byteStream);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(nextOrdinal);
+            for (int o = 0; o < nextOrdinal; o++) {
+                out.writeLong(ticketIds[o].getMostSignificantBits());
+                out.writeLong(ticketIds[o].getLeastSignificantBits());
+                out.writeInt(displayIds[o]);
+                out.writeInt(docLengths[o]);
+                out.writeInt(titleLengths[o]);
+                out.writeLong(fileTimes[o]);
+            }
+            out.writeInt(terms.size());
+            for (Map.Entry<String, PostingsList> entry : terms.entrySet()) {
+                PostingsList postings = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(postings.getDocCount());
+                out.writeInt(postings.getLastOrdinal());
+                out.writeInt(postings.getByteLength());
+                out.write(postings.toByteArray());
+            }
+            out.flush();
+            ModelFiles.writeAtomically(indexFile, byteStream.toByteArray());
+            unsavedChanges = 0;
+        }
+        finally {
+            saveTimer.stop(start);
+        }
+    }
+
+    private File getIndexFile() {
+        File sourceFile = project.getSourceFile();
+        return sourceFile == null ? null : new File(sourceFile.getAbsoluteFile().getParentFile(), INDEX_FILE);
+    }
+
+    /**
+     * Re-indexes any Ticket whose file has changed since we last indexed it, and drops any
+     * Ticket whose file is gone.
+     */
+    private void catchUp() throws IOException {
+        TicketRepository repository = project.getTicketRepository();
+        Map<Integer, Long> currentFileTimes = repository.getTicketFileTimes();
+        Set<UUID> onDisk = new HashSet<>();
+        for (TicketHeader header : repository.getHeaders()) {
+            Long fileTime = currentFileTimes.get(header.getDisplayId());
+            if (fileTime == null) {
+                continue; // Never been saved; it will be indexed when it is
+            }
+            onDisk.add(header.getInternalId());
+            Integer ordinal = ordinals.get(header.getInternalId());
+            if (ordinal == null || fileTimes[ordinal] != fileTime) {
+                add(repository.get(header.getInternalId()), fileTime);
+            }
+        }
+
+        Iterator<Map.Entry<UUID, Integer>> iterator = ordinals.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Integer> entry = iterator.next();
+            if (!onDisk.contains(entry.getKey())) {
+                delete(entry.getValue());
+                iterator.remove();
+                unsavedChanges++;
+            }
+        }
+
+        if (unsavedChanges > 0) {
+            try {
+                save();
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to write search index", ioe);
+            }
+        }
+    }
+
+    /**
+     * Adds the given Ticket to the index, replacing any previous version of it.
+     */
+    private void add(Ticket ticket, long fileTime) {
+        Integer previous = ordinals.remove(ticket.getInternalId());
+        if (previous != null) {
+            delete(previous);
+        }
+
+        int ordinal = nextOrdinal++;
+        ensureCapacity(nextOrdinal);
+        ticketIds[ordinal] = ticket.getInternalId();
+        displayIds[ordinal] = ticket.getDisplayId();
+        fileTimes[ordinal] = fileTime;
+        ordinals.put(ticket.getInternalId(), ordinal);
+
+        // Gather up the positions of each term, keeping each field well apart from the next:
+        Map<String, Positions> docTerms = new LinkedHashMap<>();
+        int end = addField(docTerms, ticket.getShortDescription(), 0);
+        titleLengths[ordinal] = end;
+        int length = end;
+        int start = end + FIELD_GAP;
+        end = addField(docTerms, ticket.getLongDescription(), start);
+        length += end - start;
+        for (TicketComment comment : ticket.getComments()) {
+            start = end + FIELD_GAP;
+            end = addField(docTerms, comment.getCommentText(), start);
+            length += end - start;
+        }
+        docLengths[ordinal] = length;
+        totalLength += length;
+
+        for (Map.Entry<String, Positions> entry : docTerms.entrySet()) {
+            Positions positions = entry.getValue();
+            terms.computeIfAbsent(entry.getKey(), k -> new PostingsList())
+                 .add(ordinal, positions.values, positions.count);
+        }
+        unsavedChanges++;
+    }
+
+    /**
+     * Tokenizes the given text, recording term positions starting at the given position.
+     * Returns the position after the last term. Terms too long to index still take up a
+     * position, so that a phrase can't match across them.
+     */
+    private static int addField(Map<String, Positions> docTerms, String text, int position) {
+        for (String term : Tokenizer.tokenize(text)) {
+            if (term != null) {
+                docTerms.computeIfAbsent(term, k -> new Positions()).add(position);
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private void delete(int ordinal) {
+        deleted.set(ordinal);
+        totalLength -= docLengths[ordinal];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ticketIds.length) {
+            int newLength = Math.max(capacity, ticketIds.length * 2);
+            ticketIds = Arrays.copyOf(ticketIds, newLength);
+            displayIds = Arrays.copyOf(displayIds, newLength);
+            docLengths = Arrays.copyOf(docLengths, newLength);
+            titleLengths = Arrays.copyOf(titleLengths, newLength);
+            fileTimes = Arrays.copyOf(fileTimes, newLength);
+        }
+    }
+
+    private void mergeIfNeeded() {
+        if (deleted.cardinality() > Math.max(1000, ordinals.size() / 4)) {
+            merge();
+        }
+    }
+
+    /**
+     * Rewrites every posting list without the deleted entries, renumbering the live ones to
+     * close the gaps. Renumbering preserves order, so the posting lists stay sorted.
+     */
+    private void merge() {
+        int[] remap = new int[nextOrdinal];
+        int live = 0;
+        for (int o = 0; o < nextOrdinal; o++) {
+            if (deleted.get(o)) {
+                remap[o] = -1;
+                continue;
+            }
+            remap[o] = live;
+            ticketIds[live] = ticketIds[o];
+            displayIds[live] = displayIds[o];
+            docLengths[live] = docLengths[o];
+            titleLengths[live] = titleLengths[o];
+            fileTimes[live] = fileTimes[o];
+            live++;
+        }
+        Arrays.fill(ticketIds, live, nextOrdinal, null);
+
+        Iterator<Map.Entry<String, PostingsList>> iterator = terms.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PostingsList> entry = iterator.next();
+            PostingsList merged = new PostingsList();
+            PostingsList.Reader reader = entry.getValue().reader();
+            while (reader.next()) {
+                if (remap[reader.ordinal] >= 0) {
+                    merged.add(remap[reader.ordinal], reader.positions, reader.count);
+                }
+            }
+            if (merged.getDocCount() == 0) {
+                iterator.remove();
+            }
+            else {
+                entry.setValue(merged);
+            }
+        }
+
+        ordinals.replaceAll((id, o) -> remap[o]);
+        deleted.clear();
+        nextOrdinal = live;
+    }
+
+    private void read(File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile),
+                                                                              64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                logger.info("Ignoring search index with unknown format: " + indexFile.getAbsolutePath());
+                return;
+            }
+            int docCount = in.readInt();
+            ensureCapacity(docCount);
+            for (int o = 0; o < docCount; o++) {
+                ticketIds[o] = new UUID(in.readLong(), in.readLong());
+                displayIds[o] = in.readInt();
+                docLengths[o] = in.readInt();
+                titleLengths[o] = in.readInt();
+                fileTimes[o] = in.readLong();
+                ordinals.put(ticketIds[o], o);
+                totalLength += docLengths[o];
+            }
+            nextOrdinal = docCount;
+
+            int termCount = in.readInt();
+            for (int t = 0; t < termCount; t++) {
+                String term = in.readUTF();
+                int termDocCount = in.readInt();
+                int lastOrdinal = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                terms.put(term, new PostingsList(data, termDocCount, lastOrdinal));
+            }
+        }
+    }
+
+    /**
+     * Splits a query into clauses. Quoted text is a phrase; a word ending in * is a prefix;
+     * anything else is a term. A single word that tokenizes into several terms, like
+     * "file.json", is treated as a phrase. Terms too long to have been indexed match any
+     * single term in a phrase, and are otherwise ignored.
+     */
+    private List<Clause> parse(String queryText) {
+        List<Clause> clauses = new ArrayList<>();
+        if (queryText == null) {
+            return clauses;
+        }
+        int i = 0;
+        while (i < queryText.length()) {
+            char c = queryText.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            }
+            else if (c == '"') {
+                int end = queryText.indexOf('"', i + 1);
+                end = end < 0 ? queryText.length() : end;
+                addPhrase(clauses, Tokenizer.tokenize(queryText.substring(i + 1, end)));
+                i = end + 1;
+            }
+            else {
+                int end = i;
+                while (end < queryText.length() && !Character.isWhitespace(queryText.charAt(end))
+                        && queryText.charAt(end) != '"') {
+                    end++;
+                }
+                String word = queryText.substring(i, end);
+                List<String> wordTerms = Tokenizer.tokenize(word);
+                if (word.endsWith("*") && !wordTerms.isEmpty() && wordTerms.get(wordTerms.size() - 1) != null) {
+                    String prefix = wordTerms.remove(wordTerms.size() - 1);
+                    addPhrase(clauses, wordTerms);
+                    clauses.add(new PrefixClause(prefix));
+                }
+                else {
+                    addPhrase(clauses, wordTerms);
+                }
+                i = end;
+            }
+        }
+        return clauses;
+    }
+
+    private void addPhrase(List<Clause> clauses, List<String> phraseTerms) {
+        // Gaps left by terms too long to index only matter between two real terms:
+        int first = 0;
+        int last = phraseTerms.size() - 1;
+        while (first <= last && phraseTerms.get(first) == null) {
+            first++;
+        }
+        while (last >= first && phraseTerms.get(last) == null) {
+            last--;
+        }
+        if (first == last) {
+            clauses.add(new TermClause(phraseTerms.get(first)));
+        }
+        else if (first < last) {
+            clauses.add(new PhraseClause(phraseTerms.subList(first, last + 1)));
+        }
+    }
+
+    private float idf(int docFrequency) {
+        int docCount = ordinals.size();
+        return (float)Math.log(1 + (docCount - docFrequency + 0.5) / (docFrequency + 0.5));
+    }
+
+    private float bm25(float idf, float frequency, int ordinal, float avgLength) {
+        float norm = BM25_K1 * (1 - BM25_B + BM25_B * docLengths[ordinal] / avgLength);
+        return idf * frequency * (BM25_K1 + 1) / (frequency + norm);
+    }
+
+    /**
+     * Counts occurrences, with those in the short description counting extra.
+     */
+    private float boostedFrequency(int count, int titleHits) {
+        return count + (TITLE_BOOST - 1) * titleHits;
+    }
+
+    /**
+     * Adds the score for every document in the given posting list to scores, and marks
+     * them in the given result set. If candidates is not null, documents not in it are skipped.
+     */
+    private void scoreTerm(PostingsList postings, BitSet candidates, BitSet result, float[] scores,
+                           float avgLength) {
+        float idf = idf(postings.getDocCount());
+        PostingsList.Reader reader = postings.reader();
+        while (reader.next()) {
+            int o = reader.ordinal;
+            if (candidates != null && !candidates.get(o)) {
+                continue;
+            }
+            int titleHits = 0;
+            while (titleHits < reader.count && reader.positions[titleHits] < titleLengths[o]) {
+                titleHits++;
+            }
+            scores[o] += bm25(idf, boostedFrequency(reader.count, titleHits), o, avgLength);
+            result.set(o);
+        }
+    }
+
+    /**
+     * One part of a query, all of which must match.
+     */
+    private abstract static class Clause {
+        int estimate;
+
+        /**
+         * Finds the documents matching this clause, adding their scores to the given array.
+         *
+         * @param candidates If not null, only documents in this set need be considered.
+         * @return The matching documents. Never null.
+         */
+        abstract BitSet evaluate(BitSet candidates, float[] scores, float avgLength);
+    }
+
+    private final class TermClause extends Clause {
+        private final PostingsList postings;
+
+        TermClause(String term) {
+            postings = terms.get(term);
+            estimate = postings == null ? 0 : postings.getDocCount();
+        }
+
+        @Override
+        BitSet evaluate(BitSet candidates, float[] scores, float avgLength) {
+            BitSet result = new BitSet();
+            if (postings != null) {
+                scoreTerm(postings, candidates, result, scores, avgLength);
+            }
+            return result;
+        }
+    }
+
+    private final class PrefixClause extends Clause {
+        private final List<PostingsList> expansions = new ArrayList<>();
+
+        PrefixClause(String prefix) {
+            expansions.addAll(terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+            if (expansions.size() > MAX_PREFIX_TERMS) {
+                expansions.sort(Comparator.comparingInt(PostingsList::getDocCount).reversed());
+                expansions.subList(MAX_PREFIX_TERMS, expansions.size()).clear();
+            }
+            for (PostingsList postings : expansions) {
+                estimate += postings.getDocCount();
+            }
+        }
+
+        @Override
+        BitSet evaluate(BitSet candidates, float[] scores, float avgLength) {
+            BitSet result = new BitSet();
+            for (PostingsList postings : expansions) {
+                scoreTerm(postings, candidates, result, scores, avgLength);
+            }
+            return result;
+        }
+    }
+
+    private final class PhraseClause extends Clause {
+        private final PostingsList[] postings;
+        private final int[] offsets;
+
+        /**
+         * The first and last terms must not be null; any null in between matches any one term.
+         */
+        PhraseClause(List<String> phraseTerms) {
+            List<PostingsList> found = new ArrayList<>();
+            offsets = new int[phraseTerms.size()];
+            estimate = Integer.MAX_VALUE;
+            for (int i = 0; i < phraseTerms.size(); i++) {
+                if (phraseTerms.get(i) != null) {
+                    PostingsList termPostings = terms.get(phraseTerms.get(i));
+                    offsets[found.size()] = i;
+                    found.add(termPostings);
+                    estimate = Math.min(estimate, termPostings == null ? 0 : termPostings.getDocCount());
+                }
+            }
+            postings = found.toArray(new PostingsList[0]);
+        }
+
+        @Override
+        BitSet evaluate(BitSet candidates, float[] scores, float avgLength) {
+            BitSet result = new BitSet();
+            if (estimate == 0) {
+                return result;
+            }
+            float idf = 0;
+            PostingsList.Reader[] readers = new PostingsList.Reader[postings.length];
+            for (int i = 0; i < postings.length; i++) {
+                readers[i] = postings[i].reader();
+                idf += idf(postings[i].getDocCount());
+            }
+
+            // Leapfrog the readers until they all land on the same document:
+            int target = 0;
+            while (true) {
+                int doc = target;
+                boolean aligned;
+                do {
+                    aligned = true;
+                    for (PostingsList.Reader reader : readers) {
+                        if (!reader.advance(doc)) {
+                            return result;
+                        }
+                        if (reader.ordinal > doc) {
+                            doc = reader.ordinal;
+                            aligned = false;
+                        }
+                    }
+                } while (!aligned);
+                target = doc + 1;
+                if (candidates != null && !candidates.get(doc)) {
+                    continue;
+                }
+
+                // Every term is in this document, but are they next to each other?
+                int count = 0;
+                int titleHits = 0;
+                PostingsList.Reader first = readers[0];
+                for (int p = 0; p < first.count; p++) {
+                    int start = first.positions[p];
+                    boolean isPhrase = true;
+                    for (int r = 1; r < readers.length && isPhrase; r++) {
+                        isPhrase = readers[r].hasPosition(start + offsets[r]);
+                    }
+                    if (isPhrase) {
+                        count++;
+                        if (start < titleLengths[doc]) {
+                            titleHits++;
+                        }
+                    }
+                }
+                if (count > 0) {
+                    scores[doc] += bm25(idf, boostedFrequency(count, titleHits), doc, avgLength);
+                    result.set(doc);
+                }
+            }
+        }
+    }
+
+    /**
+     * The positions of one term within the document being indexed.
+     */
+    private static final class Positions {
+        int[] values = new int[2];
+        int count;
+
+        void add(int position) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = position;
+        }
+    }
+}
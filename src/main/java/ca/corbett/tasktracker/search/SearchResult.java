@@ -0,0 +1,39 @@
+package ca.corbett.tasktracker.search;
+
+import java.util.UUID;
+
+/**
+ * One Ticket matched by a search, along with how well it matched. Scores are only meaningful
+ * relative to other results of the same search; higher is better.
+ *
+ * @author scorbo2
+ */
+public final class SearchResult {
+
+    private final UUID ticketId;
+    private final int displayId;
+    private final float score;
+
+    SearchResult(UUID ticketId, int displayId, float score) {
+        this.ticketId = ticketId;
+        this.displayId = displayId;
+        this.score = score;
+    }
+
+    public UUID getTicketId() {
+        return ticketId;
+    }
+
+    public int getDisplayId() {
+        return displayId;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + displayId + " (" + score + ")";
+    }
+}
@@ -0,0 +1,47 @@
+package ca.corbett.tasktracker.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into search terms. A term is any run of letters and digits, lowercased.
+ * Everything else (whitespace, punctuation, symbols) is a separator, so "NullPointerException
+ * in save()" becomes [nullpointerexception, in, save]. There is deliberately no stemming and
+ * no stop word list: this is a bug tracker, and people search for exact identifiers and
+ * error messages, where "the" in a phrase matters as much as anything else.
+ *
+ * @author scorbo2
+ */
+final class Tokenizer {
+
+    /** Anything longer than this is almost certainly a hash or base64 blob, not a word. **/
+    static final int MAX_TERM_LENGTH = 64;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Returns the terms in the given text, in order. Returns an empty list for null or empty text.
+     * A term longer than MAX_TERM_LENGTH is returned as null rather than left out, so that the
+     * positions of the terms after it still line up with the text.
+     */
+    static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean isTermChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (isTermChar && start < 0) {
+                start = i;
+            }
+            else if (!isTermChar && start >= 0) {
+                terms.add(i - start <= MAX_TERM_LENGTH ? text.substring(start, i).toLowerCase(Locale.ROOT) : null);
+                start = -1;
+            }
+        }
+        return terms;
+    }
+}
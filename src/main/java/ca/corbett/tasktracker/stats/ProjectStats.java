@@ -0,0 +1,450 @@
+package ca.corbett.tasktracker.stats;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.diagnostics.Metrics;
+import ca.corbett.tasktracker.diagnostics.OperationTimer;
+import ca.corbett.tasktracker.model.ModelFiles;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.ProjectVersion;
+import ca.corbett.tasktracker.model.Ticket;
+import ca.corbett.tasktracker.model.TicketChangeListener;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+import ca.corbett.tasktracker.model.TicketSaveListener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ticket statistics for a Project as a whole and for each of its ProjectVersions: how many Tickets
+ * are open and closed, how many hours have been worked, how many Tickets were closed each week,
+ * and a burndown of open Tickets over the life of a version. A Ticket counts as closed once it has
+ * a close date; states are free-form, so they can't tell us that reliably.
+ * <p>
+ * Nothing here is computed when it's asked for. Every figure is kept up to date as Tickets are
+ * added, changed and removed, by subtracting the old version of each Ticket and adding the new one,
+ * and the burndown and throughput are built from per-day counts of Tickets created and closed.
+ * </p>
+ * <p>
+ * <b>Persistence</b> - The statistics are stored in a project.stats file next to project.json,
+ * rewritten whenever Tickets are saved, so they're ready as soon as a Project is opened. Along with
+ * the figures, the file records a checksum of every Ticket field they depend on. On open, that is
+ * checked against the TicketHeaders actually loaded (which is far cheaper than recomputing), and only
+ * if it doesn't match - the file is stale, damaged, or Tickets were edited elsewhere - are the
+ * statistics rebuilt from scratch.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public class ProjectStats implements TicketChangeListener, TicketSaveListener {
+
+    private static final Logger logger = Logger.getLogger(ProjectStats.class.getName());
+    private static final OperationTimer openTimer = Metrics.timer("stats.open");
+    private static final OperationTimer saveTimer = Metrics.timer("stats.save");
+
+    /** The name of the statistics file inside a Project directory. **/
+    public static final String STATS_FILE = "project.stats";
+
+    private static final int MAGIC = 0x54545354; // "TTST"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * A point-in-time summary of the Tickets in a Project or ProjectVersion.
+     */
+    public static final class Summary {
+        private final int ticketCount;
+        private final int closedCount;
+        private final double hoursWorked;
+
+        private Summary(int ticketCount, int closedCount, double hoursWorked) {
+            this.ticketCount = ticketCount;
+            this.closedCount = closedCount;
+            this.hoursWorked = hoursWorked;
+        }
+
+        public int getTicketCount() {
+            return ticketCount;
+        }
+
+        public int getOpenCount() {
+            return ticketCount - closedCount;
+        }
+
+        public int getClosedCount() {
+            return closedCount;
+        }
+
+        public double getHoursWorked() {
+            return hoursWorked;
+        }
+    }
+
+    private final Project project;
+    private final Totals projectTotals = new Totals();
+    private final Map<UUID, Totals> versionTotals = new HashMap<>();
+    private long checksum;
+    private boolean unsavedChanges;
+
+    private ProjectStats(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * Opens the statistics for the given Project, loading them from disk if they're there and still
+     * consistent with the Project's Tickets, or building them from the TicketHeaders if not.
+     *
+     * @param project The Project to keep statistics for.
+     * @return The ProjectStats for that Project.
+     */
+    public static ProjectStats open(Project project) {
+        long start = openTimer.start();
+        try {
+            TicketRepository repository = project.getTicketRepository();
+            ProjectStats stats = new ProjectStats(project);
+            File statsFile = stats.getStatsFile();
+            boolean loaded = false;
+            if (statsFile != null && statsFile.exists()) {
+                try {
+                    stats.read(statsFile);
+                    loaded = stats.isConsistentWith(repository.getHeaders());
+                    if (!loaded) {
+                        logger.info("Project statistics are out of date, rebuilding: " + statsFile.getAbsolutePath());
+                    }
+                }
+                catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING,
+                               "Ignoring unreadable project statistics " + statsFile.getAbsolutePath(), e);
+                }
+            }
+            if (!loaded) {
+                stats = new ProjectStats(project);
+                for (TicketHeader header : repository.getHeaders()) {
+                    stats.apply(header, 1);
+                }
+                stats.unsavedChanges = true;
+            }
+            repository.addTicketChangeListener(stats);
+            repository.addTicketSaveListener(stats);
+            return stats;
+        }
+        finally {
+            openTimer.stop(start);
+        }
+    }
+
+    /**
+     * Stops listening to the Project for changes. The statistics should not be used after this.
+     */
+    public void dispose() {
+        project.getTicketRepository().removeTicketChangeListener(this);
+        project.getTicketRepository().removeTicketSaveListener(this);
+    }
+
+    /**
+     * Returns a summary of all Tickets in the Project.
+     */
+    public Summary getProjectSummary() {
+        project.getTicketRepository().refreshHeaders();
+        return projectTotals.toSummary();
+    }
+
+    /**
+     * Returns a summary of the Tickets targeted at the given ProjectVersion.
+     */
+    public Summary getVersionSummary(UUID versionId) {
+        project.getTicketRepository().refreshHeaders();
+        Totals totals = versionTotals.get(versionId);
+        return totals == null ? new Summary(0, 0, 0) : totals.toSummary();
+    }
+
+    /**
+     * Returns how many Tickets were closed in each week, keyed by the Monday of that week, from the
+     * first week in which anything was closed to the last. Weeks in between with nothing closed are
+     * included, with a count of zero.
+     *
+     * @param versionId A ProjectVersion to limit this to, or null for the whole Project.
+     * @return Closed Tickets per week, in date order. Empty if nothing has been closed.
+     */
+    public SortedMap<YMDDate, Integer> getWeeklyThroughput(UUID versionId) {
+        project.getTicketRepository().refreshHeaders();
+        SortedMap<YMDDate, Integer> throughput = new TreeMap<>(YMDDate::compareTo);
+        Totals totals = versionId == null ? projectTotals : versionTotals.get(versionId);
+        if (totals == null || totals.closedPerDay.isEmpty()) {
+            return throughput;
+        }
+        int firstMonday = mondayOf(totals.closedPerDay.firstKey());
+        int lastMonday = mondayOf(totals.closedPerDay.lastKey());
+        for (int monday = firstMonday; monday <= lastMonday; monday += 7) {
+            int closed = 0;
+            for (int count : totals.closedPerDay.subMap(monday, monday + 7).values()) {
+                closed += count;
+            }
+            throughput.put(YMDDate.ofEpochDay(monday), closed);
+        }
+        return throughput;
+    }
+
+    /**
+     * Returns the number of Tickets targeted at the given version that were open at the end of each
+     * day from the version's start date to its release date. A version with no start date starts on
+     * the day its first Ticket was created, and one with no release date runs until today.
+     *
+     * @param version The ProjectVersion to chart.
+     * @return Open Tickets per day, in date order. Empty if the version has no Tickets.
+     */
+    public SortedMap<YMDDate, Integer> getBurndown(ProjectVersion version) {
+        project.getTicketRepository().refreshHeaders();
+        SortedMap<YMDDate, Integer> burndown = new TreeMap<>(YMDDate::compareTo);
+        Totals totals = versionTotals.get(version.getInternalId());
+        if (totals == null || totals.createdPerDay.isEmpty()) {
+            return burndown;
+        }
+        int start = version.getStartDate() == null
+                ? totals.createdPerDay.firstKey()
+                : YMDDate.epochDayOf(version.getStartDate());
+        int end = YMDDate.epochDayOf(version.getReleaseDate() == null ? new Date() : version.getReleaseDate());
+
+        // Everything created before the start, less everything closed before it, is our starting point:
+        int open = sum(totals.createdPerDay.headMap(start, false)) - sum(totals.closedPerDay.headMap(start, false));
+        for (int day = start; day <= end; day++) {
+            open += totals.createdPerDay.getOrDefault(day, 0) - totals.closedPerDay.getOrDefault(day, 0);
+            burndown.put(YMDDate.ofEpochDay(day), open);
+        }
+        return burndown;
+    }
+
+    @Override
+    public void ticketChanged(TicketHeader before, TicketHeader after) {
+        if (before != null) {
+            apply(before, -1);
+        }
+        if (after != null) {
+            apply(after, 1);
+        }
+        unsavedChanges = true;
+    }
+
+    /**
+     * Writes the statistics out whenever Tickets are saved, so that the file on disk matches the
+     * Tickets on disk as closely as possible.
+     */
+    @Override
+    public void ticketsSaved(List<Ticket> tickets) {
+        try {
+            save();
+        }
+        catch (IOException ioe) {
+            // Not fatal; the statistics will just be rebuilt next time the Project is opened:
+            logger.log(Level.WARNING, "Unable to write project statistics", ioe);
+        }
+    }
+
+    /**
+     * Writes the statistics to disk, if anything has changed since they were last written. Does nothing
+     * if the Project itself has never been saved, as there's nowhere to put them.
+     *
+     * @throws IOException If the statistics file can't be written.
+     */
+    public void save() throws IOException {
+        long start = saveTimer.start();
+        try {
+            File statsFile = getStatsFile();
+            if (statsFile == null || (!unsavedChanges && statsFile.exists())) {
+                return;
+            }
+            project.getTicketRepository().refreshHeaders();
+
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream(16 * 1024);
+            DataOutputStream out = new DataOutputStream(byteStream);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(checksum);
+            projectTotals.write(out);
+            out.writeInt(versionTotals.size());
+            for (Map.Entry<UUID, Totals> entry : versionTotals.entrySet()) {
+                out.writeLong(entry.getKey().getMostSignificantBits());
+                out.writeLong(entry.getKey().getLeastSignificantBits());
+                entry.getValue().write(out);
+            }
+            out.flush();
+            ModelFiles.writeAtomically(statsFile, byteStream.toByteArray());
+            unsavedChanges = false;
+        }
+        finally {
+            saveTimer.stop(start);
+        }
+    }
+
+    private File getStatsFile() {
+        File sourceFile = project.getSourceFile();
+        return sourceFile == null ? null : new File(sourceFile.getAbsoluteFile().getParentFile(), STATS_FILE);
+    }
+
+    private void read(File statsFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(statsFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                logger.info("Ignoring project statistics with unknown format: " + statsFile.getAbsolutePath());
+                return;
+            }
+            checksum = in.readLong();
+            projectTotals.read(in);
+            int versionCount = in.readInt();
+            for (int i = 0; i < versionCount; i++) {
+                Totals totals = new Totals();
+                versionTotals.put(new UUID(in.readLong(), in.readLong()), totals);
+                totals.read(in);
+            }
+        }
+    }
+
+    /**
+     * Checks that what we read from disk describes exactly the given Tickets, as they are now.
+     */
+    private boolean isConsistentWith(List<TicketHeader> headers) {
+        long actual = 0;
+        for (TicketHeader header : headers) {
+            actual += checksumOf(header);
+        }
+        int versioned = 0;
+        for (Totals totals : versionTotals.values()) {
+            versioned += totals.ticketCount;
+        }
+        return actual == checksum
+                && projectTotals.ticketCount == headers.size()
+                && projectTotals.closedCount <= projectTotals.ticketCount
+                && versioned <= projectTotals.ticketCount;
+    }
+
+    /**
+     * Adds (sign 1) or subtracts (sign -1) the given Ticket to or from every total it counts towards.
+     */
+    private void apply(TicketHeader header, int sign) {
+        projectTotals.apply(header, sign);
+        UUID versionId = header.getTargetVersionId();
+        if (versionId != null) {
+            Totals totals = versionTotals.computeIfAbsent(versionId, id -> new Totals());
+            totals.apply(header, sign);
+            if (totals.ticketCount == 0) {
+                versionTotals.remove(versionId);
+            }
+        }
+        checksum += sign * checksumOf(header);
+    }
+
+    /**
+     * Hashes every field of the given header that the statistics depend on. The checksum of a set of
+     * Tickets is just the sum of these, so that it can be kept up to date one Ticket at a time.
+     */
+    private static long checksumOf(TicketHeader header) {
+        long h = header.getInternalId().getMostSignificantBits() * 31
+                + header.getInternalId().getLeastSignificantBits();
+        h = h * 31 + Objects.hashCode(header.getTargetVersionId());
+        h = h * 31 + (header.getCreateTime() == TicketHeader.NO_DATE ? 0 : YMDDate.epochDayOf(header.getCreateTime()));
+        h = h * 31 + (header.getCloseTime() == TicketHeader.NO_DATE ? 0 : YMDDate.epochDayOf(header.getCloseTime()));
+        h = h * 31 + Double.doubleToLongBits(hoursOf(header));
+
+        // The splitmix64 finalizer, so that similar Tickets don't have similar hashes:
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    private static double hoursOf(TicketHeader header) {
+        return header.getHoursWorked() == null ? 0 : header.getHoursWorked();
+    }
+
+    private static int mondayOf(int epochDay) {
+        // Epoch day 0 was a Thursday:
+        return Math.floorDiv(epochDay + 3, 7) * 7 - 3;
+    }
+
+    private static int sum(Map<Integer, Integer> counts) {
+        int total = 0;
+        for (int count : counts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Running totals for one set of Tickets (the whole Project, or one version).
+     */
+    private static final class Totals {
+        int ticketCount;
+        int closedCount;
+        double hoursWorked;
+        final NavigableMap<Integer, Integer> createdPerDay = new TreeMap<>();
+        final NavigableMap<Integer, Integer> closedPerDay = new TreeMap<>();
+
+        void apply(TicketHeader header, int sign) {
+            ticketCount += sign;
+            hoursWorked += sign * hoursOf(header);
+            boolean closed = header.getCloseTime() != TicketHeader.NO_DATE;
+            int closeDay = closed ? YMDDate.epochDayOf(header.getCloseTime()) : Integer.MAX_VALUE;
+            if (header.getCreateTime() != TicketHeader.NO_DATE) {
+                // Imported Tickets can claim to have been closed before they were created. Counting them
+                // as created when they were closed keeps the burndown from ever dipping below zero:
+                addToDay(createdPerDay, Math.min(YMDDate.epochDayOf(header.getCreateTime()), closeDay), sign);
+            }
+            if (closed) {
+                closedCount += sign;
+                addToDay(closedPerDay, closeDay, sign);
+            }
+        }
+
+        Summary toSummary() {
+            return new Summary(ticketCount, closedCount, hoursWorked);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(ticketCount);
+            out.writeInt(closedCount);
+            out.writeDouble(hoursWorked);
+            writeDays(out, createdPerDay);
+            writeDays(out, closedPerDay);
+        }
+
+        void read(DataInputStream in) throws IOException {
+            ticketCount = in.readInt();
+            closedCount = in.readInt();
+            hoursWorked = in.readDouble();
+            readDays(in, createdPerDay);
+            readDays(in, closedPerDay);
+        }
+
+        private static void addToDay(Map<Integer, Integer> counts, int day, int sign) {
+            counts.merge(day, sign, (a, b) -> a + b == 0 ? null : a + b);
+        }
+
+        private static void writeDays(DataOutputStream out, Map<Integer, Integer> counts) throws IOException {
+            out.writeInt(counts.size());
+            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+
+        private static void readDays(DataInputStream in, Map<Integer, Integer> counts) throws IOException {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                counts.put(in.readInt(), in.readInt());
+            }
+        }
+    }
+}
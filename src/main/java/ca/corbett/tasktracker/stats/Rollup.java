@@ -0,0 +1,81 @@
+package ca.corbett.tasktracker.stats;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of rolling up Tickets by some key: how many Tickets there are for each key,
+ * and how many hours have been worked on them in total. Keys are listed in a stable order
+ * that depends on the kind of rollup (date rollups are in date order, for example).
+ * A null key collects the Tickets that have no value for whatever we grouped by.
+ *
+ * @author scorbo2
+ */
+public final class Rollup<K> {
+
+    private final List<K> keys;
+    private final int[] counts;
+    private final double[] hours;
+    private final Map<K, Integer> positions = new HashMap<>();
+
+    Rollup(List<K> keys, int[] counts, double[] hours) {
+        this.keys = Collections.unmodifiableList(keys);
+        this.counts = counts;
+        this.hours = hours;
+        for (int i = 0; i < keys.size(); i++) {
+            positions.put(keys.get(i), i);
+        }
+    }
+
+    public List<K> getKeys() {
+        return keys;
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    /**
+     * Returns the number of Tickets for the given key, or 0 if there are none.
+     */
+    public int getCount(K key) {
+        Integer i = positions.get(key);
+        return i == null ? 0 : counts[i];
+    }
+
+    /**
+     * Returns the total hours worked on Tickets for the given key, or 0 if there are none.
+     */
+    public double getHours(K key) {
+        Integer i = positions.get(key);
+        return i == null ? 0 : hours[i];
+    }
+
+    public int getTotalCount() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public double getTotalHours() {
+        double total = 0;
+        for (double h : hours) {
+            total += h;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            sb.append(keys.get(i)).append(": ").append(counts[i]).append(" tickets, ")
+              .append(hours[i]).append(" hours\n");
+        }
+        return sb.toString();
+    }
+}
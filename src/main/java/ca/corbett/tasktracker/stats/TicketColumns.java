@@ -0,0 +1,351 @@
+package ca.corbett.tasktracker.stats;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.model.TicketChangeListener;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps the numbers we roll up all the time (hours worked, dates, state and target version) for
+ * every Ticket in a TicketRepository in column form: one primitive array per field, with one slot
+ * per Ticket. Rolling these up is then just a tight loop over a few flat arrays, with no boxed
+ * Doubles, no Dates and no pointer chasing, which gets through a million Tickets in a few
+ * milliseconds.
+ * <p>
+ * Dates are stored as epoch days, and states and versions as small integer codes into a
+ * dictionary of the distinct values seen. Code 0 marks a slot that is not in use (its Ticket
+ * was removed, and the slot hasn't been reused yet), and code 1 stands for "no value", so
+ * removed Tickets drop out of every rollup without the loops having to check for them.
+ * </p>
+ * <p>
+ * The columns are kept up to date as Tickets change by listening to the repository, so they
+ * only need to be built once.
+ * </p>
+ *
+ * @author scorbo2
+ */
+public class TicketColumns implements TicketChangeListener {
+
+    /** Which of a Ticket's dates to roll up by. **/
+    public enum DateField {
+        CREATE, START, CLOSE
+    }
+
+    /** The epoch day value that means "no date", which also marks unused slots. **/
+    private static final int NO_DATE = Integer.MIN_VALUE;
+
+    /** The code for an unused slot. **/
+    private static final int UNUSED = 0;
+
+    private final TicketRepository repository;
+    private final Map<UUID, Integer> ordinals = new HashMap<>();
+    private final IntStack freeOrdinals = new IntStack();
+    private int size; // slots in use or freed; everything past this is untouched
+
+    private double[] hoursWorked = new double[1024];
+    private int[] createDay = new int[1024];
+    private int[] startDay = new int[1024];
+    private int[] closeDay = new int[1024];
+    private int[] stateCode = new int[1024];
+    private int[] versionCode = new int[1024];
+
+    private final Dictionary<String> states = new Dictionary<>();
+    private final Dictionary<UUID> versions = new Dictionary<>();
+
+    /**
+     * Builds columns for all Tickets currently in the given repository, and starts listening
+     * to it for changes.
+     *
+     * @param repository The TicketRepository to keep columns for.
+     */
+    public TicketColumns(TicketRepository repository) {
+        this.repository = repository;
+        for (TicketHeader header : repository.getHeaders()) {
+            add(header);
+        }
+        repository.addTicketChangeListener(this);
+    }
+
+    /**
+     * Stops listening to the repository. The columns should not be used after this.
+     */
+    public void dispose() {
+        repository.removeTicketChangeListener(this);
+    }
+
+    /**
+     * Returns the number of Tickets in these columns.
+     */
+    public int getTicketCount() {
+        return ordinals.size();
+    }
+
+    /**
+     * Returns the total hours worked across all Tickets. Tickets with no hours count as zero.
+     */
+    public double getTotalHours() {
+        repository.refreshHeaders();
+        double total = 0;
+        double[] hours = hoursWorked;
+        for (int i = 0; i < size; i++) {
+            total += hours[i];
+        }
+        return total;
+    }
+
+    /**
+     * Rolls up all Tickets by state. A null key collects Tickets with no state.
+     */
+    public Rollup<String> byState() {
+        repository.refreshHeaders();
+        return byCode(stateCode, states);
+    }
+
+    /**
+     * Rolls up all Tickets by target version id. A null key collects Tickets with no target version.
+     */
+    public Rollup<UUID> byVersion() {
+        repository.refreshHeaders();
+        return byCode(versionCode, versions);
+    }
+
+    /**
+     * Rolls up all Tickets that have the given date by the week it falls in, weeks starting on Monday.
+     * Keys are the Monday of each week, in date order, and only weeks with at least one Ticket are included.
+     */
+    public Rollup<YMDDate> byWeek(DateField field) {
+        repository.refreshHeaders();
+        int[] days = getDays(field);
+        int[] range = dayRange(days);
+        if (range == null) {
+            return new Rollup<>(new ArrayList<>(), new int[0], new double[0]);
+        }
+        // Epoch day 0 was a Thursday, so shifting by 3 puts Monday at the start of each week:
+        int firstWeek = Math.floorDiv(range[0] + 3, 7);
+        int weekCount = Math.floorDiv(range[1] + 3, 7) - firstWeek + 1;
+        int[] counts = new int[weekCount];
+        double[] hours = new double[weekCount];
+        double[] hoursWorked = this.hoursWorked;
+        for (int i = 0; i < size; i++) {
+            int day = days[i];
+            if (day != NO_DATE) {
+                int week = Math.floorDiv(day + 3, 7) - firstWeek;
+                counts[week]++;
+                hours[week] += hoursWorked[i];
+            }
+        }
+        return compact(counts, hours, week -> YMDDate.ofEpochDay((firstWeek + week) * 7 - 3));
+    }
+
+    /**
+     * Rolls up all Tickets that have the given date by calendar month. Keys are the first day of each
+     * month, in date order, and only months with at least one Ticket are included.
+     */
+    public Rollup<YMDDate> byMonth(DateField field) {
+        repository.refreshHeaders();
+        int[] days = getDays(field);
+        int[] range = dayRange(days);
+        if (range == null) {
+            return new Rollup<>(new ArrayList<>(), new int[0], new double[0]);
+        }
+
+        // Working out the month of every Ticket's date would be slow, but there are only so many
+        // distinct days, so work out the month of each of those once and look it up from there:
+        LocalDate firstMonth = LocalDate.ofEpochDay(range[0]).withDayOfMonth(1);
+        int[] monthOfDay = new int[range[1] - range[0] + 1];
+        for (int d = 0; d < monthOfDay.length; d++) {
+            LocalDate date = LocalDate.ofEpochDay(range[0] + d);
+            monthOfDay[d] = (date.getYear() - firstMonth.getYear()) * 12
+                    + date.getMonthValue() - firstMonth.getMonthValue();
+        }
+
+        int monthCount = monthOfDay[monthOfDay.length - 1] + 1;
+        int[] counts = new int[monthCount];
+        double[] hours = new double[monthCount];
+        double[] hoursWorked = this.hoursWorked;
+        int firstDay = range[0];
+        for (int i = 0; i < size; i++) {
+            int day = days[i];
+            if (day != NO_DATE) {
+                int month = monthOfDay[day - firstDay];
+                counts[month]++;
+                hours[month] += hoursWorked[i];
+            }
+        }
+        return compact(counts, hours, month -> YMDDate.ofEpochDay((int)firstMonth.plusMonths(month).toEpochDay()));
+    }
+
+    @Override
+    public void ticketChanged(TicketHeader before, TicketHeader after) {
+        if (before != null) {
+            remove(before);
+        }
+        if (after != null) {
+            add(after);
+        }
+    }
+
+    private <K> Rollup<K> byCode(int[] codes, Dictionary<K> dictionary) {
+        int[] counts = new int[dictionary.size()];
+        double[] hours = new double[dictionary.size()];
+        double[] hoursWorked = this.hoursWorked;
+        for (int i = 0; i < size; i++) {
+            int code = codes[i];
+            counts[code]++;
+            hours[code] += hoursWorked[i];
+        }
+        counts[UNUSED] = 0;
+        hours[UNUSED] = 0;
+        return compact(counts, hours, dictionary::get);
+    }
+
+    /**
+     * Builds a Rollup from per-slot totals, leaving out the empty slots.
+     */
+    private static <K> Rollup<K> compact(int[] counts, double[] hours, IntFunction<K> keyOf) {
+        List<K> keys = new ArrayList<>();
+        int n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                keys.add(keyOf.apply(i));
+                counts[n] = counts[i];
+                hours[n] = hours[i];
+                n++;
+            }
+        }
+        return new Rollup<>(keys, Arrays.copyOf(counts, n), Arrays.copyOf(hours, n));
+    }
+
+    private int[] getDays(DateField field) {
+        switch (field) {
+            case START:
+                return startDay;
+            case CLOSE:
+                return closeDay;
+            default:
+                return createDay;
+        }
+    }
+
+    /**
+     * Returns the earliest and latest day in the given column, or null if it has no dates at all.
+     */
+    private int[] dayRange(int[] days) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            int day = days[i];
+            if (day != NO_DATE) {
+                min = Math.min(min, day);
+                max = Math.max(max, day);
+            }
+        }
+        return min > max ? null : new int[]{min, max};
+    }
+
+    private void add(TicketHeader header) {
+        int ordinal = freeOrdinals.isEmpty() ? size++ : freeOrdinals.pop();
+        if (ordinal >= hoursWorked.length) {
+            int capacity = hoursWorked.length * 2;
+            hoursWorked = Arrays.copyOf(hoursWorked, capacity);
+            createDay = Arrays.copyOf(createDay, capacity);
+            startDay = Arrays.copyOf(startDay, capacity);
+            closeDay = Arrays.copyOf(closeDay, capacity);
+            stateCode = Arrays.copyOf(stateCode, capacity);
+            versionCode = Arrays.copyOf(versionCode, capacity);
+        }
+        ordinals.put(header.getInternalId(), ordinal);
+        hoursWorked[ordinal] = header.getHoursWorked() == null ? 0 : header.getHoursWorked();
+        createDay[ordinal] = epochDay(header.getCreateTime());
+        startDay[ordinal] = epochDay(header.getStartTime());
+        closeDay[ordinal] = epochDay(header.getCloseTime());
+        stateCode[ordinal] = states.codeOf(header.getState());
+        versionCode[ordinal] = versions.codeOf(header.getTargetVersionId());
+    }
+
+    private void remove(TicketHeader header) {
+        Integer ordinal = ordinals.remove(header.getInternalId());
+        if (ordinal == null) {
+            return;
+        }
+        hoursWorked[ordinal] = 0;
+        createDay[ordinal] = NO_DATE;
+        startDay[ordinal] = NO_DATE;
+        closeDay[ordinal] = NO_DATE;
+        stateCode[ordinal] = UNUSED;
+        versionCode[ordinal] = UNUSED;
+        freeOrdinals.push(ordinal);
+    }
+
+    private static int epochDay(long time) {
+        return time == TicketHeader.NO_DATE ? NO_DATE : YMDDate.epochDayOf(time);
+    }
+
+    /**
+     * Gives each distinct value its own small integer code. Codes are never reused, which is fine
+     * for the low-cardinality fields we use this for. Code 0 is reserved for unused slots, and
+     * code 1 is null.
+     */
+    private static final class Dictionary<K> {
+        private final Map<K, Integer> codes = new HashMap<>();
+        private final List<K> values = new ArrayList<>();
+
+        Dictionary() {
+            values.add(null); // UNUSED
+            values.add(null); // no value
+        }
+
+        int codeOf(K value) {
+            if (value == null) {
+                return 1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        K get(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * A minimal growable stack of ints, for the free list.
+     */
+    private static final class IntStack {
+        private int[] values = new int[16];
+        private int count;
+
+        void push(int value) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = value;
+        }
+
+        int pop() {
+            return values[--count];
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ca.corbett.tasktracker.ui;
+
+import ca.corbett.tasktracker.diagnostics.EdtMonitor;
+import ca.corbett.tasktracker.diagnostics.LatencyHistogram;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+
+/**
+ * Shows how responsive the EDT has been, as measured by the EdtMonitor: a summary line with
+ * the median, 99th percentile and worst latency, plus a text histogram of all of them.
+ * Refreshes itself once a second while it's showing.
+ *
+ * @author scorbo2
+ */
+public class DiagnosticsPanel extends JPanel {
+
+    private static final int BAR_WIDTH = 50;
+
+    private final EdtMonitor monitor;
+    private final JLabel summaryLabel = new JLabel();
+    private final JTextArea histogramArea = new JTextArea(LatencyHistogram.BUCKET_COUNT + 1, 80);
+    private final Timer refreshTimer = new Timer(1000, e -> refresh());
+
+    public DiagnosticsPanel() {
+        this(EdtMonitor.getInstance());
+    }
+
+    public DiagnosticsPanel(EdtMonitor monitor) {
+        super(new BorderLayout());
+        this.monitor = monitor;
+        setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+
+        histogramArea.setEditable(false);
+        histogramArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(e -> {
+            monitor.getHistogram().reset();
+            refresh();
+        });
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(resetButton);
+
+        add(summaryLabel, BorderLayout.NORTH);
+        add(new JScrollPane(histogramArea), BorderLayout.CENTER);
+        add(buttonPanel, BorderLayout.SOUTH);
+        refresh();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refreshTimer.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refreshTimer.stop();
+        super.removeNotify();
+    }
+
+    private void refresh() {
+        LatencyHistogram histogram = monitor.getHistogram();
+        if (!monitor.isRunning()) {
+            summaryLabel.setText("The EDT monitor is not running.");
+        }
+        else {
+            summaryLabel.setText("EDT latency: median " + histogram.getPercentileMillis(50)
+                                     + " ms, 99th percentile " + histogram.getPercentileMillis(99)
+                                     + " ms, worst " + histogram.getMaxMillis() + " ms. Stalls over "
+                                     + monitor.getStallThresholdMs() + " ms: " + monitor.getStallCount());
+        }
+
+        long largest = 1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            largest = Math.max(largest, histogram.getCount(i));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long count = histogram.getCount(i);
+            int bar = (int)Math.ceil(count * (double)BAR_WIDTH / largest);
+            sb.append(String.format("%-14s %9d  %s%n", LatencyHistogram.getLabel(i), count, "#".repeat(bar)));
+        }
+        histogramArea.setText(sb.toString());
+    }
+}
@@ -2,11 +2,31 @@ package ca.corbett.tasktracker.ui;
 
 import ca.corbett.extras.logging.LogConsole;
 import ca.corbett.tasktracker.Version;
+import ca.corbett.tasktracker.extensions.TaskTrackerExtensionManager;
+import ca.corbett.tasktracker.history.HistoryLog;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.search.SearchIndex;
+import ca.corbett.tasktracker.stats.ProjectStats;
 
+import javax.swing.JDialog;
 import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -16,13 +36,165 @@ import java.util.logging.Logger;
  */
 public class MainWindow extends JFrame {
 
+    /** Fired (false to true) the first time the window is painted, which is when startup is really done. **/
+    public static final String FIRST_PAINT_PROPERTY = "firstPaint";
+
     private static MainWindow instance;
     private static final Logger logger = Logger.getLogger(MainWindow.class.getName());
 
+    private final TicketTable ticketTable = new TicketTable();
+    private final JTextField filterField = new JTextField();
+    private ProjectStats projectStats;
+    private SearchIndex searchIndex;
+    private HistoryLog historyLog;
+    private boolean painted;
+
     private MainWindow() {
         super(Version.NAME);
-        setSize(new Dimension(500,400));
+        setSize(new Dimension(900,600));
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLayout(new BorderLayout());
+
+        filterField.setToolTipText("Show only tickets whose ID or summary contains this text");
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                ticketTable.getTicketModel().setFilterText(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                ticketTable.getTicketModel().setFilterText(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        add(filterField, BorderLayout.NORTH);
+        add(new JScrollPane(ticketTable), BorderLayout.CENTER);
+        setJMenuBar(buildMenuBar());
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                closeProject();
+            }
+        });
+    }
+
+    /**
+     * Shows the given Project's Tickets in the ticket table, or clears it if null,
+     * and lets extensions know it has been opened. This doesn't wait for extensions;
+     * their hooks are called on the EDT later, once they've been loaded. Whatever was
+     * opened alongside the previous Project (its statistics, search index and history) is closed first.
+     */
+    public void setProject(Project project) {
+        closeProject();
+        ticketTable.setProject(project);
+        if (project != null) {
+            projectStats = ProjectStats.open(project);
+            try {
+                searchIndex = SearchIndex.open(project);
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to open the search index; search will not be available", ioe);
+            }
+            try {
+                historyLog = HistoryLog.open(project);
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to open the project history; changes will not be recorded", ioe);
+            }
+            TaskTrackerExtensionManager.getInstance().projectOpened(project, SwingUtilities::invokeLater);
+        }
+    }
+
+    public Project getProject() {
+        return ticketTable.getTicketModel().getProject();
+    }
+
+    /**
+     * Returns the statistics for the current Project, or null if there isn't one.
+     */
+    public ProjectStats getProjectStats() {
+        return projectStats;
+    }
+
+    /**
+     * Returns the search index for the current Project, or null if there isn't one.
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Returns the history of the current Project, or null if there isn't one.
+     */
+    public HistoryLog getHistoryLog() {
+        return historyLog;
+    }
+
+    /**
+     * Saves and disposes whatever was opened alongside the current Project.
+     * The Project itself is left as it is.
+     */
+    private void closeProject() {
+        if (projectStats != null) {
+            try {
+                projectStats.save();
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to save project statistics", ioe);
+            }
+            projectStats.dispose();
+            projectStats = null;
+        }
+        if (searchIndex != null) {
+            try {
+                searchIndex.save();
+            }
+            catch (IOException ioe) {
+                logger.log(Level.WARNING, "Unable to save the search index", ioe);
+            }
+            searchIndex.dispose();
+            searchIndex = null;
+        }
+        if (historyLog != null) {
+            historyLog.dispose();
+            historyLog = null;
+        }
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!painted) {
+            painted = true;
+            firePropertyChange(FIRST_PAINT_PROPERTY, false, true);
+        }
+    }
+
+    private JMenuBar buildMenuBar() {
+        JMenuItem logConsoleItem = new JMenuItem("Log console");
+        logConsoleItem.addActionListener(e -> LogConsole.getInstance().setVisible(true));
+        JMenuItem diagnosticsItem = new JMenuItem("Diagnostics");
+        diagnosticsItem.addActionListener(e -> showDiagnostics());
+
+        JMenu viewMenu = new JMenu("View");
+        viewMenu.add(logConsoleItem);
+        viewMenu.add(diagnosticsItem);
+        JMenuBar menuBar = new JMenuBar();
+        menuBar.add(viewMenu);
+        return menuBar;
+    }
+
+    private void showDiagnostics() {
+        JDialog dialog = new JDialog(this, Version.APPLICATION_NAME + " diagnostics");
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.add(new DiagnosticsPanel());
+        dialog.pack();
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
     }
 
     public static MainWindow getInstance() {
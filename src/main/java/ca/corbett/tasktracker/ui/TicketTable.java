@@ -0,0 +1,84 @@
+package ca.corbett.tasktracker.ui;
+
+import ca.corbett.tasktracker.model.Project;
+
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * A JTable showing the Tickets in a Project, backed by a TicketTableModel. Sorting is done by the
+ * model in the background rather than by a RowSorter, which would sort on the EDT and keep its own
+ * index of every row. Rows all have the same height, so JTable can work out which rows are visible
+ * with simple arithmetic instead of asking about each one.
+ *
+ * @author scorbo2
+ */
+public class TicketTable extends JTable {
+
+    private final TicketTableModel model;
+
+    public TicketTable() {
+        this(new TicketTableModel());
+    }
+
+    public TicketTable(TicketTableModel model) {
+        super(model);
+        this.model = model;
+        setAutoCreateRowSorter(false);
+        setFillsViewportHeight(true);
+        setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        setRowHeight(getFontMetrics(getFont()).getHeight() + 4);
+        setDefaultRenderer(String.class, new Renderer());
+        getColumnModel().getColumn(TicketTableModel.Column.SUMMARY.ordinal()).setPreferredWidth(400);
+
+        getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = columnAtPoint(e.getPoint());
+                if (column >= 0) {
+                    model.sortBy(TicketTableModel.Column.values()[convertColumnIndexToModel(column)]);
+                }
+            }
+        });
+    }
+
+    public TicketTableModel getTicketModel() {
+        return model;
+    }
+
+    /**
+     * Shows the Tickets of the given Project, in that Project's colours.
+     */
+    public void setProject(Project project) {
+        model.setProject(project);
+    }
+
+    /**
+     * Renders cells in the Project's colours. The renderer is one shared component that's re-used for
+     * every cell, and the colours come from the Project's cache, so painting a screen allocates nothing.
+     */
+    private class Renderer extends DefaultTableCellRenderer {
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            // Our colours would otherwise stick as the renderer's unselected colours, and carry over to
+            // cells that should have the table's own:
+            setBackground(null);
+            setForeground(null);
+            super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+            Project project = model.getProject();
+            if (!isSelected && project != null) {
+                Color bg = project.getBgColor();
+                Color fg = project.getFgColor();
+                setBackground(bg == null ? table.getBackground() : bg);
+                setForeground(fg == null ? table.getForeground() : fg);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package ca.corbett.tasktracker.ui;
+
+import ca.corbett.tasktracker.date.YMDDate;
+import ca.corbett.tasktracker.model.Project;
+import ca.corbett.tasktracker.model.ProjectView;
+import ca.corbett.tasktracker.model.TicketChangeListener;
+import ca.corbett.tasktracker.model.TicketHeader;
+import ca.corbett.tasktracker.model.TicketRepository;
+
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * A TableModel listing the Tickets in a Project, built to stay responsive with a million of them.
+ * <ul>
+ *     <li>JTable only ever asks for the cells it's painting, so rows are just TicketHeaders in an
+ *         array, and each row's display strings are only formatted when it first scrolls into view.
+ *         Formatted rows are kept in a small cache, so repainting the same screen costs nothing.
+ *     <li>Sorting and filtering happen on a background thread. TicketHeaders are immutable, so the
+ *         worker can sort a copy of the list while the table carries on showing the old one.
+ *     <li>Results are handed to the EDT in batches, so the first screen of rows shows up quickly
+ *         and the EDT never has to take in a million rows in one go.
+ *     <li>Ticket edits don't re-sort on every keystroke; changes are coalesced into one refresh.
+ * </ul>
+ *
+ * @author scorbo2
+ */
+public class TicketTableModel extends AbstractTableModel implements TicketChangeListener {
+
+    private static final Logger logger = Logger.getLogger(TicketTableModel.class.getName());
+
+    /**
+     * The columns in the table, with how to sort by each one.
+     */
+    public enum Column {
+        ID("ID", Comparator.comparingInt(TicketHeader::getDisplayId)),
+        SUMMARY("Summary", nullsFirst(TicketHeader::getShortDescription)),
+        STATE("State", nullsFirst(TicketHeader::getState)),
+        RESOLUTION("Resolution", nullsFirst(TicketHeader::getResolution)),
+        HOURS("Hours", nullsFirst(TicketHeader::getHoursWorked)),
+        CREATED("Created", Comparator.comparingLong(TicketHeader::getCreateTime)), // NO_DATE sorts first
+        CLOSED("Closed", Comparator.comparingLong(TicketHeader::getCloseTime));
+
+        private final String label;
+        private final Comparator<TicketHeader> comparator;
+
+        Column(String label, Comparator<TicketHeader> comparator) {
+            this.label = label;
+            this.comparator = comparator;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        private static <T extends Comparable<? super T>> Comparator<TicketHeader> nullsFirst(
+                Function<TicketHeader, T> field) {
+            return Comparator.comparing(field, Comparator.nullsFirst(Comparator.naturalOrder()));
+        }
+    }
+
+    /** How many rows are handed to the EDT at a time. **/
+    private static final int BATCH_SIZE = 20_000;
+
+    /** How many formatted rows to keep around; comfortably more than a few screens' worth. **/
+    private static final int ROW_CACHE_SIZE = 2_000;
+
+    /** How long to wait for Ticket edits to settle before refreshing. **/
+    private static final int REFRESH_DELAY_MS = 250;
+
+    private static final Column[] columns = Column.values();
+
+    private Project project;
+    private TicketHeader[] rows = new TicketHeader[0];
+    private int rowCount;
+    private Column sortColumn = Column.ID;
+    private boolean ascending = true;
+    private String filterText = "";
+    private SwingWorker<Void, TicketHeader[]> worker;
+    private final Timer refreshTimer = new Timer(REFRESH_DELAY_MS, e -> refresh());
+    private String formattedPrefix; // the Project prefix that the formatted IDs in formattedRows were made with
+    private final Map<TicketHeader, String[]> formattedRows = new LinkedHashMap<>(ROW_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TicketHeader, String[]> eldest) {
+            return size() > ROW_CACHE_SIZE;
+        }
+    };
+
+    public TicketTableModel() {
+        refreshTimer.setRepeats(false);
+    }
+
+    /**
+     * Shows the Tickets of the given Project, or nothing if it's null. The table fills in
+     * as soon as the first batch of rows is ready.
+     */
+    public void setProject(Project project) {
+        if (this.project != null) {
+            this.project.getTicketRepository().removeTicketChangeListener(this);
+        }
+        this.project = project;
+        if (project != null) {
+            project.getTicketRepository().addTicketChangeListener(this);
+        }
+        refresh();
+    }
+
+    public Project getProject() {
+        return project;
+    }
+
+    /**
+     * Sorts by the given column, flipping the direction if we're already sorted by it.
+     */
+    public void sortBy(Column column) {
+        ascending = column != sortColumn || !ascending;
+        sortColumn = column;
+        refresh();
+    }
+
+    public Column getSortColumn() {
+        return sortColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /**
+     * Shows only Tickets whose ID or summary contains the given text, ignoring case.
+     * Blank text shows everything.
+     */
+    public void setFilterText(String text) {
+        filterText = text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+        refresh();
+    }
+
+    /**
+     * Returns the TicketHeader shown in the given row.
+     */
+    public TicketHeader getHeaderAt(int row) {
+        return rows[row];
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column].getLabel();
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        TicketHeader header = rows[row];
+        if (!Objects.equals(formattedPrefix, project.getPrefix())) {
+            // The ID column includes the prefix, so every formatted row is out of date:
+            formattedRows.clear();
+            formattedPrefix = project.getPrefix();
+        }
+        String[] formatted = formattedRows.get(header);
+        if (formatted == null) {
+            formatted = format(header);
+            formattedRows.put(header, formatted);
+        }
+        return formatted[column];
+    }
+
+    /**
+     * Ticket edits arrive one at a time; rather than re-sorting for each one, wait for them to settle.
+     */
+    @Override
+    public void ticketChanged(TicketHeader before, TicketHeader after) {
+        refreshTimer.restart();
+    }
+
+    /**
+     * Re-runs the current sort and filter against the current Tickets, in the background.
+     * Any refresh still in progress is abandoned.
+     */
+    public void refresh() {
+        refreshTimer.stop();
+        if (worker != null) {
+            worker.cancel(false);
+        }
+        if (project == null) {
+            setRows(new TicketHeader[0], 0);
+            return;
+        }
+
+        // The repository belongs to the EDT, so grab what we need here; everything after this is immutable.
+        // Copying the headers out of the view is left to the worker, as that's not free for a big Project:
+        TicketRepository repository = project.getTicketRepository();
+        repository.refreshHeaders();
+        ProjectView view = repository.getView();
+        String idPrefix = (project.getPrefix() + "-").toLowerCase(Locale.ROOT);
+        Comparator<TicketHeader> comparator = ascending ? sortColumn.comparator : sortColumn.comparator.reversed();
+        String filter = filterText;
+        long start = System.nanoTime();
+        worker = new SwingWorker<>() {
+            private boolean first = true;
+
+            @Override
+            protected Void doInBackground() {
+                TicketHeader[] matches = filter(view, idPrefix, filter);
+                Arrays.parallelSort(matches, comparator);
+                for (int i = 0; i < matches.length && !isCancelled(); i += BATCH_SIZE) {
+                    publish(Arrays.copyOfRange(matches, i, Math.min(matches.length, i + BATCH_SIZE)));
+                }
+                if (matches.length == 0) {
+                    publish(matches);
+                }
+                return null;
+            }
+
+            @Override
+            protected void process(List<TicketHeader[]> batches) {
+                if (isCancelled()) {
+                    return;
+                }
+                for (TicketHeader[] batch : batches) {
+                    if (first) {
+                        setRows(batch, batch.length);
+                        first = false;
+                    }
+                    else {
+                        appendRows(batch);
+                    }
+                }
+            }
+
+            @Override
+            protected void done() {
+                if (!isCancelled()) {
+                    logger.fine(() -> "Sorted and filtered " + view.size() + " tickets down to " + rowCount
+                            + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void setRows(TicketHeader[] newRows, int count) {
+        rows = newRows;
+        rowCount = count;
+        fireTableDataChanged();
+    }
+
+    private void appendRows(TicketHeader[] batch) {
+        if (rowCount + batch.length > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, rowCount + batch.length));
+        }
+        System.arraycopy(batch, 0, rows, rowCount, batch.length);
+        int firstRow = rowCount;
+        rowCount += batch.length;
+        fireTableRowsInserted(firstRow, rowCount - 1);
+    }
+
+    /**
+     * Returns the headers in the given view whose ID (as shown in the table, so "PREFIX-123") or
+     * summary contains the given filter text. The ID prefix and the filter must already be lowercase.
+     */
+    private static TicketHeader[] filter(ProjectView view, String idPrefix, String filter) {
+        List<TicketHeader> matches = new ArrayList<>(filter.isEmpty() ? view.size() : 16);
+        view.forEach(header -> {
+            String summary = header.getShortDescription();
+            if (filter.isEmpty()
+                    || (idPrefix + header.getDisplayId()).contains(filter)
+                    || (summary != null && summary.toLowerCase(Locale.ROOT).contains(filter))) {
+                matches.add(header);
+            }
+        });
+        return matches.toArray(new TicketHeader[0]);
+    }
+
+    private String[] format(TicketHeader header) {
+        String[] formatted = new String[columns.length];
+        formatted[Column.ID.ordinal()] = project.getPrefix() + "-" + header.getDisplayId();
+        formatted[Column.SUMMARY.ordinal()] = nullToEmpty(header.getShortDescription());
+        formatted[Column.STATE.ordinal()] = nullToEmpty(header.getState());
+        formatted[Column.RESOLUTION.ordinal()] = nullToEmpty(header.getResolution());
+        formatted[Column.HOURS.ordinal()] = header.getHoursWorked() == null ? "" : header.getHoursWorked().toString();
+        formatted[Column.CREATED.ordinal()] = formatDate(header.getCreateTime());
+        formatted[Column.CLOSED.ordinal()] = formatDate(header.getCloseTime());
+        return formatted;
+    }
+
+    private static String formatDate(long time) {
+        return time == TicketHeader.NO_DATE ? "" : new YMDDate(time).toString();
+    }
+
+    private static String nullToEmpty(String str) {
+        return str == null ? "" : str;
+    }
+}
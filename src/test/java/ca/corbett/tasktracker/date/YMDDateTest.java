@@ -0,0 +1,142 @@
+package ca.corbett.tasktracker.date;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks YMDDate's hand-rolled parsing, formatting and calendar arithmetic against java.time.
+ *
+ * @author scorbo2
+ */
+class YMDDateTest {
+
+    @Test
+    void roundTrip_matchesLocalDateForEveryDay() {
+        int first = (int)LocalDate.of(1599, 1, 1).toEpochDay();
+        int last = (int)LocalDate.of(2401, 12, 31).toEpochDay();
+        for (int epochDay = first; epochDay <= last; epochDay++) {
+            LocalDate expected = LocalDate.ofEpochDay(epochDay);
+            YMDDate date = YMDDate.ofEpochDay(epochDay);
+            assertEquals(expected.toString(), date.toString());
+            assertEquals(expected.getYear(), date.getYear());
+            assertEquals(expected.getMonthValue(), date.getMonth());
+            assertEquals(expected.getDayOfMonth(), date.getDay());
+
+            YMDDate parsed = new YMDDate(expected.toString());
+            assertTrue(parsed.isValid(), expected.toString());
+            assertEquals(epochDay, parsed.getEpochDay());
+            assertEquals(date, parsed);
+        }
+    }
+
+    @Test
+    void parse_acceptsLeapDaysOnlyInLeapYears() {
+        assertValid("2000-02-29");
+        assertValid("2024-02-29");
+        assertValid("1600-02-29");
+        assertValid("1904-02-29");
+        assertInvalid("1900-02-29");
+        assertInvalid("2100-02-29");
+        assertInvalid("2023-02-29");
+        assertInvalid("2000-02-30");
+
+        assertEquals("2000-03-01", YMDDate.ofEpochDay(new YMDDate("2000-02-29").getEpochDay() + 1).toString());
+        assertEquals("1900-03-01", YMDDate.ofEpochDay(new YMDDate("1900-02-28").getEpochDay() + 1).toString());
+    }
+
+    @Test
+    void preEpochDates_haveNegativeEpochDays() {
+        assertEquals(0, new YMDDate("1970-01-01").getEpochDay());
+        assertEquals(-1, new YMDDate("1969-12-31").getEpochDay());
+        assertEquals(LocalDate.of(1900, 1, 1).toEpochDay(), new YMDDate("1900-01-01").getEpochDay());
+        assertEquals(LocalDate.of(1, 1, 1).toEpochDay(), new YMDDate("0001-01-01").getEpochDay());
+
+        YMDDate date = new YMDDate("1969-07-20");
+        assertEquals(1969, date.getYear());
+        assertEquals(7, date.getMonth());
+        assertEquals(20, date.getDay());
+        assertEquals("Sunday", date.getDayName());
+        assertTrue(date.compareTo(new YMDDate("1970-01-01")) < 0);
+    }
+
+    @Test
+    void millis_areTakenInTheLocalTimeZone() {
+        for (String text : new String[]{"1969-12-31", "1970-01-01", "1955-06-15", "2000-02-29", "2038-01-20"}) {
+            LocalDate local = LocalDate.parse(text);
+            long startOfDay = local.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            long endOfDay = local.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+            assertEquals(text, new YMDDate(startOfDay).toString());
+            assertEquals(text, new YMDDate(endOfDay).toString());
+            assertEquals(local.toEpochDay(), YMDDate.epochDayOf(startOfDay));
+        }
+    }
+
+    @Test
+    void parse_rejectsAnythingButARealDateAsYyyyMmDd() {
+        assertInvalid(null);
+        assertInvalid("");
+        assertInvalid("2023-04-31");
+        assertInvalid("2023-06-31");
+        assertInvalid("2023-13-01");
+        assertInvalid("2023-00-10");
+        assertInvalid("2023-01-00");
+        assertInvalid("2023-01-32");
+        assertInvalid("2023-1-01");
+        assertInvalid("2023-01-1");
+        assertInvalid("23-01-01");
+        assertInvalid("2023/01/01");
+        assertInvalid("2023-01-01 ");
+        assertInvalid(" 2023-01-01");
+        assertInvalid("2023-01-01T00:00");
+        assertInvalid("abcd-01-01");
+        assertInvalid("2023-0a-01");
+        assertInvalid("+023-01-01");
+        assertInvalid("-023-01-01");
+        assertInvalid("2023-\u0661\u0662-01"); // digits, but not ASCII ones
+
+        YMDDate date = new YMDDate("2023-01-01");
+        date.setDate("2023-02-29");
+        assertFalse(date.isValid());
+        assertEquals("", date.toString());
+        assertEquals(0, date.getYear());
+    }
+
+    @Test
+    void years_areLimitedToWhatYyyyMmDdCanHold() {
+        assertValid("0001-01-01");
+        assertValid("9999-12-31");
+        assertInvalid("0000-01-01");
+        assertInvalid("0000-12-31");
+        assertInvalid("10000-01-01");
+
+        int first = new YMDDate("0001-01-01").getEpochDay();
+        int last = new YMDDate("9999-12-31").getEpochDay();
+        assertEquals("0001-01-01", YMDDate.ofEpochDay(first).toString());
+        assertEquals("9999-12-31", YMDDate.ofEpochDay(last).toString());
+        assertThrows(IllegalArgumentException.class, () -> YMDDate.ofEpochDay(first - 1));
+        assertThrows(IllegalArgumentException.class, () -> YMDDate.ofEpochDay(last + 1));
+        assertThrows(IllegalArgumentException.class, () -> YMDDate.ofEpochDay(Integer.MIN_VALUE));
+
+        long year10000 = LocalDate.of(10_000, 6, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertFalse(new YMDDate(year10000).isValid());
+        assertFalse(new YMDDate(Long.MIN_VALUE / 2).isValid());
+    }
+
+    private static void assertValid(String text) {
+        YMDDate date = new YMDDate(text);
+        assertTrue(date.isValid(), text + " should be valid");
+        assertEquals(text, date.toString());
+        assertEquals(LocalDate.parse(text).toEpochDay(), date.getEpochDay());
+    }
+
+    private static void assertInvalid(String text) {
+        assertFalse(new YMDDate(text).isValid(), text + " should be rejected");
+    }
+}
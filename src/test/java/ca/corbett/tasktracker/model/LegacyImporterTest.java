@@ -0,0 +1,250 @@
+package ca.corbett.tasktracker.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs LegacyImporter against an in-memory H2 database laid out like a TaskTracker 1.x one.
+ *
+ * @author scorbo2
+ */
+class LegacyImporterTest {
+
+    @TempDir
+    File tempDir;
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        execute("CREATE TABLE project (id BIGINT PRIMARY KEY, prefix VARCHAR(20), name VARCHAR(100),"
+                        + " description VARCHAR(1000), start_date VARCHAR(30))");
+        execute("CREATE TABLE project_version (id BIGINT PRIMARY KEY, project_id BIGINT, label VARCHAR(20),"
+                        + " description VARCHAR(1000), start_date VARCHAR(30), release_date VARCHAR(30))");
+        execute("CREATE TABLE ticket (id BIGINT PRIMARY KEY, project_id BIGINT, version_id BIGINT, display_id INT,"
+                        + " create_date VARCHAR(30), start_date VARCHAR(30), close_date VARCHAR(30),"
+                        + " short_description VARCHAR(200), long_description VARCHAR(4000), hours_worked DOUBLE,"
+                        + " state VARCHAR(20), resolution VARCHAR(20))");
+        execute("CREATE TABLE ticket_comment (id BIGINT PRIMARY KEY, ticket_id BIGINT, create_date VARCHAR(30),"
+                        + " last_edit_date VARCHAR(30), comment_text VARCHAR(4000))");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    void run_matchesCommentsToTheirTickets() throws Exception {
+        addProject(1, "ALPHA");
+        addProject(2, "BETA");
+        execute("INSERT INTO project_version VALUES (1, 1, '1.0', NULL, '2020-01-01', '2020-06-30 12:00')");
+        int commentId = 10_000;
+        for (int id = 1; id <= 200; id++) {
+            addTicket(id, 1 + id % 2, (id + 1) / 2, "Ticket " + id);
+            // Comment ids run backwards, so only the query's ordering puts them with their tickets:
+            for (int c = 0; c < id % 4; c++) {
+                addComment(commentId--, id, "Comment " + c + " on " + id);
+            }
+        }
+
+        LegacyImporter.Report report = LegacyImporter.create(connection, tempDir).setThreadCount(3).run();
+
+        assertTrue(report.isComplete());
+        assertEquals(2, report.getProjectCount());
+        assertEquals(1, report.getVersionCount());
+        assertEquals(200, report.getTicketCount());
+        assertEquals(300, report.getCommentCount());
+        Project alpha = loadProject("ALPHA");
+        Project beta = loadProject("BETA");
+        assertEquals(1, alpha.getVersions().size());
+        assertEquals(100, alpha.getTicketRepository().size());
+        assertEquals(100, beta.getTicketRepository().size());
+        for (int id = 1; id <= 200; id++) {
+            Project project = id % 2 == 0 ? alpha : beta;
+            Ticket ticket = project.getTicketRepository().getByDisplayId((id + 1) / 2);
+            assertEquals("Ticket " + id, ticket.getShortDescription());
+            List<TicketComment> comments = ticket.getComments();
+            assertEquals(id % 4, comments.size());
+            for (int c = comments.size() - 1; c >= 0; c--) {
+                // Within a ticket, comments come in comment id order, which here is newest first:
+                assertEquals("Comment " + c + " on " + id, comments.get(comments.size() - 1 - c).getCommentText());
+            }
+        }
+    }
+
+    @Test
+    void run_dropsOrphanComments() throws Exception {
+        addProject(1, "ALPHA");
+        addTicket(10, 1, 1, "Ten");
+        addTicket(20, 1, 2, "Twenty");
+        addTicket(25, 99, 3, "No such project");
+        addTicket(30, 1, 4, "Thirty");
+        addComment(1, 5, "Before the first ticket");
+        addComment(2, 10, "On ten");
+        addComment(3, 15, "Between tickets");
+        addComment(4, 25, "On a ticket that isn't imported");
+        addComment(5, 30, "On thirty");
+        addComment(6, 30, "On thirty again");
+        addComment(7, 40, "After the last ticket");
+
+        LegacyImporter.Report report = LegacyImporter.create(connection, tempDir).run();
+
+        assertEquals(3, report.getTicketCount());
+        assertEquals(3, report.getCommentCount());
+        TicketRepository tickets = loadProject("ALPHA").getTicketRepository();
+        assertEquals(3, tickets.size());
+        assertEquals(List.of("On ten"), commentTexts(tickets.getByDisplayId(1)));
+        assertEquals(List.of(), commentTexts(tickets.getByDisplayId(2)));
+        assertEquals(List.of("On thirty", "On thirty again"), commentTexts(tickets.getByDisplayId(4)));
+    }
+
+    @Test
+    void run_renumbersMissingAndDuplicateDisplayIds() throws Exception {
+        addProject(1, "ALPHA");
+        addProject(2, "BETA");
+        addTicket(1, 1, 1, "Keeps 1");
+        addTicket(2, 1, null, "Has none");
+        addTicket(3, 1, 1, "Duplicate of 1");
+        addTicket(4, 1, 5, "Keeps 5");
+        addTicket(5, 1, 0, "Invalid");
+        addTicket(6, 2, 1, "Other project keeps 1");
+
+        LegacyImporter.create(connection, tempDir).run();
+
+        TicketRepository alpha = loadProject("ALPHA").getTicketRepository();
+        assertEquals(5, alpha.size());
+        assertEquals("Keeps 1", alpha.getByDisplayId(1).getShortDescription());
+        assertEquals("Keeps 5", alpha.getByDisplayId(5).getShortDescription());
+        assertEquals("Has none", alpha.getByDisplayId(6).getShortDescription());
+        assertEquals("Duplicate of 1", alpha.getByDisplayId(7).getShortDescription());
+        assertEquals("Invalid", alpha.getByDisplayId(8).getShortDescription());
+        assertEquals("Other project keeps 1", loadProject("BETA").getTicketRepository()
+                .getByDisplayId(1).getShortDescription());
+    }
+
+    @Test
+    void run_resumesAfterBeingKilled() throws Exception {
+        addProject(1, "ALPHA");
+        int commentId = 1;
+        for (int id = 1; id <= 500; id++) {
+            addTicket(id, 1, id % 10 == 0 ? null : id, "Ticket " + id);
+            for (int c = 0; c < 3; c++) {
+                addComment(commentId++, id, "Comment " + c + " on " + id);
+            }
+        }
+        File checkpointFile = new File(tempDir, LegacyImporter.CHECKPOINT_FILE);
+
+        // Checkpoint after every ticket, and die partway through:
+        AtomicInteger reports = new AtomicInteger();
+        RuntimeException killed = assertThrows(RuntimeException.class, () ->
+                LegacyImporter.create(connection, tempDir).setThreadCount(4).setProgressIntervalMs(0)
+                              .setProgressListener(progress -> {
+                                  if (reports.incrementAndGet() == 200) {
+                                      throw new RuntimeException("Killed");
+                                  }
+                              })
+                              .run());
+        assertEquals("Killed", killed.getMessage());
+        assertTrue(checkpointFile.exists());
+
+        LegacyImporter.Report resumed = LegacyImporter.create(connection, tempDir).setThreadCount(4).run();
+        assertTrue(resumed.isComplete());
+        assertEquals(500, resumed.getTicketCount());
+        assertEquals(1500, resumed.getCommentCount());
+
+        LegacyImporter.Report again = LegacyImporter.create(connection, tempDir).run();
+        assertTrue(again.isComplete());
+        assertEquals(500, again.getTicketCount());
+
+        // Everything must come out exactly as it would have without the interruption:
+        File cleanDir = new File(tempDir, "clean");
+        LegacyImporter.create(connection, cleanDir).setThreadCount(1).run();
+        TicketRepository tickets = loadProject("ALPHA").getTicketRepository();
+        TicketRepository clean = Project.load(new File(new File(cleanDir, "ALPHA"), WorkspaceLoader.PROJECT_FILE))
+                                        .getTicketRepository();
+        assertEquals(500, tickets.size());
+        Set<Integer> displayIds = new HashSet<>();
+        for (TicketHeader header : clean.getHeaders()) {
+            Ticket ticket = tickets.getByDisplayId(header.getDisplayId());
+            assertNotNull(ticket, "Missing ticket " + header.getDisplayId());
+            assertEquals(header.getInternalId(), ticket.getInternalId());
+            assertEquals(3, ticket.getComments().size());
+            assertTrue(displayIds.add(ticket.getDisplayId()));
+        }
+        assertFalse(displayIds.contains(0));
+    }
+
+    private Project loadProject(String prefix) throws IOException {
+        return Project.load(new File(new File(tempDir, prefix), WorkspaceLoader.PROJECT_FILE));
+    }
+
+    private static List<String> commentTexts(Ticket ticket) {
+        List<String> texts = new ArrayList<>();
+        for (TicketComment comment : ticket.getComments()) {
+            texts.add(comment.getCommentText());
+        }
+        return texts;
+    }
+
+    private void addProject(long id, String prefix) throws SQLException {
+        execute("INSERT INTO project VALUES (" + id + ", '" + prefix + "', 'Project " + prefix + "', NULL,"
+                        + " '2020-01-01')");
+    }
+
+    private void addTicket(long id, long projectId, Integer displayId, String shortDescription) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO ticket (id, project_id, display_id, create_date, short_description, hours_worked, state)"
+                        + " VALUES (?, ?, ?, '2021-03-04 10:15:00', ?, 1.5, 'Open')")) {
+            statement.setLong(1, id);
+            statement.setLong(2, projectId);
+            if (displayId == null) {
+                statement.setNull(3, Types.INTEGER);
+            }
+            else {
+                statement.setInt(3, displayId);
+            }
+            statement.setString(4, shortDescription);
+            statement.executeUpdate();
+        }
+    }
+
+    private void addComment(long id, long ticketId, String text) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO ticket_comment VALUES (?, ?, '2022-01-01', NULL, ?)")) {
+            statement.setLong(1, id);
+            statement.setLong(2, ticketId);
+            statement.setString(3, text);
+            statement.executeUpdate();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ca.corbett.tasktracker.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Stress tests for ProjectView and the way TicketRepository publishes it: readers on other threads
+ * must only ever see complete, consistent views while the model thread is changing things, and
+ * creating Tickets in bulk must stay linear.
+ *
+ * @author scorbo2
+ */
+class ProjectViewTest {
+
+    private static final int READER_THREADS = 4;
+
+    @Test
+    void create_isPublishedOnRefresh() {
+        Project project = Project.create("TEST", "Test project");
+        TicketRepository repository = project.getTicketRepository();
+        ProjectView before = repository.getView();
+
+        Ticket ticket = project.createTicket("First");
+        assertSame(before, repository.getView());
+
+        repository.refreshHeaders();
+        ProjectView after = repository.getView();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(1, after.size());
+        assertEquals("First", after.getHeader(ticket.getInternalId()).getShortDescription());
+        assertEquals(ticket.getInternalId(), after.getHeaderByDisplayId(ticket.getDisplayId()).getInternalId());
+        assertNull(before.getHeader(ticket.getInternalId()));
+    }
+
+    @Test
+    void bulkCreate_isLinear() {
+        int count = 100_000;
+        Project project = Project.create("TEST", "Test project");
+        TicketRepository repository = project.getTicketRepository();
+
+        // This was quadratic when every create published a view: minutes, not milliseconds.
+        List<Ticket> tickets = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            List<Ticket> created = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                created.add(project.createTicket("Ticket " + i));
+            }
+            repository.refreshHeaders();
+            return created;
+        });
+
+        ProjectView view = repository.getView();
+        assertEquals(count, view.size());
+        for (int i = 0; i < count; i++) {
+            Ticket ticket = tickets.get(i);
+            assertEquals(i + 1, ticket.getDisplayId());
+            TicketHeader header = view.getHeader(ticket.getInternalId());
+            assertNotNull(header);
+            assertEquals(ticket.getDisplayId(), header.getDisplayId());
+        }
+    }
+
+    @Test
+    void concurrentReaders_seeConsistentViews() throws Exception {
+        Project project = Project.create("TEST", "Test project");
+        TicketRepository repository = project.getTicketRepository();
+        for (int i = 0; i < 5_000; i++) {
+            project.createTicket("Ticket " + i).setHoursWorked(0.0);
+        }
+        repository.refreshHeaders();
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(READER_THREADS);
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < READER_THREADS; t++) {
+            Thread reader = new Thread(() -> {
+                started.countDown();
+                long lastVersion = 0;
+                try {
+                    while (!done.get()) {
+                        ProjectView view = repository.getView();
+                        assertTrue(view.getVersion() >= lastVersion, "view version went backwards");
+                        lastVersion = view.getVersion();
+                        checkConsistent(view);
+                    }
+                }
+                catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "ProjectViewTest-reader-" + t);
+            readers.add(reader);
+            reader.start();
+        }
+        started.await();
+
+        // This thread plays the model thread: edit, create, and publish, over and over.
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int round = 1; round <= 2_000 && failure.get() == null; round++) {
+            for (int i = 0; i < 10; i++) {
+                int displayId = 1 + random.nextInt(repository.getView().size());
+                repository.getByDisplayId(displayId).setHoursWorked((double)round);
+            }
+            project.createTicket("Round " + round);
+            repository.refreshHeaders();
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Reader saw an inconsistent view", failure.get());
+        }
+        assertEquals(7_000, repository.getView().size());
+    }
+
+    /**
+     * Checks that everything a view says agrees with everything else it says.
+     */
+    private static void checkConsistent(ProjectView view) {
+        int[] count = {0};
+        int[] lastDisplayId = {0};
+        view.forEach(header -> {
+            count[0]++;
+            assertTrue(header.getDisplayId() > lastDisplayId[0], "headers out of order");
+            lastDisplayId[0] = header.getDisplayId();
+            assertSame(header, view.getHeaderByDisplayId(header.getDisplayId()));
+            assertSame(header, view.getHeader(header.getInternalId()));
+        });
+        assertEquals(view.size(), count[0]);
+    }
+}